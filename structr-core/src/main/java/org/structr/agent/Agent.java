@@ -53,7 +53,7 @@ public abstract class Agent<T extends NodeInterface> extends Thread implements S
 	private final AtomicBoolean acceptingTasks = new AtomicBoolean(true);
 	private AgentService agentService          = null;
 	private long averageExecutionTime          = 0;
-	private Task currentTask                   = null;
+	private volatile Task currentTask          = null;
 	private long lastStartTime                 = 0;
 	private int maxAgents                      = 4;
 	private int maxQueueSize                   = 10;
@@ -83,75 +83,100 @@ public abstract class Agent<T extends NodeInterface> extends Thread implements S
 
 			if (currentTask != null) {
 
-				lastStartTime = System.nanoTime();
+				execute(currentTask);
 
-				ReturnValue ret = null;
+			} else {
 
-				// only execute process if Service layer is ready
-				// (and not shutting down right now)
-				if (Services.getInstance().isInitialized()) {
+				// queue is empty, quit.
+				acceptingTasks.set(false);
+			}
 
-					if (createEnclosingTransaction()) {
+		} while (acceptingTasks.get());
 
-						try (final Tx tx = StructrApp.getInstance().tx()) {
+		stopped();
+	}
 
-							ret = processTask(currentTask);
-							tx.success();
+	/**
+	 * Processes a single task in the calling thread.
+	 *
+	 * @param task
+	 * @return the return value of {@link #processTask}, or null if the
+	 * task could not be processed
+	 */
+	final ReturnValue execute(final Task<T> task) {
+
+		currentTask   = task;
+		lastStartTime = System.nanoTime();
 
-						} catch (Throwable t) {
+		ReturnValue ret = null;
 
-							// someone killed us or the task processing failed..
-							// Log this!!
-							logger.log(Level.SEVERE, t, LogMessageSupplier.create("Processing task {0} failed. Maybe someone killed us?", currentTask.getType()));
-						}
+		// only execute process if Service layer is ready
+		// (and not shutting down right now)
+		if (Services.getInstance().isInitialized()) {
 
-					} else {
+			if (createEnclosingTransaction()) {
 
-						try {
+				try (final Tx tx = StructrApp.getInstance().tx()) {
 
-							ret = processTask(currentTask);
+					ret = processTask(task);
+					tx.success();
 
-						} catch (Throwable t) {
+				} catch (Throwable t) {
 
-							// someone killed us or the task processing failed..
-							// Log this!!
-							logger.log(Level.SEVERE, t, LogMessageSupplier.create("Processing task {0} failed. Maybe someone killed us?", currentTask.getType()));
-						}
-					}
+					// someone killed us or the task processing failed..
+					// Log this!!
+					logger.log(Level.SEVERE, t, LogMessageSupplier.create("Processing task {0} failed. Maybe someone killed us?", task.getType()));
 				}
 
-				if (ret != null) {
+			} else {
 
-					// handle return value
-					switch (ret) {
+				try {
 
-						case Success :
-						case Abort :
+					ret = processTask(task);
 
-							// task finished, nothing to do in these cases
-							break;
+				} catch (Throwable t) {
 
-						case Retry :
+					// someone killed us or the task processing failed..
+					// Log this!!
+					logger.log(Level.SEVERE, t, LogMessageSupplier.create("Processing task {0} failed. Maybe someone killed us?", task.getType()));
+				}
+			}
+		}
 
-							// TODO: schedule task for re-execution
-							break;
+		if (ret != null) {
 
-					}
-				}
+			// handle return value
+			switch (ret) {
 
-				long endTime = System.nanoTime();
+				case Success :
+				case Abort :
 
-				// calc. average execution time
-				averageExecutionTime += endTime;
-				averageExecutionTime /= 2;
+					// task finished, nothing to do in these cases
+					break;
 
-			} else {
+				case Retry :
+
+					// TODO: schedule task for re-execution
+					break;
 
-				// queue is empty, quit.
-				acceptingTasks.set(false);
 			}
+		}
 
-		} while (acceptingTasks.get());
+		long endTime = System.nanoTime();
+
+		// calc. average execution time
+		averageExecutionTime += endTime - lastStartTime;
+		averageExecutionTime /= 2;
+
+		currentTask = null;
+
+		return ret;
+	}
+
+	/**
+	 * Called when this agent will not process any more tasks.
+	 */
+	final void stopped() {
 
 		// call beforeShutdown to allow agents to clean up
 		beforeShutdown();
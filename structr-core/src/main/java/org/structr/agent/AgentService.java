@@ -19,26 +19,37 @@
 package org.structr.agent;
 
 import org.structr.api.service.Command;
+import org.structr.api.service.InitializationCallback;
 import org.structr.api.service.RunnableService;
 import org.structr.core.Services;
 
 //~--- JDK imports ------------------------------------------------------------
 
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Properties;
-import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import org.structr.agent.TaskPool.QueuedTask;
 import org.structr.api.service.StructrServices;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.app.App;
+import org.structr.core.app.StructrApp;
+import org.structr.core.graph.Tx;
 import org.structr.schema.ConfigurationProvider;
 
 //~--- classes ----------------------------------------------------------------
@@ -46,20 +57,49 @@ import org.structr.schema.ConfigurationProvider;
 /**
  * The agent service main class.
  *
+ * Tasks are handed over to a separate {@link TaskPool} for each task type,
+ * so that long-running tasks of one type can not block the tasks of other
+ * types. The maximum number of agents per task type can be configured in
+ * structr.conf with
+ *
+ * AgentService.maxAgents = 4 (default for all task types)
+ * AgentService.&lt;TaskClassName&gt;.maxAgents = 2
+ *
+ * On shutdown, the service waits for queued tasks to be processed for at
+ * most AgentService.shutdownTimeout seconds (default 30).
+ *
+ * With AgentService.persistentQueue = true, pending tasks are written to a
+ * {@link TaskJournal} in AgentService.journalPath (default "agent" in the
+ * base path) and replayed after a restart. Identical tasks for the same
+ * nodes are only queued once. The journal is rewritten after
+ * AgentService.checkpointInterval processed tasks (default 1000).
+ *
  *
  */
 public class AgentService extends Thread implements RunnableService {
 
 	private static final Logger logger = Logger.getLogger(AgentService.class.getName());
 
+	public static final String MAX_AGENTS                 = "AgentService.maxAgents";
+	public static final String MAX_AGENTS_SUFFIX          = ".maxAgents";
+	public static final String SHUTDOWN_TIMEOUT           = "AgentService.shutdownTimeout";
+	public static final String PERSISTENT_QUEUE           = "AgentService.persistentQueue";
+	public static final String JOURNAL_PATH               = "AgentService.journalPath";
+	public static final String CHECKPOINT_INTERVAL        = "AgentService.checkpointInterval";
+
 	//~--- fields ---------------------------------------------------------
 
-	private final int maxAgents                          = 4;    // TODO: make configurable
-	private final Map<String, List<Agent>> runningAgents = new ConcurrentHashMap<>(10, 0.9f, 8);
-	private final Map<String, Class> agentClassCache     = new ConcurrentHashMap<>(10, 0.9f, 8);
-	private final Queue<Task> taskQueue                  = new ConcurrentLinkedQueue<>();
-	private Set<Class> supportedCommands                 = null;
-	private boolean run                                  = false;
+	private final Map<String, List<Agent>> runningAgents  = new ConcurrentHashMap<>(10, 0.9f, 8);
+	private final Map<String, Class> agentClassCache      = new ConcurrentHashMap<>(10, 0.9f, 8);
+	private final Map<String, TaskPool> taskPools         = new ConcurrentHashMap<>(10, 0.9f, 8);
+	private final BlockingQueue<QueuedTask> taskQueue     = new PriorityBlockingQueue<>();
+	private Set<Class> supportedCommands                  = null;
+	private Properties config                             = new Properties();
+	private int defaultMaxAgents                          = 4;
+	private TaskJournal journal                           = null;
+	private long shutdownTimeout                          = 30;
+	private volatile boolean acceptingTasks               = true;
+	private volatile boolean run                          = false;
 
 	//~--- constructors ---------------------------------------------------
 
@@ -76,10 +116,20 @@ public class AgentService extends Thread implements RunnableService {
 
 	public void processTask(Task task) {
 
-		synchronized (taskQueue) {
+		if (acceptingTasks) {
 
-			taskQueue.add(task);
+			if (journal != null && !journal.add(task)) {
+
+				logger.log(Level.FINE, "Identical task {0} is already queued, ignoring.", task);
+				return;
+			}
+
+			taskQueue.add(new QueuedTask(task));
 			logger.log(Level.FINE, "Task {0} added to task queue", task);
+
+		} else {
+
+			logger.log(Level.WARNING, "AgentService is shutting down, ignoring task {0}", task.getType());
 		}
 	}
 
@@ -91,7 +141,7 @@ public class AgentService extends Thread implements RunnableService {
 
 			for (Agent agent : agents) {
 
-				if (agent.getTaskQueue().contains(task)) {
+				if (agent.getCurrentTask() == task || agent.getTaskQueue().contains(task)) {
 					return (agent);
 				}
 			}
@@ -107,14 +157,15 @@ public class AgentService extends Thread implements RunnableService {
 
 		while (run) {
 
-			Task nextTask = taskQueue.poll();
-			if (nextTask != null) {
+			try {
 
-				assignNextAgentForTask(nextTask);
-			}
+				// blocks until a task is available
+				dispatch(taskQueue.take());
 
-			// let others act
-			try { Thread.sleep(10); } catch(Throwable ignore) {}
+			} catch (InterruptedException iex) {
+
+				// stopService() interrupts this thread
+			}
 		}
 	}
 
@@ -155,91 +206,130 @@ public class AgentService extends Thread implements RunnableService {
 
 	@Override
 	public void initialize(final StructrServices services, final Properties config) throws ClassNotFoundException, InstantiationException, IllegalAccessException {
-	}
 
-	@Override
-	public void initialized() {}
+		if (config != null) {
 
-	@Override
-	public void shutdown() {}
+			this.config           = config;
+			this.defaultMaxAgents = Math.max(1, Services.parseInt(config.getProperty(MAX_AGENTS), defaultMaxAgents));
+			this.shutdownTimeout  = Math.max(0, Services.parseInt(config.getProperty(SHUTDOWN_TIMEOUT), (int)shutdownTimeout));
 
-	@Override
-	public void startService() {
+			if (Services.parseBoolean(config.getProperty(PERSISTENT_QUEUE), false)) {
 
-		run = true;
-		this.start();
-	}
+				final String basePath    = config.getProperty(Services.BASE_PATH, ".");
+				final String journalPath = config.getProperty(JOURNAL_PATH, basePath + "/agent");
 
-	@Override
-	public void stopService() {
-		run = false;
+				try {
+
+					journal = new TaskJournal(Paths.get(journalPath), Math.max(1, Services.parseInt(config.getProperty(CHECKPOINT_INTERVAL), 1000)));
+
+					if (journal.getPendingCount() > 0) {
+
+						// nodes can only be loaded when all services are running
+						services.registerInitializationCallback(new InitializationCallback() {
+
+							@Override
+							public void initializationDone() {
+								replayJournal();
+							}
+						});
+					}
+
+				} catch (IOException ioex) {
+
+					logger.log(Level.SEVERE, "Unable to open task journal in {0}, tasks will not be persisted: {1}", new Object[] { journalPath, ioex.getMessage() });
+				}
+			}
+		}
 	}
 
 	@Override
-	public boolean runOnStartup() {
-		return (true);
-	}
+	public void initialized() {}
 
-	// </editor-fold>
+	@Override
+	public void shutdown() {
 
-	// <editor-fold defaultstate="collapsed" desc="private methods">
-	private void assignNextAgentForTask(Task nextTask) {
+		acceptingTasks = false;
+		run            = false;
 
-		Class taskClass    = nextTask.getClass();
-		List<Agent> agents = getRunningAgentsForTask(taskClass);
+		this.interrupt();
 
-		// need to synchronize on agents
-		synchronized (agents) {
+		try {
 
-			// find next free agent (agents should be sorted by load, so one
-			// of the first should do..
-			for (Agent agent : agents) {
+			// wait for the dispatcher to finish the current hand-off
+			this.join(TimeUnit.SECONDS.toMillis(1));
 
-				if (agent.assignTask(nextTask)) {
+			// hand remaining tasks over to their pools
+			final List<QueuedTask> remainingTasks = new LinkedList<>();
+			taskQueue.drainTo(remainingTasks);
 
-					// ok, task is assigned
-					logger.log(Level.FINE, "Task assigned to agent {0}", agent.getName());
+			for (final QueuedTask task : remainingTasks) {
+				dispatch(task);
+			}
 
-					return;
-				}
+			for (final TaskPool pool : taskPools.values()) {
+				pool.shutdown();
 			}
-		}
 
-		// FIXME: find better solution for hard limit here!
-		if (agents.size() < maxAgents) {
+			final long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(shutdownTimeout);
+
+			for (final TaskPool pool : taskPools.values()) {
+
+				final long timeout = Math.max(0, deadline - System.currentTimeMillis());
 
-			// if we get here, task was not assigned to any agent, need to
-			// create a new one.
-			Agent agent = createAgent(nextTask);
+				if (!pool.awaitTermination(timeout, TimeUnit.MILLISECONDS)) {
 
-			if ((agent != null) && agent.assignTask(nextTask)) {
-				agent.start();
-			} else {
+					final List<Task> droppedTasks = pool.shutdownNow();
 
-				// re-add task..
-				synchronized (taskQueue) {
-					taskQueue.add(nextTask);
+					logger.log(Level.WARNING, "Timeout while waiting for tasks of type {0}, {1} tasks were not processed.", new Object[] { pool.getName(), droppedTasks.size() });
 				}
 			}
-		} else {
 
-			logger.log(Level.FINE, "Overall agents limit reached, re-queueing task");
+		} catch (InterruptedException iex) {
+
+			for (final TaskPool pool : taskPools.values()) {
+				pool.shutdownNow();
+			}
+
+			Thread.currentThread().interrupt();
+
+		} finally {
 
-			// re-add task..
-			synchronized (taskQueue) {
-				taskQueue.add(nextTask);
+			// tasks that were not processed remain in the journal
+			if (journal != null) {
+				journal.close();
 			}
 		}
 	}
 
+	@Override
+	public void startService() {
+
+		run = true;
+		this.start();
+	}
+
+	@Override
+	public void stopService() {
+
+		run = false;
+		this.interrupt();
+	}
+
+	@Override
+	public boolean runOnStartup() {
+		return (true);
+	}
+
+	// </editor-fold>
+
 	/**
-	 * Creates a new agent for the given Task. Note that the agent must be
-	 * started manually after creation.
+	 * Creates a new agent for the given Task. The agent is not started, it
+	 * processes tasks in the worker thread of a {@link TaskPool}.
 	 *
 	 * @param forTask
 	 * @return a new agent for the given task
 	 */
-	private Agent createAgent(Task forTask) {
+	Agent createAgent(Task forTask) {
 
 		Agent agent = null;
 
@@ -261,6 +351,79 @@ public class AgentService extends Thread implements RunnableService {
 		return (agent);
 	}
 
+	void taskStarted(final Task task) {
+
+		if (journal != null) {
+			journal.started(task);
+		}
+	}
+
+	void taskFinished(final Task task) {
+
+		if (journal != null) {
+			journal.finished(task);
+		}
+	}
+
+	// <editor-fold defaultstate="collapsed" desc="private methods">
+	private void replayJournal() {
+
+		final App app = StructrApp.getInstance();
+
+		try (final Tx tx = app.tx()) {
+
+			final List<Task> tasks = journal.restore(app);
+
+			for (final Task task : tasks) {
+				taskQueue.add(new QueuedTask(task));
+			}
+
+			tx.success();
+
+			logger.log(Level.INFO, "Replayed {0} pending tasks from task journal", tasks.size());
+
+		} catch (FrameworkException fex) {
+
+			logger.log(Level.WARNING, "Unable to replay task journal: {0}", fex.getMessage());
+		}
+	}
+
+	private void dispatch(final QueuedTask nextTask) {
+
+		try {
+
+			getTaskPool(nextTask.getTask().getClass()).submit(nextTask);
+
+		} catch (RejectedExecutionException rex) {
+
+			logger.log(Level.WARNING, "Task pool for {0} is shut down, ignoring task.", nextTask.getTask().getType());
+		}
+	}
+
+	private TaskPool getTaskPool(final Class taskClass) {
+
+		TaskPool pool = taskPools.get(taskClass.getName());
+		if (pool == null) {
+
+			synchronized (taskPools) {
+
+				pool = taskPools.get(taskClass.getName());
+				if (pool == null) {
+
+					final String name   = taskClass.getSimpleName();
+					final int maxAgents = Math.max(1, Services.parseInt(config.getProperty("AgentService.".concat(name).concat(MAX_AGENTS_SUFFIX)), defaultMaxAgents));
+
+					logger.log(Level.FINE, "Creating task pool for {0} with {1} agents", new Object[] { name, maxAgents });
+
+					pool = new TaskPool(this, name, maxAgents);
+					taskPools.put(taskClass.getName(), pool);
+				}
+			}
+		}
+
+		return pool;
+	}
+
 	private Agent lookupAgent(Task task) {
 
 		// FIXME: superuser security context
@@ -315,7 +478,42 @@ public class AgentService extends Thread implements RunnableService {
 	 * @return tasks
 	 */
 	public Collection<Task> getTaskQueue() {
-		return (taskQueue);
+
+		final List<Task> tasks = new LinkedList<>();
+
+		for (final QueuedTask task : taskQueue) {
+			tasks.add(task.getTask());
+		}
+
+		for (final TaskPool pool : taskPools.values()) {
+			tasks.addAll(pool.getQueuedTasks());
+		}
+
+		return (tasks);
+	}
+
+	/**
+	 * Returns the task pools, keyed by the name of their task type.
+	 * @return task pools
+	 */
+	public Map<String, TaskPool> getTaskPools() {
+		return (taskPools);
+	}
+
+	/**
+	 * Returns queue size, agent count, wait time and execution time of
+	 * all task pools, keyed by the simple name of their task type.
+	 * @return statistics
+	 */
+	public Map<String, Map<String, Object>> getStatistics() {
+
+		final Map<String, Map<String, Object>> statistics = new LinkedHashMap<>();
+
+		for (final TaskPool pool : taskPools.values()) {
+			statistics.put(pool.getName(), pool.getStatistics());
+		}
+
+		return (statistics);
 	}
 
 	/**
@@ -0,0 +1,481 @@
+/**
+ * Copyright (C) 2010-2016 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.agent;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Constructor;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.apache.commons.lang3.StringUtils;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.app.App;
+import org.structr.core.entity.Principal;
+import org.structr.core.graph.NodeInterface;
+
+/**
+ * An append-only journal of the tasks that were handed over to the
+ * {@link AgentService} but not processed yet, so that pending tasks can be
+ * replayed after a restart.
+ *
+ * Each line of the journal either adds a task, with its type, priority,
+ * user and the uuids of its nodes, or marks a task as done. A task is done
+ * when its agent has processed it, regardless of the result. Tasks that
+ * were running when the server stopped are replayed, too.
+ *
+ * A task is only added when no identical task, i.e. a task of the same type
+ * for the same nodes, is waiting for execution. Once a task has started,
+ * an identical task is accepted again, because the nodes may have changed
+ * in the meantime.
+ *
+ * Only tasks with a public constructor that takes their first node can be
+ * journaled, other tasks are processed without persistence.
+ *
+ * The journal is rewritten with the pending tasks only (checkpoint) when
+ * it is opened, when it is closed and after a configurable number of done
+ * tasks.
+ *
+ *
+ */
+public class TaskJournal {
+
+	private static final Logger logger          = Logger.getLogger(TaskJournal.class.getName());
+
+	public static final String FILE_NAME        = "tasks.journal";
+
+	private static final String ADDED           = "A";
+	private static final String DONE            = "D";
+	private static final String SEPARATOR       = "\t";
+	private static final String NODE_SEPARATOR  = ",";
+
+	private final Map<Long, Entry> pendingTasks = new LinkedHashMap<>();
+	private final Map<String, Long> waitingKeys = new HashMap<>();
+	private final Map<Task, Long> taskIds       = new IdentityHashMap<>();
+	private Writer writer                       = null;
+	private Path path                           = null;
+	private int checkpointInterval              = 0;
+	private int doneSinceCheckpoint             = 0;
+	private long restoreLimit                   = 1L;
+	private long nextId                         = 1L;
+
+	/**
+	 * Opens the journal in the given directory and reads the tasks that
+	 * were pending when the journal was closed.
+	 *
+	 * @param directory
+	 * @param checkpointInterval the number of done tasks after which the
+	 * journal is rewritten
+	 * @throws IOException
+	 */
+	public TaskJournal(final Path directory, final int checkpointInterval) throws IOException {
+
+		this.path               = directory.resolve(FILE_NAME);
+		this.checkpointInterval = checkpointInterval;
+
+		Files.createDirectories(directory);
+
+		if (Files.exists(path)) {
+			read();
+		}
+
+		restoreLimit = nextId;
+
+		checkpoint();
+	}
+
+	/**
+	 * Adds the given task to the journal.
+	 *
+	 * @param task
+	 * @return false if an identical task is already waiting for execution,
+	 * true otherwise
+	 */
+	public synchronized boolean add(final Task task) {
+
+		final Entry entry = Entry.of(nextId, task);
+		if (entry == null) {
+
+			// task can not be restored, process it without persistence
+			return true;
+		}
+
+		if (waitingKeys.containsKey(entry.getKey())) {
+			return false;
+		}
+
+		nextId++;
+
+		pendingTasks.put(entry.id, entry);
+		waitingKeys.put(entry.getKey(), entry.id);
+		taskIds.put(task, entry.id);
+
+		write(entry.toString());
+
+		return true;
+	}
+
+	/**
+	 * Notifies the journal that the given task was started, identical tasks
+	 * are accepted again from now on.
+	 *
+	 * @param task
+	 */
+	public synchronized void started(final Task task) {
+
+		final Long id = taskIds.get(task);
+		if (id != null) {
+
+			final Entry entry = pendingTasks.get(id);
+			if (entry != null) {
+
+				waitingKeys.remove(entry.getKey(), id);
+			}
+		}
+	}
+
+	/**
+	 * Marks the given task as done.
+	 *
+	 * @param task
+	 */
+	public synchronized void finished(final Task task) {
+
+		final Long id = taskIds.remove(task);
+		if (id != null) {
+
+			done(id);
+		}
+	}
+
+	/**
+	 * Creates the tasks that were pending when the journal was opened. Must
+	 * be called in a transaction. Tasks whose nodes or type no longer exist
+	 * are marked as done, tasks for which an identical task was added in the
+	 * meantime are skipped.
+	 *
+	 * @param app
+	 * @return the restored tasks, in the order in which they were added
+	 */
+	public synchronized List<Task> restore(final App app) {
+
+		final List<Task> tasks = new LinkedList<>();
+
+		for (final Entry entry : new LinkedList<>(pendingTasks.values())) {
+
+			if (entry.id >= restoreLimit) {
+
+				// added after the journal was opened
+				continue;
+			}
+
+			if (waitingKeys.containsKey(entry.getKey())) {
+
+				done(entry.id);
+				continue;
+			}
+
+			try {
+
+				final Task task = entry.createTask(app);
+				if (task != null) {
+
+					waitingKeys.put(entry.getKey(), entry.id);
+					taskIds.put(task, entry.id);
+					tasks.add(task);
+
+				} else {
+
+					logger.log(Level.INFO, "Nodes of journaled task {0} no longer exist, ignoring.", entry.type);
+					done(entry.id);
+				}
+
+			} catch (Throwable t) {
+
+				logger.log(Level.WARNING, "Unable to restore journaled task {0}: {1}", new Object[] { entry.type, t.getMessage() });
+				done(entry.id);
+			}
+		}
+
+		return tasks;
+	}
+
+	/**
+	 * Returns the number of tasks that are not done.
+	 *
+	 * @return the number of pending tasks
+	 */
+	public synchronized int getPendingCount() {
+		return pendingTasks.size();
+	}
+
+	/**
+	 * Rewrites and closes the journal. Pending tasks are kept for the next
+	 * time the journal is opened.
+	 */
+	public synchronized void close() {
+
+		try {
+
+			checkpoint();
+
+			writer.close();
+			writer = null;
+
+		} catch (IOException ioex) {
+
+			logger.log(Level.WARNING, "Unable to close task journal {0}: {1}", new Object[] { path, ioex.getMessage() });
+		}
+	}
+
+	// ----- private methods -----
+	private void done(final long id) {
+
+		final Entry entry = pendingTasks.remove(id);
+		if (entry != null) {
+
+			waitingKeys.remove(entry.getKey(), id);
+
+			write(DONE + SEPARATOR + id);
+
+			if (++doneSinceCheckpoint >= checkpointInterval && writer != null) {
+
+				try {
+
+					checkpoint();
+
+				} catch (IOException ioex) {
+
+					logger.log(Level.WARNING, "Unable to rewrite task journal {0}: {1}", new Object[] { path, ioex.getMessage() });
+				}
+			}
+		}
+	}
+
+	private void write(final String line) {
+
+		if (writer != null) {
+
+			try {
+
+				writer.write(line);
+				writer.write('\n');
+
+				// hand the line over to the operating system, so that it
+				// survives a crash of the server process
+				writer.flush();
+
+			} catch (IOException ioex) {
+
+				logger.log(Level.WARNING, "Unable to write to task journal {0}: {1}", new Object[] { path, ioex.getMessage() });
+			}
+		}
+	}
+
+	private void read() throws IOException {
+
+		try (final BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+
+			String line = null;
+
+			while ((line = reader.readLine()) != null) {
+
+				final String[] parts = line.split(SEPARATOR, -1);
+
+				try {
+
+					if (ADDED.equals(parts[0]) && parts.length == 6) {
+
+						final Entry entry = new Entry(Long.parseLong(parts[1]), parts[2], Integer.parseInt(parts[3]), parts[4], parts[5]);
+
+						pendingTasks.put(entry.id, entry);
+						nextId = Math.max(nextId, entry.id + 1);
+
+					} else if (DONE.equals(parts[0]) && parts.length == 2) {
+
+						pendingTasks.remove(Long.parseLong(parts[1]));
+
+					} else {
+
+						// incomplete last line after a crash
+						logger.log(Level.FINE, "Ignoring invalid line in task journal {0}", path);
+					}
+
+				} catch (NumberFormatException nfex) {
+
+					logger.log(Level.FINE, "Ignoring invalid line in task journal {0}", path);
+				}
+			}
+		}
+	}
+
+	private void checkpoint() throws IOException {
+
+		final Path tmp = path.resolveSibling(FILE_NAME + ".tmp");
+
+		if (writer != null) {
+
+			writer.close();
+			writer = null;
+		}
+
+		try (final FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+
+			final Writer tmpWriter = new BufferedWriter(new OutputStreamWriter(Channels.newOutputStream(channel), StandardCharsets.UTF_8));
+
+			for (final Entry entry : pendingTasks.values()) {
+
+				tmpWriter.write(entry.toString());
+				tmpWriter.write('\n');
+			}
+
+			tmpWriter.flush();
+			channel.force(true);
+		}
+
+		Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+		writer              = Files.newBufferedWriter(path, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.WRITE);
+		doneSinceCheckpoint = 0;
+	}
+
+	// ----- nested classes -----
+	private static class Entry {
+
+		private long id         = 0L;
+		private String type     = null;
+		private int priority    = 0;
+		private String userId   = null;
+		private String nodeIds  = null;
+
+		public Entry(final long id, final String type, final int priority, final String userId, final String nodeIds) {
+
+			this.id       = id;
+			this.type     = type;
+			this.priority = priority;
+			this.userId   = userId;
+			this.nodeIds  = nodeIds;
+		}
+
+		public static Entry of(final long id, final Task task) {
+
+			final List<NodeInterface> nodes = task.getNodes();
+			if (nodes == null || nodes.isEmpty() || getConstructor(task.getClass(), nodes.get(0)) == null) {
+				return null;
+			}
+
+			final List<String> ids = new LinkedList<>();
+
+			for (final NodeInterface node : nodes) {
+
+				final String uuid = node != null ? node.getUuid() : null;
+				if (uuid == null) {
+
+					return null;
+				}
+
+				ids.add(uuid);
+			}
+
+			final Principal user = task.getUser();
+
+			return new Entry(id, task.getClass().getName(), task.priority(), user != null ? user.getUuid() : "", StringUtils.join(ids, NODE_SEPARATOR));
+		}
+
+		public String getKey() {
+			return type + SEPARATOR + nodeIds;
+		}
+
+		public Task createTask(final App app) throws ReflectiveOperationException, FrameworkException {
+
+			final List<NodeInterface> nodes = new LinkedList<>();
+
+			for (final String nodeId : nodeIds.split(NODE_SEPARATOR)) {
+
+				final NodeInterface node = app.getNodeById(nodeId);
+				if (node == null) {
+
+					return null;
+				}
+
+				nodes.add(node);
+			}
+
+			final Class type                = Class.forName(this.type);
+			final Constructor constructor   = getConstructor(type, nodes.get(0));
+
+			if (constructor == null) {
+				throw new NoSuchMethodException("No constructor for " + nodes.get(0).getType());
+			}
+
+			final Task task = (Task)constructor.newInstance(nodes.get(0));
+
+			if (task instanceof AbstractTask) {
+
+				final AbstractTask abstractTask = (AbstractTask)task;
+
+				for (final NodeInterface node : nodes.subList(1, nodes.size())) {
+					abstractTask.addNode(node);
+				}
+
+				abstractTask.setPriority(priority);
+
+				if (StringUtils.isNotEmpty(userId)) {
+					abstractTask.setUser(app.get(Principal.class, userId));
+				}
+			}
+
+			return task;
+		}
+
+		@Override
+		public String toString() {
+			return ADDED + SEPARATOR + id + SEPARATOR + type + SEPARATOR + priority + SEPARATOR + userId + SEPARATOR + nodeIds;
+		}
+
+		private static Constructor getConstructor(final Class type, final NodeInterface node) {
+
+			for (final Constructor constructor : type.getConstructors()) {
+
+				final Class[] parameterTypes = constructor.getParameterTypes();
+				if (parameterTypes.length == 1 && parameterTypes[0].isInstance(node)) {
+
+					return constructor;
+				}
+			}
+
+			return null;
+		}
+	}
+}
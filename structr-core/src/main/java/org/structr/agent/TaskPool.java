@@ -0,0 +1,351 @@
+/**
+ * Copyright (C) 2010-2016 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.agent;
+
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A bounded pool of worker threads that processes the tasks of a single
+ * task type in the order of their priority. Each worker thread uses its
+ * own {@link Agent} instance, which is created when the worker processes
+ * its first task.
+ *
+ * Idle workers are discarded after {@link #KEEP_ALIVE_SECONDS}.
+ *
+ *
+ */
+public class TaskPool {
+
+	private static final Logger logger            = Logger.getLogger(TaskPool.class.getName());
+	private static final AtomicLong sequence      = new AtomicLong();
+
+	public static final long KEEP_ALIVE_SECONDS   = 60;
+
+	public static final String QUEUE_SIZE         = "queue_size";
+	public static final String ACTIVE_AGENTS      = "active_agents";
+	public static final String MAX_AGENTS         = "max_agents";
+	public static final String SUBMITTED_TASKS    = "submitted_tasks";
+	public static final String COMPLETED_TASKS    = "completed_tasks";
+	public static final String FAILED_TASKS       = "failed_tasks";
+	public static final String AVERAGE_WAIT_TIME  = "average_wait_time";
+	public static final String MAX_WAIT_TIME      = "max_wait_time";
+
+	private final ThreadLocal<Agent> agents       = new ThreadLocal<>();
+	private final AtomicInteger threadCount       = new AtomicInteger();
+	private final AtomicLong submitted            = new AtomicLong();
+	private final AtomicLong completed            = new AtomicLong();
+	private final AtomicLong failed               = new AtomicLong();
+	private final AtomicLong totalWaitTime        = new AtomicLong();
+	private final AtomicLong maxWaitTime          = new AtomicLong();
+	private final AtomicLong totalExecutionTime   = new AtomicLong();
+	private ThreadPoolExecutor executor           = null;
+	private AgentService agentService             = null;
+	private String name                           = null;
+	private int maxAgents                         = 0;
+
+	public TaskPool(final AgentService agentService, final String name, final int maxAgents) {
+
+		this.agentService = agentService;
+		this.name         = name;
+		this.maxAgents    = maxAgents;
+
+		// core size == max size, otherwise the executor would never grow
+		// beyond the core size because the priority queue is unbounded
+		this.executor = new ThreadPoolExecutor(maxAgents, maxAgents, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new PriorityBlockingQueue<Runnable>(), new WorkerFactory());
+		this.executor.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * Queues the given task for execution by this pool.
+	 *
+	 * @param task
+	 */
+	public void submit(final QueuedTask task) {
+
+		task.pool = this;
+
+		submitted.incrementAndGet();
+		executor.execute(task);
+	}
+
+	/**
+	 * Stops accepting tasks. Queued tasks are still processed.
+	 */
+	public void shutdown() {
+		executor.shutdown();
+	}
+
+	/**
+	 * Waits until all queued tasks are processed or the timeout expires.
+	 *
+	 * @param timeout
+	 * @param unit
+	 * @return whether all tasks were processed
+	 * @throws InterruptedException
+	 */
+	public boolean awaitTermination(final long timeout, final TimeUnit unit) throws InterruptedException {
+		return executor.awaitTermination(timeout, unit);
+	}
+
+	/**
+	 * Interrupts all workers and returns the tasks that were not processed.
+	 *
+	 * @return the tasks that were not processed
+	 */
+	public List<Task> shutdownNow() {
+
+		final List<Task> remaining = new LinkedList<>();
+
+		for (final Runnable runnable : executor.shutdownNow()) {
+			remaining.add(((QueuedTask)runnable).task);
+		}
+
+		return remaining;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public int getMaxAgents() {
+		return maxAgents;
+	}
+
+	public int getQueueSize() {
+		return executor.getQueue().size();
+	}
+
+	public int getActiveAgents() {
+		return executor.getActiveCount();
+	}
+
+	public long getSubmittedTasks() {
+		return submitted.get();
+	}
+
+	public long getCompletedTasks() {
+		return completed.get();
+	}
+
+	public long getFailedTasks() {
+		return failed.get();
+	}
+
+	/**
+	 * Returns the average time in milliseconds that tasks waited in the
+	 * queue before their execution started.
+	 *
+	 * @return the average wait time
+	 */
+	public long getAverageWaitTime() {
+
+		final long count = completed.get() + failed.get();
+
+		return count > 0 ? TimeUnit.NANOSECONDS.toMillis(totalWaitTime.get() / count) : 0L;
+	}
+
+	/**
+	 * Returns the longest time in milliseconds that a task waited in the
+	 * queue before its execution started.
+	 *
+	 * @return the maximum wait time
+	 */
+	public long getMaxWaitTime() {
+		return TimeUnit.NANOSECONDS.toMillis(maxWaitTime.get());
+	}
+
+	/**
+	 * Returns the average execution time of a task in milliseconds.
+	 *
+	 * @return the average execution time
+	 */
+	public long getAverageExecutionTime() {
+
+		final long count = completed.get() + failed.get();
+
+		return count > 0 ? TimeUnit.NANOSECONDS.toMillis(totalExecutionTime.get() / count) : 0L;
+	}
+
+	/**
+	 * Returns the tasks that are waiting for execution.
+	 *
+	 * @return the queued tasks
+	 */
+	public List<Task> getQueuedTasks() {
+
+		final List<Task> tasks = new LinkedList<>();
+
+		for (final Runnable runnable : executor.getQueue()) {
+			tasks.add(((QueuedTask)runnable).task);
+		}
+
+		return tasks;
+	}
+
+	public Map<String, Object> getStatistics() {
+
+		final Map<String, Object> statistics = new LinkedHashMap<>();
+
+		statistics.put(QUEUE_SIZE,                   getQueueSize());
+		statistics.put(ACTIVE_AGENTS,                getActiveAgents());
+		statistics.put(MAX_AGENTS,                   getMaxAgents());
+		statistics.put(SUBMITTED_TASKS,              getSubmittedTasks());
+		statistics.put(COMPLETED_TASKS,              getCompletedTasks());
+		statistics.put(FAILED_TASKS,                 getFailedTasks());
+		statistics.put(AVERAGE_WAIT_TIME,            getAverageWaitTime());
+		statistics.put(MAX_WAIT_TIME,                getMaxWaitTime());
+		statistics.put(Agent.AVERAGE_EXECUTION_TIME, getAverageExecutionTime());
+
+		return statistics;
+	}
+
+	// ----- private methods -----
+	private void execute(final QueuedTask queuedTask) {
+
+		final long startTime = System.nanoTime();
+		final long waitTime  = startTime - queuedTask.queuedTime;
+		final Task task      = queuedTask.task;
+
+		totalWaitTime.addAndGet(waitTime);
+		agentService.taskStarted(task);
+
+		long max = maxWaitTime.get();
+		while (waitTime > max && !maxWaitTime.compareAndSet(max, waitTime)) {
+			max = maxWaitTime.get();
+		}
+
+		Agent agent = agents.get();
+		if (agent == null) {
+
+			agent = agentService.createAgent(task);
+			if (agent != null) {
+
+				agents.set(agent);
+				agentService.notifyAgentStart(agent);
+			}
+		}
+
+		if (agent != null && agent.execute(task) != null) {
+
+			completed.incrementAndGet();
+
+		} else {
+
+			if (agent == null) {
+				logger.log(Level.WARNING, "No agent found for task {0}, ignoring.", task.getType());
+			}
+
+			failed.incrementAndGet();
+		}
+
+		totalExecutionTime.addAndGet(System.nanoTime() - startTime);
+		agentService.taskFinished(task);
+	}
+
+	private void workerStopped() {
+
+		final Agent agent = agents.get();
+		if (agent != null) {
+
+			agents.remove();
+			agent.stopped();
+		}
+	}
+
+	// ----- nested classes -----
+	/**
+	 * A task waiting for execution. Tasks with a higher priority are
+	 * executed first, tasks with equal priority in the order in which
+	 * they were queued.
+	 */
+	public static class QueuedTask implements Runnable, Comparable<QueuedTask> {
+
+		private final long queuedTime = System.nanoTime();
+		private final long number     = sequence.incrementAndGet();
+		private TaskPool pool         = null;
+		private Task task             = null;
+
+		public QueuedTask(final Task task) {
+			this.task = task;
+		}
+
+		public Task getTask() {
+			return task;
+		}
+
+		@Override
+		public void run() {
+			pool.execute(this);
+		}
+
+		@Override
+		public int compareTo(final QueuedTask other) {
+
+			final int priority      = task.priority();
+			final int otherPriority = other.task.priority();
+
+			if (priority != otherPriority) {
+				return priority > otherPriority ? -1 : 1;
+			}
+
+			return Long.compare(number, other.number);
+		}
+	}
+
+	private class WorkerFactory implements ThreadFactory {
+
+		@Override
+		public Thread newThread(final Runnable runnable) {
+
+			final Thread thread = new Thread(new Runnable() {
+
+				@Override
+				public void run() {
+
+					try {
+
+						runnable.run();
+
+					} finally {
+
+						workerStopped();
+					}
+				}
+
+			}, "AgentService-" + name + "-" + threadCount.incrementAndGet());
+
+			// NOTE: this is important! We do not want running tasks to die when the
+			// server is going down!
+			thread.setDaemon(false);
+
+			return thread;
+		}
+	}
+}
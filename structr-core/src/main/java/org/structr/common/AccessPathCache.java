@@ -18,131 +18,95 @@
  */
 package org.structr.common;
 
-import java.util.HashSet;
 import java.util.Map;
-import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
 import org.structr.api.graph.Node;
 import org.structr.api.graph.PropertyContainer;
 import org.structr.api.graph.Relationship;
+import org.structr.core.Services;
+import org.structr.core.app.StructrApp;
 import org.structr.core.graph.NodeInterface;
 
 /**
+ * Caches the results of permission resolution along access paths.
  *
+ * Each entry records the UUIDs and relationship types it depends on, so
+ * invalidation only touches the affected entries. The number of entries is
+ * bounded, see {@link DependencyCache}.
  */
 public class AccessPathCache {
 
-	private static final Map<String, CacheEntry> cache = new ConcurrentHashMap<>();
-	private static final Set<String> allRelTypes       = new HashSet<>();
-	private static final Set<String> allUuids          = new HashSet<>();
+	private static final int UUIDS     = 0;
+	private static final int REL_TYPES = 1;
 
-	public static PermissionResolutionMask get(final NodeInterface startNode, final NodeInterface endNode) {
-
-		final String cacheKey  = cacheKey(startNode, endNode);
-		final CacheEntry entry = cache.get(cacheKey);
-
-		if (entry != null) {
-			return entry.mask;
-		}
+	private static final int maxSize                                      = Services.parseInt(StructrApp.getConfigurationValue(Services.APPLICATION_ACCESS_PATH_CACHE_SIZE), 100000);
+	private static final DependencyCache<PermissionResolutionMask> cache = new DependencyCache<>(maxSize, 2);
 
-		return null;
+	public static PermissionResolutionMask get(final NodeInterface startNode, final NodeInterface endNode) {
+		return cache.get(cacheKey(startNode, endNode));
 	}
 
 	public static void put(final NodeInterface startNode, final NodeInterface endNode, final PermissionResolutionMask mask) {
 
-		final CacheEntry entry = getOrCreateCacheEntry(startNode, endNode);
+		final String cacheKey = cacheKey(startNode, endNode);
 
-		// remember UUIDs
-		allUuids.add(startNode.getUuid());
-		allUuids.add(endNode.getUuid());
+		// make sure the entry is invalidated when one of its end points changes
+		cache.addDependency(cacheKey, UUIDS, startNode.getUuid());
+		cache.addDependency(cacheKey, UUIDS, endNode.getUuid());
 
-		entry.mask = mask;
+		cache.setValue(cacheKey, mask);
 	}
 
 	public static void update(final NodeInterface startNode, final NodeInterface endNode, final Node node) {
 
-		final CacheEntry entry = getOrCreateCacheEntry(startNode, endNode);
-		final String uuid      = getUuid(node);
+		final String uuid = getUuid(node);
 
 		if (uuid != null) {
 
-			entry.uuids.add(uuid);
-			allUuids.add(uuid);
+			cache.addDependency(cacheKey(startNode, endNode), UUIDS, uuid);
 		}
 	}
 
 	public static void update(final NodeInterface startNode, final NodeInterface endNode, final Relationship rel) {
 
-		final CacheEntry entry = getOrCreateCacheEntry(startNode, endNode);
-		final String uuid      = getUuid(rel);
+		final String cacheKey = cacheKey(startNode, endNode);
+		final String uuid     = getUuid(rel);
 
 		if (uuid != null) {
 
-			final String relType   = rel.getType().name();
-
-			entry.uuids.add(uuid);
-			allUuids.add(uuid);
-
-			entry.relTypes.add(relType);
-			allRelTypes.add(relType);
-
+			cache.addDependency(cacheKey, UUIDS, uuid);
+			cache.addDependency(cacheKey, REL_TYPES, rel.getType().name());
 		}
 	}
 
 	public static void invalidateForId(final String uuid) {
-
-		if (allUuids.contains(uuid)) {
-
-			for (final CacheEntry entry : cache.values()) {
-
-				if (entry.uuids.contains(uuid)) {
-					cache.remove(entry.key);
-				}
-			}
-
-			allUuids.remove(uuid);
-		}
+		cache.invalidate(UUIDS, uuid);
 	}
 
 	public static void invalidateForRelType(final String relType) {
-
-		if (allRelTypes.contains(relType)) {
-
-			for (final CacheEntry entry : cache.values()) {
-
-				if (entry.relTypes.contains(relType)) {
-					cache.remove(entry.key);
-				}
-			}
-
-			allRelTypes.remove(relType);
-		}
+		cache.invalidate(REL_TYPES, relType);
 	}
 
 	public static void invalidate() {
-
-		allRelTypes.clear();
-		allUuids.clear();
 		cache.clear();
 	}
 
-	// ----- private methods -----
-	private static CacheEntry getOrCreateCacheEntry(final NodeInterface startNode, final NodeInterface endNode) {
+	/**
+	 * Returns size, hit rate, eviction and invalidation counts of this
+	 * cache, and the number of indexed UUIDs and relationship types.
+	 *
+	 * @return a map of statistics
+	 */
+	public static Map<String, Object> getStatistics() {
 
-		final String cacheKey = cacheKey(startNode, endNode);
-		CacheEntry entry      = cache.get(cacheKey);
+		final Map<String, Object> stats = cache.getStatistics();
 
-		if (entry == null) {
+		stats.put("indexedUuids",    cache.getIndexSize(UUIDS));
+		stats.put("indexedRelTypes", cache.getIndexSize(REL_TYPES));
 
-			entry = new CacheEntry();
-			entry.key = cacheKey;
-
-			cache.put(cacheKey, entry);
-		}
-
-		return entry;
+		return stats;
 	}
 
+	// ----- private methods -----
 	private static String cacheKey(final NodeInterface startNode, final NodeInterface endNode) {
 		return startNode.getUuid() + endNode.getUuid();
 	}
@@ -155,13 +119,4 @@ public class AccessPathCache {
 
 		return null;
 	}
-
-	// ----- nested classes -----
-	private static class CacheEntry {
-
-		protected Set<String> uuids             = new HashSet<>();
-		protected Set<String> relTypes          = new HashSet<>();
-		protected PermissionResolutionMask mask = null;
-		protected String key                    = null;
-	}
 }
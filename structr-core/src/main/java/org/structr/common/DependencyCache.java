@@ -0,0 +1,393 @@
+/**
+ * Copyright (C) 2010-2016 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.common;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import org.structr.api.util.ConcurrentFixedSizeCache;
+
+/**
+ * A bounded cache whose entries depend on other values, e.g. on the uuids
+ * of the nodes they were computed from, and that can be invalidated for
+ * each of these values.
+ *
+ * Each entry records its dependencies in one or more indexes, and reverse
+ * indexes map the dependencies back to the keys of the dependent entries,
+ * so invalidation only touches the affected entries. The entries are kept
+ * in a {@link ConcurrentFixedSizeCache}, and evicted entries are removed
+ * from the reverse indexes.
+ *
+ * The generation of the cache changes whenever it is invalidated, so
+ * values that were computed across an invalidation can be detected and
+ * are not stored.
+ *
+ * @param <V>
+ */
+public class DependencyCache<V> {
+
+	private final AtomicLong generation                      = new AtomicLong();
+	private final LongAdder hits                             = new LongAdder();
+	private final LongAdder misses                           = new LongAdder();
+	private final LongAdder expirations                      = new LongAdder();
+	private final LongAdder invalidations                    = new LongAdder();
+	private final LongAdder invalidatedEntries               = new LongAdder();
+	private final LongAdder invalidationNanos                = new LongAdder();
+	private final LongAdder discarded                        = new LongAdder();
+	private ConcurrentFixedSizeCache<String, Entry<V>> cache = null;
+	private Map<String, Set<String>>[] indexes               = null;
+
+	/**
+	 * Creates a cache with the given maximum size and the given number of
+	 * dependency indexes.
+	 *
+	 * @param maxSize
+	 * @param indexCount
+	 */
+	public DependencyCache(final int maxSize, final int indexCount) {
+
+		this.cache   = new ConcurrentFixedSizeCache<>(maxSize, this::evicted);
+		this.indexes = new Map[indexCount];
+
+		for (int i=0; i<indexCount; i++) {
+			indexes[i] = new ConcurrentHashMap<>();
+		}
+	}
+
+	/**
+	 * Returns the current generation of this cache.
+	 *
+	 * @return the current generation
+	 */
+	public long getGeneration() {
+		return generation.get();
+	}
+
+	/**
+	 * Starts a new generation, so that values that are currently being
+	 * computed are not stored.
+	 */
+	public void nextGeneration() {
+		generation.incrementAndGet();
+	}
+
+	public V get(final String key) {
+		return get(key, null);
+	}
+
+	/**
+	 * Returns the value for the given key if it matches the given
+	 * predicate. Values that do not match have expired and are removed.
+	 *
+	 * @param key
+	 * @param valid the predicate, or null if values do not expire
+	 * @return the value or null
+	 */
+	public V get(final String key, final Predicate<V> valid) {
+
+		final Entry<V> entry = cache.get(key);
+		if (entry != null) {
+
+			final V value = entry.value;
+			if (value != null) {
+
+				if (valid == null || valid.test(value)) {
+
+					hits.increment();
+
+					return value;
+				}
+
+				if (remove(entry)) {
+					expirations.increment();
+				}
+			}
+		}
+
+		misses.increment();
+
+		return null;
+	}
+
+	/**
+	 * Stores the given value with the given dependencies, one collection
+	 * per index, and replaces an existing entry. The value is not stored if
+	 * the cache was invalidated since the given generation.
+	 *
+	 * @param key
+	 * @param value
+	 * @param valueGeneration the generation at the start of the computation
+	 * @param dependencies
+	 * @return whether the value was stored
+	 */
+	@SafeVarargs
+	public final boolean put(final String key, final V value, final long valueGeneration, final Collection<String>... dependencies) {
+
+		if (generation.get() != valueGeneration) {
+
+			discarded.increment();
+			return false;
+		}
+
+		final Entry<V> entry = new Entry<>(key, value, indexes.length);
+
+		// index first so that a concurrent invalidation cannot miss the entry
+		for (int i=0; i<dependencies.length; i++) {
+
+			for (final String dependency : dependencies[i]) {
+				addDependency(entry, i, dependency);
+			}
+		}
+
+		final Entry<V> previous = cache.put(key, entry);
+		if (previous != null) {
+
+			removeDependencies(previous, entry);
+		}
+
+		// an invalidation between the generation check and the insertion
+		// above might have missed the new entry
+		if (generation.get() != valueGeneration) {
+
+			remove(entry);
+			discarded.increment();
+
+			return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Adds a dependency to the entry for the given key. If there is no
+	 * entry, an entry without a value is created, so dependencies can be
+	 * recorded while the value is being computed.
+	 *
+	 * @param key
+	 * @param index
+	 * @param dependency
+	 */
+	public void addDependency(final String key, final int index, final String dependency) {
+		addDependency(getOrCreateEntry(key), index, dependency);
+	}
+
+	/**
+	 * Sets the value of the entry for the given key and keeps the
+	 * dependencies that were recorded for it.
+	 *
+	 * @param key
+	 * @param value
+	 */
+	public void setValue(final String key, final V value) {
+		getOrCreateEntry(key).value = value;
+	}
+
+	/**
+	 * Counts a value that was not stored, e.g. because it is too large.
+	 */
+	public void discard() {
+		discarded.increment();
+	}
+
+	/**
+	 * Removes all entries that depend on the given value in the given
+	 * index.
+	 *
+	 * @param index
+	 * @param dependency
+	 * @return the number of removed entries
+	 */
+	public int invalidate(final int index, final String dependency) {
+
+		if (dependency == null) {
+			return 0;
+		}
+
+		final Set<String> keys = indexes[index].remove(dependency);
+		if (keys == null) {
+			return 0;
+		}
+
+		final long start = System.nanoTime();
+		int count        = 0;
+
+		for (final String key : keys) {
+
+			final Entry<V> entry = cache.get(key);
+			if (entry != null && remove(entry)) {
+
+				count++;
+			}
+		}
+
+		invalidationNanos.add(System.nanoTime() - start);
+		invalidatedEntries.add(count);
+		invalidations.increment();
+
+		return count;
+	}
+
+	/**
+	 * Removes all entries and starts a new generation.
+	 */
+	public void clear() {
+
+		generation.incrementAndGet();
+
+		for (final Map<String, Set<String>> index : indexes) {
+			index.clear();
+		}
+
+		cache.clear();
+	}
+
+	public int size() {
+		return cache.size();
+	}
+
+	public int getMaxSize() {
+		return cache.getMaxSize();
+	}
+
+	/**
+	 * Returns the number of distinct dependencies in the given index.
+	 *
+	 * @param index
+	 * @return the size of the index
+	 */
+	public int getIndexSize(final int index) {
+		return indexes[index].size();
+	}
+
+	/**
+	 * Returns size, hit rate, eviction, expiration and invalidation counts
+	 * of this cache. The invalidation cost is reported as the number of
+	 * removed entries and the time spent per invalidation.
+	 *
+	 * @return a map of statistics
+	 */
+	public Map<String, Object> getStatistics() {
+
+		final Map<String, Object> stats = new LinkedHashMap<>();
+		final long invalidationCount    = invalidations.sum();
+		final long hitCount             = hits.sum();
+		final long missCount            = misses.sum();
+		final long total                = hitCount + missCount;
+
+		stats.put("size",                      cache.size());
+		stats.put("maxSize",                   cache.getMaxSize());
+		stats.put("hits",                      hitCount);
+		stats.put("misses",                    missCount);
+		stats.put("hitRate",                   total > 0 ? (double)hitCount / (double)total : 0.0);
+		stats.put("evictions",                 cache.getEvictionCount());
+		stats.put("expirations",               expirations.sum());
+		stats.put("invalidations",             invalidationCount);
+		stats.put("invalidatedEntries",        invalidatedEntries.sum());
+		stats.put("averageInvalidationMicros", invalidationCount > 0 ? (double)invalidationNanos.sum() / (double)invalidationCount / 1000.0 : 0.0);
+		stats.put("discarded",                 discarded.sum());
+
+		return stats;
+	}
+
+	// ----- private methods -----
+	private Entry<V> getOrCreateEntry(final String key) {
+
+		final Entry<V> entry = cache.get(key);
+		if (entry != null) {
+
+			return entry;
+		}
+
+		return cache.putIfAbsent(key, new Entry<>(key, null, indexes.length));
+	}
+
+	private void addDependency(final Entry<V> entry, final int index, final String dependency) {
+
+		// index first so that a concurrent invalidation cannot miss the entry
+		indexes[index].compute(dependency, (k, keys) -> {
+
+			final Set<String> set = keys != null ? keys : ConcurrentHashMap.newKeySet();
+			set.add(entry.key);
+
+			return set;
+		});
+
+		entry.dependencies[index].add(dependency);
+	}
+
+	private boolean remove(final Entry<V> entry) {
+
+		if (cache.remove(entry.key, entry)) {
+
+			removeDependencies(entry, cache.get(entry.key));
+
+			return true;
+		}
+
+		return false;
+	}
+
+	private void evicted(final Entry<V> entry) {
+		removeDependencies(entry, cache.get(entry.key));
+	}
+
+	private void removeDependencies(final Entry<V> entry, final Entry<V> current) {
+
+		// a newer entry for the same key may share some of the dependencies
+		for (int i=0; i<indexes.length; i++) {
+
+			for (final String dependency : entry.dependencies[i]) {
+
+				if (current == null || !current.dependencies[i].contains(dependency)) {
+
+					indexes[i].computeIfPresent(dependency, (k, keys) -> {
+
+						keys.remove(entry.key);
+
+						return keys.isEmpty() ? null : keys;
+					});
+				}
+			}
+		}
+	}
+
+	// ----- nested classes -----
+	private static class Entry<V> {
+
+		private Set<String>[] dependencies = null;
+		private volatile V value           = null;
+		private String key                 = null;
+
+		Entry(final String key, final V value, final int indexCount) {
+
+			this.dependencies = new Set[indexCount];
+			this.value        = value;
+			this.key          = key;
+
+			for (int i=0; i<indexCount; i++) {
+				dependencies[i] = ConcurrentHashMap.newKeySet();
+			}
+		}
+	}
+}
@@ -86,47 +86,62 @@ public class GraphObjectComparator extends ViewTransformation<GraphObject> imple
 			Comparable c1 = n1.getComparableProperty(sortKey);
 			Comparable c2 = n2.getComparableProperty(sortKey);
 
-			if (c1 == null || c2 == null) {
+			return compare(c1, c2, desc);
 
-				if (c1 == null && c2 == null) {
-
-					return 0;
+		} catch (Throwable t) {
 
-				} else if (c1 == null) {
+			logger.log(Level.WARNING, t, LogMessageSupplier.create("Cannot compare properties {0} of type {1} to {2} of type {3}, property {4} error.",
+				new Object[] {
+					n1.getProperty(GraphObject.id),
+					n1.getProperty(AbstractNode.type),
+					n2.getProperty(GraphObject.id),
+					n2.getProperty(AbstractNode.type),
+					sortKey
+				}));
+		}
 
-					return desc ? -1 : 1;
+		return 0;
+	}
 
-				} else {
+	/**
+	 * Compares two sort values like this comparator compares the
+	 * objects they were read from, so callers can extract the values
+	 * once and sort on them directly.
+	 *
+	 * @param c1
+	 * @param c2
+	 * @param desc
+	 * @return the comparison result
+	 */
+	public static int compare(final Comparable c1, final Comparable c2, final boolean desc) {
 
-					return desc ? 1 : -1;
+		if (c1 == null || c2 == null) {
 
-				}
+			if (c1 == null && c2 == null) {
 
-			}
+				return 0;
 
-			if (desc) {
+			} else if (c1 == null) {
 
-				return c2.compareTo(c1);
+				return desc ? -1 : 1;
 
 			} else {
 
-				return c1.compareTo(c2);
+				return desc ? 1 : -1;
 
 			}
 
-		} catch (Throwable t) {
-
-			logger.log(Level.WARNING, t, LogMessageSupplier.create("Cannot compare properties {0} of type {1} to {2} of type {3}, property {4} error.",
-				new Object[] {
-					n1.getProperty(GraphObject.id),
-					n1.getProperty(AbstractNode.type),
-					n2.getProperty(GraphObject.id),
-					n2.getProperty(AbstractNode.type),
-					sortKey
-				}));
 		}
 
-		return 0;
+		if (desc) {
+
+			return c2.compareTo(c1);
+
+		} else {
+
+			return c1.compareTo(c2);
+
+		}
 	}
 
 	@Override
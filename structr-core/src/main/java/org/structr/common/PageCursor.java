@@ -0,0 +1,299 @@
+/**
+ * Copyright (C) 2010-2016 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.common;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Date;
+import org.apache.commons.lang3.StringUtils;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.GraphObject;
+import org.structr.core.converter.PropertyConverter;
+import org.structr.core.property.PropertyKey;
+
+/**
+ * The position of the last element of a page in a result that is sorted by
+ * a property key and, for equal values, by uuid. A cursor is handed to the
+ * client as an opaque string and resumes the result directly after that
+ * element, without counting the elements before it.
+ *
+ * Elements with a null value are ordered like in {@link GraphObjectComparator},
+ * i.e. after all other elements in ascending and before them in descending
+ * order.
+ *
+ *
+ */
+public class PageCursor {
+
+	private static final String SEPARATOR = "\n";
+
+	private PropertyKey sortKey = null;
+	private boolean descending  = false;
+	private Object value        = null;
+	private String uuid         = null;
+
+	private PageCursor(final PropertyKey sortKey, final boolean descending, final Object value, final String uuid) {
+
+		this.sortKey    = sortKey;
+		this.descending = descending;
+		this.value      = value;
+		this.uuid       = uuid;
+	}
+
+	/**
+	 * Returns a cursor that is positioned before the first element.
+	 *
+	 * @param sortKey
+	 * @param descending
+	 * @return the cursor
+	 */
+	public static PageCursor start(final PropertyKey sortKey, final boolean descending) {
+		return new PageCursor(sortKey, descending, null, null);
+	}
+
+	/**
+	 * Returns a cursor that is positioned after the given element.
+	 *
+	 * @param obj
+	 * @param sortKey
+	 * @param descending
+	 * @return the cursor
+	 */
+	public static PageCursor after(final GraphObject obj, final PropertyKey sortKey, final boolean descending) {
+		return new PageCursor(sortKey, descending, obj.getProperty(sortKey), obj.getUuid());
+	}
+
+	/**
+	 * Decodes the given cursor string. An empty string denotes the start
+	 * of the result.
+	 *
+	 * @param securityContext
+	 * @param source
+	 * @param sortKey the sort key of the current request
+	 * @param descending the sort order of the current request
+	 * @return the cursor
+	 * @throws FrameworkException if the cursor is invalid or was created
+	 * with a different sort key or order
+	 */
+	public static PageCursor decode(final SecurityContext securityContext, final String source, final PropertyKey sortKey, final boolean descending) throws FrameworkException {
+
+		if (StringUtils.isBlank(source)) {
+			return start(sortKey, descending);
+		}
+
+		final String[] parts;
+
+		try {
+
+			parts = new String(Base64.getUrlDecoder().decode(source), StandardCharsets.UTF_8).split(SEPARATOR, 4);
+
+		} catch (IllegalArgumentException iex) {
+
+			throw new FrameworkException(400, "Invalid page cursor " + source);
+		}
+
+		if (parts.length != 4 || StringUtils.isEmpty(parts[2])) {
+			throw new FrameworkException(400, "Invalid page cursor " + source);
+		}
+
+		if (!sortKey.jsonName().equals(parts[0]) || descending != "1".equals(parts[1])) {
+			throw new FrameworkException(400, "Page cursor " + source + " does not match sort key and sort order of request");
+		}
+
+		// the value comes last, it may contain the separator
+		final Object value = decodeValue(securityContext, sortKey, parts[3], source);
+
+		return new PageCursor(sortKey, descending, value, parts[2]);
+	}
+
+	/**
+	 * Encodes this cursor into an opaque, URL-safe string.
+	 *
+	 * @param securityContext
+	 * @return the encoded cursor
+	 * @throws FrameworkException
+	 */
+	public String encode(final SecurityContext securityContext) throws FrameworkException {
+
+		final StringBuilder buf = new StringBuilder();
+
+		buf.append(sortKey.jsonName());
+		buf.append(SEPARATOR);
+		buf.append(descending ? "1" : "0");
+		buf.append(SEPARATOR);
+		buf.append(uuid);
+		buf.append(SEPARATOR);
+
+		if (value != null) {
+			buf.append(encodeValue(securityContext));
+		}
+
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(buf.toString().getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Indicates whether an element with the given sort value and uuid
+	 * follows this cursor.
+	 *
+	 * @param otherValue
+	 * @param otherUuid
+	 * @return whether the element follows this cursor
+	 */
+	public boolean precedes(final Object otherValue, final String otherUuid) {
+
+		if (isStart()) {
+			return true;
+		}
+
+		return compare(otherValue, otherUuid, value, uuid, descending) > 0;
+	}
+
+	/**
+	 * Compares two elements by sort value and, for equal values, by uuid.
+	 *
+	 * @param value1
+	 * @param uuid1
+	 * @param value2
+	 * @param uuid2
+	 * @param descending
+	 * @return the comparison result
+	 */
+	public static int compare(final Object value1, final String uuid1, final Object value2, final String uuid2, final boolean descending) {
+
+		final int result = GraphObjectComparator.compare(comparable(value1), comparable(value2), descending);
+		if (result != 0) {
+
+			return result;
+		}
+
+		if (uuid1 == null || uuid2 == null) {
+			return uuid1 == null ? (uuid2 == null ? 0 : -1) : 1;
+		}
+
+		return uuid1.compareTo(uuid2);
+	}
+
+	public boolean isStart() {
+		return uuid == null;
+	}
+
+	public PropertyKey getSortKey() {
+		return sortKey;
+	}
+
+	public boolean isDescending() {
+		return descending;
+	}
+
+	public Object getValue() {
+		return value;
+	}
+
+	public String getUuid() {
+		return uuid;
+	}
+
+	// ----- private methods -----
+	/**
+	 * Encodes the sort value with a type prefix. Dates and numbers are
+	 * encoded without loss, as the string formats of their converters may
+	 * drop milliseconds or digits, which would repeat or skip elements.
+	 */
+	private String encodeValue(final SecurityContext securityContext) throws FrameworkException {
+
+		if (value instanceof Date) {
+			return "d" + ((Date)value).getTime();
+		}
+
+		if (value instanceof Integer) {
+			return "i" + value;
+		}
+
+		if (value instanceof Long) {
+			return "l" + value;
+		}
+
+		if (value instanceof Double) {
+			return "f" + Double.doubleToLongBits((Double)value);
+		}
+
+		if (value instanceof String) {
+			return "s" + value;
+		}
+
+		Object stringValue = value;
+
+		final PropertyConverter inputConverter = sortKey.inputConverter(securityContext);
+		if (inputConverter != null) {
+
+			stringValue = inputConverter.revert(value);
+		}
+
+		return "v" + stringValue;
+	}
+
+	private static Object decodeValue(final SecurityContext securityContext, final PropertyKey sortKey, final String encoded, final String source) throws FrameworkException {
+
+		if (encoded.isEmpty()) {
+			return null;
+		}
+
+		final String raw = encoded.substring(1);
+
+		try {
+
+			switch (encoded.charAt(0)) {
+
+				case 'd':
+					return new Date(Long.parseLong(raw));
+
+				case 'i':
+					return Integer.valueOf(raw);
+
+				case 'l':
+					return Long.valueOf(raw);
+
+				case 'f':
+					return Double.longBitsToDouble(Long.parseLong(raw));
+
+				case 's':
+					return raw;
+
+				case 'v':
+
+					final PropertyConverter inputConverter = sortKey.inputConverter(securityContext);
+					if (inputConverter != null) {
+
+						return inputConverter.convert(raw);
+					}
+
+					return raw;
+			}
+
+		} catch (NumberFormatException nex) {
+			// handled below
+		}
+
+		throw new FrameworkException(400, "Invalid page cursor " + source);
+	}
+
+	private static Comparable comparable(final Object value) {
+		return value instanceof Comparable ? (Comparable)value : null;
+	}
+}
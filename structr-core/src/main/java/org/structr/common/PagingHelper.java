@@ -18,13 +18,18 @@
  */
 package org.structr.common;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.PriorityQueue;
+import java.util.RandomAccess;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.apache.commons.lang3.StringUtils;
 import org.structr.core.GraphObject;
 import org.structr.core.Result;
+import org.structr.core.property.PropertyKey;
 
 //~--- classes ----------------------------------------------------------------
 
@@ -112,6 +117,151 @@ public class PagingHelper {
 
 	}
 
+	/**
+	 * Sort the list by the given key and return a single page of it.
+	 *
+	 * The sort values are read once per object instead of once per
+	 * comparison. If only the first pages of a larger list are requested,
+	 * only the objects up to the end of the requested page are selected
+	 * and sorted, using a bounded heap. The order is the same as that of
+	 * a stable sort with {@link GraphObjectComparator}.
+	 *
+	 * @param list
+	 * @param sortKey
+	 * @param sortDescending
+	 * @param pageSize
+	 * @param page
+	 * @param offsetId
+	 * @return sorted subList
+	 */
+	public static <T extends GraphObject> List<T> sortedSubList(final List<T> list, final PropertyKey sortKey, final boolean sortDescending, int pageSize, int page, String offsetId) {
+
+		if (pageSize <= 0 || page == 0) {
+
+			return Collections.EMPTY_LIST;
+		}
+
+		if (sortKey == null) {
+
+			return (List<T>)subList(list, pageSize, page, offsetId);
+		}
+
+		final List<T> source          = list instanceof RandomAccess ? list : new ArrayList<>(list);
+		final int size                = source.size();
+		final Comparable[] values     = new Comparable[size];
+		final Comparator<Integer> cmp = (a, b) -> {
+
+			int result = 0;
+
+			try {
+				result = GraphObjectComparator.compare(values[a], values[b], sortDescending);
+
+			} catch (Throwable t) {
+				logger.log(Level.FINE, "Cannot compare {0} to {1}: {2}", new Object[] { values[a], values[b], t.getMessage() });
+			}
+
+			// keep the original order of equal elements
+			return result != 0 ? result : Integer.compare(a, b);
+		};
+
+		for (int i=0; i<size; i++) {
+
+			try {
+				values[i] = source.get(i).getComparableProperty(sortKey);
+
+			} catch (Throwable t) {
+				logger.log(Level.FINE, "Cannot read sort value {0}: {1}", new Object[] { sortKey, t.getMessage() });
+			}
+		}
+
+		final long end = (long)page * (long)pageSize;
+
+		if (StringUtils.isBlank(offsetId) && page > 0 && end < size) {
+
+			// top-k selection: keep the first end elements in a max-heap
+			final int k                       = (int)end;
+			final PriorityQueue<Integer> heap = new PriorityQueue<>(k, cmp.reversed());
+
+			for (int i=0; i<size; i++) {
+
+				if (heap.size() < k) {
+
+					heap.add(i);
+
+				} else if (cmp.compare(i, heap.peek()) < 0) {
+
+					heap.poll();
+					heap.add(i);
+				}
+			}
+
+			final List<Integer> indexes = new ArrayList<>(heap);
+			final List<T> result        = new ArrayList<>(pageSize);
+
+			Collections.sort(indexes, cmp);
+
+			for (final Integer index : indexes.subList(k - pageSize, k)) {
+				result.add(source.get(index));
+			}
+
+			return result;
+		}
+
+		final List<Integer> indexes = new ArrayList<>(size);
+		final List<T> sorted        = new ArrayList<>(size);
+
+		for (int i=0; i<size; i++) {
+			indexes.add(i);
+		}
+
+		Collections.sort(indexes, cmp);
+
+		for (final Integer index : indexes) {
+			sorted.add(source.get(index));
+		}
+
+		return (List<T>)subList(sorted, pageSize, page, offsetId);
+	}
+
+	/**
+	 * Appends the elements of the list that follow the given cursor to the
+	 * output, in the order of the cursor (sort value, then uuid), until the
+	 * output contains pageSize elements. Used for results that can not be
+	 * read from a sorted index range, the whole list is scanned.
+	 *
+	 * @param list
+	 * @param cursor
+	 * @param output
+	 * @param pageSize
+	 * @return whether more elements follow the output
+	 */
+	public static <T extends GraphObject> boolean pageAfterCursor(final List<T> list, final PageCursor cursor, final List<T> output, final int pageSize) {
+
+		final PropertyKey sortKey = cursor.getSortKey();
+		final boolean descending  = cursor.isDescending();
+		final List<Object[]> rest = new ArrayList<>();
+
+		for (final T obj : list) {
+
+			final Object value = obj.getProperty(sortKey);
+			final String uuid  = obj.getUuid();
+
+			if (cursor.precedes(value, uuid)) {
+				rest.add(new Object[] { value, uuid, obj });
+			}
+		}
+
+		Collections.sort(rest, (a, b) -> PageCursor.compare(a[0], (String)a[1], b[0], (String)b[1], descending));
+
+		final int count = Math.max(0, Math.min(rest.size(), pageSize - output.size()));
+
+		for (final Object[] entry : rest.subList(0, count)) {
+			output.add((T)entry[2]);
+		}
+
+		return rest.size() > count;
+	}
+
 	/**
 	 * Return a single page of the result with the given paging parameters.
 	 *
@@ -0,0 +1,236 @@
+/**
+ * Copyright (C) 2010-2016 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.common;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import org.structr.api.DatabaseService;
+import org.structr.api.NotFoundException;
+import org.structr.api.graph.Node;
+import org.structr.core.Services;
+import org.structr.core.app.StructrApp;
+import org.structr.core.entity.Principal;
+import org.structr.core.graph.NodeFactory;
+
+/**
+ * Caches the transitive group memberships of principals.
+ *
+ * Permission resolution needs all groups a principal is a member of,
+ * directly or through other groups. This cache stores the uuids of these
+ * groups per principal, so that the group hierarchy is traversed only
+ * once instead of once for every node that is checked.
+ *
+ * The cache is cleared whenever a transaction changes a group or a group
+ * membership, before and after the commit. A generation counter makes sure
+ * that a membership set which was computed while the cache was cleared is
+ * not stored. If the cache grows beyond its maximum size, it is cleared as
+ * well.
+ */
+public class PrincipalGroupCache {
+
+	private static final int maxSize                   = Services.parseInt(StructrApp.getConfigurationValue(Services.APPLICATION_GROUP_CACHE_SIZE), 10000);
+	private static final Map<String, Membership> cache = new ConcurrentHashMap<>();
+	private static final AtomicLong generation         = new AtomicLong();
+	private static final LongAdder hits                = new LongAdder();
+	private static final LongAdder misses              = new LongAdder();
+	private static final LongAdder invalidations       = new LongAdder();
+
+	/**
+	 * Returns the groups the given principal is a member of, directly or
+	 * through other groups.
+	 *
+	 * @param principal
+	 * @return the groups of the principal
+	 */
+	public static Membership getGroups(final Principal principal) {
+
+		final String uuid = principal.getUuid();
+		Membership groups = cache.get(uuid);
+
+		if (groups != null) {
+
+			hits.increment();
+
+			return groups;
+		}
+
+		misses.increment();
+
+		final long currentGeneration = generation.get();
+
+		groups = resolveGroups(principal);
+
+		if (generation.get() == currentGeneration) {
+
+			if (cache.size() >= maxSize) {
+				cache.clear();
+			}
+
+			cache.put(uuid, groups);
+
+			// a membership change during the resolution might have been missed
+			if (generation.get() != currentGeneration) {
+				cache.remove(uuid, groups);
+			}
+		}
+
+		return groups;
+	}
+
+	public static void invalidate() {
+
+		generation.incrementAndGet();
+		invalidations.increment();
+
+		cache.clear();
+	}
+
+	/**
+	 * Returns size, hit rate and invalidation count of this cache.
+	 *
+	 * @return a map of statistics
+	 */
+	public static Map<String, Object> getStatistics() {
+
+		final Map<String, Object> stats = new LinkedHashMap<>();
+		final long hitCount             = hits.sum();
+		final long missCount            = misses.sum();
+		final long total                = hitCount + missCount;
+
+		stats.put("size",          cache.size());
+		stats.put("maxSize",       maxSize);
+		stats.put("hits",          hitCount);
+		stats.put("misses",        missCount);
+		stats.put("hitRate",       total > 0 ? (double)hitCount / (double)total : 0.0);
+		stats.put("invalidations", invalidations.sum());
+
+		return stats;
+	}
+
+	// ----- private methods -----
+	private static Membership resolveGroups(final Principal principal) {
+
+		final Deque<Principal> queue = new ArrayDeque<>(principal.getParents());
+		final Set<String> uuids      = new LinkedHashSet<>();
+		final List<Long> ids         = new LinkedList<>();
+		boolean isAdmin              = false;
+
+		// breadth-first, so that cycles in the group hierarchy are harmless
+		while (!queue.isEmpty()) {
+
+			final Principal group = queue.poll();
+			if (group != null && uuids.add(group.getUuid())) {
+
+				ids.add(group.getId());
+
+				isAdmin |= group.isAdmin();
+
+				queue.addAll(group.getParents());
+			}
+		}
+
+		return new Membership(uuids, ids, isAdmin);
+	}
+
+	// ----- nested classes -----
+	/**
+	 * The transitive group memberships of a principal.
+	 */
+	public static class Membership {
+
+		private Set<String> uuids = null;
+		private List<Long> ids    = null;
+		private boolean isAdmin   = false;
+
+		Membership(final Set<String> uuids, final List<Long> ids, final boolean isAdmin) {
+
+			this.uuids   = Collections.unmodifiableSet(uuids);
+			this.ids     = Collections.unmodifiableList(ids);
+			this.isAdmin = isAdmin;
+		}
+
+		public boolean isEmpty() {
+			return uuids.isEmpty();
+		}
+
+		/**
+		 * Indicates whether the node with the given uuid is one of the
+		 * groups.
+		 *
+		 * @param uuid
+		 * @return whether the node is one of the groups
+		 */
+		public boolean contains(final String uuid) {
+			return uuid != null && uuids.contains(uuid);
+		}
+
+		/**
+		 * Indicates whether one of the groups has admin rights.
+		 *
+		 * @return whether one of the groups is an admin
+		 */
+		public boolean isAdmin() {
+			return isAdmin;
+		}
+
+		/**
+		 * Loads the groups in the current transaction. Groups that were
+		 * deleted in the meantime are skipped.
+		 *
+		 * @return the groups
+		 */
+		public List<Principal> getPrincipals() {
+
+			final NodeFactory<Principal> factory = new NodeFactory<>(SecurityContext.getSuperUserInstance());
+			final DatabaseService db             = StructrApp.getInstance().getDatabaseService();
+			final List<Principal> principals     = new LinkedList<>();
+
+			for (final Long id : ids) {
+
+				try {
+
+					final Node node = db.getNodeById(id);
+					if (node != null) {
+
+						final Principal principal = factory.instantiate(node);
+						if (principal != null) {
+
+							principals.add(principal);
+						}
+					}
+
+				} catch (NotFoundException nfex) {
+					// group was deleted
+				}
+			}
+
+			return principals;
+		}
+	}
+}
@@ -42,6 +42,7 @@ public class Result<T extends GraphObject> {
 	private String queryTime          = null;
 	private String sortOrder          = null;
 	private String sortKey            = null;
+	private String nextCursor         = null;
 
 	private Integer resultCount       = null;
 	private Integer pageCount         = null;
@@ -194,6 +195,20 @@ public class Result<T extends GraphObject> {
 		return hasPartialContent;
 	}
 
+	/**
+	 * Returns the cursor that resumes this result after its last element,
+	 * or null if there are no more elements or no cursor was requested.
+	 *
+	 * @return the next page cursor
+	 */
+	public String getNextCursor() {
+		return nextCursor;
+	}
+
+	public void setNextCursor(final String nextCursor) {
+		this.nextCursor = nextCursor;
+	}
+
 	public GraphObject getMetaData() {
 		return metaData;
 	}
@@ -76,6 +76,7 @@ public class Services implements StructrServices {
 	public static final String FILES_PATH                                = "files.path";
 	public static final String DATA_EXCHANGE_PATH                        = "data.exchange.path";
 	public static final String LOG_DATABASE_PATH                         = "log.database.path";
+	public static final String LOG_STORE_PATH                            = "log.store.path";
 	public static final String FOREIGN_TYPE                              = "foreign.type.key";
 	public static final String LOG_SERVICE_INTERVAL                      = "structr.logging.interval";
 	public static final String LOG_SERVICE_THRESHOLD                     = "structr.logging.threshold";
@@ -112,6 +113,14 @@ public class Services implements StructrServices {
 	public static final String APPLICATION_UUID_CACHE_SIZE               = "application.cache.uuid.size";
 	public static final String APPLICATION_NODE_CACHE_SIZE               = "application.cache.node.size";
 	public static final String APPLICATION_REL_CACHE_SIZE                = "application.cache.relationship.size";
+	public static final String APPLICATION_ACCESS_PATH_CACHE_SIZE        = "application.cache.accesspath.size";
+	public static final String APPLICATION_GROUP_CACHE_SIZE              = "application.cache.groups.size";
+	public static final String APPLICATION_EXPRESSION_CACHE_SIZE         = "application.cache.expression.size";
+	public static final String APPLICATION_TEMPLATE_CACHE_SIZE           = "application.cache.template.size";
+	public static final String APPLICATION_SCRIPT_CACHE_SIZE             = "application.cache.script.size";
+	public static final String APPLICATION_SCRIPTING_OPTIMIZATION_LEVEL  = "application.scripting.optimizationlevel";
+	public static final String APPLICATION_SCRIPTING_SHARED_SCOPE        = "application.scripting.sharedscope";
+	public static final String APPLICATION_TRANSACTION_LOCK_TIMEOUT      = "application.transaction.lock.timeout";
 	public static final String APPLICATION_FILESYSTEM_ENABLED            = "application.filesystem.enabled";
 	public static final String APPLICATION_FILESYSTEM_INDEXING_LIMIT     = "application.filesystem.indexing.limit";
 	public static final String APPLICATION_FILESYSTEM_INDEXING_MINLENGTH = "application.filesystem.indexing.word.minlength";
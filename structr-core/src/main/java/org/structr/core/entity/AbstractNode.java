@@ -25,7 +25,6 @@ import java.util.Collections;
 import java.util.Date;
 import java.util.GregorianCalendar;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
@@ -68,6 +67,7 @@ import org.structr.common.IdSorter;
 import org.structr.common.Permission;
 import org.structr.common.PermissionPropagation;
 import org.structr.common.PermissionResolutionMask;
+import org.structr.common.PrincipalGroupCache;
 import org.structr.common.PropertyView;
 import org.structr.common.SecurityContext;
 import org.structr.common.ValidationHelper;
@@ -820,16 +820,10 @@ public abstract class AbstractNode implements NodeInterface, AccessControllable,
 			accessingUser = context.getUser(false);
 		}
 
-		return isGranted(permission, accessingUser, 0, new HashSet<>());
+		return isGranted(permission, accessingUser);
 	}
 
-	private boolean isGranted(final Permission permission, final Principal accessingUser, final int level, final Set<Long> alreadyTraversed) {
-
-		if (level > 100) {
-			logger.log(Level.WARNING, "Aborting recursive permission resolution because of recursion level > 100, this is quite likely an infinite loop.");
-			return false;
-		}
-
+	private boolean isGranted(final Permission permission, final Principal accessingUser) {
 
 		// use quick checks for maximum performance
 		if (isCreation && (accessingUser == null || accessingUser.equals(getOwnerNode()) ) ) {
@@ -841,8 +835,8 @@ public abstract class AbstractNode implements NodeInterface, AccessControllable,
 			return true;
 		}
 
-		// allow accessingUser to access itself, but not parents etc.
-		if (this.equals(accessingUser) && (level == 0 || (permission.equals(Permission.read) && level > 0))) {
+		// allow accessingUser to access itself
+		if (this.equals(accessingUser)) {
 			return true;
 		}
 
@@ -875,21 +869,50 @@ public abstract class AbstractNode implements NodeInterface, AccessControllable,
 				return true;
 			}
 
-			final Security security = getSecurityRelationship(accessingUser);
-			if (security != null && security.isAllowed(permission)) {
+			// transitive group memberships of the accessing user (cached)
+			final PrincipalGroupCache.Membership groups = PrincipalGroupCache.getGroups(accessingUser);
+
+			if (groups.isAdmin()) {
+				return true;
+			}
+
+			// allow members to read their groups, but not to modify them
+			if (permission.equals(Permission.read) && groups.contains(getUuid())) {
+				return true;
+			}
+
+			// groups are allowed to do anything with their nodes
+			if (hasOwner && groups.contains(_owner.getUuid())) {
 				return true;
 			}
 
+			// check the security relationships of the user and its groups at once
+			final String userId = accessingUser.getUuid();
+			for (final Security security : getIncomingRelationshipsAsSuperUser(Security.class)) {
+
+				if (security != null) {
+
+					final String principalId = security.getSourceNodeId();
+					if ((userId.equals(principalId) || groups.contains(principalId)) && security.isAllowed(permission)) {
+
+						return true;
+					}
+				}
+			}
+
 			// Check permissions from domain relationships
 			if (hasEffectivePermissions(accessingUser, permission)) {
 				return true;
 			}
 
-			// Last: recursively check possible parent principals
-			for (Principal parent : accessingUser.getParents()) {
+			// Last: check permissions of the groups from domain relationships
+			if (!groups.isEmpty() && !SchemaRelationshipNode.getPropagatingRelationshipTypes().isEmpty()) {
+
+				for (final Principal group : groups.getPrincipals()) {
 
-				if (isGranted(permission, parent, level+1, alreadyTraversed)) {
-					return true;
+					if (hasEffectivePermissions(group, permission)) {
+						return true;
+					}
 				}
 			}
 		}
@@ -25,7 +25,7 @@ import java.util.TreeSet;
 import java.util.function.Function;
 import org.structr.api.util.Iterables;
 import org.structr.api.graph.Node;
-import org.structr.api.util.FixedSizeCache;
+import org.structr.api.util.ConcurrentLongCache;
 import org.structr.core.property.PropertyMap;
 import org.structr.common.SecurityContext;
 import org.structr.common.error.ErrorBuffer;
@@ -43,7 +43,7 @@ import org.structr.core.property.PropertyKey;
  */
 public class GenericNode extends AbstractNode {
 
-	private static final FixedSizeCache<Long, Set<PropertyKey>> propertyKeys = new FixedSizeCache<>(1000);
+	private static final ConcurrentLongCache<Set<PropertyKey>> propertyKeys = new ConcurrentLongCache<>(1000);
 
 	@Override
 	public int hashCode() {
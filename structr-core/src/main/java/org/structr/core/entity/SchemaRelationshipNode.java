@@ -665,6 +665,21 @@ public class SchemaRelationshipNode extends AbstractSchemaNode {
 		return _targetType + "/" + _sourceType;
 	}
 
+	/**
+	 * Returns the relationship type if permissions are propagated along
+	 * relationships of this type, null otherwise.
+	 *
+	 * @return the relationship type or null
+	 */
+	public String getPropagatingRelationshipType() {
+
+		if (!Direction.None.equals(getProperty(permissionPropagation))) {
+			return getRelationshipType();
+		}
+
+		return null;
+	}
+
 	// ----- private methods -----
 	private String getRelationshipType() {
 
@@ -74,6 +74,8 @@ public class CypherQueryCommand extends NodeServiceCommand {
 		List<GraphObject> resultList    = new LinkedList<>();
 		NativeResult result             = null;
 
+		countQuery();
+
 		if (parameters != null) {
 
 			result = graphDb.execute(query, parameters);
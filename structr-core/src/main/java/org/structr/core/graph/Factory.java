@@ -18,6 +18,7 @@
  */
 package org.structr.core.graph;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.LinkedList;
@@ -37,6 +38,7 @@ import org.structr.api.NotFoundException;
 import org.structr.api.QueryResult;
 import org.structr.api.graph.Relationship;
 import org.structr.common.FactoryDefinition;
+import org.structr.common.PageCursor;
 import org.structr.common.SecurityContext;
 import org.structr.common.error.FrameworkException;
 import org.structr.common.error.IdNotFoundToken;
@@ -44,6 +46,7 @@ import org.structr.core.Adapter;
 import org.structr.core.GraphObject;
 import org.structr.core.Result;
 import org.structr.core.app.StructrApp;
+import org.structr.core.property.PropertyKey;
 import org.structr.schema.SchemaHelper;
 
 public abstract class Factory<S, T extends GraphObject> implements Adapter<S, T>, Function<S, T> {
@@ -182,10 +185,32 @@ public abstract class Factory<S, T extends GraphObject> implements Adapter<S, T>
 		return SchemaHelper.getEntityClassForRawType(rawType);
 	}
 
+	/**
+	 * Indicates whether {@link #isVisibleWithoutInstantiation} can be
+	 * used in the current security context. Evaluated once per result.
+	 *
+	 * @return whether elements can be counted without instantiation
+	 */
+	protected boolean canSkipInstantiation() {
+		return false;
+	}
+
+	/**
+	 * Returns true if the given database object is known to be
+	 * instantiated to a visible object. Used to count and skip elements
+	 * outside of the requested page without creating them.
+	 *
+	 * @param obj
+	 * @return whether the object is visible
+	 */
+	protected boolean isVisibleWithoutInstantiation(final S obj) {
+		return false;
+	}
+
 	// <editor-fold defaultstate="collapsed" desc="private methods">
 	protected List<S> read(final Iterable<S> iterable) {
 
-		final List<S> nodes  = new LinkedList();
+		final List<S> nodes  = new ArrayList<>();
 		final Iterator<S> it = iterable.iterator();
 
 		while (it.hasNext()) {
@@ -336,13 +361,168 @@ public abstract class Factory<S, T extends GraphObject> implements Adapter<S, T>
 
 			int size = input.size();
 
-			fromIndex = pageSize == Integer.MAX_VALUE ? 0 : (page - 1) * pageSize;
+			if (pageSize == Integer.MAX_VALUE) {
+
+				// all elements are needed, instantiate them in parallel
+				return page(input, size, 0, pageSize);
+			}
+
+			fromIndex = (page - 1) * pageSize;
 
 			// The overall count may be inaccurate
-			return page(input, size, fromIndex, pageSize);
+			return lazyPage(input, fromIndex, pageSize);
 		}
 	}
 
+	/**
+	 * Instantiates only the elements of the requested page while iterating
+	 * over the input. Elements before and after the page are only counted,
+	 * without instantiation if {@link #isVisibleWithoutInstantiation} allows
+	 * it. Once the page is complete and more than RESULT_COUNT_ACCURATE_LIMIT
+	 * elements were counted, the remaining raw elements are added to the
+	 * count without checking their visibility, so the overall count is an
+	 * upper bound in that case. With ignoreResultCount, iteration stops after
+	 * the first element that follows the page, so the count is offset +
+	 * pageSize + 1 if another page follows.
+	 *
+	 * Elements that cannot be found any more are skipped.
+	 *
+	 * @param input
+	 * @param offset
+	 * @param pageSize
+	 * @return result
+	 * @throws FrameworkException
+	 */
+	protected Result lazyPage(final QueryResult<S> input, final int offset, final int pageSize) throws FrameworkException {
+
+		final SecurityContext securityContext = factoryProfile.getSecurityContext();
+		final boolean preventFullCount        = securityContext != null && securityContext.ignoreResultCount();
+		final boolean canSkip                 = canSkipInstantiation();
+		final List<T> output                  = new ArrayList<>(Math.min(pageSize, 1000));
+		int consumed                          = 0;
+		int count                             = 0;
+
+		try (final QueryResult<S> closeable = input) {
+
+			final Iterator<S> iterator = closeable.iterator();
+
+			while (iterator.hasNext()) {
+
+				// one element after the page is enough to tell
+				// that another page follows
+				if (preventFullCount && count > offset + pageSize) {
+					break;
+				}
+
+				final S item         = iterator.next();
+				final boolean inPage = count >= offset && output.size() < pageSize;
+
+				consumed++;
+
+				if (!inPage) {
+
+					// page is complete
+					if (output.size() >= pageSize && !preventFullCount) {
+
+						if (count >= RESULT_COUNT_ACCURATE_LIMIT) {
+
+							// estimate the rest, including the current element
+							count += Math.max(0, closeable.size() - consumed + 1);
+							break;
+						}
+					}
+
+					if (canSkip && isVisibleWithoutInstantiation(item)) {
+
+						count++;
+						continue;
+					}
+				}
+
+				T obj = null;
+
+				try {
+					obj = instantiate(item);
+
+				} catch (NotFoundException nfe) {
+
+					// element was deleted in the meantime, skip it
+					logger.log(Level.FINE, "Skipping element that could not be found: {0}", nfe.getMessage());
+				}
+
+				if (obj != null) {
+
+					if (inPage) {
+						output.add(obj);
+					}
+
+					count++;
+				}
+			}
+		}
+
+		return new Result(output, count, true, false);
+	}
+
+	/**
+	 * Instantiates the elements of the given input that follow the given
+	 * cursor and appends them to the output until it contains pageSize
+	 * elements. The input must be sorted by the sort key of the cursor,
+	 * elements with equal values are ordered by uuid here, so that the
+	 * order is stable across requests. Only elements with a null value or
+	 * only elements with a value are considered, depending on nullValues.
+	 *
+	 * Iteration stops as soon as the page is complete, so the cost does
+	 * not depend on the position of the cursor in the overall result.
+	 *
+	 * @param input
+	 * @param cursor
+	 * @param nullValues
+	 * @param output
+	 * @param pageSize
+	 * @return whether more elements follow the output
+	 * @throws FrameworkException
+	 */
+	public boolean pageAfterCursor(final QueryResult<S> input, final PageCursor cursor, final boolean nullValues, final List<T> output, final int pageSize) throws FrameworkException {
+
+		final PropertyKey sortKey = cursor.getSortKey();
+		final boolean descending  = cursor.isDescending();
+		final List<T> run         = new ArrayList<>();
+		Object runValue           = null;
+
+		try (final QueryResult<S> closeable = input) {
+
+			for (final S item : closeable) {
+
+				final T obj = instantiate(item);
+				if (obj != null) {
+
+					final Object value = obj.getProperty(sortKey);
+
+					if (nullValues != (value == null) || !cursor.precedes(value, obj.getUuid())) {
+						continue;
+					}
+
+					// a new value ends the current run of equal values
+					if (!run.isEmpty() && PageCursor.compare(value, null, runValue, null, descending) != 0) {
+
+						addRun(run, output, pageSize);
+
+						// the current element follows a complete page
+						if (output.size() >= pageSize) {
+							return true;
+						}
+					}
+
+					run.add(obj);
+					runValue = value;
+				}
+			}
+		}
+
+		return addRun(run, output, pageSize) > 0;
+	}
+
 	protected Result page(final QueryResult<S> input, final int overallResultCount, final int offset, final int pageSize) throws FrameworkException {
 
 		final SecurityContext securityContext      = factoryProfile.getSecurityContext();
@@ -441,6 +621,25 @@ public abstract class Factory<S, T extends GraphObject> implements Adapter<S, T>
 		return new Result(output, overallCount.get(), true, false);
 	}
 
+	/**
+	 * Sorts the given run of elements with equal values by uuid and moves
+	 * it to the output, up to pageSize elements.
+	 *
+	 * @return the number of elements that did not fit into the output
+	 */
+	private int addRun(final List<T> run, final List<T> output, final int pageSize) {
+
+		Collections.sort(run, (o1, o2) -> o1.getUuid().compareTo(o2.getUuid()));
+
+		final int count     = Math.max(0, Math.min(run.size(), pageSize - output.size()));
+		final int remaining = run.size() - count;
+
+		output.addAll(run.subList(0, count));
+		run.clear();
+
+		return remaining;
+	}
+
 	//~--- inner classes --------------------------------------------------
 
 	private class InstantiationWorker implements Runnable {
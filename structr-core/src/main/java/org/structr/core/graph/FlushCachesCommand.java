@@ -27,6 +27,7 @@ import org.structr.common.error.FrameworkException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.structr.common.AccessPathCache;
+import org.structr.common.PrincipalGroupCache;
 import org.structr.core.app.App;
 import org.structr.core.app.StructrApp;
 
@@ -47,6 +48,7 @@ public class FlushCachesCommand extends NodeServiceCommand implements Maintenanc
 		NodeFactory.invalidateCache();
 		RelationshipFactory.invalidateCache();
 		AccessPathCache.invalidate();
+		PrincipalGroupCache.invalidate();
 
 		App app = StructrApp.getInstance(securityContext);
 
@@ -30,6 +30,7 @@ import java.util.Map;
 import java.util.Set;
 import org.structr.api.graph.RelationshipType;
 import org.structr.common.AccessPathCache;
+import org.structr.common.PrincipalGroupCache;
 import org.structr.common.PropertyView;
 import org.structr.common.SecurityContext;
 import org.structr.common.error.ErrorBuffer;
@@ -39,7 +40,9 @@ import org.structr.core.PropertyValidator;
 import org.structr.core.Services;
 import org.structr.core.app.StructrApp;
 import org.structr.core.entity.AbstractNode;
+import org.structr.core.entity.Group;
 import org.structr.core.entity.Principal;
+import org.structr.core.entity.relationship.Groups;
 import org.structr.core.property.PropertyKey;
 import org.structr.core.property.PropertyMap;
 
@@ -241,6 +244,21 @@ public class GraphObjectModificationState implements ModificationEvent {
 		if (relType != null) {
 			AccessPathCache.invalidateForRelType(relType.name());
 		}
+
+		if (isGroupModification()) {
+			PrincipalGroupCache.invalidate();
+		}
+	}
+
+	/**
+	 * Indicates whether the modified object is a group or a group
+	 * membership, i.e. whether the transitive group memberships of
+	 * principals may have changed.
+	 *
+	 * @return whether a group or group membership was modified
+	 */
+	public boolean isGroupModification() {
+		return object instanceof Group || object instanceof Groups;
 	}
 
 	public boolean isPassivelyDeleted() {
@@ -145,6 +145,33 @@ public class ModificationQueue {
 		}
 	}
 
+	/**
+	 * Indicates whether this queue contains any modifications.
+	 *
+	 * @return whether objects were created, modified or deleted
+	 */
+	public boolean hasModifications() {
+		return !modifications.isEmpty();
+	}
+
+	/**
+	 * Indicates whether this queue contains modifications of groups or
+	 * group memberships.
+	 *
+	 * @return whether groups or group memberships were modified
+	 */
+	public boolean hasGroupModifications() {
+
+		for (final GraphObjectModificationState state : modifications.values()) {
+
+			if (state.isGroupModification()) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
 	public void updateAuditLog() {
 
 		if (auditLogEnabled && !modificationEvents.isEmpty()) {
@@ -18,64 +18,188 @@
  */
 package org.structr.core.graph;
 
-import java.util.LinkedHashSet;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.logging.Logger;
+import org.structr.common.error.FrameworkException;
 
 /**
+ * A set of named semaphores that are acquired together.
  *
+ * Keys are always acquired in their natural order, so two threads can
+ * never wait for each other in a cycle, and threads that commit disjoint
+ * sets of keys do not block each other. Each thread remembers the keys
+ * it holds, release() only releases those.
  */
 public class MultiSemaphore {
 
 	private static final Logger logger = Logger.getLogger(MultiSemaphore.class.getName());
 
-	private final Map<String, Semaphore> semaphoreMap = new ConcurrentHashMap<>();
+	private final Map<String, KeyLock> lockMap    = new ConcurrentHashMap<>();
+	private final ThreadLocal<List<KeyLock>> held = new ThreadLocal<>();
+	private long timeout                          = 0L;
 
-	public synchronized void acquire(final Set<String> types) throws InterruptedException {
+	public MultiSemaphore() {
+		this(0L);
+	}
+
+	/**
+	 * Creates a new MultiSemaphore that gives up waiting for a key after
+	 * the given number of milliseconds. A timeout of 0 waits forever.
+	 *
+	 * @param timeout
+	 */
+	public MultiSemaphore(final long timeout) {
+		this.timeout = timeout;
+	}
+
+	public void acquire(final Set<String> types) throws FrameworkException, InterruptedException {
 
 		if (types != null && !types.isEmpty()) {
 
-			for (Semaphore semaphore : getSemaphores(types)) {
-				semaphore.acquire();
+			List<KeyLock> locks = held.get();
+			if (locks == null) {
+
+				locks = new ArrayList<>();
+				held.set(locks);
+			}
+
+			try {
+
+				for (final String type : sorted(types)) {
+
+					final KeyLock lock = lockMap.computeIfAbsent(type, KeyLock::new);
+					if (!locks.contains(lock)) {
+
+						lock.acquire(timeout);
+						locks.add(lock);
+					}
+				}
+
+			} catch (FrameworkException | InterruptedException ex) {
+
+				release();
+				throw ex;
 			}
 		}
 	}
 
-	public void release(final Set<String> types) {
+	/**
+	 * Releases all keys the current thread holds.
+	 */
+	public void release() {
 
-		if (types != null && !types.isEmpty()) {
+		final List<KeyLock> locks = held.get();
+		if (locks != null) {
+
+			held.remove();
+
+			for (final KeyLock lock : locks) {
+				lock.release();
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of acquisitions, the number of acquisitions that
+	 * had to wait and the total wait time for each key.
+	 *
+	 * @return a map of statistics per key
+	 */
+	public Map<String, Object> getStatistics() {
+
+		final Map<String, Object> stats = new TreeMap<>();
+
+		for (final KeyLock lock : lockMap.values()) {
+			stats.put(lock.key, lock.getStatistics());
+		}
+
+		return stats;
+	}
+
+	// ----- private methods -----
+	private Set<String> sorted(final Set<String> types) {
+
+		final Set<String> sorted = new TreeSet<>();
+
+		for (final String type : types) {
 
-			for (Semaphore semaphore : getSemaphores(types)) {
-				semaphore.release();
+			if (type != null) {
+				sorted.add(type);
 			}
 		}
+
+		return sorted;
 	}
 
-	private Set<Semaphore> getSemaphores(final Set<String> types) {
+	// ----- nested classes -----
+	private static class KeyLock {
+
+		private final Semaphore semaphore    = new Semaphore(1, true);
+		private final LongAdder acquisitions = new LongAdder();
+		private final LongAdder contended    = new LongAdder();
+		private final LongAdder waitNanos    = new LongAdder();
+		private String key                   = null;
+
+		KeyLock(final String key) {
+			this.key = key;
+		}
+
+		void acquire(final long timeout) throws FrameworkException, InterruptedException {
+
+			acquisitions.increment();
 
-		Set<Semaphore> semaphores = new LinkedHashSet<>();
+			if (!semaphore.tryAcquire(0, TimeUnit.NANOSECONDS)) {
 
-		if (types != null) {
+				final long start = System.nanoTime();
 
-			for (String type : types) {
+				contended.increment();
 
-				if (type != null) {
+				try {
 
-					Semaphore semaphore = semaphoreMap.get(type);
-					if (semaphore == null) {
+					if (timeout > 0) {
 
-						semaphore = new Semaphore(1, true);
-						semaphoreMap.put(type, semaphore);
+						if (!semaphore.tryAcquire(timeout, TimeUnit.MILLISECONDS)) {
+
+							logger.warning("Timeout after " + timeout + " ms while waiting for commit lock on " + key);
+
+							throw new FrameworkException(503, "Unable to commit transaction, timeout while waiting for lock on " + key);
+						}
+
+					} else {
+
+						semaphore.acquire();
 					}
 
-					semaphores.add(semaphore);
+				} finally {
+
+					waitNanos.add(System.nanoTime() - start);
 				}
 			}
 		}
 
-		return semaphores;
+		void release() {
+			semaphore.release();
+		}
+
+		Map<String, Object> getStatistics() {
+
+			final Map<String, Object> stats = new LinkedHashMap<>();
+
+			stats.put("acquisitions", acquisitions.sum());
+			stats.put("contended",    contended.sum());
+			stats.put("waitMillis",   waitNanos.sum() / 1000000L);
+
+			return stats;
+		}
 	}
 }
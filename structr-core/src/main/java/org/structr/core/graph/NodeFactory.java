@@ -29,7 +29,7 @@ import java.util.logging.Logger;
 import org.structr.api.graph.Node;
 import org.structr.api.graph.Relationship;
 import org.structr.common.AccessControllable;
-import org.structr.api.util.FixedSizeCache;
+import org.structr.api.util.ConcurrentLongCache;
 import org.structr.core.Services;
 import org.structr.core.app.StructrApp;
 import org.structr.core.entity.GenericNode;
@@ -49,7 +49,7 @@ public class NodeFactory<T extends NodeInterface & AccessControllable> extends F
 
 	private static final Logger logger = Logger.getLogger(NodeFactory.class.getName());
 
-	private static final FixedSizeCache<Long, Class> idTypeMap = new FixedSizeCache<>(Services.parseInt(StructrApp.getConfigurationValue(Services.APPLICATION_NODE_CACHE_SIZE), 100000));
+	private static final ConcurrentLongCache<Class> idTypeMap = new ConcurrentLongCache<>(Services.parseInt(StructrApp.getConfigurationValue(Services.APPLICATION_NODE_CACHE_SIZE), 100000));
 
 	public NodeFactory(final SecurityContext securityContext) {
 		super(securityContext);
@@ -165,10 +165,45 @@ public class NodeFactory<T extends NodeInterface & AccessControllable> extends F
 
 	}
 
+	@Override
+	protected boolean canSkipInstantiation() {
+
+		// superusers can read every node unless only public nodes are requested
+		final SecurityContext securityContext = factoryProfile.getSecurityContext();
+		return securityContext != null && securityContext.isSuperUser() && !factoryProfile.publicOnly();
+	}
+
+	@Override
+	protected boolean isVisibleWithoutInstantiation(final Node node) {
+
+		if (TransactionCommand.isDeleted(node)) {
+			return false;
+		}
+
+		if (!factoryProfile.includeDeletedAndHidden()) {
+			return !isSet(node, NodeInterface.deleted.dbName()) && !isSet(node, NodeInterface.hidden.dbName());
+		}
+
+		return true;
+	}
+
 	public static void invalidateCache() {
 		idTypeMap.clear();
 	}
 
+	/**
+	 * Removes the cache entries that map to one of the given types.
+	 *
+	 * @param types
+	 */
+	public static void invalidateCache(final Set<Class> types) {
+		idTypeMap.removeValues(types::contains);
+	}
+
+	public static Map<String, Object> getCacheStatistics() {
+		return idTypeMap.getStatistics();
+	}
+
 	/**
 	 * Return all nodes which are connected by an incoming IS_AT relationships
 	 *
@@ -194,4 +229,9 @@ public class NodeFactory<T extends NodeInterface & AccessControllable> extends F
 		return nodes;
 
 	}
+
+	// ----- private methods -----
+	private boolean isSet(final Node node, final String key) {
+		return node.hasProperty(key) && Boolean.TRUE.equals(node.getProperty(key));
+	}
 }
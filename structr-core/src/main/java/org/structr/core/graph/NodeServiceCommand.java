@@ -42,6 +42,7 @@ public abstract class NodeServiceCommand extends Command {
 
 	private static final Logger logger                        = Logger.getLogger(NodeServiceCommand.class.getName());
 	private static final ArrayBlockingQueue<String> uuidQueue = new ArrayBlockingQueue<>(100000);
+	private static final ThreadLocal<long[]> queryCounts      = ThreadLocal.withInitial(() -> new long[1]);
 
 	protected SecurityContext securityContext = null;
 
@@ -166,6 +167,21 @@ public abstract class NodeServiceCommand extends Command {
 		}
 	}
 
+	/**
+	 * Returns the number of database queries the current thread has
+	 * executed so far. The difference between two calls is the number
+	 * of queries that were executed in between.
+	 *
+	 * @return the number of queries of the current thread
+	 */
+	public static long getQueryCount() {
+		return queryCounts.get()[0];
+	}
+
+	protected static void countQuery() {
+		queryCounts.get()[0]++;
+	}
+
 	public static String getNextUuid() {
 
 		String uuid = null;
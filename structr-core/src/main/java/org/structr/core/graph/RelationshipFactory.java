@@ -27,10 +27,11 @@ import org.structr.common.error.FrameworkException;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.structr.api.graph.Relationship;
-import org.structr.api.util.FixedSizeCache;
+import org.structr.api.util.ConcurrentLongCache;
 import org.structr.core.GraphObject;
 import org.structr.core.Services;
 import org.structr.core.app.StructrApp;
@@ -47,7 +48,7 @@ import org.structr.core.app.StructrApp;
  */
 public class RelationshipFactory<T extends RelationshipInterface> extends Factory<Relationship, T> {
 
-	private static final FixedSizeCache<Long, Class> idTypeMap = new FixedSizeCache<>(Services.parseInt(StructrApp.getConfigurationValue(Services.APPLICATION_REL_CACHE_SIZE), 100000));
+	private static final ConcurrentLongCache<Class> idTypeMap = new ConcurrentLongCache<>(Services.parseInt(StructrApp.getConfigurationValue(Services.APPLICATION_REL_CACHE_SIZE), 100000));
 	private static final Logger logger                         = Logger.getLogger(RelationshipFactory.class.getName());
 
 	// private Map<String, Class> nodeTypeCache = new ConcurrentHashMap<String, Class>();
@@ -212,7 +213,32 @@ public class RelationshipFactory<T extends RelationshipInterface> extends Factor
 
 	}
 
+	@Override
+	protected boolean canSkipInstantiation() {
+
+		// relationships are not filtered by visibility
+		return true;
+	}
+
+	@Override
+	protected boolean isVisibleWithoutInstantiation(final Relationship relationship) {
+		return !TransactionCommand.isDeleted(relationship);
+	}
+
 	public static void invalidateCache() {
 		idTypeMap.clear();
 	}
+
+	/**
+	 * Removes the cache entries that map to one of the given types.
+	 *
+	 * @param types
+	 */
+	public static void invalidateCache(final Set<Class> types) {
+		idTypeMap.removeValues(types::contains);
+	}
+
+	public static Map<String, Object> getCacheStatistics() {
+		return idTypeMap.getStatistics();
+	}
 }
@@ -21,6 +21,7 @@ package org.structr.core.graph;
 
 import java.util.Collection;
 import java.util.LinkedHashSet;
+import java.util.Map;
 import java.util.Set;
 import java.util.logging.Level;
 
@@ -33,8 +34,10 @@ import org.structr.api.graph.Node;
 import org.structr.api.graph.Relationship;
 import org.structr.common.error.ErrorBuffer;
 import org.structr.common.error.FrameworkException;
+import org.structr.core.Services;
 import org.structr.core.StructrTransactionListener;
 import org.structr.core.TransactionSource;
+import org.structr.core.app.StructrApp;
 import org.structr.core.entity.AbstractNode;
 import org.structr.core.entity.Principal;
 import org.structr.core.property.PropertyKey;
@@ -65,7 +68,7 @@ public class TransactionCommand extends NodeServiceCommand implements AutoClosea
 	private static final ThreadLocal<ErrorBuffer> buffers               = new ThreadLocal<>();
 	private static final ThreadLocal<TransactionCommand> currentCommand = new ThreadLocal<>();
 	private static final ThreadLocal<TransactionReference> transactions = new ThreadLocal<>();
-	private static final MultiSemaphore                    semaphore    = new MultiSemaphore();
+	private static final MultiSemaphore                    semaphore    = new MultiSemaphore(Services.parseInt(StructrApp.getConfigurationValue(Services.APPLICATION_TRANSACTION_LOCK_TIMEOUT), 0));
 
 	public TransactionCommand beginTx() {
 
@@ -125,7 +128,17 @@ public class TransactionCommand extends NodeServiceCommand implements AutoClosea
 			// we need to protect the validation and indexing part of every transaction
 			// from being entered multiple times in the presence of validators
 			// 3. acquire semaphores for each modified type
-			try { semaphore.acquire(synchronizationKeys); } catch (InterruptedException iex) { return; }
+			try {
+				semaphore.acquire(synchronizationKeys);
+
+			} catch (InterruptedException iex) {
+				return;
+
+			} catch (FrameworkException fex) {
+
+				tx.failure();
+				throw fex;
+			}
 
 			// finally, do validation under the protection of the semaphores for each type
 			if (!modificationQueue.doValidation(securityContext, errorBuffer, doValidation)) {
@@ -156,8 +169,6 @@ public class TransactionCommand extends NodeServiceCommand implements AutoClosea
 
 				modificationQueue = queues.get();
 
-				final Set<String> synchronizationKeys = modificationQueue.getSynchronizationKeys();
-
 				// cleanup
 				queues.remove();
 				buffers.remove();
@@ -173,7 +184,7 @@ public class TransactionCommand extends NodeServiceCommand implements AutoClosea
 				} finally {
 
 					// release semaphores as the transaction is now finished
-					semaphore.release(synchronizationKeys);	// careful: this can be null
+					semaphore.release();
 				}
 
 			} else {
@@ -380,10 +391,37 @@ public class TransactionCommand extends NodeServiceCommand implements AutoClosea
 		return listeners;
 	}
 
+	/**
+	 * Returns the usage and contention statistics of the commit locks,
+	 * one entry per synchronization key.
+	 *
+	 * @return a map of statistics
+	 */
+	public static Map<String, Object> getLockStatistics() {
+		return semaphore.getStatistics();
+	}
+
 	public static boolean inTransaction() {
 		return currentCommand.get() != null;
 	}
 
+	/**
+	 * Indicates whether the transaction of the current thread contains
+	 * modifications that are not committed yet. Other threads cannot see
+	 * these modifications.
+	 *
+	 * @return whether there are uncommitted modifications
+	 */
+	public static boolean hasPendingModifications() {
+
+		final ModificationQueue queue = queues.get();
+		if (queue != null) {
+			return queue.hasModifications();
+		}
+
+		return false;
+	}
+
 	public static boolean isDeleted(final Node node) {
 
 		if (!inTransaction()) {
@@ -20,6 +20,7 @@ package org.structr.core.graph;
 
 import java.util.Collection;
 import java.util.concurrent.atomic.AtomicBoolean;
+import org.structr.common.PrincipalGroupCache;
 import org.structr.common.SecurityContext;
 import org.structr.common.error.FrameworkException;
 import org.structr.core.StructrTransactionListener;
@@ -75,6 +76,12 @@ public class Tx implements AutoCloseable {
 
 		final ModificationQueue modificationQueue = cmd.finishTx();
 
+		// group memberships that were resolved by other threads during the
+		// commit may still contain the previous state
+		if (success && modificationQueue != null && modificationQueue.hasGroupModifications()) {
+			PrincipalGroupCache.invalidate();
+		}
+
 		if (success && guard.compareAndSet(false, true)) {
 
 			// experimental
@@ -71,14 +71,15 @@ public class RangeSearchAttribute<T> extends SearchAttribute<T> implements Range
 		final T value = entity.getProperty(searchKey);
 		if (value != null) {
 
-			if (value instanceof Comparable && rangeStart instanceof Comparable && rangeEnd instanceof Comparable) {
+			// a null bound leaves the range open on that side
+			if (value instanceof Comparable && (rangeStart == null || rangeStart instanceof Comparable) && (rangeEnd == null || rangeEnd instanceof Comparable)) {
 
 				final Comparable cv = (Comparable)value;
 				final Comparable cs = (Comparable)rangeStart;
 				final Comparable ce = (Comparable)rangeEnd;
 
 				// FIXME: is this correct??
-				return cs.compareTo(cv) <= 0 && ce.compareTo(cv) >= 0;
+				return (cs == null || cs.compareTo(cv) <= 0) && (ce == null || ce.compareTo(cv) >= 0);
 			}
 		}
 
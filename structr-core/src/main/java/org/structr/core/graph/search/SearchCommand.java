@@ -19,6 +19,7 @@
 package org.structr.core.graph.search;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
@@ -28,13 +29,14 @@ import java.util.Map;
 import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import org.apache.commons.lang3.StringUtils;
 import org.structr.api.index.Index;
 import org.structr.api.search.Occurrence;
 import org.structr.api.Predicate;
 import org.structr.api.graph.PropertyContainer;
 import org.structr.api.QueryResult;
 import org.structr.api.index.IndexType;
-import org.structr.common.GraphObjectComparator;
+import org.structr.common.PageCursor;
 import org.structr.common.PagingHelper;
 import org.structr.common.SecurityContext;
 import org.structr.common.error.FrameworkException;
@@ -64,6 +66,13 @@ public abstract class SearchCommand<S extends PropertyContainer, T extends Graph
 	protected static final boolean INCLUDE_DELETED_AND_HIDDEN = true;
 	protected static final boolean PUBLIC_ONLY		  = false;
 
+	/**
+	 * Source results smaller than this are filtered in memory, larger ones
+	 * are intersected with the index result if that is small enough.
+	 */
+	private static final int INDEX_INTERSECTION_THRESHOLD = 100;
+	private static final int INDEX_INTERSECTION_FACTOR    = 4;
+
 	private static final Map<String, Set<String>> subtypeMapForType = new LinkedHashMap<>();
 	private static final Set<String> baseTypes                      = new LinkedHashSet<>();
 
@@ -94,6 +103,7 @@ public abstract class SearchCommand<S extends PropertyContainer, T extends Graph
 	private boolean doNotSort                    = false;
 	private boolean exactSearch                  = true;
 	private String offsetId                      = null;
+	private String pageCursor                    = null;
 	private int pageSize                         = Integer.MAX_VALUE;
 	private int page                             = 1;
 
@@ -110,7 +120,11 @@ public abstract class SearchCommand<S extends PropertyContainer, T extends Graph
 			return Result.EMPTY_RESULT;
 		}
 
-		final Factory<S, T> factory  = getFactory(securityContext, includeDeletedAndHidden, publicOnly, pageSize, page, offsetId);
+		countQuery();
+
+		// cursor paging replaces page and offsetId, the factory must not page the raw result
+		final PageCursor cursor      = pageCursor != null ? PageCursor.decode(securityContext, pageCursor, sortKey != null ? sortKey : GraphObject.id, sortDescending) : null;
+		final Factory<S, T> factory  = cursor != null ? getFactory(securityContext, includeDeletedAndHidden, publicOnly, Factory.DEFAULT_PAGE_SIZE, Factory.DEFAULT_PAGE, null) : getFactory(securityContext, includeDeletedAndHidden, publicOnly, pageSize, page, offsetId);
 		boolean hasGraphSources      = false;
 		boolean hasSpatialSource     = false;
 
@@ -218,16 +232,22 @@ public abstract class SearchCommand<S extends PropertyContainer, T extends Graph
 				rootGroup.sortDescending(sortDescending);
 			}
 
+			// resume a sorted index range at the cursor
+			if (cursor != null && !hasSpatialSource && !hasEmptySearchFields && allExactMatch && cursor.getSortKey().isIndexed()) {
+				return cursorPage(factory, cursor);
+			}
+
 			// do query
 			final QueryResult hits = getIndex().query(rootGroup);
 			intermediateResult     = factory.instantiate(hits);
 		}
 
-		if (intermediateResult != null && (hasEmptySearchFields || hasGraphSources || hasSpatialSource)) {
+		if (intermediateResult != null && (hasEmptySearchFields || hasGraphSources || hasSpatialSource || cursor != null)) {
 
 			// sorted result set
 			Set<GraphObject> intermediateResultSet = new LinkedHashSet<>(intermediateResult.getResults());
 			List<GraphObject> finalResult          = new ArrayList<>();
+			List<GraphObject> indexedResult        = null;
 			int resultCount                        = 0;
 
 			// We need to find out whether there was a source for any of the possible sets that we want to merge.
@@ -246,34 +266,56 @@ public abstract class SearchCommand<S extends PropertyContainer, T extends Graph
 
 				} else {
 
-					intermediateResultSet.addAll(mergedSources);
+					// evaluate the remaining predicates in the index if the source result is large
+					if (!hasEmptySearchFields && allExactMatch && mergedSources.size() >= INDEX_INTERSECTION_THRESHOLD && isIndexEvaluable(rootGroup) && hasPropertyPredicates(rootGroup)) {
+
+						indexedResult = intersectWithIndex(mergedSources);
+					}
+
+					if (indexedResult == null) {
+
+						intermediateResultSet.addAll(mergedSources);
+					}
 				}
 			}
 
-			// Filter intermediate result
-			for (GraphObject obj : intermediateResultSet) {
+			if (indexedResult != null) {
+
+				finalResult.addAll(indexedResult);
+				resultCount = indexedResult.size();
 
-				boolean addToResult = true;
+			} else {
 
-				// check all attributes before adding a node
-				for (SearchAttribute attr : rootGroup.getSearchAttributes()) {
+				// Filter intermediate result
+				for (GraphObject obj : intermediateResultSet) {
 
-					// check all search attributes
-					addToResult &= attr.includeInResult(obj);
-				}
+					boolean addToResult = true;
 
-				if (addToResult) {
+					// check all attributes before adding a node
+					for (SearchAttribute attr : rootGroup.getSearchAttributes()) {
 
-					finalResult.add(obj);
-					resultCount++;
+						// check all search attributes
+						addToResult &= attr.includeInResult(obj);
+					}
+
+					if (addToResult) {
+
+						finalResult.add(obj);
+						resultCount++;
+					}
 				}
 			}
 
-			// sort list
-			Collections.sort(finalResult, new GraphObjectComparator(sortKey, sortDescending));
+			if (cursor != null) {
 
-			// return paged final result
-			return new Result(PagingHelper.subList(finalResult, pageSize, page, offsetId), resultCount, true, false);
+				// cursor paging in memory
+				final List<T> output = new ArrayList<>();
+
+				return cursorResult(output, PagingHelper.pageAfterCursor((List<T>)finalResult, cursor, output, pageSize), cursor);
+			}
+
+			// return sorted and paged final result
+			return new Result(PagingHelper.sortedSubList(finalResult, sortKey, sortDescending, pageSize, page, offsetId), resultCount, true, false);
 
 		} else {
 
@@ -282,6 +324,116 @@ public abstract class SearchCommand<S extends PropertyContainer, T extends Graph
 		}
 	}
 
+	/**
+	 * Reads the page after the given cursor from the index. Objects with a
+	 * value for the sort key are read from a range query that starts at the
+	 * value of the cursor, objects without a value (which come last in
+	 * ascending and first in descending order) from a query that excludes
+	 * all values of the sort key, so neither phase scans the whole type.
+	 */
+	private Result<T> cursorPage(final Factory<S, T> factory, final PageCursor cursor) throws FrameworkException {
+
+		final PropertyKey key      = cursor.getSortKey();
+		final boolean descending   = cursor.isDescending();
+		final boolean[] phases     = descending ? new boolean[] { true, false } : new boolean[] { false, true };
+		final List<T> output       = new ArrayList<>();
+		boolean hasMore            = false;
+		int first                  = 0;
+
+		if (!cursor.isStart() && phases[0] != (cursor.getValue() == null)) {
+			first = 1;
+		}
+
+		rootGroup.setSortKey(key);
+		rootGroup.sortDescending(descending);
+
+		for (int i=first; i<phases.length; i++) {
+
+			final boolean nullValues     = phases[i];
+			final PageCursor phaseCursor = i == first ? cursor : PageCursor.start(key, descending);
+			final SearchAttribute phase  = phaseAttribute(phaseCursor, nullValues);
+
+			rootGroup.add(phase);
+
+			try {
+
+				hasMore = factory.pageAfterCursor(getIndex().query(rootGroup), phaseCursor, nullValues, output, pageSize);
+
+				if (output.size() >= pageSize) {
+
+					// the next phase only matters if it contains any objects
+					if (!hasMore && i < phases.length - 1) {
+						hasMore = phaseExists(PageCursor.start(key, descending), phases[i + 1]);
+					}
+
+					break;
+				}
+
+			} finally {
+
+				rootGroup.getSearchAttributes().remove(phase);
+			}
+		}
+
+		return cursorResult(output, hasMore, cursor);
+	}
+
+	/**
+	 * Creates the index predicate that selects the objects of one cursor
+	 * phase: a range with open bounds selects all objects with a value,
+	 * objects without a value are all objects that are not in this range,
+	 * or the objects that are indexed with an empty value.
+	 */
+	private SearchAttribute phaseAttribute(final PageCursor phaseCursor, final boolean nullValues) {
+
+		final PropertyKey key = phaseCursor.getSortKey();
+
+		if (nullValues) {
+
+			if (key.isIndexedWhenEmpty()) {
+				return new PropertySearchAttribute(key, null, Occurrence.REQUIRED, true);
+			}
+
+			return new RangeSearchAttribute(key, null, null, Occurrence.FORBIDDEN);
+		}
+
+		final Object bound = phaseCursor.isStart() ? null : phaseCursor.getValue();
+
+		return phaseCursor.isDescending() ? new RangeSearchAttribute(key, null, bound, Occurrence.REQUIRED) : new RangeSearchAttribute(key, bound, null, Occurrence.REQUIRED);
+	}
+
+	/**
+	 * Checks whether the index contains any object for the given phase
+	 * without instantiating the result.
+	 */
+	private boolean phaseExists(final PageCursor phaseCursor, final boolean nullValues) {
+
+		final SearchAttribute phase = phaseAttribute(phaseCursor, nullValues);
+
+		rootGroup.add(phase);
+
+		try (final QueryResult<S> result = getIndex().query(rootGroup)) {
+
+			return result.iterator().hasNext();
+
+		} finally {
+
+			rootGroup.getSearchAttributes().remove(phase);
+		}
+	}
+
+	private Result<T> cursorResult(final List<T> output, final boolean hasMore, final PageCursor cursor) throws FrameworkException {
+
+		final Result<T> result = new Result(output, output.size(), true, false);
+
+		if (hasMore && !output.isEmpty()) {
+
+			result.setNextCursor(PageCursor.after(output.get(output.size() - 1), cursor.getSortKey(), cursor.isDescending()).encode(securityContext));
+		}
+
+		return result;
+	}
+
 	private Set<GraphObject> mergeSources(List<SourceSearchAttribute> sources) {
 
 		Set<GraphObject> mergedResult = new LinkedHashSet<>();
@@ -321,6 +473,115 @@ public abstract class SearchCommand<S extends PropertyContainer, T extends Graph
 		return mergedResult;
 	}
 
+	/**
+	 * Runs the index query for the non-source predicates and keeps the
+	 * candidates whose id is contained in the index result. The index
+	 * result is only read as a sorted array of ids, without instantiating
+	 * any entities. Returns null if the index result is too large compared
+	 * to the candidates, the caller filters in memory in that case.
+	 *
+	 * @param candidates
+	 * @return the candidates that match all predicates, or null
+	 */
+	private List<GraphObject> intersectWithIndex(final Set<GraphObject> candidates) {
+
+		try (final QueryResult<S> hits = getIndex().query(rootGroup)) {
+
+			final int size = hits.size();
+			if (size < 0 || size > candidates.size() * INDEX_INTERSECTION_FACTOR) {
+
+				return null;
+			}
+
+			final List<GraphObject> result = new ArrayList<>();
+			long[] ids                     = new long[size];
+			int count                      = 0;
+
+			for (final S hit : hits) {
+
+				if (count == ids.length) {
+					ids = Arrays.copyOf(ids, count * 2 + 1);
+				}
+
+				ids[count++] = hit.getId();
+			}
+
+			Arrays.sort(ids, 0, count);
+
+			for (final GraphObject obj : candidates) {
+
+				if (Arrays.binarySearch(ids, 0, count, obj.getId()) >= 0) {
+					result.add(obj);
+				}
+			}
+
+			return result;
+		}
+	}
+
+	/**
+	 * Indicates whether the given attribute is evaluated by the index
+	 * exactly like its includeInResult method does.
+	 */
+	private boolean isIndexEvaluable(final SearchAttribute attr) {
+
+		if (attr instanceof SearchAttributeGroup) {
+
+			final List<SearchAttribute> children = ((SearchAttributeGroup)attr).getSearchAttributes();
+			if (children.isEmpty()) {
+
+				// empty groups (left over from removed sources) are not handled consistently by the index
+				return attr == rootGroup;
+			}
+
+			for (final SearchAttribute child : children) {
+
+				if (!isIndexEvaluable(child)) {
+					return false;
+				}
+			}
+
+			return true;
+		}
+
+		if (attr instanceof PropertySearchAttribute) {
+
+			// unindexed properties are not found by the index at all
+			final PropertyKey key = attr.getKey();
+			if (key == null || !key.isIndexed()) {
+				return false;
+			}
+
+			// empty values are interpreted differently in memory
+			final Object value = attr.getValue();
+			return value != null && StringUtils.isNotBlank(value.toString());
+		}
+
+		// source attributes are ignored by the index and accept every entity
+		return attr instanceof SourceSearchAttribute;
+	}
+
+	/**
+	 * Indicates whether the given attribute contains predicates on
+	 * properties, type predicates alone are cheaper to check in memory.
+	 */
+	private boolean hasPropertyPredicates(final SearchAttribute attr) {
+
+		if (attr instanceof SearchAttributeGroup) {
+
+			for (final SearchAttribute child : ((SearchAttributeGroup)attr).getSearchAttributes()) {
+
+				if (hasPropertyPredicates(child)) {
+					return true;
+				}
+			}
+
+			return false;
+		}
+
+		return attr instanceof PropertySearchAttribute && !(attr instanceof TypeSearchAttribute);
+	}
+
 	@Override
 	public Result<T> getResult() throws FrameworkException {
 		return doSearch();
@@ -447,6 +708,12 @@ public abstract class SearchCommand<S extends PropertyContainer, T extends Graph
 		return this;
 	}
 
+	@Override
+	public org.structr.core.app.Query<T> pageCursor(final String pageCursor) {
+		this.pageCursor = pageCursor;
+		return this;
+	}
+
 	@Override
 	public org.structr.core.app.Query<T> uuid(final String uuid) {
 
@@ -731,6 +998,25 @@ public abstract class SearchCommand<S extends PropertyContainer, T extends Graph
 		subtypeMapForType.clear();
 	}
 
+	/**
+	 * Removes the subtypes of the given types, and all entries that
+	 * contain one of the given types, from the inheritance map.
+	 *
+	 * @param types the simple names of the changed types
+	 */
+	public static synchronized void clearInheritanceMap(final Set<String> types) {
+
+		final Iterator<Map.Entry<String, Set<String>>> iterator = subtypeMapForType.entrySet().iterator();
+		while (iterator.hasNext()) {
+
+			final Map.Entry<String, Set<String>> entry = iterator.next();
+
+			if (types.contains(entry.getKey()) || !Collections.disjoint(types, entry.getValue())) {
+				iterator.remove();
+			}
+		}
+	}
+
 	public static synchronized Set<String> getAllSubtypesAsStringSet(final String type) {
 
 		Set<String> allSubtypes = subtypeMapForType.get(type);
@@ -25,9 +25,13 @@ import java.text.Normalizer;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import org.apache.commons.lang3.StringUtils;
+import org.structr.api.util.ConcurrentFixedSizeCache;
 import org.structr.common.error.FrameworkException;
 import org.structr.core.GraphObject;
+import org.structr.core.Services;
+import org.structr.core.app.StructrApp;
 import org.structr.core.parser.function.*;
+import org.structr.schema.SchemaService;
 import org.structr.schema.action.ActionContext;
 import org.structr.schema.action.Function;
 
@@ -40,11 +44,73 @@ public class Functions {
 	public static final Map<String, Function<Object, Object>> functions = new LinkedHashMap<>();
 	public static final String NULL_STRING                              = "___NULL___";
 
+	private static volatile ConcurrentFixedSizeCache<String, Expression> expressionCache = null;
+	private static volatile long cachedSchemaVersion                                     = -1L;
+	private static volatile int cachedFunctionCount                                      = -1;
+
 	public static Function<Object, Object> get(final String name) {
 		return functions.get(name);
 	}
 
 	public static Object evaluate(final ActionContext actionContext, final GraphObject entity, final String expression) throws FrameworkException {
+		return getExpression(expression).evaluate(actionContext, entity);
+	}
+
+	/**
+	 * Returns the expression tree for the given source. Expression trees
+	 * are not modified during evaluation, so they are parsed only once and
+	 * shared. The cache is cleared when the schema is reloaded or new
+	 * functions are registered, because a word can then resolve to a
+	 * different function.
+	 *
+	 * @param expression
+	 * @return the root of the expression tree
+	 * @throws FrameworkException if the expression is invalid
+	 */
+	public static Expression getExpression(final String expression) throws FrameworkException {
+
+		final ConcurrentFixedSizeCache<String, Expression> cache = getExpressionCache();
+		final Expression root                                    = cache.get(expression);
+
+		if (root != null) {
+			return root;
+		}
+
+		// parse outside of any lock, a concurrently parsed tree for the same source is discarded
+		return cache.putIfAbsent(expression, parse(expression));
+	}
+
+	private static ConcurrentFixedSizeCache<String, Expression> getExpressionCache() {
+
+		final long schemaVersion = SchemaService.getSchemaVersion();
+		final int functionCount  = functions.size();
+
+		ConcurrentFixedSizeCache<String, Expression> cache = expressionCache;
+
+		// only creation and invalidation of the cache are synchronized, not lookups
+		if (cache == null || schemaVersion != cachedSchemaVersion || functionCount != cachedFunctionCount) {
+
+			synchronized (Functions.class) {
+
+				if (expressionCache == null) {
+
+					expressionCache = new ConcurrentFixedSizeCache<>(Services.parseInt(StructrApp.getConfigurationValue(Services.APPLICATION_EXPRESSION_CACHE_SIZE), 10000));
+
+				} else if (schemaVersion != cachedSchemaVersion || functionCount != cachedFunctionCount) {
+
+					expressionCache.clear();
+				}
+
+				cachedSchemaVersion = schemaVersion;
+				cachedFunctionCount = functionCount;
+				cache               = expressionCache;
+			}
+		}
+
+		return cache;
+	}
+
+	private static Expression parse(final String expression) throws FrameworkException {
 
 		final String expressionWithoutNewlines = expression.replace('\n', ' ');
 		final StreamTokenizer tokenizer = new StreamTokenizer(new StringReader(expressionWithoutNewlines));
@@ -171,7 +237,7 @@ public class Functions {
 			throw new FrameworkException(422, "Invalid expression: mismatched closing bracket after " + lastToken);
 		}
 
-		return root.evaluate(actionContext, entity);
+		return root;
 	}
 
 	private static Expression checkReservedWords(final String word) throws FrameworkException {
@@ -18,18 +18,29 @@
  */
 package org.structr.core.script;
 
+import java.util.Collections;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.apache.commons.lang.StringUtils;
 import org.mozilla.javascript.Context;
 import org.mozilla.javascript.ContextFactory;
+import org.mozilla.javascript.Script;
 import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
 import org.mozilla.javascript.Undefined;
+import org.structr.api.util.ConcurrentFixedSizeCache;
 import org.structr.common.error.FrameworkException;
 import org.structr.core.GraphObject;
+import org.structr.core.Services;
+import org.structr.core.app.StructrApp;
 import org.structr.core.entity.AbstractNode;
 import org.structr.core.parser.Functions;
 import org.structr.core.property.DateProperty;
@@ -42,7 +53,13 @@ import org.structr.schema.parser.DatePropertyParser;
  */
 public class Scripting {
 
-	private static final Logger logger = Logger.getLogger(Scripting.class.getName());
+	private static final Logger logger                                               = Logger.getLogger(Scripting.class.getName());
+	private static final ContextFactory contextFactory                               = new ContextFactory();
+	private static volatile ConcurrentFixedSizeCache<String, Template> templates     = null;
+	private static volatile ConcurrentFixedSizeCache<String, CompiledScript> scripts = null;
+	private static volatile ScriptableObject sharedScope                             = null;
+	private static boolean useSharedScope                                            = true;
+	private static int optimizationLevel                                             = 0;
 
 	public static String replaceVariables(final ActionContext actionContext, final GraphObject entity, final Object rawValue) throws FrameworkException {
 
@@ -57,37 +74,9 @@ public class Scripting {
 
 			value = (String) rawValue;
 
-			if (!actionContext.returnRawValue()) {
+			if (!actionContext.returnRawValue() && value.contains("${")) {
 
-				final List<Tuple> replacements = new LinkedList<>();
-
-				for (final String expression : extractScripts(value)) {
-
-					final Object extractedValue = evaluate(actionContext, entity, expression);
-					String partValue            = extractedValue != null ? formatToDefaultDateOrString(extractedValue) : "";
-
-					if (partValue != null) {
-
-						replacements.add(new Tuple(expression, partValue));
-
-					} else {
-
-						// If the whole expression should be replaced, and partValue is null
-						// replace it by null to make it possible for HTML attributes to not be rendered
-						// and avoid something like ... selected="" ... which is interpreted as selected==true by
-						// all browsers
-						if (!value.equals(expression)) {
-							replacements.add(new Tuple(expression, ""));
-						}
-					}
-				}
-
-				// apply replacements
-				for (final Tuple tuple : replacements) {
-
-					// only replace a single occurrence at a time!
-					value = StringUtils.replaceOnce(value, tuple.key, tuple.value);
-				}
+				value = getTemplate(value).render(actionContext, entity);
 			}
 
 		} else if (rawValue instanceof Boolean) {
@@ -126,22 +115,30 @@ public class Scripting {
 		final String source        = expression.substring(2 + prefixOffset, expression.length() - (1 + prefixOffset));
 
 		actionContext.setJavaScriptContext(isJavascript);
+		actionContext.beforeEvaluation(expression);
 
-		if (isJavascript) {
+		try {
 
-			return evaluateJavascript(actionContext, entity, source);
+			if (isJavascript) {
 
-		} else {
+				return evaluateJavascript(actionContext, entity, source);
 
-			Object extractedValue = Functions.evaluate(actionContext, entity, source);
-			final String value    = extractedValue != null ? extractedValue.toString() : "";
-			final String output   = actionContext.getOutput();
+			} else {
 
-			if (StringUtils.isEmpty(value) && output != null && !output.isEmpty()) {
-				extractedValue = output;
+				Object extractedValue = Functions.evaluate(actionContext, entity, source);
+				final String value    = extractedValue != null ? extractedValue.toString() : "";
+				final String output   = actionContext.getOutput();
+
+				if (StringUtils.isEmpty(value) && output != null && !output.isEmpty()) {
+					extractedValue = output;
+				}
+
+				return extractedValue;
 			}
 
-			return extractedValue;
+		} finally {
+
+			actionContext.afterEvaluation(expression);
 		}
 	}
 
@@ -149,7 +146,10 @@ public class Scripting {
 
 		final String entityName        = entity != null ? entity.getProperty(AbstractNode.name) : null;
 		final String entityDescription = entity != null ? ( StringUtils.isNotBlank(entityName) ? "\"" + entityName + "\":" : "" ) + entity.getUuid() : "anonymous";
-		final Context scriptingContext = new ContextFactory().enterContext();
+		final Context scriptingContext = contextFactory.enterContext();
+		final long startTime           = System.nanoTime();
+		CompiledScript compiledScript  = null;
+		boolean success                = false;
 
 		try {
 
@@ -157,13 +157,29 @@ public class Scripting {
 			// printing instead of "[object Object]"
 			scriptingContext.setLanguageVersion(Context.VERSION_1_2);
 
-			// Initialize the standard objects (Object, Function, etc.)
-			// This must be done before scripts can be executed.
-			Scriptable scope = scriptingContext.initStandardObjects();
+			final ScriptableObject shared = getSharedScope(scriptingContext);
+			final Scriptable scope;
+
+			if (useSharedScope) {
+
+				// The standard objects (Object, Function, etc.) are inherited from
+				// the sealed shared scope, so that they need not be initialized for
+				// each script, the new scope only holds the variables of this execution.
+				scope = scriptingContext.newObject(shared);
+
+				scope.setPrototype(shared);
+				scope.setParentScope(null);
+
+			} else {
+
+				// scripts may modify the built-in objects, so each execution needs its own
+				scope = scriptingContext.initStandardObjects();
+			}
+
+			// -1 (interpreter mode) avoids generating a class per script
+			scriptingContext.setOptimizationLevel(optimizationLevel);
 
-			// set optimization level to interpreter mode to avoid
-			// class loading / PermGen space bug in Rhino
-			//scriptingContext.setOptimizationLevel(-1);
+			compiledScript = getCompiledScript(scriptingContext, script);
 
 			final StructrScriptable scriptable = new StructrScriptable(actionContext, entity, scriptingContext);
 			scriptable.setParentScope(scope);
@@ -174,7 +190,7 @@ public class Scripting {
 			// clear output buffer
 			actionContext.clear();
 
-			Object extractedValue = scriptingContext.evaluateString(scope, embedInFunction(actionContext, script), "script source [" + entityDescription + "], line ", 1, null);
+			Object extractedValue = compiledScript.script.exec(scriptingContext, scope);
 
 			if (scriptable.hasException()) {
 				throw scriptable.getException();
@@ -194,6 +210,8 @@ public class Scripting {
 				extractedValue = "";
 			}
 
+			success = true;
+
 			return extractedValue;
 
 		} catch (final FrameworkException fex) {
@@ -204,17 +222,109 @@ public class Scripting {
 		} catch (final Throwable t) {
 
 			// if any other kind of Throwable is encountered throw a new FrameworkException and be done with it
-			logger.log(Level.WARNING, "", t);
+			logger.log(Level.WARNING, "Error in script source [" + entityDescription + "]", t);
 			throw new FrameworkException(422, t.getMessage());
 
 		} finally {
 
 			Context.exit();
+
+			if (compiledScript != null) {
+				compiledScript.record(entity, System.nanoTime() - startTime, success);
+			}
+		}
+
+	}
+
+	/**
+	 * Returns execution count and times of the compiled JavaScript sources,
+	 * slowest first (by total execution time), so that expensive scripts
+	 * can be identified. Only scripts that are still in the cache are
+	 * reported.
+	 *
+	 * @return a list of statistics, one per script
+	 */
+	public static List<Map<String, Object>> getScriptStatistics() {
+
+		final List<CompiledScript> compiledScripts = getScriptCache().values();
+		final List<Map<String, Object>> statistics = new LinkedList<>();
+
+		Collections.sort(compiledScripts, (a, b) -> Long.compare(b.totalTime.sum(), a.totalTime.sum()));
+
+		for (final CompiledScript compiledScript : compiledScripts) {
+			statistics.add(compiledScript.getStatistics());
+		}
+
+		return statistics;
+	}
+
+	private static ConcurrentFixedSizeCache<String, CompiledScript> getScriptCache() {
+
+		ConcurrentFixedSizeCache<String, CompiledScript> cache = scripts;
+		if (cache == null) {
+
+			synchronized (Scripting.class) {
+
+				if (scripts == null) {
+					scripts = new ConcurrentFixedSizeCache<>(Services.parseInt(StructrApp.getConfigurationValue(Services.APPLICATION_SCRIPT_CACHE_SIZE), 1000));
+				}
+
+				cache = scripts;
+			}
+		}
+
+		return cache;
+	}
+
+	private static CompiledScript getCompiledScript(final Context scriptingContext, final String script) {
+
+		final ConcurrentFixedSizeCache<String, CompiledScript> cache = getScriptCache();
+		final CompiledScript compiledScript                          = cache.get(script);
+
+		if (compiledScript != null) {
+			return compiledScript;
+		}
+
+		// the source name is shared by all entities that execute the script
+		return cache.putIfAbsent(script, new CompiledScript(script, scriptingContext.compileString(embedInFunction(script), "script source", 1, null)));
+	}
+
+	/**
+	 * Returns the sealed scope with the standard objects. Sealing means
+	 * that scripts which use the shared scope cannot modify the built-in
+	 * objects and their prototypes, e.g. Array.prototype. Installations
+	 * that rely on this can disable the shared scope with
+	 * application.scripting.sharedscope = false, every execution then
+	 * initializes its own standard objects as before.
+	 */
+	private static ScriptableObject getSharedScope(final Context scriptingContext) {
+
+		ScriptableObject scope = sharedScope;
+		if (scope == null) {
+
+			synchronized (Scripting.class) {
+
+				if (sharedScope == null) {
+
+					final ScriptableObject newScope = scriptingContext.initStandardObjects(null, true);
+
+					// sealing initializes all lazily loaded objects, so the scope
+					// is not modified when it is used by different threads
+					newScope.sealObject();
+
+					optimizationLevel = Math.max(-1, Math.min(9, Services.parseInt(StructrApp.getConfigurationValue(Services.APPLICATION_SCRIPTING_OPTIMIZATION_LEVEL), 0)));
+					useSharedScope    = Services.parseBoolean(StructrApp.getConfigurationValue(Services.APPLICATION_SCRIPTING_SHARED_SCOPE), true);
+					sharedScope       = newScope;
+				}
+
+				scope = sharedScope;
+			}
 		}
 
+		return scope;
 	}
 
-	private static String embedInFunction(final ActionContext actionContext, final String source) {
+	private static String embedInFunction(final String source) {
 
 		final StringBuilder buf = new StringBuilder();
 
@@ -230,6 +340,55 @@ public class Scripting {
 	public static List<String> extractScripts(final String source) {
 
 		final List<String> expressions = new LinkedList<>();
+
+		extractScripts(source, new LinkedList<>(), expressions);
+
+		return expressions;
+	}
+
+	// ----- private methods -----
+	private static Template getTemplate(final String source) {
+
+		final ConcurrentFixedSizeCache<String, Template> cache = getTemplateCache();
+		final Template template                                = cache.get(source);
+
+		if (template != null) {
+			return template;
+		}
+
+		// split outside of any lock, a concurrently created template for the same source is discarded
+		return cache.putIfAbsent(source, new Template(source));
+	}
+
+	private static ConcurrentFixedSizeCache<String, Template> getTemplateCache() {
+
+		ConcurrentFixedSizeCache<String, Template> cache = templates;
+		if (cache == null) {
+
+			synchronized (Scripting.class) {
+
+				if (templates == null) {
+					templates = new ConcurrentFixedSizeCache<>(Services.parseInt(StructrApp.getConfigurationValue(Services.APPLICATION_TEMPLATE_CACHE_SIZE), 10000));
+				}
+
+				cache = templates;
+			}
+		}
+
+		return cache;
+	}
+
+	/**
+	 * Splits the given source into the scripts it contains and the literal
+	 * text before, between and after them. The literals list contains one
+	 * element more than the expressions list.
+	 *
+	 * @param source
+	 * @param literals
+	 * @param expressions
+	 */
+	private static void extractScripts(final String source, final List<String> literals, final List<String> expressions) {
+
 		final int length               = source.length();
 		boolean inSingleQuotes         = false;
 		boolean inDoubleQuotes         = false;
@@ -281,6 +440,9 @@ public class Scripting {
 					if (!inSingleQuotes && !inDoubleQuotes && inTemplate && level-- == 0) {
 
 						inTemplate = false;
+
+						literals.add(source.substring(end, start));
+
 						end = i+1;
 
 						expressions.add(source.substring(start, end));
@@ -296,7 +458,7 @@ public class Scripting {
 			}
 		}
 
-		return expressions;
+		literals.add(source.substring(end));
 	}
 
 	private static String formatToDefaultDateOrString(final Object value) {
@@ -314,14 +476,113 @@ public class Scripting {
 	}
 
 	// ----- nested classes -----
-	private static class Tuple {
+	/**
+	 * A string with embedded scripts, split into literal text and scripts
+	 * once, so that rendering only needs to evaluate the scripts and join
+	 * the parts.
+	 */
+	private static class Template {
+
+		private String source        = null;
+		private String[] literals    = null;
+		private String[] expressions = null;
+
+		public Template(final String source) {
+
+			final List<String> literals    = new LinkedList<>();
+			final List<String> expressions = new LinkedList<>();
+
+			extractScripts(source, literals, expressions);
+
+			this.source      = source;
+			this.literals    = literals.toArray(new String[0]);
+			this.expressions = expressions.toArray(new String[0]);
+		}
+
+		public String render(final ActionContext actionContext, final GraphObject entity) throws FrameworkException {
+
+			if (expressions.length == 0) {
+				return source;
+			}
+
+			final StringBuilder buf = new StringBuilder(source.length());
+
+			for (int i=0; i<expressions.length; i++) {
+
+				final String expression     = expressions[i];
+				final Object extractedValue = evaluate(actionContext, entity, expression);
+				final String partValue      = extractedValue != null ? formatToDefaultDateOrString(extractedValue) : "";
+
+				buf.append(literals[i]);
+
+				if (partValue != null) {
+
+					buf.append(partValue);
+
+				} else if (source.equals(expression)) {
+
+					// If the whole expression should be replaced, and partValue is null
+					// keep it to make it possible for HTML attributes to not be rendered
+					// and avoid something like ... selected="" ... which is interpreted as selected==true by
+					// all browsers
+					buf.append(expression);
+				}
+			}
+
+			buf.append(literals[expressions.length]);
+
+			return buf.toString();
+		}
+	}
+
+	/**
+	 * A compiled JavaScript source with its execution statistics.
+	 */
+	private static class CompiledScript {
+
+		private final LongAdder count          = new LongAdder();
+		private final LongAdder errors         = new LongAdder();
+		private final LongAdder totalTime      = new LongAdder();
+		private final LongAccumulator maxTime  = new LongAccumulator(Long::max, 0L);
+		private volatile String lastType       = null;
+		private String source                  = null;
+		private Script script                  = null;
+
+		public CompiledScript(final String source, final Script script) {
+
+			this.source = source;
+			this.script = script;
+		}
+
+		public void record(final GraphObject entity, final long duration, final boolean success) {
+
+			count.increment();
+			totalTime.add(duration);
+			maxTime.accumulate(duration);
+
+			if (!success) {
+				errors.increment();
+			}
+
+			if (entity != null) {
+				lastType = entity.getType();
+			}
+		}
+
+		public Map<String, Object> getStatistics() {
+
+			final Map<String, Object> stats = new LinkedHashMap<>();
+			final long executions           = count.sum();
 
-		public String key = null;
-		public String value = null;
+			stats.put("source",             StringUtils.abbreviate(source.trim(), 200));
+			stats.put("type",               lastType);
+			stats.put("executions",         executions);
+			stats.put("errors",             errors.sum());
+			stats.put("totalMillis",        TimeUnit.NANOSECONDS.toMillis(totalTime.sum()));
+			stats.put("averageMicros",      executions > 0 ? TimeUnit.NANOSECONDS.toMicros(totalTime.sum() / executions) : 0L);
+			stats.put("maxMicros",          TimeUnit.NANOSECONDS.toMicros(maxTime.get()));
 
-		public Tuple(final String key, final String value) {
-			this.key = key;
-			this.value = value;
+			return stats;
 		}
 	}
 }
@@ -23,6 +23,7 @@
 
 package org.structr.schema;
 
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
@@ -32,9 +33,11 @@ import java.util.Map.Entry;
 import java.util.Properties;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.structr.common.AccessPathCache;
+import org.structr.common.PermissionPropagation;
 import org.structr.common.error.ErrorBuffer;
 import org.structr.common.error.FrameworkException;
 import org.structr.api.service.Command;
@@ -43,6 +46,7 @@ import org.structr.api.service.Service;
 import org.structr.api.service.StructrServices;
 import org.structr.core.app.App;
 import org.structr.core.app.StructrApp;
+import org.structr.core.entity.Relation;
 import org.structr.core.entity.SchemaNode;
 import org.structr.core.entity.SchemaRelationshipNode;
 import org.structr.core.graph.NodeFactory;
@@ -59,6 +63,7 @@ public class SchemaService implements Service {
 
 	private static final Logger logger                            = Logger.getLogger(SchemaService.class.getName());
 	private static final AtomicBoolean compiling                  = new AtomicBoolean(false);
+	private static final AtomicLong schemaVersion                 = new AtomicLong(0L);
 	private static final Map<String, String> builtinTypeMap       = new LinkedHashMap<>();
 
 	@Override
@@ -81,6 +86,17 @@ public class SchemaService implements Service {
 		builtinTypeMap.put(type, fqcn);
 	}
 
+	/**
+	 * Returns a counter that is incremented after each schema reload, so
+	 * that caches outside of structr-core can detect changes of types and
+	 * views without a direct dependency.
+	 *
+	 * @return the current schema version
+	 */
+	public static long getSchemaVersion() {
+		return schemaVersion.get();
+	}
+
 	public static boolean reloadSchema(final ErrorBuffer errorBuffer) {
 
 		final ConfigurationProvider config = StructrApp.getConfiguration();
@@ -130,11 +146,10 @@ public class SchemaService implements Service {
 					// this is a very critical section :)
 					synchronized (SchemaService.class) {
 
-						// clear propagating relationship cache (test)
-						SchemaRelationshipNode.clearPropagatingRelationshipTypes();
+						final Set<String> propagatingRelTypes = new LinkedHashSet<>(SchemaRelationshipNode.getPropagatingRelationshipTypes());
 
-						// compile all classes at once and register
-						Map<String, Class> newTypes = nodeExtender.compile(errorBuffer);
+						// compile changed classes and register
+						final Map<String, Class> newTypes = nodeExtender.compile(errorBuffer);
 
 						for (final Class newType : newTypes.values()) {
 
@@ -145,18 +160,30 @@ public class SchemaService implements Service {
 							// static initializer of helpers
 							try { newType.newInstance(); } catch (Throwable t) {}
 						}
-					}
 
-					// create properties and views etc.
-					for (final SchemaNode schemaNode : StructrApp.getInstance().nodeQuery(SchemaNode.class).getAsList()) {
-						schemaNode.createBuiltInSchemaEntities(errorBuffer);
-					}
+						// static initializers of unchanged classes are not executed again
+						if (!errorBuffer.hasError()) {
+							updatePropagatingRelationshipTypes();
+						}
+
+						// create properties and views etc.
+						for (final SchemaNode schemaNode : StructrApp.getInstance().nodeQuery(SchemaNode.class).getAsList()) {
+							schemaNode.createBuiltInSchemaEntities(errorBuffer);
+						}
+
+						// prevent inheritance map from leaking
+						if (nodeExtender.isFullCompilation()) {
+
+							SearchCommand.clearInheritanceMap();
+							NodeFactory.invalidateCache();
+							RelationshipFactory.invalidateCache();
+							AccessPathCache.invalidate();
 
-					// prevent inheritance map from leaking
-					SearchCommand.clearInheritanceMap();
-					NodeFactory.invalidateCache();
-					RelationshipFactory.invalidateCache();
-					AccessPathCache.invalidate();
+						} else {
+
+							invalidateCaches(nodeExtender.getUnregisteredTypes(), newTypes.values(), !propagatingRelTypes.equals(SchemaRelationshipNode.getPropagatingRelationshipTypes()));
+						}
+					}
 
 					success = !errorBuffer.hasError();
 
@@ -178,6 +205,9 @@ public class SchemaService implements Service {
 
 			} finally {
 
+				// invalidate caches that depend on types and views
+				schemaVersion.incrementAndGet();
+
 				// compiling done
 				compiling.set(false);
 
@@ -232,6 +262,79 @@ public class SchemaService implements Service {
 	}
 
 	// ----- private methods -----
+	private static void updatePropagatingRelationshipTypes() throws FrameworkException {
+
+		SchemaRelationshipNode.clearPropagatingRelationshipTypes();
+
+		for (final SchemaRelationshipNode schemaRelationship : StructrApp.getInstance().nodeQuery(SchemaRelationshipNode.class).getAsList()) {
+
+			final String relType = schemaRelationship.getPropagatingRelationshipType();
+			if (relType != null) {
+
+				SchemaRelationshipNode.registerPropagatingRelationshipType(relType);
+			}
+		}
+	}
+
+	/**
+	 * Invalidates the cache entries that refer to the given types after an
+	 * incremental compilation.
+	 */
+	private static void invalidateCaches(final Set<Class> oldTypes, final Collection<Class> newTypes, final boolean propagationChanged) {
+
+		final Set<Class> changedTypes  = new LinkedHashSet<>(oldTypes);
+		final Set<String> changedNames = new LinkedHashSet<>();
+
+		changedTypes.addAll(newTypes);
+
+		for (final Class type : changedTypes) {
+
+			// supertypes of new or removed types have changed subtypes,
+			// use reflection so that old types are not registered again
+			Class localType = type;
+
+			while (localType != null && !localType.equals(Object.class)) {
+
+				changedNames.add(localType.getSimpleName());
+
+				for (final Class iface : localType.getInterfaces()) {
+					changedNames.add(iface.getSimpleName());
+				}
+
+				localType = localType.getSuperclass();
+			}
+		}
+
+		SearchCommand.clearInheritanceMap(changedNames);
+		NodeFactory.invalidateCache(oldTypes);
+		RelationshipFactory.invalidateCache(oldTypes);
+
+		if (propagationChanged) {
+
+			// paths over relationship types that were not
+			// propagating before are not in the cache at all
+			AccessPathCache.invalidate();
+
+		} else {
+
+			for (final Class type : changedTypes) {
+
+				if (PermissionPropagation.class.isAssignableFrom(type)) {
+
+					try {
+
+						AccessPathCache.invalidateForRelType(((Relation)type.newInstance()).name());
+
+					} catch (Throwable t) {
+
+						AccessPathCache.invalidate();
+						return;
+					}
+				}
+			}
+		}
+	}
+
 	private static void calculateHierarchy() {
 
 		try (final Tx tx = StructrApp.getInstance().tx()) {
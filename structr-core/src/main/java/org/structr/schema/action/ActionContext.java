@@ -78,12 +78,38 @@ public class ActionContext {
 	}
 
 	public ActionContext(final ActionContext other) {
+		this(other, false);
+	}
+
+	/**
+	 * Creates a copy of the given context. A forked copy can be used
+	 * concurrently with the original context: it gets its own copies of
+	 * the constants, stores and counters, and its own error buffer, so
+	 * values stored in the fork are not visible in the original context.
+	 * Otherwise, both contexts share these objects.
+	 *
+	 * @param other
+	 * @param fork whether the copy is used concurrently
+	 */
+	public ActionContext(final ActionContext other, final boolean fork) {
+
+		if (fork) {
+
+			this.tmpStore    = new HashMap<>(other.tmpStore);
+			this.timerStore  = new HashMap<>(other.timerStore);
+			this.counters    = new HashMap<>(other.counters);
+			this.errorBuffer = new ErrorBuffer();
+			this.constants   = new HashMap<>(other.constants);
+
+		} else {
+
+			this.tmpStore    = other.tmpStore;
+			this.timerStore  = other.timerStore;
+			this.counters    = other.counters;
+			this.errorBuffer = other.errorBuffer;
+			this.constants   = other.constants;
+		}
 
-		this.tmpStore        = other.tmpStore;
-		this.timerStore      = other.timerStore;
-		this.counters        = other.counters;
-		this.errorBuffer     = other.errorBuffer;
-		this.constants       = other.constants;
 		this.securityContext = other.securityContext;
 		this.locale          = other.locale;
 	}
@@ -373,6 +399,25 @@ public class ActionContext {
 		return locale;
 	}
 
+	/**
+	 * Called before the given script expression is evaluated in this
+	 * context. The default implementation does nothing.
+	 *
+	 * @param expression the expression, including its delimiters
+	 */
+	public void beforeEvaluation(final String expression) {
+	}
+
+	/**
+	 * Called after the given script expression was evaluated in this
+	 * context, even if the evaluation failed. The default implementation
+	 * does nothing.
+	 *
+	 * @param expression the expression, including its delimiters
+	 */
+	public void afterEvaluation(final String expression) {
+	}
+
 	public String getJavascriptLibraryCode(String fileName) {
 
 		final StringBuilder buf = new StringBuilder();
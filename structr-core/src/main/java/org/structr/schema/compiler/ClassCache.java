@@ -0,0 +1,226 @@
+/**
+ * Copyright (C) 2010-2016 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.schema.compiler;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.apache.commons.codec.digest.DigestUtils;
+
+/**
+ * Stores the byte code of the dynamic types on disk, so that types whose
+ * source did not change do not have to be compiled again after a restart.
+ *
+ * Each type is stored with a hash of its source and the byte code of its
+ * classes. The cache is only valid for the class path it was written with:
+ * its fingerprint consists of the Java version and the names, sizes and
+ * modification times of all class path entries, so that an update of
+ * Structr or of a module invalidates the whole cache.
+ *
+ *
+ */
+public class ClassCache {
+
+	private static final Logger logger   = Logger.getLogger(ClassCache.class.getName());
+
+	public static final String FILE_NAME = "classes.cache";
+
+	private static final int FORMAT      = 1;
+
+	private String fingerprint           = null;
+	private Path path                    = null;
+
+	public ClassCache(final Path directory) {
+
+		this.path        = directory.resolve(FILE_NAME);
+		this.fingerprint = getFingerprint();
+	}
+
+	/**
+	 * Reads the cached types.
+	 *
+	 * @return the cached types, keyed by class name, or an empty map if the
+	 * cache does not exist or was written with a different class path
+	 */
+	public Map<String, Entry> read() {
+
+		final Map<String, Entry> entries = new LinkedHashMap<>();
+
+		if (Files.exists(path)) {
+
+			try (final DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+
+				if (in.readInt() == FORMAT && fingerprint.equals(in.readUTF())) {
+
+					final int count = in.readInt();
+					for (int i=0; i<count; i++) {
+
+						final String className = in.readUTF();
+						final Entry entry      = new Entry(in.readUTF());
+						final int classCount   = in.readInt();
+
+						for (int j=0; j<classCount; j++) {
+
+							final String binaryName = in.readUTF();
+							final byte[] bytes      = new byte[in.readInt()];
+
+							in.readFully(bytes);
+
+							entry.classes.put(binaryName, bytes);
+						}
+
+						entries.put(className, entry);
+					}
+
+				} else {
+
+					logger.log(Level.INFO, "Class path changed, ignoring cached dynamic types in {0}", path);
+				}
+
+			} catch (IOException ioex) {
+
+				logger.log(Level.WARNING, "Unable to read cached dynamic types from {0}: {1}", new Object[] { path, ioex.getMessage() });
+				entries.clear();
+			}
+		}
+
+		return entries;
+	}
+
+	/**
+	 * Replaces the cached types with the given types.
+	 *
+	 * @param entries the types to cache, keyed by class name
+	 */
+	public void write(final Map<String, Entry> entries) {
+
+		final Path temp = path.resolveSibling(FILE_NAME + ".tmp");
+
+		try {
+
+			Files.createDirectories(path.getParent());
+
+			try (final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+
+				out.writeInt(FORMAT);
+				out.writeUTF(fingerprint);
+				out.writeInt(entries.size());
+
+				for (final Map.Entry<String, Entry> entry : entries.entrySet()) {
+
+					out.writeUTF(entry.getKey());
+					out.writeUTF(entry.getValue().hash);
+					out.writeInt(entry.getValue().classes.size());
+
+					for (final Map.Entry<String, byte[]> classEntry : entry.getValue().classes.entrySet()) {
+
+						out.writeUTF(classEntry.getKey());
+						out.writeInt(classEntry.getValue().length);
+						out.write(classEntry.getValue());
+					}
+				}
+			}
+
+			// replace atomically so that a crash cannot leave a partial cache
+			Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+		} catch (IOException ioex) {
+
+			logger.log(Level.WARNING, "Unable to write cached dynamic types to {0}: {1}", new Object[] { path, ioex.getMessage() });
+		}
+	}
+
+	/**
+	 * Removes all cached types.
+	 */
+	public void clear() {
+
+		try {
+
+			Files.deleteIfExists(path);
+
+		} catch (IOException ioex) {
+
+			logger.log(Level.WARNING, "Unable to delete cached dynamic types in {0}: {1}", new Object[] { path, ioex.getMessage() });
+		}
+	}
+
+	/**
+	 * Returns the hash of the given source that identifies the cached
+	 * byte code.
+	 *
+	 * @param source
+	 * @return the hash
+	 */
+	public static String hash(final String source) {
+		return DigestUtils.sha256Hex(source);
+	}
+
+	// ----- private methods -----
+	private static String getFingerprint() {
+
+		final StringBuilder buf = new StringBuilder();
+
+		buf.append(System.getProperty("java.version"));
+
+		for (final String entry : System.getProperty("java.class.path", "").split(File.pathSeparator)) {
+
+			final File file = new File(entry);
+
+			buf.append(File.pathSeparator).append(file.getAbsolutePath());
+			buf.append(",").append(file.length());
+			buf.append(",").append(file.lastModified());
+		}
+
+		return DigestUtils.sha256Hex(buf.toString());
+	}
+
+	// ----- nested classes -----
+	/**
+	 * The byte code of the classes of a single type, i.e. the type itself
+	 * and its nested classes, keyed by binary name.
+	 */
+	public static class Entry {
+
+		private final Map<String, byte[]> classes = new LinkedHashMap<>();
+		private String hash                       = null;
+
+		public Entry(final String hash) {
+			this.hash = hash;
+		}
+
+		public String getHash() {
+			return hash;
+		}
+
+		public Map<String, byte[]> getClasses() {
+			return classes;
+		}
+	}
+}
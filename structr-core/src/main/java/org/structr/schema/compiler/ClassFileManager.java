@@ -19,27 +19,37 @@
 package org.structr.schema.compiler;
 
 import java.io.IOException;
-import java.security.SecureClassLoader;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import javax.tools.FileObject;
 import javax.tools.ForwardingJavaFileManager;
 import javax.tools.JavaFileObject;
 import javax.tools.JavaFileObject.Kind;
 import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
 
 /**
  *
  *
  */
-public class ClassFileManager extends ForwardingJavaFileManager {
+public class ClassFileManager extends ForwardingJavaFileManager<StandardJavaFileManager> {
 
 	/**
-	 * Instance of JavaClassObject that will store the compiled byte code of
-	 * our class
+	 * Instances of JavaClassObject that store the compiled byte code of
+	 * our classes
 	 */
 	private final Map<String, JavaClassObject> objects = new LinkedHashMap<>();
 
+	/**
+	 * Instances of JavaClassObject that were written by the current
+	 * compilation and not committed yet
+	 */
+	private final Map<String, JavaClassObject> pending = new LinkedHashMap<>();
+
 	/**
 	 * Will initialize the manager with the specified standard java file
 	 * manager
@@ -51,31 +61,14 @@ public class ClassFileManager extends ForwardingJavaFileManager {
 	}
 
 	/**
-	 * Will be used by us to get the class loader for our compiled class. It
-	 * creates an anonymous class extending the SecureClassLoader which uses
-	 * the byte code created by the compiler and stored in the
-	 * JavaClassObject, and returns the Class for it
+	 * Returns a class loader for all committed classes.
+	 *
 	 * @param location
 	 * @return class loader
 	 */
 	@Override
 	public ClassLoader getClassLoader(final Location location) {
-		
-		return new SecureClassLoader() {
-			
-			@Override
-			protected Class<?> findClass(String name) throws ClassNotFoundException {
-				
-				final JavaClassObject obj = objects.get(name);
-				if (obj != null) {
-					
-					byte[] b = obj.getBytes();
-					return super.defineClass(name, obj.getBytes(), 0, b.length);
-				}
-				
-				throw new ClassNotFoundException(name);
-			}
-		};
+		return new DynamicClassLoader(ClassLoader.getSystemClassLoader(), getBytes(objects));
 	}
 
 	/**
@@ -90,11 +83,175 @@ public class ClassFileManager extends ForwardingJavaFileManager {
 	 */
 	@Override
 	public JavaFileObject getJavaFileForOutput(final Location location, final String className, final Kind kind, final FileObject sibling) throws IOException {
-		
+
 		JavaClassObject obj = new JavaClassObject(className, kind);
-		
-		objects.put(className, obj);
-		
+
+		pending.put(className, obj);
+
 		return obj;
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Adds the committed classes of the given package to the class path,
+	 * so that classes which are not recompiled can be referenced by the
+	 * classes that are.
+	 *
+	 * @param location
+	 * @param packageName
+	 * @param kinds
+	 * @param recurse
+	 * @return file objects
+	 * @throws IOException
+	 */
+	@Override
+	public Iterable<JavaFileObject> list(final Location location, final String packageName, final Set<Kind> kinds, final boolean recurse) throws IOException {
+
+		final Iterable<JavaFileObject> files = super.list(location, packageName, kinds, recurse);
+
+		if (StandardLocation.CLASS_PATH.equals(location) && kinds.contains(Kind.CLASS)) {
+
+			final List<JavaFileObject> result = new LinkedList<>();
+			final String prefix               = packageName + ".";
+
+			for (final JavaClassObject obj : objects.values()) {
+
+				final String name = obj.getBinaryName();
+				if (name.startsWith(prefix) && (recurse || name.indexOf('.', prefix.length()) < 0)) {
+
+					result.add(obj);
+				}
+			}
+
+			if (!result.isEmpty()) {
+
+				for (final JavaFileObject file : files) {
+					result.add(file);
+				}
+
+				return result;
+			}
+		}
+
+		return files;
+	}
+
+	@Override
+	public String inferBinaryName(final Location location, final JavaFileObject file) {
+
+		if (file instanceof JavaClassObject) {
+			return ((JavaClassObject)file).getBinaryName();
+		}
+
+		return super.inferBinaryName(location, file);
+	}
+
+	/**
+	 * Returns a class loader for the classes written by the current
+	 * compilation and, unless they are replaced, the committed classes.
+	 * The classes are not committed, so they can still be rolled back if
+	 * they cannot be loaded.
+	 *
+	 * @param replaceAll whether to ignore all previously committed classes
+	 * @return class loader
+	 */
+	public ClassLoader getPendingClassLoader(final boolean replaceAll) {
+
+		final Map<String, byte[]> bytes = replaceAll ? new LinkedHashMap<>() : getBytes(objects);
+
+		bytes.putAll(getBytes(pending));
+
+		return new DynamicClassLoader(ClassLoader.getSystemClassLoader(), bytes);
+	}
+
+	/**
+	 * Returns the byte code of the classes written by the current
+	 * compilation.
+	 *
+	 * @return the byte code, keyed by class name
+	 */
+	public Map<String, byte[]> getPendingClasses() {
+		return getBytes(pending);
+	}
+
+	/**
+	 * Makes the classes written by the current compilation available.
+	 *
+	 * @param replaceAll whether to drop all previously committed classes
+	 */
+	public void commit(final boolean replaceAll) {
+
+		if (replaceAll) {
+			objects.clear();
+		}
+
+		objects.putAll(pending);
+		pending.clear();
+	}
+
+	/**
+	 * Adds the given byte code as committed classes, e.g. classes that
+	 * were compiled before a restart.
+	 *
+	 * @param bytes the byte code, keyed by class name
+	 * @throws IOException
+	 */
+	public void add(final Map<String, byte[]> bytes) throws IOException {
+
+		for (final Map.Entry<String, byte[]> entry : bytes.entrySet()) {
+
+			final JavaClassObject obj = new JavaClassObject(entry.getKey(), Kind.CLASS);
+
+			obj.openOutputStream().write(entry.getValue());
+
+			objects.put(entry.getKey(), obj);
+		}
+	}
+
+	/**
+	 * Returns the byte code of all committed classes.
+	 *
+	 * @return the byte code, keyed by class name
+	 */
+	public Map<String, byte[]> getClasses() {
+		return getBytes(objects);
+	}
+
+	/**
+	 * Discards the classes written by the current compilation.
+	 */
+	public void rollback() {
+		pending.clear();
+	}
+
+	/**
+	 * Removes the given class and its nested classes.
+	 *
+	 * @param className
+	 */
+	public void remove(final String className) {
+
+		final Iterator<String> iterator = objects.keySet().iterator();
+		final String nestedPrefix       = className + "$";
+
+		while (iterator.hasNext()) {
+
+			final String name = iterator.next();
+			if (name.equals(className) || name.startsWith(nestedPrefix)) {
+
+				iterator.remove();
+			}
+		}
+	}
+
+	// ----- private methods -----
+	private static Map<String, byte[]> getBytes(final Map<String, JavaClassObject> source) {
+
+		final Map<String, byte[]> bytes = new LinkedHashMap<>();
+
+		for (final Map.Entry<String, JavaClassObject> entry : source.entrySet()) {
+			bytes.put(entry.getKey(), entry.getValue().getBytes());
+		}
+
+		return bytes;
+	}
+}
@@ -0,0 +1,81 @@
+/**
+ * Copyright (C) 2010-2016 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.schema.compiler;
+
+import java.security.SecureClassLoader;
+import java.util.Map;
+
+/**
+ * A class loader for dynamic types that defines the classes it was given
+ * itself, instead of asking its parent first, and delegates all other
+ * classes to its parent.
+ *
+ * Dynamic types that were recompiled are defined in a new loader whose
+ * parent is the loader of the previous compilation, so the classes of
+ * types that did not change are resolved to the existing class objects.
+ *
+ *
+ */
+public class DynamicClassLoader extends SecureClassLoader {
+
+	private Map<String, byte[]> classes = null;
+
+	public DynamicClassLoader(final ClassLoader parent, final Map<String, byte[]> classes) {
+
+		super(parent);
+
+		this.classes = classes;
+	}
+
+	@Override
+	protected Class<?> loadClass(final String name, final boolean resolve) throws ClassNotFoundException {
+
+		if (classes.containsKey(name)) {
+
+			synchronized (getClassLoadingLock(name)) {
+
+				Class<?> type = findLoadedClass(name);
+				if (type == null) {
+
+					type = findClass(name);
+				}
+
+				if (resolve) {
+					resolveClass(type);
+				}
+
+				return type;
+			}
+		}
+
+		return super.loadClass(name, resolve);
+	}
+
+	@Override
+	protected Class<?> findClass(final String name) throws ClassNotFoundException {
+
+		final byte[] bytes = classes.get(name);
+		if (bytes != null) {
+
+			return defineClass(name, bytes, 0, bytes.length);
+		}
+
+		throw new ClassNotFoundException(name);
+	}
+}
@@ -18,8 +18,10 @@
  */
 package org.structr.schema.compiler;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URI;
 import javax.tools.SimpleJavaFileObject;
@@ -38,6 +40,8 @@ public class JavaClassObject extends SimpleJavaFileObject {
 	protected final ByteArrayOutputStream bos =
 		new ByteArrayOutputStream();
 
+	private String name = null;
+
 	/**
 	 * Registers the compiled class object under URI containing the class
 	 * full name
@@ -48,6 +52,17 @@ public class JavaClassObject extends SimpleJavaFileObject {
 	public JavaClassObject(String name, Kind kind) {
 		super(URI.create("string:///" + name.replace('.', '/')
 			+ kind.extension), kind);
+
+		this.name = name;
+	}
+
+	/**
+	 * Returns the binary name of the compiled class.
+	 *
+	 * @return the binary name
+	 */
+	public String getBinaryName() {
+		return name;
 	}
 
 	/**
@@ -69,4 +84,13 @@ public class JavaClassObject extends SimpleJavaFileObject {
 	public OutputStream openOutputStream() throws IOException {
 		return bos;
 	}
+
+	/**
+	 * Will provide the compiler with the byte code when this class is
+	 * referenced by classes that are compiled later.
+	 */
+	@Override
+	public InputStream openInputStream() throws IOException {
+		return new ByteArrayInputStream(getBytes());
+	}
 }
\ No newline at end of file
@@ -18,9 +18,12 @@
  */
 package org.structr.schema.compiler;
 
+import java.io.IOException;
 import java.io.StringWriter;
 import java.io.Writer;
-import java.util.ArrayList;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
@@ -30,21 +33,36 @@ import java.util.Set;
 import java.util.TreeMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import javax.tools.Diagnostic;
 import javax.tools.Diagnostic.Kind;
 import javax.tools.DiagnosticListener;
 import javax.tools.JavaCompiler;
-import javax.tools.JavaFileManager;
 import javax.tools.JavaFileObject;
 import javax.tools.ToolProvider;
 import org.structr.common.error.DiagnosticErrorToken;
 import org.structr.common.error.ErrorBuffer;
+import org.structr.common.error.InvalidSchemaToken;
 import org.structr.core.Services;
 import org.structr.core.app.StructrApp;
 import org.structr.module.JarConfigurationProvider;
 
 /**
+ * Compiles the Java sources of dynamic types.
+ *
+ * The sources of all types are handed over on each reload, but only types
+ * whose source changed, and the types that reference them, are compiled.
+ * Their classes are defined in a new class loader on top of the previous
+ * one, so that the classes of all other types remain valid. After
+ * NodeExtender.maxIncrementalCompilations incremental compilations (default
+ * 20), all types are compiled again to release the superseded classes.
+ *
+ * The byte code of all types is stored in a {@link ClassCache} in the
+ * directory NodeExtender.classCachePath (default: base.path/classes), so
+ * that only the types that changed while the server was not running have
+ * to be compiled on startup. Set NodeExtender.classCache to false to
+ * disable the cache.
  *
  *
  */
@@ -52,19 +70,23 @@ public class NodeExtender {
 
 	private static final Logger logger   = Logger.getLogger(NodeExtender.class.getName());
 
-	private static final JavaCompiler compiler       = ToolProvider.getSystemJavaCompiler();
-	private static final JavaFileManager fileManager = new ClassFileManager(compiler.getStandardFileManager(null, null, null));
-	private static final ClassLoader classLoader     = fileManager.getClassLoader(null);
-	private static final Map<String, Class> classes  = new TreeMap<>();
+	public static final String MAX_INCREMENTAL_COMPILATIONS = "NodeExtender.maxIncrementalCompilations";
+	public static final String CLASS_CACHE                  = "NodeExtender.classCache";
+	public static final String CLASS_CACHE_PATH             = "NodeExtender.classCachePath";
 
-	private List<JavaFileObject> jfiles  = null;
-	private Set<String> fqcns            = null;
+	private static final Pattern nonIdentifierPattern    = Pattern.compile("[^\\w$]+");
+	private static final JavaCompiler compiler           = ToolProvider.getSystemJavaCompiler();
+	private static final ClassFileManager fileManager    = new ClassFileManager(compiler.getStandardFileManager(null, null, null));
+	private static final Map<String, Class> classes      = new TreeMap<>();
+	private static final Map<String, String> sources     = new HashMap<>();
+	private static volatile ClassLoader classLoader      = fileManager.getClassLoader(null);
+	private static ClassCache classCache                 = null;
+	private static int incrementalCompilations           = 0;
 
-	public NodeExtender() {
-
-		jfiles      = new ArrayList<>();
-		fqcns       = new LinkedHashSet<>();
-	}
+	private final Map<String, JavaFileObject> jfiles     = new LinkedHashMap<>();
+	private final Map<String, String> contents           = new LinkedHashMap<>();
+	private final Set<Class> unregisteredTypes           = new LinkedHashSet<>();
+	private boolean fullCompilation                      = false;
 
 	public static ClassLoader getClassLoader() {
 		return classLoader;
@@ -80,8 +102,8 @@ public class NodeExtender {
 
 			final String packageName = JarConfigurationProvider.DYNAMIC_TYPES_PACKAGE;
 
-			jfiles.add(new CharSequenceJavaFileObject(className, content));
-			fqcns.add(packageName.concat(".".concat(className)));
+			jfiles.put(packageName.concat(".".concat(className)), new CharSequenceJavaFileObject(className, content));
+			contents.put(className, content);
 
 			if ("true".equals(Services.getInstance().getConfigurationValue("NodeExtender.log"))) {
 
@@ -91,58 +113,340 @@ public class NodeExtender {
 		}
 	}
 
+	/**
+	 * Compiles the classes whose source changed since the last compilation
+	 * and the classes that depend on them, and unregisters the previous
+	 * versions of these classes and the classes that no longer exist.
+	 * If the cached byte code of the class cache cannot be loaded after a
+	 * restart, the cache is discarded and all classes are compiled.
+	 *
+	 * @param errorBuffer
+	 * @return the new classes, keyed by fully qualified class name
+	 * @throws ClassNotFoundException
+	 */
 	public synchronized Map<String, Class> compile(final ErrorBuffer errorBuffer) throws ClassNotFoundException {
+		return compile(errorBuffer, true);
+	}
 
-		final Writer errorWriter     = new StringWriter();
-		final List<Class> newClasses = new LinkedList<>();
+	/**
+	 * Returns the previous versions of the classes that were replaced or
+	 * removed by the last call to {@link #compile}.
+	 *
+	 * @return the unregistered classes
+	 */
+	public Set<Class> getUnregisteredTypes() {
+		return unregisteredTypes;
+	}
 
-		if (!jfiles.isEmpty()) {
+	/**
+	 * Indicates whether the last call to {@link #compile} compiled all
+	 * classes.
+	 *
+	 * @return whether all classes were compiled
+	 */
+	public boolean isFullCompilation() {
+		return fullCompilation;
+	}
 
-			logger.log(Level.FINE, "Compiling {0} dynamic entities...", jfiles.size());
+	// ----- private methods -----
+	private Map<String, Class> compile(final ErrorBuffer errorBuffer, final boolean useClassCache) throws ClassNotFoundException {
 
-			Boolean success = compiler.getTask(errorWriter, fileManager, new Listener(errorBuffer), null, null, jfiles).call();
+		final String packageName         = JarConfigurationProvider.DYNAMIC_TYPES_PACKAGE;
+		final int maxIncremental         = Services.parseInt(Services.getInstance().getConfigurationValue(MAX_INCREMENTAL_COMPILATIONS), 20);
+		final Writer errorWriter         = new StringWriter();
+		final Map<String, Class> newTypes = new TreeMap<>();
+		final Set<String> changed        = new LinkedHashSet<>();
+		final Set<String> removed        = new LinkedHashSet<>();
 
-			if (success) {
+		fullCompilation = classes.isEmpty() || incrementalCompilations >= maxIncremental;
 
-				final ClassLoader loader = fileManager.getClassLoader(null);
+		// first compilation after startup, reuse the byte code of unchanged types
+		final int restored = classes.isEmpty() && useClassCache ? restoreCachedClasses() : 0;
 
-				for (final String fqcn : fqcns) {
+		for (final Map.Entry<String, String> entry : contents.entrySet()) {
 
-					try {
+			if (!entry.getValue().equals(sources.get(entry.getKey()))) {
+				changed.add(entry.getKey());
+			}
+		}
+
+		for (final String className : sources.keySet()) {
+
+			if (!contents.containsKey(className)) {
+				removed.add(className);
+			}
+		}
+
+		final Set<String> compileSet = fullCompilation && restored == 0 ? contents.keySet() : getDependentClasses(changed, removed);
+		final Set<String> loadSet    = fullCompilation ? contents.keySet() : compileSet;
+		final List<JavaFileObject> files = new LinkedList<>();
 
-						newClasses.add(loader.loadClass(fqcn));
+		for (final String className : compileSet) {
+			files.add(jfiles.get(packageName.concat(".".concat(className))));
+		}
+
+		if (!fullCompilation && files.isEmpty() && removed.isEmpty()) {
+
+			logger.log(Level.FINE, "No dynamic entities changed.");
+			return newTypes;
+		}
+
+		boolean success = true;
+
+		if (!files.isEmpty()) {
+
+			logger.log(Level.FINE, "Compiling {0} of {1} dynamic entities...", new Object[] { files.size(), contents.size() });
+
+			success = compiler.getTask(errorWriter, fileManager, new Listener(errorBuffer), null, null, files).call();
+		}
+
+		if (success) {
+
+			final boolean replaceAll = fullCompilation && restored == 0;
+			final ClassLoader loader = fullCompilation ? fileManager.getPendingClassLoader(replaceAll) : new DynamicClassLoader(classLoader, fileManager.getPendingClasses());
+
+			for (final String className : loadSet) {
 
-					} catch (Throwable t) {
+				final String fqcn = packageName.concat(".".concat(className));
 
-						logger.log(Level.WARNING, "Unable to load dynamic entity {0}: {1}", new Object[] { fqcn, t.toString() });
-						logger.log(Level.WARNING, "", t);
+				try {
 
-						success = false;
+					newTypes.put(fqcn, loader.loadClass(fqcn));
+
+				} catch (Throwable t) {
+
+					logger.log(Level.WARNING, "Unable to load dynamic entity {0}: {1}", new Object[] { fqcn, t.toString() });
+					logger.log(Level.WARNING, "", t);
+
+					// the cached byte code is discarded below, this is only an error without it
+					if (restored == 0) {
+						errorBuffer.add(new InvalidSchemaToken(className, fqcn, "unable_to_load_dynamic_entity"));
 					}
+
+					success = false;
 				}
+			}
+
+			if (success) {
+
+				// only make the byte code available once every class could be loaded
+				fileManager.commit(replaceAll);
+
+				classLoader = loader;
+
+			} else {
+
+				fileManager.rollback();
+				newTypes.clear();
+
+				if (restored > 0) {
+
+					logger.log(Level.WARNING, "Unable to load cached dynamic entities, compiling all dynamic entities.");
+
+					// do not use the cached byte code again
+					sources.clear();
+					classCache.clear();
+
+					return compile(errorBuffer, false);
+				}
+			}
+
+		} else {
+
+			fileManager.rollback();
+		}
+
+		if (success) {
+
+			final Set<String> obsolete = new LinkedHashSet<>();
+
+			if (fullCompilation) {
+
+				obsolete.addAll(classes.keySet());
+
+			} else {
+
+				obsolete.addAll(newTypes.keySet());
+
+				for (final String className : removed) {
+
+					final String fqcn = packageName.concat(".".concat(className));
+
+					fileManager.remove(fqcn);
+					obsolete.add(fqcn);
+				}
+			}
+
+			for (final String fqcn : obsolete) {
+
+				final Class oldType = classes.remove(fqcn);
+				if (oldType != null) {
+
+					StructrApp.getConfiguration().unregisterEntityType(oldType);
+					unregisteredTypes.add(oldType);
+				}
+			}
 
-				if (success) {
+			// add new classes to map
+			classes.putAll(newTypes);
 
-					for (final Class oldType : classes.values()) {
-						StructrApp.getConfiguration().unregisterEntityType(oldType);
+			// remember the sources of the compiled classes
+			sources.keySet().removeAll(removed);
+
+			for (final String className : compileSet) {
+				sources.put(className, contents.get(className));
+			}
+
+			incrementalCompilations = fullCompilation ? 0 : incrementalCompilations + 1;
+
+			logger.log(Level.INFO, "Successfully compiled {0} of {1} dynamic entities: {2}", new Object[] { compileSet.size(), contents.size(), compileSet.stream().collect(Collectors.joining(", ")) });
+
+			if (restored > 0) {
+				logger.log(Level.INFO, "Loaded {0} unchanged dynamic entities from class cache", contents.size() - compileSet.size());
+			}
+
+			if (!removed.isEmpty()) {
+				logger.log(Level.INFO, "Removed {0} dynamic entities: {1}", new Object[] { removed.size(), removed.stream().collect(Collectors.joining(", ")) });
+			}
+
+			if (!compileSet.isEmpty() || !removed.isEmpty()) {
+				writeClassCache();
+			}
+		}
+
+		return newTypes;
+	}
+
+	private static ClassCache getClassCache() {
+
+		if (classCache == null && Services.parseBoolean(Services.getInstance().getConfigurationValue(CLASS_CACHE), true)) {
+
+			final String basePath = Services.getInstance().getConfigurationValue(Services.BASE_PATH, ".");
+			final String path     = Services.getInstance().getConfigurationValue(CLASS_CACHE_PATH, basePath + "/classes");
+
+			classCache = new ClassCache(Paths.get(path));
+		}
+
+		return classCache;
+	}
+
+	/**
+	 * Adds the cached byte code of all types whose source did not change
+	 * to the file manager.
+	 *
+	 * @return the number of restored types
+	 */
+	private int restoreCachedClasses() {
+
+		final ClassCache cache = getClassCache();
+		int count              = 0;
+
+		if (cache != null) {
+
+			for (final Map.Entry<String, ClassCache.Entry> entry : cache.read().entrySet()) {
+
+				final String className = entry.getKey();
+				final String content   = contents.get(className);
+
+				if (content != null && ClassCache.hash(content).equals(entry.getValue().getHash())) {
+
+					try {
+
+						fileManager.add(entry.getValue().getClasses());
+						sources.put(className, content);
+						count++;
+
+					} catch (IOException ioex) {
+
+						logger.log(Level.WARNING, "Unable to restore cached dynamic entity {0}: {1}", new Object[] { className, ioex.getMessage() });
 					}
+				}
+			}
+		}
+
+		return count;
+	}
+
+	private void writeClassCache() {
+
+		final ClassCache cache = getClassCache();
+		if (cache != null) {
+
+			final String packageName            = JarConfigurationProvider.DYNAMIC_TYPES_PACKAGE;
+			final Map<String, byte[]> bytes     = fileManager.getClasses();
+			final Map<String, ClassCache.Entry> entries = new LinkedHashMap<>();
+
+			for (final Map.Entry<String, String> source : sources.entrySet()) {
 
-					// clear classes map
-					classes.clear();
+				final ClassCache.Entry entry = new ClassCache.Entry(ClassCache.hash(source.getValue()));
+				final String fqcn            = packageName.concat(".".concat(source.getKey()));
+				final String nestedPrefix    = fqcn + "$";
 
-					// add new classes to map
-					for (final Class newType : newClasses) {
-						classes.put(newType.getName(), newType);
+				for (final Map.Entry<String, byte[]> classEntry : bytes.entrySet()) {
+
+					final String name = classEntry.getKey();
+					if (name.equals(fqcn) || name.startsWith(nestedPrefix)) {
+
+						entry.getClasses().put(name, classEntry.getValue());
 					}
+				}
+
+				entries.put(source.getKey(), entry);
+			}
+
+			cache.write(entries);
+		}
+	}
 
-					logger.log(Level.INFO, "Successfully compiled {0} dynamic entities: {1}", new Object[] { jfiles.size(), jfiles.stream().map(f -> f.getName().replaceFirst("/", "")).collect(Collectors.joining(", ")) });
+	/**
+	 * Returns the given changed classes and all classes that reference
+	 * them or a removed class, directly or indirectly. A class references
+	 * another class if the name of the other class occurs as an identifier
+	 * in its source.
+	 */
+	private Set<String> getDependentClasses(final Set<String> changed, final Set<String> removed) {
+
+		final Map<String, Set<String>> referencingClasses = new HashMap<>();
+		final Set<String> dependentClasses                = new LinkedHashSet<>();
+		final LinkedList<String> queue                    = new LinkedList<>();
+
+		for (final Map.Entry<String, String> entry : contents.entrySet()) {
+
+			final String className = entry.getKey();
+
+			for (final String identifier : nonIdentifierPattern.split(entry.getValue())) {
+
+				if (!identifier.equals(className) && (contents.containsKey(identifier) || removed.contains(identifier))) {
+
+					referencingClasses.computeIfAbsent(identifier, k -> new LinkedHashSet<>()).add(className);
 				}
+			}
+		}
 
+		queue.addAll(changed);
+		queue.addAll(removed);
+
+		while (!queue.isEmpty()) {
+
+			final String className = queue.removeFirst();
+
+			if (contents.containsKey(className) && !dependentClasses.add(className)) {
+				continue;
 			}
 
+			final Set<String> referencing = referencingClasses.get(className);
+			if (referencing != null) {
+
+				for (final String referencingClass : referencing) {
+
+					if (!dependentClasses.contains(referencingClass)) {
+						queue.add(referencingClass);
+					}
+				}
+			}
 		}
 
-		return classes;
+		return dependentClasses;
 	}
 
 	private static class Listener implements DiagnosticListener<JavaFileObject> {
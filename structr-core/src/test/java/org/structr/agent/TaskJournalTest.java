@@ -0,0 +1,154 @@
+/**
+ * Copyright (C) 2010-2016 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.agent;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.structr.common.StructrTest;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.entity.TestOne;
+import org.structr.core.graph.Tx;
+
+/**
+ * Tests deduplication and replay of pending tasks in the {@link TaskJournal}.
+ *
+ *
+ */
+public class TaskJournalTest extends StructrTest {
+
+	private static final Logger logger = Logger.getLogger(TaskJournalTest.class.getName());
+
+	public void testDeduplicationAndReplay() {
+
+		final Path directory = Paths.get(basePath, "agent");
+
+		try (final Tx tx = app.tx()) {
+
+			final List<TestOne> nodes = createTestNodes(TestOne.class, 3);
+			final TaskJournal journal = new TaskJournal(directory, 1000);
+			final TestTask first      = new TestTask(nodes.get(0));
+			final TestTask second     = new TestTask(nodes.get(1));
+			final TestTask third      = new TestTask(nodes.get(2));
+
+			assertTrue(journal.add(first));
+			assertTrue(journal.add(second));
+			assertTrue(journal.add(third));
+
+			// identical task is ignored while the first one is waiting
+			assertFalse(journal.add(new TestTask(nodes.get(0))));
+
+			// ..and accepted again once the first one was started
+			journal.started(first);
+			assertTrue(journal.add(new TestTask(nodes.get(0))));
+
+			journal.started(second);
+			journal.finished(second);
+
+			assertEquals(3, journal.getPendingCount());
+
+			journal.close();
+
+			// reopen and replay
+			final TaskJournal reopened = new TaskJournal(directory, 1000);
+			final List<Task> restored  = reopened.restore(app);
+
+			assertEquals(3, restored.size());
+			assertEquals(nodes.get(0), restored.get(0).getNodes().get(0));
+			assertEquals(nodes.get(2), restored.get(1).getNodes().get(0));
+			assertEquals(nodes.get(0), restored.get(2).getNodes().get(0));
+
+			// restored tasks are deduplicated as well
+			assertFalse(reopened.add(new TestTask(nodes.get(2))));
+
+			for (final Task task : restored) {
+
+				reopened.started(task);
+				reopened.finished(task);
+			}
+
+			reopened.close();
+
+			assertEquals(0, new TaskJournal(directory, 1000).getPendingCount());
+
+			tx.success();
+
+		} catch (Exception ex) {
+
+			logger.log(Level.WARNING, "", ex);
+			fail("Unexpected exception");
+		}
+	}
+
+	public void testDeletedNodesAreNotReplayed() {
+
+		final Path directory = Paths.get(basePath, "agent");
+
+		try {
+
+			TestOne node = null;
+
+			try (final Tx tx = app.tx()) {
+
+				node = createTestNode(TestOne.class);
+
+				final TaskJournal journal = new TaskJournal(directory, 1000);
+
+				journal.add(new TestTask(node));
+				journal.close();
+
+				tx.success();
+			}
+
+			try (final Tx tx = app.tx()) {
+
+				app.delete(node);
+				tx.success();
+			}
+
+			try (final Tx tx = app.tx()) {
+
+				final TaskJournal journal = new TaskJournal(directory, 1000);
+
+				assertEquals(1, journal.getPendingCount());
+				assertTrue(journal.restore(app).isEmpty());
+				assertEquals(0, journal.getPendingCount());
+
+				journal.close();
+
+				tx.success();
+			}
+
+		} catch (Exception ex) {
+
+			logger.log(Level.WARNING, "", ex);
+			fail("Unexpected exception");
+		}
+	}
+
+	// ----- nested classes -----
+	public static class TestTask extends AbstractTask<TestOne> {
+
+		public TestTask(final TestOne node) {
+			super("TestTask", null, node);
+		}
+	}
+}
@@ -0,0 +1,117 @@
+/**
+ * Copyright (C) 2010-2016 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.common;
+
+import java.util.Arrays;
+import java.util.Collections;
+import junit.framework.TestCase;
+
+/**
+ *
+ *
+ */
+public class DependencyCacheTest extends TestCase {
+
+	public void testInvalidateByDependency() {
+
+		final DependencyCache<String> cache = new DependencyCache<>(100, 2);
+		final long generation               = cache.getGeneration();
+
+		cache.put("a", "valueA", generation, Arrays.asList("uuid1", "uuid2"), Arrays.asList("TYPE"));
+		cache.put("b", "valueB", generation, Arrays.asList("uuid2"), Collections.emptyList());
+		cache.put("c", "valueC", generation, Arrays.asList("uuid3"), Collections.emptyList());
+
+		assertEquals(2, cache.invalidate(0, "uuid2"));
+		assertNull(cache.get("a"));
+		assertNull(cache.get("b"));
+		assertEquals("valueC", cache.get("c"));
+
+		// the dependencies of removed entries are removed from all indexes
+		assertEquals(1, cache.getIndexSize(0));
+		assertEquals(0, cache.getIndexSize(1));
+		assertEquals(0, cache.invalidate(1, "TYPE"));
+	}
+
+	public void testReplacedEntryKeepsSharedDependencies() {
+
+		final DependencyCache<String> cache = new DependencyCache<>(100, 1);
+		final long generation               = cache.getGeneration();
+
+		cache.put("a", "value1", generation, Arrays.asList("uuid1", "uuid2"));
+		cache.put("a", "value2", generation, Arrays.asList("uuid2", "uuid3"));
+
+		assertEquals("value2", cache.get("a"));
+		assertEquals(0, cache.invalidate(0, "uuid1"));
+		assertEquals(1, cache.invalidate(0, "uuid2"));
+		assertNull(cache.get("a"));
+	}
+
+	public void testIncrementalDependencies() {
+
+		final DependencyCache<String> cache = new DependencyCache<>(100, 1);
+
+		cache.addDependency("a", 0, "uuid1");
+
+		// entries without a value are not returned
+		assertNull(cache.get("a"));
+
+		cache.addDependency("a", 0, "uuid2");
+		cache.setValue("a", "value");
+
+		assertEquals("value", cache.get("a"));
+		assertEquals(1, cache.invalidate(0, "uuid2"));
+		assertNull(cache.get("a"));
+		assertEquals(0, cache.getIndexSize(0));
+	}
+
+	public void testGenerationChange() {
+
+		final DependencyCache<String> cache = new DependencyCache<>(100, 1);
+		final long generation               = cache.getGeneration();
+
+		cache.nextGeneration();
+
+		assertFalse(cache.put("a", "value", generation, Arrays.asList("uuid1")));
+		assertNull(cache.get("a"));
+		assertEquals(0, cache.getIndexSize(0));
+	}
+
+	public void testExpiration() {
+
+		final DependencyCache<String> cache = new DependencyCache<>(100, 1);
+
+		cache.put("a", "expired", cache.getGeneration(), Arrays.asList("uuid1"));
+
+		assertNull(cache.get("a", value -> !"expired".equals(value)));
+		assertEquals(0, cache.size());
+		assertEquals(0, cache.getIndexSize(0));
+	}
+
+	public void testEvictedEntriesAreRemovedFromIndexes() {
+
+		final DependencyCache<String> cache = new DependencyCache<>(10, 1);
+
+		for (int i=0; i<100; i++) {
+			cache.put("key" + i, "value" + i, cache.getGeneration(), Arrays.asList("uuid" + i));
+		}
+
+		assertTrue(cache.size() <= 10);
+		assertEquals(cache.size(), cache.getIndexSize(0));
+	}
+}
@@ -298,4 +298,101 @@ public class GroupTest extends StructrTest {
 		}
 
 	}
+
+	public void testNestedGroupMembershipChanges() {
+
+		TestUser user1 = null;
+		TestUser user2 = null;
+		Group outer    = null;
+		Group inner    = null;
+
+		// ################################################################################################################
+		// create two users
+
+		try (final Tx tx = app.tx()) {
+
+			user1 = createTestNode(TestUser.class, "user1");
+			user2 = createTestNode(TestUser.class, "user2");
+
+			tx.success();
+
+		} catch (Throwable t) {
+
+			logger.log(Level.WARNING, "", t);
+			fail("Unexpected exception.");
+		}
+
+		final SecurityContext user1Context = SecurityContext.getInstance(user1, AccessMode.Backend);
+		final SecurityContext user2Context = SecurityContext.getInstance(user2, AccessMode.Backend);
+		final App user1App                 = StructrApp.getInstance(user1Context);
+		final App user2App                 = StructrApp.getInstance(user2Context);
+
+		// ################################################################################################################
+		// create two nested groups, the second user is a member of the inner group,
+		// and grant the outer group read access to a test object
+
+		try (final Tx tx = user1App.tx()) {
+
+			outer = user1App.create(Group.class, "outer");
+			inner = user1App.create(Group.class, "inner");
+
+			outer.addMember(inner);
+			inner.addMember(user2);
+
+			final TestOne test = user1App.create(TestOne.class, "testone");
+			test.grant(Permission.read, outer);
+
+			tx.success();
+
+		} catch (Throwable t) {
+
+			logger.log(Level.WARNING, "", t);
+			fail("Unexpected exception.");
+		}
+
+		// ################################################################################################################
+		// user2 is an indirect member of the outer group, so
+		// it should be possible to access the object
+
+		try (final Tx tx = user2App.tx()) {
+
+			assertNotNull("Object should be readable for indirect group members", user2App.nodeQuery(TestOne.class).getFirst());
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+
+			logger.log(Level.WARNING, "", fex);
+			fail("Unexpected exception.");
+		}
+
+		// ################################################################################################################
+		// remove the inner group from the outer group
+
+		try (final Tx tx = user1App.tx()) {
+
+			outer.removeMember(inner);
+			tx.success();
+
+		} catch (Throwable t) {
+
+			logger.log(Level.WARNING, "", t);
+			fail("Unexpected exception.");
+		}
+
+		// ################################################################################################################
+		// the cached group memberships of user2 must not grant access any more
+
+		try (final Tx tx = user2App.tx()) {
+
+			assertNull("Object should not be readable after the membership was removed", user2App.nodeQuery(TestOne.class).getFirst());
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+
+			logger.log(Level.WARNING, "", fex);
+			fail("Unexpected exception.");
+		}
+	}
 }
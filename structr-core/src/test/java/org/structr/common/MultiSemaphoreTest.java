@@ -0,0 +1,183 @@
+/**
+ * Copyright (C) 2010-2016 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.common;
+
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import junit.framework.TestCase;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.graph.MultiSemaphore;
+
+/**
+ *
+ *
+ */
+public class MultiSemaphoreTest extends TestCase {
+
+	public void testDisjointKeysDoNotBlock() throws Exception {
+
+		final MultiSemaphore semaphore = new MultiSemaphore(1000);
+		final ExecutorService executor = Executors.newSingleThreadExecutor();
+		final CountDownLatch acquired  = new CountDownLatch(1);
+		final CountDownLatch done      = new CountDownLatch(1);
+
+		semaphore.acquire(keys("TestOne.name"));
+
+		final Future future = executor.submit(() -> {
+
+			semaphore.acquire(keys("TestTwo.name"));
+			acquired.countDown();
+
+			done.await();
+			semaphore.release();
+
+			return null;
+		});
+
+		assertTrue("Disjoint keys should be acquired without waiting", acquired.await(500, TimeUnit.MILLISECONDS));
+
+		done.countDown();
+		future.get();
+		semaphore.release();
+
+		executor.shutdown();
+	}
+
+	public void testOpposingOrderDoesNotDeadlock() throws Exception {
+
+		final MultiSemaphore semaphore = new MultiSemaphore(5000);
+		final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+		final Future first = executor.submit(() -> {
+
+			for (int i=0; i<1000; i++) {
+
+				semaphore.acquire(keys("A.name", "B.name"));
+				semaphore.release();
+			}
+
+			return null;
+		});
+
+		final Future second = executor.submit(() -> {
+
+			for (int i=0; i<1000; i++) {
+
+				semaphore.acquire(keys("B.name", "A.name"));
+				semaphore.release();
+			}
+
+			return null;
+		});
+
+		first.get(10, TimeUnit.SECONDS);
+		second.get(10, TimeUnit.SECONDS);
+
+		executor.shutdown();
+	}
+
+	public void testTimeout() throws Exception {
+
+		final MultiSemaphore semaphore = new MultiSemaphore(100);
+		final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+		semaphore.acquire(keys("TestOne.name"));
+
+		final Future<FrameworkException> future = executor.submit(() -> {
+
+			try {
+
+				semaphore.acquire(keys("TestOne.name", "TestTwo.name"));
+
+			} catch (FrameworkException fex) {
+
+				return fex;
+			}
+
+			return null;
+		});
+
+		final FrameworkException fex = future.get();
+
+		assertNotNull("Waiting for a held key should time out", fex);
+		assertEquals(503, fex.getStatus());
+
+		semaphore.release();
+
+		// the timed out thread must not hold any keys
+		executor.submit(() -> {
+
+			semaphore.acquire(keys("TestOne.name", "TestTwo.name"));
+			semaphore.release();
+
+			return null;
+
+		}).get(1, TimeUnit.SECONDS);
+
+		final Map<String, Object> stats = (Map<String, Object>)semaphore.getStatistics().get("TestOne.name");
+
+		assertEquals(3L, stats.get("acquisitions"));
+		assertEquals(1L, stats.get("contended"));
+
+		executor.shutdown();
+	}
+
+	public void testReleaseWithoutAcquire() throws Exception {
+
+		final MultiSemaphore semaphore = new MultiSemaphore(100);
+
+		// must not add permits for keys that were never acquired
+		semaphore.release();
+
+		semaphore.acquire(keys("TestOne.name"));
+
+		final ExecutorService executor = Executors.newSingleThreadExecutor();
+		final Future<Boolean> future   = executor.submit(() -> {
+
+			try {
+
+				semaphore.acquire(keys("TestOne.name"));
+				semaphore.release();
+
+			} catch (FrameworkException fex) {
+
+				return false;
+			}
+
+			return true;
+		});
+
+		assertFalse("Key must not be acquired twice", future.get());
+
+		semaphore.release();
+		executor.shutdown();
+	}
+
+	// ----- private methods -----
+	private Set<String> keys(final String... keys) {
+		return new LinkedHashSet<>(Arrays.asList(keys));
+	}
+}
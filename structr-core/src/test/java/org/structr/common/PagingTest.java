@@ -47,12 +47,16 @@ import org.structr.core.entity.TestOne;
 
 //~--- JDK imports ------------------------------------------------------------
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Date;
 import java.util.List;
 import java.util.Random;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import org.structr.core.app.App;
 import org.structr.core.app.Query;
+import org.structr.core.app.StructrApp;
 import org.structr.core.graph.NodeInterface;
 import org.structr.core.graph.Tx;
 
@@ -183,6 +187,271 @@ public class PagingTest extends StructrTest {
 
 	}
 
+	/**
+	 * Test that hidden nodes are neither counted nor returned on any page
+	 */
+	public void test02PagingWithHiddenNodes() {
+
+		try {
+
+			final Class type                = TestOne.class;
+			final int number                = 30;
+			final int hidden                = 5;
+			final List<NodeInterface> nodes = this.createTestNodes(type, number);
+
+			try (final Tx tx = app.tx()) {
+
+				for (int i=0; i<hidden; i++) {
+					nodes.get(i).setProperty(NodeInterface.hidden, true);
+				}
+
+				tx.success();
+			}
+
+			try (final Tx tx = app.tx()) {
+
+				for (int page=1; page<=4; page++) {
+
+					final Result result = app.nodeQuery(type).includeDeletedAndHidden(false).page(page).pageSize(10).getResult();
+
+					assertEquals("Invalid raw result count", Integer.valueOf(number - hidden), result.getRawResultCount());
+					assertEquals("Invalid page size", Math.max(0, Math.min(10, number - hidden - (page - 1) * 10)), result.size());
+
+					for (final Object obj : result.getResults()) {
+						assertFalse("Hidden node must not be returned", ((NodeInterface)obj).isHidden());
+					}
+				}
+			}
+
+		} catch (FrameworkException ex) {
+
+			logger.log(Level.WARNING, "", ex);
+			fail("Unexpected exception");
+		}
+	}
+
+	/**
+	 * Test that the raw result count tells whether another page follows
+	 * if the result count is ignored
+	 */
+	public void test02PagingWithoutResultCount() {
+
+		try {
+
+			final Class type          = TestOne.class;
+			final int number          = 30;
+			final SecurityContext ctx = SecurityContext.getSuperUserInstance();
+
+			this.createTestNodes(type, number);
+
+			ctx.ignoreResultCount(true);
+
+			final App ignoreCountApp = StructrApp.getInstance(ctx);
+
+			try (final Tx tx = ignoreCountApp.tx()) {
+
+				final Result firstPage = ignoreCountApp.nodeQuery(type).page(1).pageSize(10).getResult();
+
+				assertEquals("Invalid page size", 10, firstPage.size());
+				assertEquals("Raw result count must indicate that another page follows", Integer.valueOf(11), firstPage.getRawResultCount());
+
+				final Result lastPage = ignoreCountApp.nodeQuery(type).page(3).pageSize(10).getResult();
+
+				assertEquals("Invalid page size", 10, lastPage.size());
+				assertEquals("Raw result count must indicate that no page follows", Integer.valueOf(number), lastPage.getRawResultCount());
+			}
+
+		} catch (FrameworkException ex) {
+
+			logger.log(Level.WARNING, "", ex);
+			fail("Unexpected exception");
+		}
+	}
+
+	/**
+	 * Test that cursor paging returns every node exactly once, ordered by
+	 * sort value and uuid, including nodes without a sort value
+	 */
+	public void test03CursorPaging() {
+
+		try {
+
+			final Class type                = TestOne.class;
+			final int number                = 43;
+			final List<NodeInterface> nodes = this.createTestNodes(type, number);
+
+			try (final Tx tx = app.tx()) {
+
+				// many equal values, some nodes without a value
+				for (int i=0; i<number; i++) {
+
+					if (i % 10 != 0) {
+						nodes.get(i).setProperty(TestOne.anInt, i % 4);
+					}
+				}
+
+				tx.success();
+			}
+
+			for (final boolean descending : new boolean[] { false, true }) {
+
+				try (final Tx tx = app.tx()) {
+
+					final List<NodeInterface> expected = new ArrayList<>(nodes);
+					final List<NodeInterface> actual   = new ArrayList<>();
+					String cursor                      = "";
+					int pages                          = 0;
+
+					Collections.sort(expected, (a, b) -> PageCursor.compare(a.getProperty(TestOne.anInt), a.getUuid(), b.getProperty(TestOne.anInt), b.getUuid(), descending));
+
+					while (cursor != null) {
+
+						final Result result = app.nodeQuery(type).sort(TestOne.anInt).order(descending).pageSize(5).pageCursor(cursor).getResult();
+
+						assertTrue("Page must not be larger than page size", result.size() <= 5);
+
+						actual.addAll(result.getResults());
+						cursor = result.getNextCursor();
+
+						assertTrue("Too many pages", ++pages <= number);
+					}
+
+					assertEquals("Cursor paging must return all nodes in sort order", expected, actual);
+				}
+			}
+
+			// a cursor must not be used with a different sort order
+			try (final Tx tx = app.tx()) {
+
+				final String cursor = app.nodeQuery(type).sort(TestOne.anInt).pageSize(5).pageCursor("").getResult().getNextCursor();
+
+				app.nodeQuery(type).sort(TestOne.anInt).order(true).pageSize(5).pageCursor(cursor).getResult();
+				fail("Cursor with different sort order must be rejected");
+
+			} catch (FrameworkException fex) {
+
+				assertEquals(400, fex.getStatus());
+			}
+
+		} catch (FrameworkException ex) {
+
+			logger.log(Level.WARNING, "", ex);
+			fail("Unexpected exception");
+		}
+	}
+
+	/**
+	 * Test that cursor paging by a date key returns every node exactly
+	 * once if the dates differ by less than a second
+	 */
+	public void test04CursorPagingByDate() {
+
+		try {
+
+			final Class type                = TestOne.class;
+			final int number                = 37;
+			final List<NodeInterface> nodes = this.createTestNodes(type, number);
+			final long base                 = 1400000000000L;
+
+			try (final Tx tx = app.tx()) {
+
+				// two nodes per date, dates 150 ms apart, some nodes without a date
+				for (int i=0; i<number; i++) {
+
+					if (i % 9 != 0) {
+						nodes.get(i).setProperty(TestOne.aDate, new Date(base + (i / 2) * 150L));
+					}
+				}
+
+				tx.success();
+			}
+
+			for (final boolean descending : new boolean[] { false, true }) {
+
+				try (final Tx tx = app.tx()) {
+
+					final List<NodeInterface> expected = new ArrayList<>(nodes);
+					final List<NodeInterface> actual   = new ArrayList<>();
+					String cursor                      = "";
+					int pages                          = 0;
+
+					Collections.sort(expected, (a, b) -> PageCursor.compare(a.getProperty(TestOne.aDate), a.getUuid(), b.getProperty(TestOne.aDate), b.getUuid(), descending));
+
+					while (cursor != null) {
+
+						final Result result = app.nodeQuery(type).sort(TestOne.aDate).order(descending).pageSize(4).pageCursor(cursor).getResult();
+
+						assertTrue("Page must not be larger than page size", result.size() <= 4);
+
+						actual.addAll(result.getResults());
+						cursor = result.getNextCursor();
+
+						assertTrue("Too many pages", ++pages <= number);
+					}
+
+					assertEquals("Cursor paging by date must return all nodes in sort order", expected, actual);
+				}
+			}
+
+		} catch (FrameworkException ex) {
+
+			logger.log(Level.WARNING, "", ex);
+			fail("Unexpected exception");
+		}
+	}
+
+	/**
+	 * Test that cursor paging does not return a cursor to an empty page
+	 * if no node lacks a sort value and the last page is full
+	 */
+	public void test05CursorPagingWithoutEmptyValues() {
+
+		try {
+
+			final Class type                = TestOne.class;
+			final int number                = 20;
+			final List<NodeInterface> nodes = this.createTestNodes(type, number);
+
+			try (final Tx tx = app.tx()) {
+
+				for (int i=0; i<number; i++) {
+					nodes.get(i).setProperty(TestOne.anInt, i);
+				}
+
+				tx.success();
+			}
+
+			for (final boolean descending : new boolean[] { false, true }) {
+
+				try (final Tx tx = app.tx()) {
+
+					String cursor = "";
+					int pages     = 0;
+					int count     = 0;
+
+					while (cursor != null) {
+
+						final Result result = app.nodeQuery(type).sort(TestOne.anInt).order(descending).pageSize(5).pageCursor(cursor).getResult();
+
+						assertEquals("Cursor paging must not return empty pages", 5, result.size());
+
+						count += result.size();
+						cursor = result.getNextCursor();
+
+						assertTrue("Too many pages", ++pages <= 4);
+					}
+
+					assertEquals("Cursor paging must return all nodes", number, count);
+				}
+			}
+
+		} catch (FrameworkException ex) {
+
+			logger.log(Level.WARNING, "", ex);
+			fail("Unexpected exception");
+		}
+	}
+
 	protected void testPaging(final Class type, final int pageSize, final int page, final int number, final int offset, final boolean includeDeletedAndHidden, final boolean publicOnly, final PropertyKey sortKey, final boolean sortDesc) throws FrameworkException {
 
 		final Query query = app.nodeQuery(type).sort(sortKey).order(sortDesc).page(page).pageSize(pageSize);
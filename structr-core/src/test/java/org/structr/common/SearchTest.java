@@ -41,6 +41,8 @@ import org.structr.common.error.FrameworkException;
 import org.structr.core.Result;
 import org.structr.core.entity.AbstractNode;
 import org.structr.core.entity.TestOne;
+import org.structr.core.entity.TestSix;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -389,4 +391,100 @@ public class SearchTest extends StructrTest {
 		}
 
 	}
+
+	public void test07SearchByRelatedNodesAndProperty() {
+
+		try {
+
+			final List<TestOne> related = createTestNodes(TestOne.class, 150);
+			final List<TestOne> other   = createTestNodes(TestOne.class, 30);
+			TestSix testSix             = null;
+
+			try (final Tx tx = app.tx()) {
+
+				testSix = app.create(TestSix.class);
+
+				for (int i=0; i<related.size(); i++) {
+					related.get(i).setProperty(TestOne.anInt, i % 3);
+				}
+
+				for (final TestOne testOne : other) {
+					testOne.setProperty(TestOne.anInt, 0);
+				}
+
+				testSix.setProperty(TestSix.manyToManyTestOnes, related);
+
+				tx.success();
+			}
+
+			try (final Tx tx = app.tx()) {
+
+				final List<TestOne> result = app.nodeQuery(TestOne.class).and(TestOne.manyToManyTestSixs, Arrays.asList(testSix)).and(TestOne.anInt, 0).getAsList();
+
+				assertEquals("Invalid search result for related nodes and property", 50, result.size());
+
+				for (final TestOne testOne : result) {
+
+					assertEquals(Integer.valueOf(0), testOne.getProperty(TestOne.anInt));
+					assertTrue(related.contains(testOne));
+				}
+
+				tx.success();
+			}
+
+		} catch (FrameworkException ex) {
+
+			logger.log(Level.SEVERE, ex.toString());
+			fail("Unexpected exception");
+		}
+	}
+
+	public void test08SearchByRelatedNodesAndUnindexedProperty() {
+
+		try {
+
+			final List<TestOne> related = createTestNodes(TestOne.class, 150);
+			final List<TestOne> other   = createTestNodes(TestOne.class, 30);
+			TestSix testSix             = null;
+
+			try (final Tx tx = app.tx()) {
+
+				testSix = app.create(TestSix.class);
+
+				for (int i=0; i<related.size(); i++) {
+					related.get(i).setProperty(TestOne.anotherString, i % 3 == 0 ? "match" : "nomatch");
+				}
+
+				for (final TestOne testOne : other) {
+					testOne.setProperty(TestOne.anotherString, "match");
+				}
+
+				testSix.setProperty(TestSix.manyToManyTestOnes, related);
+
+				tx.success();
+			}
+
+			try (final Tx tx = app.tx()) {
+
+				// more than 100 related nodes, but the property is not indexed,
+				// so the related nodes must be filtered in memory
+				final List<TestOne> result = app.nodeQuery(TestOne.class).and(TestOne.manyToManyTestSixs, Arrays.asList(testSix)).and(TestOne.anotherString, "match").getAsList();
+
+				assertEquals("Invalid search result for related nodes and unindexed property", 50, result.size());
+
+				for (final TestOne testOne : result) {
+
+					assertEquals("match", testOne.getProperty(TestOne.anotherString));
+					assertTrue(related.contains(testOne));
+				}
+
+				tx.success();
+			}
+
+		} catch (FrameworkException ex) {
+
+			logger.log(Level.SEVERE, ex.toString());
+			fail("Unexpected exception");
+		}
+	}
 }
@@ -42,6 +42,7 @@ import org.structr.common.error.FrameworkException;
 import org.structr.core.Result;
 import org.structr.core.entity.AbstractNode;
 import org.structr.core.entity.TestOne;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.Iterator;
@@ -583,4 +584,54 @@ public class SortingTest extends StructrTest {
 
 	}
 
+	public void test08SortedPageMatchesFullSort() {
+
+		try {
+
+			final List<TestOne> nodes = createTestNodes(TestOne.class, 60);
+			final Random random       = new Random(42);
+
+			try (final Tx tx = app.tx()) {
+
+				for (int i=0; i<nodes.size(); i++) {
+
+					// duplicates and null values to check stability
+					if (i % 7 != 0) {
+						nodes.get(i).setProperty(TestOne.anInt, random.nextInt(20));
+					}
+				}
+
+				tx.success();
+			}
+
+			try (final Tx tx = app.tx()) {
+
+				for (final boolean desc : new boolean[] { false, true }) {
+
+					final List<TestOne> sorted = new ArrayList<>(nodes);
+
+					Collections.sort(sorted, new GraphObjectComparator(TestOne.anInt, desc));
+
+					for (int pageSize=1; pageSize<=25; pageSize+=4) {
+
+						for (int page=1; page<=(nodes.size() / pageSize) + 1; page++) {
+
+							final List expected = PagingHelper.subList(sorted, pageSize, page, null);
+							final List actual   = PagingHelper.sortedSubList(nodes, TestOne.anInt, desc, pageSize, page, null);
+
+							assertEquals("Invalid sorted page " + page + " with page size " + pageSize, expected, actual);
+						}
+					}
+				}
+
+				tx.success();
+			}
+
+		} catch (FrameworkException ex) {
+
+			logger.log(Level.SEVERE, ex.toString());
+			fail("Unexpected exception");
+
+		}
+	}
 }
@@ -395,6 +395,11 @@ public class StructrTest extends TestCase {
 		config.setProperty(Services.SUPERUSER_USERNAME, "superadmin");
 		config.setProperty(Services.SUPERUSER_PASSWORD, "sehrgeheim");
 
+		// allow the test suite to run against a different database driver, e.g. -Ddatabase.driver=org.structr.memory.MemoryDatabaseService
+		if (System.getProperty(Structr.DATABASE_DRIVER) != null) {
+			config.setProperty(Structr.DATABASE_DRIVER, System.getProperty(Structr.DATABASE_DRIVER));
+		}
+
 		if (additionalConfig != null) {
 			config.putAll(additionalConfig);
 		}
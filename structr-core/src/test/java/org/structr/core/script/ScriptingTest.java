@@ -20,6 +20,7 @@ package org.structr.core.script;
 
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import static junit.framework.TestCase.assertEquals;
@@ -90,6 +91,102 @@ public class ScriptingTest extends StructrTest {
 		}
 	}
 
+	public void testJavascriptScopeIsolation() {
+
+		try (final Tx tx = app.tx()) {
+
+			final ActionContext actionContext = new ActionContext(securityContext);
+			final TestOne test                = createTestNode(TestOne.class);
+			final String script               = "${{ if (typeof leaked === 'undefined') { leaked = 1; return 'fresh'; } return 'leaked'; }}";
+
+			// the compiled script is executed again, but global variables must not survive
+			assertEquals("Invalid JavaScript evaluation result", "fresh", Scripting.replaceVariables(actionContext, test, script));
+			assertEquals("Invalid JavaScript evaluation result", "fresh", Scripting.replaceVariables(actionContext, test, script));
+
+			// standard objects are shared
+			assertEquals("Invalid JavaScript evaluation result", "123",   Scripting.replaceVariables(actionContext, test, "${{ return [1, 2, 3].join(''); }}"));
+
+			boolean found = false;
+
+			for (final Map<String, Object> statistics : Scripting.getScriptStatistics()) {
+
+				if (script.contains((String)statistics.get("source"))) {
+
+					assertEquals("Invalid script statistics", 2L, statistics.get("executions"));
+					found = true;
+				}
+			}
+
+			assertTrue("Script statistics missing", found);
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+
+			logger.log(Level.WARNING, "", fex);
+			fail("Unexpected exception.");
+		}
+	}
+
+	public void testSharedScopeIsSealed() {
+
+		try (final Tx tx = app.tx()) {
+
+			final ActionContext actionContext = new ActionContext(securityContext);
+			final TestOne test                = createTestNode(TestOne.class);
+
+			try {
+
+				// built-in objects of the shared scope cannot be modified
+				Scripting.replaceVariables(actionContext, test, "${{ Array.prototype.sealedTest = function() { return 'modified'; }; return 'ok'; }}");
+				fail("Modification of the shared scope should not be possible.");
+
+			} catch (FrameworkException fex) {
+
+				assertEquals("Invalid status code", 422, fex.getStatus());
+			}
+
+			assertEquals("Invalid JavaScript evaluation result", "undefined", Scripting.replaceVariables(actionContext, test, "${{ return typeof [].sealedTest; }}"));
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+
+			logger.log(Level.WARNING, "", fex);
+			fail("Unexpected exception.");
+		}
+	}
+
+	public void testRepeatedEvaluation() {
+
+		try (final Tx tx = app.tx()) {
+
+			final ActionContext actionContext = new ActionContext(securityContext);
+			final TestOne test                = createTestNode(TestOne.class);
+
+			test.setProperty(TestOne.anInt   , 1);
+			test.setProperty(TestOne.aString , "${this.anInt}");
+
+			// values that contain script source must not be evaluated again
+			assertEquals("Invalid template rendering result", "${this.anInt}-1",     Scripting.replaceVariables(actionContext, test, "${this.aString}-${this.anInt}"));
+			assertEquals("Invalid template rendering result", "1, 1 and 1",          Scripting.replaceVariables(actionContext, test, "${this.anInt}, ${this.anInt} and ${this.anInt}"));
+
+			// cached templates and expressions must use the current values
+			test.setProperty(TestOne.anInt, 2);
+
+			assertEquals("Invalid template rendering result", "${this.anInt}-2",     Scripting.replaceVariables(actionContext, test, "${this.aString}-${this.anInt}"));
+			assertEquals("Invalid template rendering result", "2, 2 and 2",          Scripting.replaceVariables(actionContext, test, "${this.anInt}, ${this.anInt} and ${this.anInt}"));
+			assertEquals("Invalid template rendering result", "no scripts",          Scripting.replaceVariables(actionContext, test, "no scripts"));
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+
+			logger.log(Level.WARNING, "", fex);
+			fail("Unexpected exception.");
+		}
+	}
+
 	private void testExtraction(final String source) {
 
 		final List<String> scripts = Scripting.extractScripts(source);
@@ -18,6 +18,7 @@
  */
 package org.structr.api.index;
 
+import java.util.Collection;
 import org.structr.api.QueryResult;
 import org.structr.api.search.QueryPredicate;
 
@@ -28,6 +29,26 @@ public interface Index<T> {
 
 	void add(final T t, final String key, final Object value, final Class typeHint);
 
+	/**
+	 * Replaces all values of the given key for the given entity with the
+	 * given values in a single operation. Indexes that can write a batch
+	 * of values more efficiently than single values should override this
+	 * method.
+	 *
+	 * @param t
+	 * @param key
+	 * @param values
+	 * @param typeHint
+	 */
+	default void replace(final T t, final String key, final Collection<?> values, final Class typeHint) {
+
+		remove(t, key);
+
+		for (final Object value : values) {
+			add(t, key, value, typeHint);
+		}
+	}
+
 	void remove(final T t);
 	void remove(final T t, final String key);
 
@@ -0,0 +1,274 @@
+/**
+ * Copyright (C) 2010-2016 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.api.util;
+
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Predicate;
+
+/**
+ * A fixed-capacity open-addressing table with CLOCK eviction, used as a
+ * segment of {@link ConcurrentLongCache} and
+ * {@link ConcurrentFixedSizeCache}. The table is allocated once with a
+ * load factor of at most 0.5 and is never resized.
+ *
+ * Subclasses store the keys and implement lookup and insertion with the
+ * lock of the segment. The protected methods that modify the table must
+ * be called with the write lock held.
+ *
+ * @param <V>
+ */
+abstract class ClockSegment<V> {
+
+	protected final StampedLock lock = new StampedLock();
+	protected Object[] values        = null;
+	protected boolean[] referenced   = null;
+	protected int capacity           = 0;
+	protected int mask               = 0;
+	protected int size               = 0;
+	protected int hand               = 0;
+
+	ClockSegment(final int capacity) {
+
+		int tableSize = 2;
+
+		while (tableSize < capacity * 2) {
+			tableSize <<= 1;
+		}
+
+		this.values     = new Object[tableSize];
+		this.referenced = new boolean[tableSize];
+		this.mask       = tableSize - 1;
+		this.capacity   = capacity;
+	}
+
+	/**
+	 * Returns the slot the key at the given index hashes to.
+	 *
+	 * @param index
+	 * @return the ideal slot of the key
+	 */
+	protected abstract int idealSlot(final int index);
+
+	/**
+	 * Moves the key at the given index to another index.
+	 *
+	 * @param from
+	 * @param to
+	 */
+	protected abstract void moveKey(final int from, final int to);
+
+	/**
+	 * Releases the key at the given index.
+	 *
+	 * @param index
+	 */
+	protected abstract void clearKey(final int index);
+
+	void removeValues(final Predicate<V> predicate) {
+
+		final long stamp = lock.writeLock();
+		try {
+
+			int index = 0;
+
+			while (index < values.length) {
+
+				final Object value = values[index];
+				if (value != null && predicate.test((V)value)) {
+
+					// deletion shifts the following entries back into
+					// this slot, so it must be examined again
+					delete(index);
+
+				} else {
+
+					index++;
+				}
+			}
+
+		} finally {
+
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	void clear() {
+
+		final long stamp = lock.writeLock();
+		try {
+
+			for (int i=0; i<values.length; i++) {
+
+				clearKey(i);
+
+				values[i]     = null;
+				referenced[i] = false;
+			}
+
+			size = 0;
+			hand = 0;
+
+		} finally {
+
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the number of segments for a cache of the given size. The
+	 * number is a power of two and does not exceed the number of entries.
+	 *
+	 * @param maxSize
+	 * @param concurrencyLevel
+	 * @return the number of segments
+	 */
+	static int segmentCount(final int maxSize, final int concurrencyLevel) {
+
+		int segmentCount = 1;
+
+		while (segmentCount < concurrencyLevel && segmentCount < maxSize) {
+			segmentCount <<= 1;
+		}
+
+		return segmentCount;
+	}
+
+	/**
+	 * Returns the capacity of the given segment, so that the capacities of
+	 * all segments add up to the size of the cache.
+	 *
+	 * @param maxSize
+	 * @param segmentCount
+	 * @param segment
+	 * @return the capacity of the segment
+	 */
+	static int segmentCapacity(final int maxSize, final int segmentCount, final int segment) {
+		return Math.max(1, maxSize / segmentCount + (segment < maxSize % segmentCount ? 1 : 0));
+	}
+
+	static long hash(final long key) {
+
+		// mix the bits so sequential ids are spread over segments and slots
+		long h = key * 0x9E3779B97F4A7C15L;
+		return h ^ (h >>> 29);
+	}
+
+	// ----- protected methods -----
+	protected int slot(final long hash) {
+		return (int)hash & mask;
+	}
+
+	/**
+	 * Stores the given value in the first free slot for the given hash as
+	 * a new entry, evicting another entry first if the segment is full.
+	 * The caller stores the key at the returned index.
+	 *
+	 * @param hash
+	 * @param value
+	 * @param evicted receives the evicted value, may be null
+	 * @return the index of the new entry
+	 */
+	protected int insert(final long hash, final V value, final Evicted<V> evicted) {
+
+		if (size >= capacity) {
+
+			final int victim = nextVictim();
+
+			if (evicted != null) {
+				evicted.value = (V)values[victim];
+			}
+
+			delete(victim);
+		}
+
+		int index = slot(hash);
+		while (values[index] != null) {
+			index = (index + 1) & mask;
+		}
+
+		values[index]     = value;
+		referenced[index] = false;
+		size++;
+
+		return index;
+	}
+
+	protected void delete(int index) {
+
+		// backward-shift deletion keeps probe sequences intact without tombstones
+		int next = (index + 1) & mask;
+
+		while (values[next] != null) {
+
+			final int ideal = idealSlot(next);
+
+			if (((next - ideal) & mask) >= ((next - index) & mask)) {
+
+				moveKey(next, index);
+
+				values[index]     = values[next];
+				referenced[index] = referenced[next];
+				index             = next;
+			}
+
+			next = (next + 1) & mask;
+		}
+
+		clearKey(index);
+
+		values[index]     = null;
+		referenced[index] = false;
+		size--;
+	}
+
+	// ----- private methods -----
+	private int nextVictim() {
+
+		// advance the clock hand, giving referenced entries a second chance
+		while (true) {
+
+			hand = (hand + 1) & mask;
+
+			if (values[hand] != null) {
+
+				if (referenced[hand]) {
+
+					referenced[hand] = false;
+
+				} else {
+
+					return hand;
+				}
+			}
+		}
+	}
+
+	// ----- nested classes -----
+	/**
+	 * Receives the value that was evicted by an insertion.
+	 */
+	static class Evicted<V> {
+
+		V value = null;
+	}
+}
@@ -0,0 +1,411 @@
+/**
+ * Copyright (C) 2010-2016 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.api.util;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * A bounded cache for concurrent access without a global lock.
+ *
+ * This is the counterpart of {@link ConcurrentLongCache} for arbitrary
+ * keys and uses the same segments: lookups use optimistic reads and do
+ * not block each other, writers only lock the segment they modify, and
+ * each segment evicts with the CLOCK algorithm.
+ *
+ * Keys must be immutable, null keys and values are not supported.
+ *
+ * @param <K>
+ * @param <V>
+ */
+public class ConcurrentFixedSizeCache<K, V> {
+
+	private final LongAdder evictions    = new LongAdder();
+	private final LongAdder misses       = new LongAdder();
+	private final LongAdder hits         = new LongAdder();
+	private Consumer<V> evictionListener = null;
+	private Segment<K, V>[] segments     = null;
+	private int segmentMask              = 0;
+	private int maxSize                  = 0;
+
+	public ConcurrentFixedSizeCache(final int maxSize) {
+		this(maxSize, null);
+	}
+
+	/**
+	 * Creates a cache that calls the given listener with every value that
+	 * is evicted to make room for a new entry. The listener is called after
+	 * the entry has been removed, outside of the lock of its segment.
+	 *
+	 * @param maxSize
+	 * @param evictionListener
+	 */
+	public ConcurrentFixedSizeCache(final int maxSize, final Consumer<V> evictionListener) {
+		this(maxSize, Runtime.getRuntime().availableProcessors() * 4, evictionListener);
+	}
+
+	public ConcurrentFixedSizeCache(final int maxSize, final int concurrencyLevel, final Consumer<V> evictionListener) {
+
+		final int size         = Math.max(1, maxSize);
+		final int segmentCount = ClockSegment.segmentCount(size, concurrencyLevel);
+
+		this.evictionListener = evictionListener;
+		this.segments         = new Segment[segmentCount];
+		this.segmentMask      = segmentCount - 1;
+		this.maxSize          = size;
+
+		for (int i=0; i<segmentCount; i++) {
+			segments[i] = new Segment<>(ClockSegment.segmentCapacity(size, segmentCount, i));
+		}
+	}
+
+	public V get(final K key) {
+
+		final long hash = hash(key);
+		final V value   = segmentFor(hash).get(key, hash);
+
+		if (value != null) {
+
+			hits.increment();
+
+		} else {
+
+			misses.increment();
+		}
+
+		return value;
+	}
+
+	/**
+	 * Stores the given value and returns the value that was cached for the
+	 * key before, or null.
+	 *
+	 * @param key
+	 * @param value
+	 * @return the previous value
+	 */
+	public V put(final K key, final V value) {
+		return put(key, value, false);
+	}
+
+	/**
+	 * Stores the given value unless the key is already present, and
+	 * returns the value that is cached for the key afterwards.
+	 *
+	 * @param key
+	 * @param value
+	 * @return the cached value
+	 */
+	public V putIfAbsent(final K key, final V value) {
+
+		final V existing = put(key, value, true);
+
+		return existing != null ? existing : value;
+	}
+
+	public V remove(final K key) {
+
+		final long hash = hash(key);
+		return segmentFor(hash).remove(key, hash, null);
+	}
+
+	/**
+	 * Removes the entry for the given key if it is mapped to the given
+	 * value.
+	 *
+	 * @param key
+	 * @param value
+	 * @return whether the entry was removed
+	 */
+	public boolean remove(final K key, final V value) {
+
+		final long hash = hash(key);
+		return segmentFor(hash).remove(key, hash, value) != null;
+	}
+
+	public void clear() {
+
+		for (final Segment<K, V> segment : segments) {
+			segment.clear();
+		}
+	}
+
+	public int size() {
+
+		int size = 0;
+
+		for (final Segment<K, V> segment : segments) {
+			size += segment.size();
+		}
+
+		return size;
+	}
+
+	/**
+	 * Returns a copy of the values in this cache.
+	 *
+	 * @return the cached values
+	 */
+	public List<V> values() {
+
+		final List<V> values = new ArrayList<>();
+
+		for (final Segment<K, V> segment : segments) {
+			segment.addValues(values);
+		}
+
+		return values;
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	public long getHitCount() {
+		return hits.sum();
+	}
+
+	public long getMissCount() {
+		return misses.sum();
+	}
+
+	public long getEvictionCount() {
+		return evictions.sum();
+	}
+
+	/**
+	 * Returns size, hit, miss and eviction counts of this cache.
+	 *
+	 * @return a map of statistics
+	 */
+	public Map<String, Object> getStatistics() {
+
+		final Map<String, Object> stats = new LinkedHashMap<>();
+		final long hitCount             = getHitCount();
+		final long missCount            = getMissCount();
+		final long total                = hitCount + missCount;
+
+		stats.put("size",      size());
+		stats.put("maxSize",   maxSize);
+		stats.put("hits",      hitCount);
+		stats.put("misses",    missCount);
+		stats.put("evictions", getEvictionCount());
+		stats.put("hitRate",   total > 0 ? (double)hitCount / (double)total : 0.0);
+
+		return stats;
+	}
+
+	// ----- private methods -----
+	private V put(final K key, final V value, final boolean onlyIfAbsent) {
+
+		if (value == null) {
+			throw new IllegalArgumentException("Null values are not supported");
+		}
+
+		final ClockSegment.Evicted<V> evicted = new ClockSegment.Evicted<>();
+		final long hash                       = hash(key);
+		final V previous                      = segmentFor(hash).put(key, hash, value, onlyIfAbsent, evicted);
+
+		if (evicted.value != null) {
+
+			evictions.increment();
+
+			if (evictionListener != null) {
+				evictionListener.accept(evicted.value);
+			}
+		}
+
+		return previous;
+	}
+
+	private Segment<K, V> segmentFor(final long hash) {
+		return segments[(int)(hash >>> 40) & segmentMask];
+	}
+
+	private static long hash(final Object key) {
+		return ClockSegment.hash(key.hashCode());
+	}
+
+	// ----- nested classes -----
+	/**
+	 * A segment with object keys.
+	 */
+	private static class Segment<K, V> extends ClockSegment<V> {
+
+		private Object[] keys = null;
+
+		Segment(final int capacity) {
+
+			super(capacity);
+
+			this.keys = new Object[values.length];
+		}
+
+		V get(final K key, final long hash) {
+
+			long stamp = lock.tryOptimisticRead();
+			int index  = find(key, hash);
+			V value    = index >= 0 ? (V)values[index] : null;
+
+			if (!lock.validate(stamp)) {
+
+				stamp = lock.readLock();
+				try {
+
+					index = find(key, hash);
+					value = index >= 0 ? (V)values[index] : null;
+
+				} finally {
+
+					lock.unlockRead(stamp);
+				}
+			}
+
+			if (index >= 0) {
+
+				// benign race: a lost update only affects eviction order
+				referenced[index] = true;
+			}
+
+			return value;
+		}
+
+		V put(final K key, final long hash, final V value, final boolean onlyIfAbsent, final Evicted<V> evicted) {
+
+			final long stamp = lock.writeLock();
+			try {
+
+				int index = find(key, hash);
+				if (index >= 0) {
+
+					final V previous = (V)values[index];
+
+					if (!onlyIfAbsent) {
+
+						values[index]     = value;
+						referenced[index] = true;
+					}
+
+					return previous;
+				}
+
+				index = insert(hash, value, evicted);
+				keys[index] = key;
+
+				return null;
+
+			} finally {
+
+				lock.unlockWrite(stamp);
+			}
+		}
+
+		/**
+		 * Removes the entry for the given key, if it is mapped to the
+		 * given value or if the given value is null, and returns the
+		 * removed value.
+		 */
+		V remove(final K key, final long hash, final V expected) {
+
+			final long stamp = lock.writeLock();
+			try {
+
+				final int index = find(key, hash);
+				if (index >= 0) {
+
+					final V value = (V)values[index];
+
+					if (expected == null || expected.equals(value)) {
+
+						delete(index);
+
+						return value;
+					}
+				}
+
+				return null;
+
+			} finally {
+
+				lock.unlockWrite(stamp);
+			}
+		}
+
+		void addValues(final List<V> list) {
+
+			final long stamp = lock.readLock();
+			try {
+
+				for (final Object value : values) {
+
+					if (value != null) {
+						list.add((V)value);
+					}
+				}
+
+			} finally {
+
+				lock.unlockRead(stamp);
+			}
+		}
+
+		@Override
+		protected int idealSlot(final int index) {
+			return slot(ConcurrentFixedSizeCache.hash(keys[index]));
+		}
+
+		@Override
+		protected void moveKey(final int from, final int to) {
+			keys[to] = keys[from];
+		}
+
+		@Override
+		protected void clearKey(final int index) {
+			keys[index] = null;
+		}
+
+		// ----- private methods -----
+		private int find(final K key, final long hash) {
+
+			int index = slot(hash);
+
+			// bounded by the table size so that a concurrent modification
+			// seen by an optimistic read cannot cause an endless loop
+			for (int i=0; i<=mask; i++) {
+
+				final Object value = values[index];
+				if (value == null) {
+					return -1;
+				}
+
+				if (key.equals(keys[index])) {
+					return index;
+				}
+
+				index = (index + 1) & mask;
+			}
+
+			return -1;
+		}
+	}
+}
@@ -0,0 +1,307 @@
+/**
+ * Copyright (C) 2010-2016 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.api.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * A bounded cache with primitive long keys for highly concurrent access.
+ *
+ * The key space is split into independently locked segments. Lookups use
+ * optimistic reads and do not block each other, writers only lock the
+ * segment they modify. Each segment evicts with the CLOCK algorithm, an
+ * approximation of LRU that only needs to set a reference flag on a hit.
+ *
+ * @param <V>
+ */
+public class ConcurrentLongCache<V> {
+
+	private final LongAdder evictions = new LongAdder();
+	private final LongAdder misses    = new LongAdder();
+	private final LongAdder hits      = new LongAdder();
+	private Segment<V>[] segments     = null;
+	private int segmentMask           = 0;
+	private int maxSize               = 0;
+
+	public ConcurrentLongCache(final int maxSize) {
+		this(maxSize, Runtime.getRuntime().availableProcessors() * 4);
+	}
+
+	public ConcurrentLongCache(final int maxSize, final int concurrencyLevel) {
+
+		// do not create more segments than entries
+		final int segmentCount = ClockSegment.segmentCount(maxSize, concurrencyLevel);
+
+		this.segments    = new Segment[segmentCount];
+		this.segmentMask = segmentCount - 1;
+		this.maxSize     = maxSize;
+
+		for (int i=0; i<segmentCount; i++) {
+			segments[i] = new Segment<>(ClockSegment.segmentCapacity(maxSize, segmentCount, i));
+		}
+	}
+
+	public V get(final long key) {
+
+		final long hash = hash(key);
+		final V value   = segmentFor(hash).get(key, hash);
+
+		if (value != null) {
+
+			hits.increment();
+
+		} else {
+
+			misses.increment();
+		}
+
+		return value;
+	}
+
+	public void put(final long key, final V value) {
+
+		if (value == null) {
+			throw new IllegalArgumentException("Null values are not supported");
+		}
+
+		final long hash = hash(key);
+
+		if (segmentFor(hash).put(key, hash, value)) {
+			evictions.increment();
+		}
+	}
+
+	public void remove(final long key) {
+
+		final long hash = hash(key);
+		segmentFor(hash).remove(key, hash);
+	}
+
+	/**
+	 * Removes all entries whose value matches the given predicate.
+	 *
+	 * @param predicate
+	 */
+	public void removeValues(final Predicate<V> predicate) {
+
+		for (final Segment<V> segment : segments) {
+			segment.removeValues(predicate);
+		}
+	}
+
+	public void clear() {
+
+		for (final Segment<V> segment : segments) {
+			segment.clear();
+		}
+	}
+
+	public int size() {
+
+		int size = 0;
+
+		for (final Segment<V> segment : segments) {
+			size += segment.size();
+		}
+
+		return size;
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	public long getHitCount() {
+		return hits.sum();
+	}
+
+	public long getMissCount() {
+		return misses.sum();
+	}
+
+	public long getEvictionCount() {
+		return evictions.sum();
+	}
+
+	/**
+	 * Returns size, hit, miss and eviction counts of this cache.
+	 *
+	 * @return a map of statistics
+	 */
+	public Map<String, Object> getStatistics() {
+
+		final Map<String, Object> stats = new LinkedHashMap<>();
+		final long hitCount             = getHitCount();
+		final long missCount            = getMissCount();
+		final long total                = hitCount + missCount;
+
+		stats.put("size",      size());
+		stats.put("maxSize",   maxSize);
+		stats.put("hits",      hitCount);
+		stats.put("misses",    missCount);
+		stats.put("evictions", getEvictionCount());
+		stats.put("hitRate",   total > 0 ? (double)hitCount / (double)total : 0.0);
+
+		return stats;
+	}
+
+	// ----- private methods -----
+	private Segment<V> segmentFor(final long hash) {
+		return segments[(int)(hash >>> 40) & segmentMask];
+	}
+
+	private static long hash(final long key) {
+		return ClockSegment.hash(key);
+	}
+
+	// ----- nested classes -----
+	/**
+	 * A segment with primitive long keys.
+	 */
+	private static class Segment<V> extends ClockSegment<V> {
+
+		private long[] keys = null;
+
+		Segment(final int capacity) {
+
+			super(capacity);
+
+			this.keys = new long[values.length];
+		}
+
+		V get(final long key, final long hash) {
+
+			long stamp = lock.tryOptimisticRead();
+			int index  = find(key, hash);
+			V value    = index >= 0 ? (V)values[index] : null;
+
+			if (!lock.validate(stamp)) {
+
+				stamp = lock.readLock();
+				try {
+
+					index = find(key, hash);
+					value = index >= 0 ? (V)values[index] : null;
+
+				} finally {
+
+					lock.unlockRead(stamp);
+				}
+			}
+
+			if (index >= 0) {
+
+				// benign race: a lost update only affects eviction order
+				referenced[index] = true;
+			}
+
+			return value;
+		}
+
+		/**
+		 * Stores the given value and returns true if another entry was
+		 * evicted to make room for it.
+		 */
+		boolean put(final long key, final long hash, final V value) {
+
+			final long stamp = lock.writeLock();
+			try {
+
+				int index = find(key, hash);
+				if (index >= 0) {
+
+					values[index]     = value;
+					referenced[index] = true;
+
+					return false;
+				}
+
+				final boolean evicted = size >= capacity;
+
+				index = insert(hash, value, null);
+				keys[index] = key;
+
+				return evicted;
+
+			} finally {
+
+				lock.unlockWrite(stamp);
+			}
+		}
+
+		void remove(final long key, final long hash) {
+
+			final long stamp = lock.writeLock();
+			try {
+
+				final int index = find(key, hash);
+				if (index >= 0) {
+
+					delete(index);
+				}
+
+			} finally {
+
+				lock.unlockWrite(stamp);
+			}
+		}
+
+		@Override
+		protected int idealSlot(final int index) {
+			return slot(hash(keys[index]));
+		}
+
+		@Override
+		protected void moveKey(final int from, final int to) {
+			keys[to] = keys[from];
+		}
+
+		@Override
+		protected void clearKey(final int index) {
+			// primitive keys need not be released
+		}
+
+		// ----- private methods -----
+		private int find(final long key, final long hash) {
+
+			int index = slot(hash);
+
+			// bounded by the table size so that a concurrent modification
+			// seen by an optimistic read cannot cause an endless loop
+			for (int i=0; i<=mask; i++) {
+
+				final Object value = values[index];
+				if (value == null) {
+					return -1;
+				}
+
+				if (keys[index] == key) {
+					return index;
+				}
+
+				index = (index + 1) & mask;
+			}
+
+			return -1;
+		}
+	}
+}
@@ -18,8 +18,10 @@
  */
 package org.structr.api.util;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 
@@ -61,6 +63,15 @@ public class FixedSizeCache<K, V> {
 		return currentSize;
 	}
 
+	/**
+	 * Returns a copy of the values in this cache, in insertion order.
+	 *
+	 * @return the cached values
+	 */
+	public synchronized List<V> values() {
+		return new ArrayList<>(cache.values());
+	}
+
 	private class LRUMap extends LinkedHashMap<K, V> {
 
 		@Override
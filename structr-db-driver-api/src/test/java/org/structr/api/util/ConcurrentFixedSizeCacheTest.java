@@ -0,0 +1,169 @@
+/**
+ * Copyright (C) 2010-2016 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.api.util;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.LinkedList;
+import java.util.List;
+import org.junit.Assert;
+
+/**
+ *
+ */
+public class ConcurrentFixedSizeCacheTest {
+
+	@org.junit.Test
+	public void testBoundedSize() {
+
+		final ConcurrentFixedSizeCache<String, Integer> test = new ConcurrentFixedSizeCache<>(100, 4, null);
+
+		for (int i=0; i<1000; i++) {
+			test.putIfAbsent("key" + i, i);
+		}
+
+		Assert.assertTrue("Invalid ConcurrentFixedSizeCache size", test.size() <= 100);
+		Assert.assertEquals("Invalid ConcurrentFixedSizeCache eviction count", 1000 - test.size(), test.getEvictionCount());
+
+		// all remaining entries must map to their own key
+		int found = 0;
+		for (int i=0; i<1000; i++) {
+
+			final Integer value = test.get("key" + i);
+			if (value != null) {
+
+				Assert.assertEquals("Invalid ConcurrentFixedSizeCache contents", i, value.intValue());
+				found++;
+			}
+		}
+
+		Assert.assertEquals("Invalid ConcurrentFixedSizeCache size", test.size(), found);
+	}
+
+	@org.junit.Test
+	public void testReferencedEntriesSurvive() {
+
+		final ConcurrentFixedSizeCache<String, Integer> test = new ConcurrentFixedSizeCache<>(10, 1, null);
+
+		for (int i=0; i<10; i++) {
+			test.putIfAbsent("key" + i, i);
+		}
+
+		// reference the first five entries
+		for (int i=0; i<5; i++) {
+			test.get("key" + i);
+		}
+
+		for (int i=10; i<15; i++) {
+			test.putIfAbsent("key" + i, i);
+		}
+
+		for (int i=0; i<5; i++) {
+			Assert.assertNotNull("Referenced entry was evicted", test.get("key" + i));
+		}
+	}
+
+	@org.junit.Test
+	public void testRemoveAndReinsert() {
+
+		final List<Integer> evicted                          = new LinkedList<>();
+		final ConcurrentFixedSizeCache<String, Integer> test = new ConcurrentFixedSizeCache<>(10, 1, evicted::add);
+
+		// removed and reinserted keys must neither be evicted early nor
+		// take up more than one entry
+		for (int i=0; i<1000; i++) {
+
+			test.putIfAbsent("key", i);
+			test.remove("key");
+		}
+
+		test.putIfAbsent("key", -1);
+
+		for (int i=0; i<9; i++) {
+			test.putIfAbsent("other" + i, i);
+		}
+
+		Assert.assertEquals("Invalid ConcurrentFixedSizeCache size", 10, test.size());
+		Assert.assertEquals("Reinserted entry was evicted", Integer.valueOf(-1), test.get("key"));
+		Assert.assertTrue("No entry should have been evicted", evicted.isEmpty());
+
+		Assert.assertFalse("Entry with a different value was removed", test.remove("key", 1));
+		Assert.assertTrue("Entry was not removed", test.remove("key", -1));
+		Assert.assertNull("Removed entry still present", test.get("key"));
+	}
+
+	@org.junit.Test
+	public void testPutReplacesValue() {
+
+		final ConcurrentFixedSizeCache<String, Integer> test = new ConcurrentFixedSizeCache<>(10);
+
+		Assert.assertNull(test.put("key", 1));
+		Assert.assertEquals(Integer.valueOf(1), test.put("key", 2));
+		Assert.assertEquals(Integer.valueOf(2), test.get("key"));
+		Assert.assertEquals(1, test.size());
+	}
+
+	@org.junit.Test
+	public void testPutIfAbsentKeepsExistingValue() {
+
+		final ConcurrentFixedSizeCache<String, Integer> test = new ConcurrentFixedSizeCache<>(10);
+
+		Assert.assertEquals(Integer.valueOf(1), test.putIfAbsent("key", 1));
+		Assert.assertEquals(Integer.valueOf(1), test.putIfAbsent("key", 2));
+		Assert.assertEquals(1, test.size());
+	}
+
+	@org.junit.Test
+	public void testConcurrentAccess() throws Exception {
+
+		final ConcurrentFixedSizeCache<Integer, Integer> test = new ConcurrentFixedSizeCache<>(100);
+		final ExecutorService service                          = Executors.newFixedThreadPool(8);
+		final List<Future> futures                             = new LinkedList<>();
+
+		for (int t=0; t<8; t++) {
+
+			futures.add(service.submit(() -> {
+
+				for (int i=0; i<10000; i++) {
+
+					final Integer key   = i % 500;
+					final Integer value = test.get(key);
+
+					if (value != null) {
+
+						Assert.assertEquals(key, value);
+
+					} else {
+
+						Assert.assertEquals(key, test.putIfAbsent(key, key));
+					}
+				}
+			}));
+		}
+
+		for (final Future future : futures) {
+			future.get();
+		}
+
+		service.shutdown();
+
+		Assert.assertTrue("Invalid ConcurrentFixedSizeCache size", test.size() <= 100);
+	}
+}
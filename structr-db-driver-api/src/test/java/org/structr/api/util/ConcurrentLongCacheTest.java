@@ -0,0 +1,184 @@
+/**
+ * Copyright (C) 2010-2016 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.api.util;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.LinkedList;
+import java.util.List;
+import org.junit.Assert;
+
+/**
+ *
+ */
+public class ConcurrentLongCacheTest {
+
+	@org.junit.Test
+	public void testBoundedSize() {
+
+		final ConcurrentLongCache<Long> test = new ConcurrentLongCache<>(100, 4);
+
+		for (long i=0; i<1000; i++) {
+			test.put(i, i);
+		}
+
+		Assert.assertTrue("Invalid ConcurrentLongCache size", test.size() <= 100);
+		Assert.assertEquals("Invalid ConcurrentLongCache eviction count", 1000 - test.size(), test.getEvictionCount());
+
+		// all remaining entries must map to their own key
+		int found = 0;
+		for (long i=0; i<1000; i++) {
+
+			final Long value = test.get(i);
+			if (value != null) {
+
+				Assert.assertEquals("Invalid ConcurrentLongCache contents", i, value.longValue());
+				found++;
+			}
+		}
+
+		Assert.assertEquals("Invalid ConcurrentLongCache size", test.size(), found);
+		Assert.assertEquals("Invalid ConcurrentLongCache hit count", found, test.getHitCount());
+		Assert.assertEquals("Invalid ConcurrentLongCache miss count", 1000 - found, test.getMissCount());
+	}
+
+	@org.junit.Test
+	public void testReferencedEntriesSurvive() {
+
+		final ConcurrentLongCache<Long> test = new ConcurrentLongCache<>(10, 1);
+
+		for (long i=0; i<10; i++) {
+			test.put(i, i);
+		}
+
+		// reference the first five entries
+		for (long i=0; i<5; i++) {
+			test.get(i);
+		}
+
+		for (long i=10; i<15; i++) {
+			test.put(i, i);
+		}
+
+		for (long i=0; i<5; i++) {
+			Assert.assertNotNull("Referenced entry was evicted", test.get(i));
+		}
+	}
+
+	@org.junit.Test
+	public void testRemoveAndClear() {
+
+		final ConcurrentLongCache<String> test = new ConcurrentLongCache<>(1000);
+
+		for (long i=0; i<500; i++) {
+			test.put(i, Long.toString(i));
+		}
+
+		for (long i=0; i<500; i+=2) {
+			test.remove(i);
+		}
+
+		Assert.assertEquals("Invalid ConcurrentLongCache size", 250, test.size());
+
+		for (long i=0; i<500; i++) {
+
+			if (i % 2 == 0) {
+
+				Assert.assertNull("Removed entry still present", test.get(i));
+
+			} else {
+
+				Assert.assertEquals("Invalid ConcurrentLongCache contents", Long.toString(i), test.get(i));
+			}
+		}
+
+		test.clear();
+
+		Assert.assertEquals("Invalid ConcurrentLongCache size", 0, test.size());
+		Assert.assertNull("Cleared entry still present", test.get(1));
+	}
+
+	@org.junit.Test
+	public void testRemoveValues() {
+
+		final ConcurrentLongCache<String> test = new ConcurrentLongCache<>(1000, 2);
+
+		for (long i=0; i<500; i++) {
+			test.put(i, i % 3 == 0 ? "remove" : "keep");
+		}
+
+		test.removeValues("remove"::equals);
+
+		for (long i=0; i<500; i++) {
+
+			if (i % 3 == 0) {
+
+				Assert.assertNull("Removed entry still present", test.get(i));
+
+			} else {
+
+				Assert.assertEquals("Invalid ConcurrentLongCache contents", "keep", test.get(i));
+			}
+		}
+
+		Assert.assertEquals("Invalid ConcurrentLongCache size", 333, test.size());
+	}
+
+	@org.junit.Test
+	public void testConcurrentAccess() throws Exception {
+
+		final ConcurrentLongCache<Long> test = new ConcurrentLongCache<>(1000);
+		final ExecutorService executor       = Executors.newFixedThreadPool(8);
+		final List<Future> futures           = new LinkedList<>();
+
+		for (int t=0; t<8; t++) {
+
+			final long offset = t * 10000;
+
+			futures.add(executor.submit(() -> {
+
+				for (long i=0; i<10000; i++) {
+
+					final long key = offset + (i % 2000);
+
+					test.put(key, key);
+
+					final Long value = test.get(key);
+					if (value != null) {
+
+						Assert.assertEquals(key, value.longValue());
+					}
+
+					if (i % 7 == 0) {
+						test.remove(key);
+					}
+				}
+			}));
+		}
+
+		for (final Future future : futures) {
+			future.get();
+		}
+
+		executor.shutdown();
+
+		Assert.assertTrue("Invalid ConcurrentLongCache size", test.size() <= test.getMaxSize());
+	}
+}
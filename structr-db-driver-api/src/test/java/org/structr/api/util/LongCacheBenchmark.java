@@ -0,0 +1,116 @@
+/**
+ * Copyright (C) 2010-2016 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.api.util;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares {@link ConcurrentLongCache} with {@link FixedSizeCache} for the
+ * id to type lookup workload of the node and relationship factories: mostly
+ * reads over a key space that is slightly or much larger than the cache.
+ *
+ * Not run as part of the test suite, start with
+ *
+ * mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.structr.api.util.LongCacheBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(32)
+public class LongCacheBenchmark {
+
+	@Param({ "100000" })
+	private int cacheSize;
+
+	@Param({ "110000", "200000" })
+	private int keySpace;
+
+	private ConcurrentLongCache<Class> concurrentCache = null;
+	private FixedSizeCache<Long, Class> fixedSizeCache = null;
+
+	@Setup
+	public void setup() {
+
+		concurrentCache = new ConcurrentLongCache<>(cacheSize);
+		fixedSizeCache  = new FixedSizeCache<>(cacheSize);
+
+		for (long i=0; i<cacheSize; i++) {
+
+			concurrentCache.put(i, Object.class);
+			fixedSizeCache.put(i, Object.class);
+		}
+	}
+
+	@Benchmark
+	public Class concurrentLongCache() {
+
+		final long key = ThreadLocalRandom.current().nextLong(keySpace);
+		Class type     = concurrentCache.get(key);
+
+		if (type == null) {
+
+			type = Object.class;
+			concurrentCache.put(key, type);
+		}
+
+		return type;
+	}
+
+	@Benchmark
+	public Class fixedSizeCache() {
+
+		final Long key = ThreadLocalRandom.current().nextLong(keySpace);
+		Class type     = fixedSizeCache.get(key);
+
+		if (type == null) {
+
+			type = Object.class;
+			fixedSizeCache.put(key, type);
+		}
+
+		return type;
+	}
+
+	public static void main(final String[] args) throws RunnerException {
+
+		new Runner(new OptionsBuilder()
+			.include(LongCacheBenchmark.class.getSimpleName())
+			.build()
+		).run();
+	}
+}
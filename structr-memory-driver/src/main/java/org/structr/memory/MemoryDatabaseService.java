@@ -0,0 +1,448 @@
+/**
+ * Copyright (C) 2010-2016 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.memory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Logger;
+import org.structr.api.DatabaseService;
+import org.structr.api.NativeResult;
+import org.structr.api.NotFoundException;
+import org.structr.api.NotInTransactionException;
+import org.structr.api.Transaction;
+import org.structr.api.graph.GraphProperties;
+import org.structr.api.graph.Label;
+import org.structr.api.graph.Node;
+import org.structr.api.graph.Relationship;
+import org.structr.api.graph.RelationshipType;
+import org.structr.api.index.IndexManager;
+import org.structr.memory.index.MemoryIndexManager;
+import org.structr.memory.util.LongObjectMap;
+
+/**
+ * A pure-Java, non-persistent implementation of the Structr database API.
+ *
+ * Nodes and relationships are kept in maps with primitive long keys, the
+ * indexes support exact, range, fulltext and spatial queries. Transactions
+ * can be rolled back, but uncommitted changes are visible to other threads
+ * (see {@link MemoryTransaction}). Native (Cypher) queries are not supported.
+ *
+ * To use this driver, set database.driver = org.structr.memory.MemoryDatabaseService
+ * in structr.conf.
+ */
+public class MemoryDatabaseService implements DatabaseService {
+
+	private static final Logger logger = Logger.getLogger(MemoryDatabaseService.class.getName());
+
+	public static final String INITIAL_CAPACITY = "memory.initialcapacity";
+
+	private final ThreadLocal<MemoryTransaction> transactions   = new ThreadLocal<>();
+	private final Map<String, RelationshipType> relationshipTypes = new ConcurrentHashMap<>();
+	private final Map<String, Label> labels                       = new ConcurrentHashMap<>();
+	private final ReadWriteLock lock                              = new ReentrantReadWriteLock();
+	private final AtomicLong nextRelationshipId                   = new AtomicLong();
+	private final AtomicLong nextNodeId                           = new AtomicLong();
+	private LongObjectMap<MemoryRelationship> relationships       = new LongObjectMap<>();
+	private LongObjectMap<MemoryNode> nodes                       = new LongObjectMap<>();
+	private MemoryIndexManager<Relationship> relationshipIndexer  = null;
+	private MemoryIndexManager<Node> nodeIndexer                  = null;
+	private MemoryGraphProperties globalProperties                = null;
+
+	@Override
+	public void initialize(final Properties configuration) {
+
+		final int initialCapacity = Integer.valueOf(configuration.getProperty(INITIAL_CAPACITY, "1000"));
+
+		nodes               = new LongObjectMap<>(initialCapacity);
+		relationships       = new LongObjectMap<>(initialCapacity);
+		nodeIndexer         = new MemoryIndexManager<>(this, this::resolveNode);
+		relationshipIndexer = new MemoryIndexManager<>(this, this::resolveRelationship);
+		globalProperties    = new MemoryGraphProperties();
+
+		logger.info("Initialized in-memory database, all data will be lost on shutdown.");
+	}
+
+	@Override
+	public void shutdown() {
+
+		lock.writeLock().lock();
+		try {
+
+			nodes.clear();
+			relationships.clear();
+
+		} finally {
+
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public <T> T forName(final Class<T> type, final String name) {
+
+		if (Label.class.equals(type)) {
+			return (T)labels.computeIfAbsent(name, MemoryLabel::new);
+		}
+
+		if (RelationshipType.class.equals(type)) {
+			return (T)relationshipTypes.computeIfAbsent(name, RelationshipType::forName);
+		}
+
+		throw new IllegalArgumentException("Unsupported type " + type);
+	}
+
+	@Override
+	public Transaction beginTx() {
+
+		final MemoryTransaction current = transactions.get();
+		if (current != null) {
+
+			return new MemoryTransaction.NestedTransaction(current);
+		}
+
+		final MemoryTransaction tx = new MemoryTransaction(this);
+		transactions.set(tx);
+
+		return tx;
+	}
+
+	@Override
+	public Node createNode() {
+
+		final MemoryTransaction tx = getCurrentTransaction();
+		final long id              = nextNodeId.getAndIncrement();
+		final MemoryNode node      = new MemoryNode(this, id);
+
+		lock.writeLock().lock();
+		try {
+
+			nodes.put(id, node);
+
+		} finally {
+
+			lock.writeLock().unlock();
+		}
+
+		tx.onRollback(() -> {
+
+			node.setDeleted(true);
+			removeNode(id);
+		});
+
+		return node;
+	}
+
+	@Override
+	public Node getNodeById(final long id) {
+
+		final Node node = resolveNode(id);
+		if (node == null) {
+
+			throw new NotFoundException("Node " + id + " not found");
+		}
+
+		return node;
+	}
+
+	@Override
+	public Relationship getRelationshipById(final long id) {
+
+		final Relationship relationship = resolveRelationship(id);
+		if (relationship == null) {
+
+			throw new NotFoundException("Relationship " + id + " not found");
+		}
+
+		return relationship;
+	}
+
+	@Override
+	public Iterable<Node> getAllNodes() {
+
+		lock.readLock().lock();
+		try {
+
+			final List<Node> result = new ArrayList<>(nodes.values());
+
+			Collections.sort(result, (a, b) -> Long.compare(a.getId(), b.getId()));
+
+			return result;
+
+		} finally {
+
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public Iterable<Relationship> getAllRelationships() {
+
+		lock.readLock().lock();
+		try {
+
+			final List<Relationship> result = new ArrayList<>(relationships.values());
+
+			Collections.sort(result, (a, b) -> Long.compare(a.getId(), b.getId()));
+
+			return result;
+
+		} finally {
+
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public GraphProperties getGlobalProperties() {
+		return globalProperties;
+	}
+
+	@Override
+	public IndexManager<Node> nodeIndexer() {
+		return nodeIndexer;
+	}
+
+	@Override
+	public IndexManager<Relationship> relationshipIndexer() {
+		return relationshipIndexer;
+	}
+
+	@Override
+	public NativeResult execute(final String nativeQuery, final Map<String, Object> parameters) {
+		throw new UnsupportedOperationException("Native queries are not supported by the in-memory database.");
+	}
+
+	@Override
+	public NativeResult execute(final String nativeQuery) {
+		throw new UnsupportedOperationException("Native queries are not supported by the in-memory database.");
+	}
+
+	@Override
+	public void invalidateCache() {
+		// there is no cache, all data lives in memory
+	}
+
+	/**
+	 * Returns the transaction that is bound to the current thread.
+	 *
+	 * @return the current transaction
+	 * @throws NotInTransactionException if there is no transaction
+	 */
+	public MemoryTransaction getCurrentTransaction() {
+
+		final MemoryTransaction tx = transactions.get();
+		if (tx == null) {
+
+			throw new NotInTransactionException("Not in transaction.");
+		}
+
+		return tx;
+	}
+
+	// ----- package-private methods -----
+	void transactionFinished(final MemoryTransaction tx) {
+
+		if (transactions.get() == tx) {
+			transactions.remove();
+		}
+	}
+
+	Relationship createRelationship(final MemoryNode startNode, final MemoryNode endNode, final String type) {
+
+		final MemoryTransaction tx             = getCurrentTransaction();
+		final long id                          = nextRelationshipId.getAndIncrement();
+		final MemoryRelationship relationship  = new MemoryRelationship(this, id, startNode, endNode, type);
+
+		startNode.assertNotDeleted();
+		endNode.assertNotDeleted();
+
+		lock.writeLock().lock();
+		try {
+
+			relationships.put(id, relationship);
+
+		} finally {
+
+			lock.writeLock().unlock();
+		}
+
+		startNode.addRelationship(relationship);
+		endNode.addRelationship(relationship);
+
+		tx.onRollback(() -> {
+
+			relationship.setDeleted(true);
+			startNode.removeRelationship(relationship);
+			endNode.removeRelationship(relationship);
+			removeRelationship(id);
+		});
+
+		return relationship;
+	}
+
+	List<Relationship> getRelationships(final long[] ids) {
+
+		final List<Relationship> result = new ArrayList<>(ids.length);
+
+		// creation order
+		Arrays.sort(ids);
+
+		lock.readLock().lock();
+		try {
+
+			for (final long id : ids) {
+
+				final MemoryRelationship relationship = relationships.get(id);
+				if (relationship != null) {
+
+					result.add(relationship);
+				}
+			}
+
+		} finally {
+
+			lock.readLock().unlock();
+		}
+
+		return result;
+	}
+
+	void deleteNode(final MemoryNode node) {
+
+		final MemoryTransaction tx = getCurrentTransaction();
+		final long id              = node.getId();
+
+		node.assertNotDeleted();
+
+		if (node.hasRelationships()) {
+			throw new IllegalStateException(node + " still has relationships, delete them first.");
+		}
+
+		node.setDeleted(true);
+		removeNode(id);
+
+		tx.onRollback(() -> {
+
+			lock.writeLock().lock();
+			try {
+
+				nodes.put(id, node);
+
+			} finally {
+
+				lock.writeLock().unlock();
+			}
+
+			node.setDeleted(false);
+		});
+	}
+
+	void deleteRelationship(final MemoryRelationship relationship) {
+
+		final MemoryTransaction tx = getCurrentTransaction();
+		final MemoryNode startNode = (MemoryNode)relationship.getStartNode();
+		final MemoryNode endNode   = (MemoryNode)relationship.getEndNode();
+		final long id              = relationship.getId();
+
+		relationship.assertNotDeleted();
+
+		relationship.setDeleted(true);
+		startNode.removeRelationship(relationship);
+		endNode.removeRelationship(relationship);
+		removeRelationship(id);
+
+		tx.onRollback(() -> {
+
+			lock.writeLock().lock();
+			try {
+
+				relationships.put(id, relationship);
+
+			} finally {
+
+				lock.writeLock().unlock();
+			}
+
+			relationship.setDeleted(false);
+			startNode.addRelationship(relationship);
+			endNode.addRelationship(relationship);
+		});
+	}
+
+	// ----- private methods -----
+	private Node resolveNode(final long id) {
+
+		lock.readLock().lock();
+		try {
+
+			return nodes.get(id);
+
+		} finally {
+
+			lock.readLock().unlock();
+		}
+	}
+
+	private Relationship resolveRelationship(final long id) {
+
+		lock.readLock().lock();
+		try {
+
+			return relationships.get(id);
+
+		} finally {
+
+			lock.readLock().unlock();
+		}
+	}
+
+	private void removeNode(final long id) {
+
+		lock.writeLock().lock();
+		try {
+
+			nodes.remove(id);
+
+		} finally {
+
+			lock.writeLock().unlock();
+		}
+	}
+
+	private void removeRelationship(final long id) {
+
+		lock.writeLock().lock();
+		try {
+
+			relationships.remove(id);
+
+		} finally {
+
+			lock.writeLock().unlock();
+		}
+	}
+}
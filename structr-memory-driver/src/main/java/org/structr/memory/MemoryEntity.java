@@ -0,0 +1,175 @@
+/**
+ * Copyright (C) 2010-2016 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.memory;
+
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.structr.api.NotFoundException;
+import org.structr.api.graph.PropertyContainer;
+
+/**
+ * Base class for nodes and relationships of the in-memory database.
+ */
+public abstract class MemoryEntity implements PropertyContainer {
+
+	private final Map<String, Object> properties = new ConcurrentHashMap<>();
+	protected MemoryDatabaseService db           = null;
+	private volatile boolean deleted             = false;
+	private long id                              = -1L;
+
+	protected MemoryEntity(final MemoryDatabaseService db, final long id) {
+
+		this.db = db;
+		this.id = id;
+	}
+
+	@Override
+	public long getId() {
+		return id;
+	}
+
+	@Override
+	public boolean hasProperty(final String name) {
+
+		assertNotDeleted();
+		return properties.containsKey(name);
+	}
+
+	@Override
+	public Object getProperty(final String name) {
+
+		assertNotDeleted();
+
+		final Object value = properties.get(name);
+		if (value == null) {
+
+			throw new NotFoundException("Property " + name + " not found on " + this);
+		}
+
+		return value;
+	}
+
+	@Override
+	public Object getProperty(final String name, final Object defaultValue) {
+
+		assertNotDeleted();
+
+		final Object value = properties.get(name);
+		if (value == null) {
+
+			return defaultValue;
+		}
+
+		return value;
+	}
+
+	@Override
+	public void setProperty(final String name, final Object value) {
+
+		if (value == null) {
+
+			removeProperty(name);
+			return;
+		}
+
+		final MemoryTransaction tx = db.getCurrentTransaction();
+
+		assertNotDeleted();
+
+		final Object previous = properties.put(name, value);
+		tx.onRollback(() -> restore(name, previous));
+	}
+
+	@Override
+	public void removeProperty(final String name) {
+
+		final MemoryTransaction tx = db.getCurrentTransaction();
+
+		assertNotDeleted();
+
+		final Object previous = properties.remove(name);
+		if (previous != null) {
+
+			tx.onRollback(() -> restore(name, previous));
+		}
+	}
+
+	@Override
+	public Iterable<String> getPropertyKeys() {
+
+		assertNotDeleted();
+		return new ArrayList<>(properties.keySet());
+	}
+
+	@Override
+	public boolean isSpatialEntity() {
+		return false;
+	}
+
+	@Override
+	public int hashCode() {
+		return Long.hashCode(id);
+	}
+
+	@Override
+	public boolean equals(final Object other) {
+
+		if (other != null && other.getClass().equals(getClass())) {
+
+			return ((MemoryEntity)other).id == id;
+		}
+
+		return false;
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[" + id + "]";
+	}
+
+	// ----- package-private methods -----
+	boolean isDeleted() {
+		return deleted;
+	}
+
+	void setDeleted(final boolean deleted) {
+		this.deleted = deleted;
+	}
+
+	void assertNotDeleted() {
+
+		if (deleted) {
+			throw new NotFoundException(this + " has been deleted");
+		}
+	}
+
+	// ----- private methods -----
+	private void restore(final String name, final Object value) {
+
+		if (value != null) {
+
+			properties.put(name, value);
+
+		} else {
+
+			properties.remove(name);
+		}
+	}
+}
@@ -0,0 +1,49 @@
+/**
+ * Copyright (C) 2010-2016 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.memory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.structr.api.graph.GraphProperties;
+
+/**
+ *
+ */
+public class MemoryGraphProperties implements GraphProperties {
+
+	private final Map<String, Object> properties = new ConcurrentHashMap<>();
+
+	@Override
+	public void setProperty(final String name, final Object value) {
+
+		if (value != null) {
+
+			properties.put(name, value);
+
+		} else {
+
+			properties.remove(name);
+		}
+	}
+
+	@Override
+	public Object getProperty(final String name) {
+		return properties.get(name);
+	}
+}
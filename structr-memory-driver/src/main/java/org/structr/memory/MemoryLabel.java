@@ -0,0 +1,74 @@
+/**
+ * Copyright (C) 2010-2016 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.memory;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import org.structr.api.graph.Label;
+
+/**
+ *
+ */
+public class MemoryLabel implements Label {
+
+	private static final AtomicInteger ordinals = new AtomicInteger();
+
+	private String name = null;
+	private int ordinal = 0;
+
+	MemoryLabel(final String name) {
+
+		this.name    = name;
+		this.ordinal = ordinals.getAndIncrement();
+	}
+
+	/**
+	 * Labels are returned in the order they were first used in the
+	 * database, this is the position of this label in that order.
+	 *
+	 * @return the ordinal
+	 */
+	int getOrdinal() {
+		return ordinal;
+	}
+
+	@Override
+	public String name() {
+		return name;
+	}
+
+	@Override
+	public int hashCode() {
+		return name.hashCode();
+	}
+
+	@Override
+	public boolean equals(final Object other) {
+
+		if (other instanceof Label) {
+			return name.equals(((Label)other).name());
+		}
+
+		return false;
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+}
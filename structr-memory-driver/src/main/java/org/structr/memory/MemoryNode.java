@@ -0,0 +1,240 @@
+/**
+ * Copyright (C) 2010-2016 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.memory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.structr.api.NotInTransactionException;
+import org.structr.api.graph.Direction;
+import org.structr.api.graph.Label;
+import org.structr.api.graph.Node;
+import org.structr.api.graph.Relationship;
+import org.structr.api.graph.RelationshipType;
+import org.structr.memory.util.LongSet;
+
+/**
+ * A node of the in-memory database. Relationships are stored as sets of
+ * primitive relationship ids, grouped by direction and relationship type.
+ */
+public class MemoryNode extends MemoryEntity implements Node {
+
+	private final Map<String, LongSet> outgoing = new HashMap<>();
+	private final Map<String, LongSet> incoming = new HashMap<>();
+	private final Set<String> labels            = new LinkedHashSet<>();
+
+	MemoryNode(final MemoryDatabaseService db, final long id) {
+		super(db, id);
+	}
+
+	@Override
+	public Relationship createRelationshipTo(final Node endNode, final RelationshipType relationshipType) {
+		return db.createRelationship(this, (MemoryNode)endNode, relationshipType.name());
+	}
+
+	@Override
+	public void addLabel(final Label label) {
+
+		final MemoryTransaction tx = db.getCurrentTransaction();
+		final String name          = label.name();
+		boolean added              = false;
+
+		assertNotDeleted();
+
+		synchronized (this) {
+			added = labels.add(name);
+		}
+
+		if (added) {
+
+			tx.onRollback(() -> {
+				synchronized (this) { labels.remove(name); }
+			});
+		}
+	}
+
+	@Override
+	public void removeLabel(final Label label) {
+
+		final MemoryTransaction tx = db.getCurrentTransaction();
+		final String name          = label.name();
+		boolean removed            = false;
+
+		assertNotDeleted();
+
+		synchronized (this) {
+			removed = labels.remove(name);
+		}
+
+		if (removed) {
+
+			tx.onRollback(() -> {
+				synchronized (this) { labels.add(name); }
+			});
+		}
+	}
+
+	@Override
+	public Iterable<Label> getLabels() {
+
+		final List<MemoryLabel> result = new ArrayList<>();
+
+		assertNotDeleted();
+
+		synchronized (this) {
+
+			for (final String name : labels) {
+				result.add((MemoryLabel)db.forName(Label.class, name));
+			}
+		}
+
+		Collections.sort(result, (a, b) -> Integer.compare(a.getOrdinal(), b.getOrdinal()));
+
+		return new ArrayList<>(result);
+	}
+
+	@Override
+	public Iterable<Relationship> getRelationships() {
+		return getRelationships(Direction.BOTH);
+	}
+
+	@Override
+	public Iterable<Relationship> getRelationships(final Direction direction) {
+
+		assertNotDeleted();
+
+		final LongSet ids = new LongSet();
+
+		synchronized (this) {
+
+			if (!Direction.INCOMING.equals(direction)) {
+
+				for (final LongSet set : outgoing.values()) {
+					ids.addAll(set);
+				}
+			}
+
+			if (!Direction.OUTGOING.equals(direction)) {
+
+				for (final LongSet set : incoming.values()) {
+					ids.addAll(set);
+				}
+			}
+		}
+
+		return db.getRelationships(ids.toArray());
+	}
+
+	@Override
+	public Iterable<Relationship> getRelationships(final Direction direction, final RelationshipType relationshipType) {
+
+		assertNotDeleted();
+
+		final String type = relationshipType.name();
+		final LongSet ids = new LongSet();
+
+		synchronized (this) {
+
+			if (!Direction.INCOMING.equals(direction)) {
+
+				final LongSet set = outgoing.get(type);
+				if (set != null) {
+
+					ids.addAll(set);
+				}
+			}
+
+			if (!Direction.OUTGOING.equals(direction)) {
+
+				final LongSet set = incoming.get(type);
+				if (set != null) {
+
+					ids.addAll(set);
+				}
+			}
+		}
+
+		return db.getRelationships(ids.toArray());
+	}
+
+	@Override
+	public void delete() throws NotInTransactionException {
+		db.deleteNode(this);
+	}
+
+	// ----- package-private methods -----
+	synchronized boolean hasRelationships() {
+
+		for (final LongSet set : outgoing.values()) {
+
+			if (!set.isEmpty()) {
+				return true;
+			}
+		}
+
+		for (final LongSet set : incoming.values()) {
+
+			if (!set.isEmpty()) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	synchronized void addRelationship(final MemoryRelationship rel) {
+
+		final String type = rel.getType().name();
+
+		if (rel.getStartNode().equals(this)) {
+			outgoing.computeIfAbsent(type, k -> new LongSet()).add(rel.getId());
+		}
+
+		if (rel.getEndNode().equals(this)) {
+			incoming.computeIfAbsent(type, k -> new LongSet()).add(rel.getId());
+		}
+	}
+
+	synchronized void removeRelationship(final MemoryRelationship rel) {
+
+		final String type = rel.getType().name();
+
+		if (rel.getStartNode().equals(this)) {
+
+			final LongSet set = outgoing.get(type);
+			if (set != null) {
+
+				set.remove(rel.getId());
+			}
+		}
+
+		if (rel.getEndNode().equals(this)) {
+
+			final LongSet set = incoming.get(type);
+			if (set != null) {
+
+				set.remove(rel.getId());
+			}
+		}
+	}
+}
@@ -0,0 +1,73 @@
+/**
+ * Copyright (C) 2010-2016 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.memory;
+
+import org.structr.api.NotInTransactionException;
+import org.structr.api.graph.Node;
+import org.structr.api.graph.Relationship;
+import org.structr.api.graph.RelationshipType;
+
+/**
+ * A relationship of the in-memory database.
+ */
+public class MemoryRelationship extends MemoryEntity implements Relationship {
+
+	private RelationshipType type = null;
+	private MemoryNode startNode  = null;
+	private MemoryNode endNode    = null;
+
+	MemoryRelationship(final MemoryDatabaseService db, final long id, final MemoryNode startNode, final MemoryNode endNode, final String type) {
+
+		super(db, id);
+
+		this.type      = db.forName(RelationshipType.class, type);
+		this.startNode = startNode;
+		this.endNode   = endNode;
+	}
+
+	@Override
+	public Node getStartNode() {
+		return startNode;
+	}
+
+	@Override
+	public Node getEndNode() {
+		return endNode;
+	}
+
+	@Override
+	public Node getOtherNode(final Node node) {
+
+		if (startNode.equals(node)) {
+			return endNode;
+		}
+
+		return startNode;
+	}
+
+	@Override
+	public RelationshipType getType() {
+		return type;
+	}
+
+	@Override
+	public void delete() throws NotInTransactionException {
+		db.deleteRelationship(this);
+	}
+}
@@ -0,0 +1,142 @@
+/**
+ * Copyright (C) 2010-2016 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.memory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.structr.api.Transaction;
+
+/**
+ * A thread-bound transaction of the in-memory database. All modifications
+ * are applied directly to the shared store and recorded in an undo log that
+ * is replayed in reverse order when the transaction is rolled back.
+ *
+ * Other threads can see uncommitted changes, so this transaction provides
+ * atomicity and rollback, but no isolation.
+ */
+public class MemoryTransaction implements Transaction {
+
+	private static final Logger logger = Logger.getLogger(MemoryTransaction.class.getName());
+
+	private final List<Runnable> undoLog    = new ArrayList<>();
+	private MemoryDatabaseService db        = null;
+	private boolean success                 = false;
+	private boolean failure                 = false;
+	private boolean closed                  = false;
+
+	MemoryTransaction(final MemoryDatabaseService db) {
+		this.db = db;
+	}
+
+	@Override
+	public void failure() {
+		this.failure = true;
+	}
+
+	@Override
+	public void success() {
+		this.success = true;
+	}
+
+	@Override
+	public void close() {
+
+		if (closed) {
+			return;
+		}
+
+		closed = true;
+
+		try {
+
+			if (failure || !success) {
+
+				rollback();
+			}
+
+		} finally {
+
+			undoLog.clear();
+			db.transactionFinished(this);
+		}
+	}
+
+	/**
+	 * Registers an action that reverts a modification made in this
+	 * transaction. Actions are executed in reverse order of registration
+	 * when the transaction is rolled back.
+	 *
+	 * @param action
+	 */
+	public void onRollback(final Runnable action) {
+		undoLog.add(action);
+	}
+
+	// ----- private methods -----
+	private void rollback() {
+
+		final ListIterator<Runnable> it = undoLog.listIterator(undoLog.size());
+		while (it.hasPrevious()) {
+
+			try {
+				it.previous().run();
+
+			} catch (Throwable t) {
+				logger.log(Level.WARNING, "Unable to undo modification during rollback", t);
+			}
+		}
+	}
+
+	// ----- nested classes -----
+	/**
+	 * A nested transaction that delegates to the enclosing top-level
+	 * transaction. Closing it without success marks the whole
+	 * transaction as failed.
+	 */
+	static class NestedTransaction implements Transaction {
+
+		private MemoryTransaction parent = null;
+		private boolean success          = false;
+
+		NestedTransaction(final MemoryTransaction parent) {
+			this.parent = parent;
+		}
+
+		@Override
+		public void failure() {
+			parent.failure();
+		}
+
+		@Override
+		public void success() {
+			this.success = true;
+		}
+
+		@Override
+		public void close() {
+
+			if (!success) {
+				parent.failure();
+			}
+		}
+	}
+}
@@ -0,0 +1,812 @@
+/**
+ * Copyright (C) 2010-2016 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.memory.index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.LongFunction;
+import org.structr.api.QueryResult;
+import org.structr.api.graph.PropertyContainer;
+import org.structr.api.index.Index;
+import org.structr.api.index.IndexType;
+import org.structr.api.search.ExactQuery;
+import org.structr.api.search.FulltextQuery;
+import org.structr.api.search.GroupQuery;
+import org.structr.api.search.Occurrence;
+import org.structr.api.search.QueryPredicate;
+import org.structr.api.search.RangeQuery;
+import org.structr.api.search.SpatialQuery;
+import org.structr.memory.MemoryDatabaseService;
+import org.structr.memory.MemoryTransaction;
+import org.structr.memory.util.LongObjectMap;
+import org.structr.memory.util.LongSet;
+
+/**
+ * An in-memory index. Values are normalized and stored in sorted maps per
+ * key, so exact and range queries are tree lookups that yield sets of
+ * primitive entity ids. Fulltext queries scan the distinct values of a key
+ * instead of the entities.
+ *
+ * The semantics of {@link GroupQuery} follow those of a boolean Lucene
+ * query: required clauses are intersected, optional clauses only restrict
+ * the result if no required clause exists, forbidden clauses are removed.
+ *
+ * @param <T>
+ */
+public class MemoryIndex<T extends PropertyContainer> implements Index<T> {
+
+	public static final String LATITUDE_KEY  = "latitude";
+	public static final String LONGITUDE_KEY = "longitude";
+
+	private static final Object EMPTY_VALUE            = new EmptyValue();
+	private static final Comparator<Object> VALUE_ORDER = new ValueComparator();
+	private static final double EARTH_RADIUS_KM        = 6371.0;
+
+	private final Map<String, NavigableMap<Object, LongSet>> values = new HashMap<>();
+	private final LongObjectMap<Map<String, List<Object>>> entries  = new LongObjectMap<>();
+	private final ReadWriteLock lock                                = new ReentrantReadWriteLock();
+	private MemoryDatabaseService db                                = null;
+	private LongFunction<T> resolver                                = null;
+	private IndexType indexType                                     = null;
+
+	public MemoryIndex(final MemoryDatabaseService db, final IndexType indexType, final LongFunction<T> resolver) {
+
+		this.db        = db;
+		this.indexType = indexType;
+		this.resolver  = resolver;
+	}
+
+	@Override
+	public void add(final T t, final String key, final Object value, final Class typeHint) {
+
+		final MemoryTransaction tx = db.getCurrentTransaction();
+		final long id              = t.getId();
+		final List<Object> added   = new ArrayList<>();
+
+		normalize(value, typeHint, added);
+
+		lock.writeLock().lock();
+		try {
+
+			insert(id, key, added);
+
+		} finally {
+
+			lock.writeLock().unlock();
+		}
+
+		tx.onRollback(() -> {
+
+			lock.writeLock().lock();
+			try {
+
+				delete(id, key, added);
+
+			} finally {
+
+				lock.writeLock().unlock();
+			}
+		});
+	}
+
+	@Override
+	public void replace(final T t, final String key, final Collection<?> values, final Class typeHint) {
+
+		final MemoryTransaction tx = db.getCurrentTransaction();
+		final long id              = t.getId();
+		final List<Object> added   = new ArrayList<>();
+		final List<Object> removed;
+
+		normalize(values, typeHint, added);
+
+		lock.writeLock().lock();
+		try {
+
+			removed = clear(id, key);
+			insert(id, key, new LinkedHashSet<>(added));
+
+		} finally {
+
+			lock.writeLock().unlock();
+		}
+
+		tx.onRollback(() -> {
+
+			lock.writeLock().lock();
+			try {
+
+				clear(id, key);
+				insert(id, key, removed);
+
+			} finally {
+
+				lock.writeLock().unlock();
+			}
+		});
+	}
+
+	@Override
+	public void remove(final T t) {
+
+		final MemoryTransaction tx = db.getCurrentTransaction();
+		final long id              = t.getId();
+
+		lock.writeLock().lock();
+		try {
+
+			final Map<String, List<Object>> removed = entries.get(id);
+			if (removed != null) {
+
+				for (final Map.Entry<String, List<Object>> entry : new ArrayList<>(removed.entrySet())) {
+
+					final String key           = entry.getKey();
+					final List<Object> objects = new ArrayList<>(entry.getValue());
+
+					delete(id, key, objects);
+
+					tx.onRollback(() -> {
+
+						lock.writeLock().lock();
+						try {
+
+							insert(id, key, objects);
+
+						} finally {
+
+							lock.writeLock().unlock();
+						}
+					});
+				}
+			}
+
+		} finally {
+
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public void remove(final T t, final String key) {
+
+		final MemoryTransaction tx = db.getCurrentTransaction();
+		final long id              = t.getId();
+
+		lock.writeLock().lock();
+		try {
+
+			final Map<String, List<Object>> existing = entries.get(id);
+			if (existing != null) {
+
+				final List<Object> current = existing.get(key);
+				if (current != null) {
+
+					final List<Object> objects = new ArrayList<>(current);
+
+					delete(id, key, objects);
+
+					tx.onRollback(() -> {
+
+						lock.writeLock().lock();
+						try {
+
+							insert(id, key, objects);
+
+						} finally {
+
+							lock.writeLock().unlock();
+						}
+					});
+				}
+			}
+
+		} finally {
+
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public QueryResult<T> query(final QueryPredicate predicate) {
+
+		final Map<Long, Double> distances = new HashMap<>();
+		LongSet result                    = null;
+
+		lock.readLock().lock();
+		try {
+
+			result = evaluate(predicate, distances);
+			if (result == null) {
+
+				result = allIds();
+			}
+
+		} finally {
+
+			lock.readLock().unlock();
+		}
+
+		final List<T> list = resolve(result);
+
+		if (!distances.isEmpty()) {
+
+			// spatial results are ordered by distance
+			Collections.sort(list, (a, b) -> Double.compare(distances.get(a.getId()), distances.get(b.getId())));
+
+		} else {
+
+			final String sortKey = predicate.getSortKey();
+			if (sortKey != null) {
+
+				final Comparator<T> comparator = new SortKeyComparator<>(sortKey);
+
+				Collections.sort(list, predicate.sortDescending() ? comparator.reversed() : comparator);
+			}
+		}
+
+		return new MemoryQueryResult<>(list);
+	}
+
+	@Override
+	public QueryResult<T> query(final String key, final Object value, final Class typeHint) {
+
+		if (IndexType.Fulltext.equals(indexType) && value instanceof String) {
+
+			lock.readLock().lock();
+			try {
+
+				return new MemoryQueryResult<>(resolve(contains(key, (String)value)));
+
+			} finally {
+
+				lock.readLock().unlock();
+			}
+		}
+
+		return get(key, value, typeHint);
+	}
+
+	@Override
+	public QueryResult<T> get(final String key, final Object value, final Class typeHint) {
+
+		lock.readLock().lock();
+		try {
+
+			return new MemoryQueryResult<>(resolve(exact(key, value, typeHint)));
+
+		} finally {
+
+			lock.readLock().unlock();
+		}
+	}
+
+	// ----- private methods -----
+	private LongSet evaluate(final QueryPredicate predicate, final Map<Long, Double> distances) {
+
+		final Class queryType = predicate.getQueryType();
+		if (queryType == null) {
+
+			// predicate should be ignored by the indexing system
+			return null;
+		}
+
+		if (GroupQuery.class.equals(queryType)) {
+
+			return evaluateGroup((GroupQuery)predicate, distances);
+		}
+
+		if (IndexType.Spatial.equals(indexType)) {
+
+			// the spatial index only knows about coordinates, all other
+			// predicates are evaluated by the caller
+			if (SpatialQuery.class.equals(queryType)) {
+
+				return within((SpatialQuery)predicate, distances);
+			}
+
+			return null;
+		}
+
+		if (RangeQuery.class.equals(queryType)) {
+
+			final RangeQuery range = (RangeQuery)predicate;
+			return range(predicate.getName(), range.getRangeStart(), range.getRangeEnd());
+		}
+
+		if (FulltextQuery.class.equals(queryType) && predicate.getValue() instanceof String) {
+
+			return contains(predicate.getName(), (String)predicate.getValue());
+		}
+
+		if (ExactQuery.class.equals(queryType) || FulltextQuery.class.equals(queryType)) {
+
+			return exact(predicate.getName(), predicate.getValue(), predicate.getType());
+		}
+
+		return null;
+	}
+
+	private LongSet evaluateGroup(final GroupQuery group, final Map<Long, Double> distances) {
+
+		LongSet required  = null;
+		LongSet optional  = null;
+		LongSet forbidden = null;
+
+		for (final QueryPredicate child : group.getQueryPredicates()) {
+
+			final LongSet result = evaluate(child, distances);
+			if (result != null) {
+
+				final Occurrence occurrence = child.getOccurrence() != null ? child.getOccurrence() : Occurrence.REQUIRED;
+
+				switch (occurrence) {
+
+					case REQUIRED:
+						required = required == null ? result : required.intersect(result);
+						break;
+
+					case OPTIONAL:
+						if (optional == null) {
+							optional = result;
+						} else {
+							optional.addAll(result);
+						}
+						break;
+
+					case FORBIDDEN:
+						if (forbidden == null) {
+							forbidden = result;
+						} else {
+							forbidden.addAll(result);
+						}
+						break;
+				}
+			}
+		}
+
+		if (required == null && optional == null && forbidden == null) {
+			return null;
+		}
+
+		LongSet result = required != null ? required : optional;
+		if (result == null) {
+
+			result = allIds();
+		}
+
+		if (forbidden != null) {
+
+			result.removeAll(forbidden);
+		}
+
+		return result;
+	}
+
+	private LongSet exact(final String key, final Object value, final Class typeHint) {
+
+		final NavigableMap<Object, LongSet> map = values.get(key);
+		final LongSet result                    = new LongSet();
+
+		if (map != null) {
+
+			final List<Object> normalized = new ArrayList<>();
+			normalize(value, typeHint, normalized);
+
+			for (final Object object : normalized) {
+
+				final LongSet ids = map.get(object);
+				if (ids != null) {
+
+					result.addAll(ids);
+				}
+			}
+		}
+
+		return result;
+	}
+
+	private LongSet contains(final String key, final String value) {
+
+		final NavigableMap<Object, LongSet> map = values.get(key);
+		final LongSet result                    = new LongSet();
+
+		if (map != null) {
+
+			// wildcards are implicit, a fulltext query always matches substrings
+			final String search = value.replace("*", "").replace("?", "").toLowerCase();
+
+			for (final Map.Entry<Object, LongSet> entry : map.entrySet()) {
+
+				final Object object = entry.getKey();
+				if (object instanceof String && ((String)object).toLowerCase().contains(search)) {
+
+					result.addAll(entry.getValue());
+				}
+			}
+		}
+
+		return result;
+	}
+
+	private LongSet range(final String key, final Object start, final Object end) {
+
+		final NavigableMap<Object, LongSet> map = values.get(key);
+		final LongSet result                    = new LongSet();
+
+		if (map != null) {
+
+			NavigableMap<Object, LongSet> subMap = map;
+
+			if (start != null && end != null && VALUE_ORDER.compare(normalizeSingle(start, null), normalizeSingle(end, null)) > 0) {
+				return result;
+			}
+
+			if (start != null) {
+				subMap = subMap.tailMap(normalizeSingle(start, null), true);
+			}
+
+			if (end != null) {
+				subMap = subMap.headMap(normalizeSingle(end, null), true);
+			}
+
+			for (final LongSet ids : subMap.values()) {
+				result.addAll(ids);
+			}
+		}
+
+		return result;
+	}
+
+	private LongSet within(final SpatialQuery query, final Map<Long, Double> distances) {
+
+		final Double[] coords = query.getCoords();
+		final Double distance = query.getDistance();
+		final LongSet result  = new LongSet();
+
+		if (coords == null || coords.length < 2 || coords[0] == null || coords[1] == null || distance == null) {
+			return result;
+		}
+
+		for (final long id : entries.keys()) {
+
+			final Map<String, List<Object>> entity = entries.get(id);
+			final Double lat                       = firstNumber(entity.get(LATITUDE_KEY));
+			final Double lon                       = firstNumber(entity.get(LONGITUDE_KEY));
+
+			if (lat != null && lon != null) {
+
+				final double actual = distance(coords[0], coords[1], lat, lon);
+				if (actual <= distance) {
+
+					result.add(id);
+					distances.put(id, actual);
+				}
+			}
+		}
+
+		return result;
+	}
+
+	private LongSet allIds() {
+		return new LongSet(entries.keys());
+	}
+
+	private List<T> resolve(final LongSet ids) {
+
+		final List<T> result = new ArrayList<>(ids.size());
+		final long[] array   = ids.toArray();
+
+		// return results in creation order, like an index that appends new documents
+		Arrays.sort(array);
+
+		for (final long id : array) {
+
+			final T entity = resolver.apply(id);
+			if (entity != null) {
+
+				result.add(entity);
+			}
+		}
+
+		return result;
+	}
+
+	private void insert(final long id, final String key, final Collection<Object> objects) {
+
+		final NavigableMap<Object, LongSet> map = values.computeIfAbsent(key, k -> new TreeMap<>(VALUE_ORDER));
+
+		Map<String, List<Object>> entity = entries.get(id);
+		if (entity == null) {
+
+			entity = new HashMap<>();
+			entries.put(id, entity);
+		}
+
+		final List<Object> existing = entity.computeIfAbsent(key, k -> new LinkedList<>());
+
+		for (final Object object : objects) {
+
+			map.computeIfAbsent(object, k -> new LongSet()).add(id);
+			existing.add(object);
+		}
+	}
+
+	/**
+	 * Removes all values of the given key for the given entity and returns
+	 * the removed values.
+	 */
+	private List<Object> clear(final long id, final String key) {
+
+		final Map<String, List<Object>> entity = entries.get(id);
+		if (entity == null) {
+			return Collections.emptyList();
+		}
+
+		final List<Object> existing = entity.remove(key);
+		if (existing == null) {
+			return Collections.emptyList();
+		}
+
+		final NavigableMap<Object, LongSet> map = values.get(key);
+		if (map != null) {
+
+			for (final Object object : existing) {
+
+				final LongSet ids = map.get(object);
+				if (ids != null) {
+
+					ids.remove(id);
+
+					if (ids.isEmpty()) {
+						map.remove(object);
+					}
+				}
+			}
+		}
+
+		if (entity.isEmpty()) {
+			entries.remove(id);
+		}
+
+		return existing;
+	}
+
+	private void delete(final long id, final String key, final Collection<Object> objects) {
+
+		final NavigableMap<Object, LongSet> map = values.get(key);
+		final Map<String, List<Object>> entity  = entries.get(id);
+
+		if (map != null && entity != null) {
+
+			final List<Object> existing = entity.get(key);
+
+			for (final Object object : objects) {
+
+				if (existing != null) {
+					existing.remove(object);
+				}
+
+				// only remove the id if no other value of this entity maps to the same key
+				if (existing == null || !existing.contains(object)) {
+
+					final LongSet ids = map.get(object);
+					if (ids != null) {
+
+						ids.remove(id);
+
+						if (ids.isEmpty()) {
+							map.remove(object);
+						}
+					}
+				}
+			}
+
+			if (existing != null && existing.isEmpty()) {
+				entity.remove(key);
+			}
+
+			if (entity.isEmpty()) {
+				entries.remove(id);
+			}
+		}
+	}
+
+	// ----- private static methods -----
+	private static void normalize(final Object value, final Class typeHint, final Collection<Object> result) {
+
+		if (value instanceof Collection) {
+
+			for (final Object element : (Collection)value) {
+				result.add(normalizeSingle(element, typeHint));
+			}
+
+		} else if (value != null && value.getClass().isArray()) {
+
+			final int length = java.lang.reflect.Array.getLength(value);
+			for (int i=0; i<length; i++) {
+
+				result.add(normalizeSingle(java.lang.reflect.Array.get(value, i), typeHint));
+			}
+
+		} else {
+
+			result.add(normalizeSingle(value, typeHint));
+		}
+	}
+
+	private static Object normalizeSingle(final Object value, final Class typeHint) {
+
+		if (value == null) {
+			return EMPTY_VALUE;
+		}
+
+		if (value instanceof Date) {
+			return ((Date)value).getTime();
+		}
+
+		if (value instanceof Enum) {
+			return ((Enum)value).name();
+		}
+
+		if (value instanceof Byte || value instanceof Short || value instanceof Integer || value instanceof Long) {
+			return ((Number)value).longValue();
+		}
+
+		if (value instanceof Number) {
+			return ((Number)value).doubleValue();
+		}
+
+		if (value instanceof Boolean && !String.class.equals(typeHint)) {
+			return value;
+		}
+
+		return value.toString();
+	}
+
+	private static Double firstNumber(final List<Object> objects) {
+
+		if (objects != null) {
+
+			for (final Object object : objects) {
+
+				if (object instanceof Number) {
+					return ((Number)object).doubleValue();
+				}
+			}
+		}
+
+		return null;
+	}
+
+	private static double distance(final double lat1, final double lon1, final double lat2, final double lon2) {
+
+		// haversine formula
+		final double dLat = Math.toRadians(lat2 - lat1);
+		final double dLon = Math.toRadians(lon2 - lon1);
+		final double a    = Math.sin(dLat / 2) * Math.sin(dLat / 2) + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+
+		return EARTH_RADIUS_KM * 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+	}
+
+	// ----- nested classes -----
+	private static class EmptyValue {
+
+		@Override
+		public String toString() {
+			return "(empty)";
+		}
+	}
+
+	/**
+	 * Total order over normalized values: empty < boolean < number < string.
+	 */
+	private static class ValueComparator implements Comparator<Object> {
+
+		@Override
+		public int compare(final Object o1, final Object o2) {
+
+			final int r1 = rank(o1);
+			final int r2 = rank(o2);
+
+			if (r1 != r2) {
+				return Integer.compare(r1, r2);
+			}
+
+			switch (r1) {
+
+				case 1:
+					return ((Boolean)o1).compareTo((Boolean)o2);
+
+				case 2:
+					if (o1 instanceof Long && o2 instanceof Long) {
+						return ((Long)o1).compareTo((Long)o2);
+					}
+					return Double.compare(((Number)o1).doubleValue(), ((Number)o2).doubleValue());
+
+				case 3:
+					return ((String)o1).compareTo((String)o2);
+			}
+
+			return 0;
+		}
+
+		private int rank(final Object value) {
+
+			if (value instanceof Boolean) {
+				return 1;
+			}
+
+			if (value instanceof Number) {
+				return 2;
+			}
+
+			if (value instanceof String) {
+				return 3;
+			}
+
+			return 0;
+		}
+	}
+
+	/**
+	 * Sorts entities by the stored value of the sort key, entities without
+	 * a value come first.
+	 */
+	private static class SortKeyComparator<T extends PropertyContainer> implements Comparator<T> {
+
+		private String sortKey = null;
+
+		public SortKeyComparator(final String sortKey) {
+			this.sortKey = sortKey;
+		}
+
+		@Override
+		public int compare(final T o1, final T o2) {
+
+			final Object v1 = o1.getProperty(sortKey, null);
+			final Object v2 = o2.getProperty(sortKey, null);
+
+			if (v1 == null && v2 == null) {
+				return 0;
+			}
+
+			if (v1 == null) {
+				return -1;
+			}
+
+			if (v2 == null) {
+				return 1;
+			}
+
+			return VALUE_ORDER.compare(normalizeSingle(v1, null), normalizeSingle(v2, null));
+		}
+	}
+}
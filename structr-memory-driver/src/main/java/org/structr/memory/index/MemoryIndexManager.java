@@ -0,0 +1,58 @@
+/**
+ * Copyright (C) 2010-2016 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.memory.index;
+
+import java.util.function.LongFunction;
+import org.structr.api.graph.PropertyContainer;
+import org.structr.api.index.Index;
+import org.structr.api.index.IndexManager;
+import org.structr.api.index.IndexType;
+import org.structr.memory.MemoryDatabaseService;
+
+/**
+ *
+ */
+public class MemoryIndexManager<T extends PropertyContainer> implements IndexManager<T> {
+
+	private MemoryIndex<T> fulltext = null;
+	private MemoryIndex<T> exact    = null;
+	private MemoryIndex<T> spatial  = null;
+
+	public MemoryIndexManager(final MemoryDatabaseService db, final LongFunction<T> resolver) {
+
+		this.fulltext = new MemoryIndex<>(db, IndexType.Fulltext, resolver);
+		this.exact    = new MemoryIndex<>(db, IndexType.Exact, resolver);
+		this.spatial  = new MemoryIndex<>(db, IndexType.Spatial, resolver);
+	}
+
+	@Override
+	public Index<T> fulltext() {
+		return fulltext;
+	}
+
+	@Override
+	public Index<T> exact() {
+		return exact;
+	}
+
+	@Override
+	public Index<T> spatial() {
+		return spatial;
+	}
+}
@@ -0,0 +1,244 @@
+/**
+ * Copyright (C) 2010-2016 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.memory.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An open-addressing hash map with primitive long keys. Values must not
+ * be null, an empty slot is marked by a null value.
+ *
+ * This class is not thread-safe, callers must synchronize access.
+ *
+ * @param <V>
+ */
+public class LongObjectMap<V> {
+
+	private static final float LOAD_FACTOR = 0.6f;
+
+	private long[] keys     = null;
+	private Object[] values = null;
+	private int threshold   = 0;
+	private int mask        = 0;
+	private int size        = 0;
+
+	public LongObjectMap() {
+		this(16);
+	}
+
+	public LongObjectMap(final int initialCapacity) {
+
+		int capacity = 16;
+
+		while (capacity * LOAD_FACTOR < initialCapacity) {
+			capacity <<= 1;
+		}
+
+		allocate(capacity);
+	}
+
+	public V get(final long key) {
+
+		int index = slot(key);
+
+		while (values[index] != null) {
+
+			if (keys[index] == key) {
+				return (V)values[index];
+			}
+
+			index = (index + 1) & mask;
+		}
+
+		return null;
+	}
+
+	public boolean containsKey(final long key) {
+		return get(key) != null;
+	}
+
+	public V put(final long key, final V value) {
+
+		if (value == null) {
+			throw new IllegalArgumentException("Null values are not supported");
+		}
+
+		int index = slot(key);
+
+		while (values[index] != null) {
+
+			if (keys[index] == key) {
+
+				final V previous = (V)values[index];
+				values[index]    = value;
+
+				return previous;
+			}
+
+			index = (index + 1) & mask;
+		}
+
+		keys[index]   = key;
+		values[index] = value;
+
+		if (++size > threshold) {
+			rehash(keys.length << 1);
+		}
+
+		return null;
+	}
+
+	public V remove(final long key) {
+
+		int index = slot(key);
+
+		while (values[index] != null) {
+
+			if (keys[index] == key) {
+
+				final V previous = (V)values[index];
+
+				shiftBack(index);
+				size--;
+
+				return previous;
+			}
+
+			index = (index + 1) & mask;
+		}
+
+		return null;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public void clear() {
+		allocate(16);
+		size = 0;
+	}
+
+	/**
+	 * Returns a snapshot of the values in this map.
+	 *
+	 * @return the values
+	 */
+	public List<V> values() {
+
+		final List<V> result = new ArrayList<>(size);
+
+		for (final Object value : values) {
+
+			if (value != null) {
+				result.add((V)value);
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Returns a snapshot of the keys in this map.
+	 *
+	 * @return the keys
+	 */
+	public long[] keys() {
+
+		final long[] result = new long[size];
+		int pos             = 0;
+
+		for (int i=0; i<values.length; i++) {
+
+			if (values[i] != null) {
+				result[pos++] = keys[i];
+			}
+		}
+
+		return result;
+	}
+
+	// ----- private methods -----
+	private int slot(final long key) {
+
+		// mix the bits so sequential ids don't cluster
+		long hash = key * 0x9E3779B97F4A7C15L;
+		hash ^= (hash >>> 32);
+
+		return (int)hash & mask;
+	}
+
+	private void shiftBack(int index) {
+
+		// backward-shift deletion keeps probe sequences intact without tombstones
+		int next = (index + 1) & mask;
+
+		while (values[next] != null) {
+
+			final int ideal = slot(keys[next]);
+
+			if (((next - ideal) & mask) >= ((next - index) & mask)) {
+
+				keys[index]   = keys[next];
+				values[index] = values[next];
+				index         = next;
+			}
+
+			next = (next + 1) & mask;
+		}
+
+		values[index] = null;
+	}
+
+	private void allocate(final int capacity) {
+
+		keys      = new long[capacity];
+		values    = new Object[capacity];
+		mask      = capacity - 1;
+		threshold = (int)(capacity * LOAD_FACTOR);
+	}
+
+	private void rehash(final int capacity) {
+
+		final long[] oldKeys     = keys;
+		final Object[] oldValues = values;
+
+		allocate(capacity);
+
+		for (int i=0; i<oldValues.length; i++) {
+
+			if (oldValues[i] != null) {
+
+				int index = slot(oldKeys[i]);
+
+				while (values[index] != null) {
+					index = (index + 1) & mask;
+				}
+
+				keys[index]   = oldKeys[i];
+				values[index] = oldValues[i];
+			}
+		}
+	}
+}
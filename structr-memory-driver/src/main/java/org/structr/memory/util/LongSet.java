@@ -0,0 +1,252 @@
+/**
+ * Copyright (C) 2010-2016 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.memory.util;
+
+/**
+ * An open-addressing hash set of primitive long values.
+ *
+ * This class is not thread-safe, callers must synchronize access.
+ */
+public class LongSet {
+
+	private static final float LOAD_FACTOR = 0.6f;
+
+	private long[] keys     = null;
+	private boolean[] used  = null;
+	private int threshold   = 0;
+	private int mask        = 0;
+	private int size        = 0;
+
+	public LongSet() {
+		allocate(8);
+	}
+
+	public LongSet(final long[] initial) {
+
+		int capacity = 8;
+
+		while (capacity * LOAD_FACTOR < initial.length) {
+			capacity <<= 1;
+		}
+
+		allocate(capacity);
+
+		for (final long value : initial) {
+			add(value);
+		}
+	}
+
+	public boolean contains(final long key) {
+
+		int index = slot(key);
+
+		while (used[index]) {
+
+			if (keys[index] == key) {
+				return true;
+			}
+
+			index = (index + 1) & mask;
+		}
+
+		return false;
+	}
+
+	public boolean add(final long key) {
+
+		int index = slot(key);
+
+		while (used[index]) {
+
+			if (keys[index] == key) {
+				return false;
+			}
+
+			index = (index + 1) & mask;
+		}
+
+		keys[index] = key;
+		used[index] = true;
+
+		if (++size > threshold) {
+			rehash(keys.length << 1);
+		}
+
+		return true;
+	}
+
+	public boolean remove(final long key) {
+
+		int index = slot(key);
+
+		while (used[index]) {
+
+			if (keys[index] == key) {
+
+				shiftBack(index);
+				size--;
+
+				return true;
+			}
+
+			index = (index + 1) & mask;
+		}
+
+		return false;
+	}
+
+	public void addAll(final LongSet other) {
+
+		for (int i=0; i<other.used.length; i++) {
+
+			if (other.used[i]) {
+				add(other.keys[i]);
+			}
+		}
+	}
+
+	public void removeAll(final LongSet other) {
+
+		for (int i=0; i<other.used.length; i++) {
+
+			if (other.used[i]) {
+				remove(other.keys[i]);
+			}
+		}
+	}
+
+	/**
+	 * Returns a new set containing the elements that are present in both
+	 * this set and the given set. The smaller set is iterated.
+	 *
+	 * @param other
+	 * @return the intersection
+	 */
+	public LongSet intersect(final LongSet other) {
+
+		final LongSet smaller = size <= other.size ? this : other;
+		final LongSet larger  = smaller == this ? other : this;
+		final LongSet result  = new LongSet();
+
+		for (int i=0; i<smaller.used.length; i++) {
+
+			if (smaller.used[i] && larger.contains(smaller.keys[i])) {
+				result.add(smaller.keys[i]);
+			}
+		}
+
+		return result;
+	}
+
+	public LongSet copy() {
+
+		final LongSet copy = new LongSet();
+
+		copy.keys      = keys.clone();
+		copy.used      = used.clone();
+		copy.threshold = threshold;
+		copy.mask      = mask;
+		copy.size      = size;
+
+		return copy;
+	}
+
+	public long[] toArray() {
+
+		final long[] result = new long[size];
+		int pos             = 0;
+
+		for (int i=0; i<used.length; i++) {
+
+			if (used[i]) {
+				result[pos++] = keys[i];
+			}
+		}
+
+		return result;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	// ----- private methods -----
+	private int slot(final long key) {
+
+		long hash = key * 0x9E3779B97F4A7C15L;
+		hash ^= (hash >>> 32);
+
+		return (int)hash & mask;
+	}
+
+	private void shiftBack(int index) {
+
+		int next = (index + 1) & mask;
+
+		while (used[next]) {
+
+			final int ideal = slot(keys[next]);
+
+			if (((next - ideal) & mask) >= ((next - index) & mask)) {
+
+				keys[index] = keys[next];
+				index       = next;
+			}
+
+			next = (next + 1) & mask;
+		}
+
+		used[index] = false;
+	}
+
+	private void allocate(final int capacity) {
+
+		keys      = new long[capacity];
+		used      = new boolean[capacity];
+		mask      = capacity - 1;
+		threshold = (int)(capacity * LOAD_FACTOR);
+	}
+
+	private void rehash(final int capacity) {
+
+		final long[] oldKeys    = keys;
+		final boolean[] oldUsed = used;
+
+		allocate(capacity);
+
+		for (int i=0; i<oldUsed.length; i++) {
+
+			if (oldUsed[i]) {
+
+				int index = slot(oldKeys[i]);
+
+				while (used[index]) {
+					index = (index + 1) & mask;
+				}
+
+				keys[index] = oldKeys[i];
+				used[index] = true;
+			}
+		}
+	}
+}
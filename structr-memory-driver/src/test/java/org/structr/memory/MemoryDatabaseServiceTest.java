@@ -0,0 +1,360 @@
+/**
+ * Copyright (C) 2010-2016 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.memory;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.structr.api.NotInTransactionException;
+import org.structr.api.QueryResult;
+import org.structr.api.Transaction;
+import org.structr.api.graph.Direction;
+import org.structr.api.graph.Node;
+import org.structr.api.graph.Relationship;
+import org.structr.api.graph.RelationshipType;
+import org.structr.api.index.Index;
+import org.structr.api.search.ExactQuery;
+import org.structr.api.search.FulltextQuery;
+import org.structr.api.search.GroupQuery;
+import org.structr.api.search.Occurrence;
+import org.structr.api.search.QueryPredicate;
+import org.structr.api.search.RangeQuery;
+import org.structr.api.search.SortType;
+import org.structr.api.util.Iterables;
+
+/**
+ *
+ */
+public class MemoryDatabaseServiceTest {
+
+	private MemoryDatabaseService db = null;
+
+	@Before
+	public void setUp() {
+
+		db = new MemoryDatabaseService();
+		db.initialize(new Properties());
+	}
+
+	@Test
+	public void testRollback() {
+
+		long id = -1L;
+
+		try (final Transaction tx = db.beginTx()) {
+
+			final Node node = db.createNode();
+			node.setProperty("name", "test");
+
+			id = node.getId();
+			tx.success();
+		}
+
+		try (final Transaction tx = db.beginTx()) {
+
+			final Node node = db.getNodeById(id);
+			node.setProperty("name", "modified");
+			node.createRelationshipTo(db.createNode(), RelationshipType.forName("TEST"));
+
+			// no success => rollback
+		}
+
+		try (final Transaction tx = db.beginTx()) {
+
+			final Node node = db.getNodeById(id);
+
+			Assert.assertEquals("Property modification was not rolled back", "test", node.getProperty("name"));
+			Assert.assertEquals("Node creation was not rolled back", 1, Iterables.count(db.getAllNodes()));
+			Assert.assertEquals("Relationship creation was not rolled back", 0, Iterables.count(node.getRelationships()));
+
+			tx.success();
+		}
+	}
+
+	@Test
+	public void testWriteOutsideOfTransaction() {
+
+		try {
+
+			db.createNode();
+			Assert.fail("Creating a node outside of a transaction should fail");
+
+		} catch (NotInTransactionException expected) {}
+	}
+
+	@Test
+	public void testRelationships() {
+
+		try (final Transaction tx = db.beginTx()) {
+
+			final Node a = db.createNode();
+			final Node b = db.createNode();
+
+			a.createRelationshipTo(b, RelationshipType.forName("KNOWS"));
+			a.createRelationshipTo(b, RelationshipType.forName("LIKES"));
+			b.createRelationshipTo(a, RelationshipType.forName("KNOWS"));
+
+			Assert.assertEquals(3, Iterables.count(a.getRelationships()));
+			Assert.assertEquals(2, Iterables.count(a.getRelationships(Direction.OUTGOING)));
+			Assert.assertEquals(1, Iterables.count(a.getRelationships(Direction.INCOMING, RelationshipType.forName("KNOWS"))));
+
+			for (final Relationship rel : a.getRelationships()) {
+				rel.delete();
+			}
+
+			Assert.assertEquals(0, Iterables.count(b.getRelationships()));
+
+			tx.success();
+		}
+	}
+
+	@Test
+	public void testIndexQueries() {
+
+		try (final Transaction tx = db.beginTx()) {
+
+			final Index<Node> index = db.nodeIndexer().exact();
+
+			for (int i=0; i<10; i++) {
+
+				final Node node = db.createNode();
+				final String name = "node" + i;
+
+				node.setProperty("name", name);
+				node.setProperty("type", i % 2 == 0 ? "Even" : "Odd");
+				node.setProperty("count", i);
+
+				index.add(node, "name", name, String.class);
+				index.add(node, "type", node.getProperty("type"), String.class);
+				index.add(node, "count", i, Integer.class);
+			}
+
+			tx.success();
+		}
+
+		try (final Transaction tx = db.beginTx()) {
+
+			final Index<Node> index = db.nodeIndexer().exact();
+
+			Assert.assertEquals(5, index.get("type", "Even", String.class).size());
+
+			// type = Odd AND 2 <= count <= 7, sorted descending by count
+			final Group query = new Group(Occurrence.REQUIRED, "count", true,
+				new Exact("type", "Odd", Occurrence.REQUIRED),
+				new Range("count", 2, 7, Occurrence.REQUIRED)
+			);
+
+			final List<Node> result = Iterables.toList(index.query(query));
+
+			Assert.assertEquals(3, result.size());
+			Assert.assertEquals(7, result.get(0).getProperty("count"));
+			Assert.assertEquals(3, result.get(2).getProperty("count"));
+
+			// NOT type = Even
+			final QueryResult<Node> forbidden = index.query(new Group(Occurrence.REQUIRED, "name", false, new Exact("type", "Even", Occurrence.FORBIDDEN)));
+			Assert.assertEquals(5, forbidden.size());
+
+			// fulltext
+			final Group fulltext = new Group(Occurrence.REQUIRED, "name", false, new Fulltext("name", "NODE1", Occurrence.REQUIRED));
+			Assert.assertEquals(1, index.query(fulltext).size());
+
+			tx.success();
+		}
+	}
+
+	@Test
+	public void testIndexReplace() {
+
+		Node node = null;
+
+		try (final Transaction tx = db.beginTx()) {
+
+			final Index<Node> index = db.nodeIndexer().exact();
+
+			node = db.createNode();
+
+			index.replace(node, "words", Arrays.asList("one", "two", "three", "two"), String.class);
+
+			tx.success();
+		}
+
+		try (final Transaction tx = db.beginTx()) {
+
+			final Index<Node> index = db.nodeIndexer().exact();
+
+			Assert.assertEquals(1, index.get("words", "two", String.class).size());
+
+			index.replace(node, "words", Arrays.asList("three", "four"), String.class);
+
+			Assert.assertEquals(0, index.get("words", "one", String.class).size());
+			Assert.assertEquals(1, index.get("words", "three", String.class).size());
+			Assert.assertEquals(1, index.get("words", "four", String.class).size());
+
+			// no commit
+		}
+
+		try (final Transaction tx = db.beginTx()) {
+
+			final Index<Node> index = db.nodeIndexer().exact();
+
+			// rollback restores the values of the first replace
+			Assert.assertEquals(1, index.get("words", "one", String.class).size());
+			Assert.assertEquals(0, index.get("words", "four", String.class).size());
+
+			tx.success();
+		}
+	}
+
+	// ----- nested classes -----
+	private static class Predicate implements QueryPredicate {
+
+		protected Occurrence occurrence = null;
+		protected String sortKey        = null;
+		protected boolean descending    = false;
+		protected Object value          = null;
+		protected String name           = null;
+
+		public Predicate(final String name, final Object value, final Occurrence occurrence) {
+
+			this.name       = name;
+			this.value      = value;
+			this.occurrence = occurrence;
+		}
+
+		@Override
+		public Class getQueryType() {
+			return ExactQuery.class;
+		}
+
+		@Override
+		public String getName() {
+			return name;
+		}
+
+		@Override
+		public Class getType() {
+			return value != null ? value.getClass() : null;
+		}
+
+		@Override
+		public Object getValue() {
+			return value;
+		}
+
+		@Override
+		public Occurrence getOccurrence() {
+			return occurrence;
+		}
+
+		@Override
+		public boolean isExactMatch() {
+			return true;
+		}
+
+		@Override
+		public String getSortKey() {
+			return sortKey;
+		}
+
+		@Override
+		public SortType getSortType() {
+			return SortType.Default;
+		}
+
+		@Override
+		public boolean sortDescending() {
+			return descending;
+		}
+	}
+
+	private static class Exact extends Predicate implements ExactQuery {
+
+		public Exact(final String name, final Object value, final Occurrence occurrence) {
+			super(name, value, occurrence);
+		}
+	}
+
+	private static class Fulltext extends Predicate implements FulltextQuery {
+
+		public Fulltext(final String name, final Object value, final Occurrence occurrence) {
+			super(name, value, occurrence);
+		}
+
+		@Override
+		public Class getQueryType() {
+			return FulltextQuery.class;
+		}
+	}
+
+	private static class Range extends Predicate implements RangeQuery {
+
+		private Object start = null;
+		private Object end   = null;
+
+		public Range(final String name, final Object start, final Object end, final Occurrence occurrence) {
+
+			super(name, null, occurrence);
+
+			this.start = start;
+			this.end   = end;
+		}
+
+		@Override
+		public Class getQueryType() {
+			return RangeQuery.class;
+		}
+
+		@Override
+		public Object getRangeStart() {
+			return start;
+		}
+
+		@Override
+		public Object getRangeEnd() {
+			return end;
+		}
+	}
+
+	private static class Group extends Predicate implements GroupQuery {
+
+		private List<QueryPredicate> predicates = null;
+
+		public Group(final Occurrence occurrence, final String sortKey, final boolean descending, final QueryPredicate... predicates) {
+
+			super(null, null, occurrence);
+
+			this.sortKey    = sortKey;
+			this.descending = descending;
+			this.predicates = Arrays.asList(predicates);
+		}
+
+		@Override
+		public Class getQueryType() {
+			return GroupQuery.class;
+		}
+
+		@Override
+		public List<QueryPredicate> getQueryPredicates() {
+			return predicates;
+		}
+	}
+}
@@ -0,0 +1,783 @@
+/**
+ * Copyright (C) 2010-2016 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.rest.logging;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import org.structr.core.Services;
+
+/**
+ * Append-only, columnar storage for log events.
+ *
+ * Events are partitioned by day (UTC). Each partition stores the timestamp
+ * and the dictionary ids of subject, object, action and message in one
+ * file per column, which is memory-mapped for scans. All strings share a
+ * single dictionary, so each distinct value is stored and held in memory
+ * only once. For every partition, the number of events per action and
+ * minute is kept in memory and can be queried without scanning the
+ * columns.
+ *
+ * The store is located in the directory configured with
+ * {@link Services#LOG_STORE_PATH}, defaulting to "logs" in the base path.
+ *
+ *
+ */
+public class LogEventStore {
+
+	private static final Map<String, LogEventStore> instances = new ConcurrentHashMap<>();
+
+	private static final DateTimeFormatter PARTITION_FORMAT   = DateTimeFormatter.BASIC_ISO_DATE;
+	private static final String PARTITIONS                    = "partitions";
+	private static final String DICTIONARY                    = "dictionary.dat";
+	private static final long MINUTE                          = TimeUnit.MINUTES.toMillis(1);
+	private static final long DAY                             = TimeUnit.DAYS.toMillis(1);
+	private static final int MINUTES_PER_DAY                  = (int)(DAY / MINUTE);
+	private static final int BUFFER_ROWS                      = 8192;
+	private static final int NULL_ID                          = -1;
+	private static final int NO_MATCH                         = -2;
+	private static final int ANY                              = -3;
+
+	private static final int TIMESTAMP                        = 0;
+	private static final int SUBJECT                          = 1;
+	private static final int OBJECT                           = 2;
+	private static final int ACTION                           = 3;
+	private static final int MESSAGE                          = 4;
+	private static final String[] COLUMNS                     = { "timestamp", "subject", "object", "action", "message" };
+	private static final int[] WIDTHS                         = { 8, 4, 4, 4, 4 };
+
+	private final TreeMap<Long, Partition> partitions         = new TreeMap<>();
+	private Dictionary dictionary                             = null;
+	private Path root                                         = null;
+
+	private LogEventStore(final Path root) throws IOException {
+
+		this.root       = root;
+		this.dictionary = new Dictionary(root.resolve(DICTIONARY));
+
+		Files.createDirectories(root.resolve(PARTITIONS));
+
+		try (final DirectoryStream<Path> stream = Files.newDirectoryStream(root.resolve(PARTITIONS))) {
+
+			for (final Path dir : stream) {
+
+				final long day = LocalDate.parse(dir.getFileName().toString(), PARTITION_FORMAT).toEpochDay();
+
+				partitions.put(day, new Partition(dir, day));
+			}
+		}
+	}
+
+	/**
+	 * Returns the store in the configured location, opening it on first use.
+	 *
+	 * @return the store
+	 * @throws IOException
+	 */
+	public static LogEventStore getInstance() throws IOException {
+
+		final String basePath = Services.getInstance().getConfigurationValue(Services.BASE_PATH, ".");
+		final String path     = Services.getInstance().getConfigurationValue(Services.LOG_STORE_PATH, basePath + "/logs");
+
+		return getInstance(path);
+	}
+
+	/**
+	 * Returns the store in the given directory, opening it on first use.
+	 *
+	 * @param path
+	 * @return the store
+	 * @throws IOException
+	 */
+	public static LogEventStore getInstance(final String path) throws IOException {
+
+		final String key = Paths.get(path).toAbsolutePath().normalize().toString();
+
+		synchronized (instances) {
+
+			LogEventStore store = instances.get(key);
+			if (store == null) {
+
+				store = new LogEventStore(Paths.get(key));
+				instances.put(key, store);
+			}
+
+			return store;
+		}
+	}
+
+	/**
+	 * Appends an event. The event is buffered and becomes visible to scans
+	 * after the next call to {@link #flush()}, which every scan does
+	 * implicitly.
+	 *
+	 * @param timestamp
+	 * @param subject
+	 * @param object
+	 * @param action
+	 * @param message
+	 * @throws IOException
+	 */
+	public synchronized void append(final long timestamp, final String subject, final String object, final String action, final String message) throws IOException {
+
+		final long day = Math.floorDiv(timestamp, DAY);
+
+		Partition partition = partitions.get(day);
+		if (partition == null) {
+
+			partition = new Partition(root.resolve(PARTITIONS).resolve(LocalDate.ofEpochDay(day).format(PARTITION_FORMAT)), day);
+			partitions.put(day, partition);
+		}
+
+		partition.append(timestamp, dictionary.add(subject), dictionary.add(object), dictionary.add(action), dictionary.add(message));
+	}
+
+	/**
+	 * Writes all buffered events to disk.
+	 *
+	 * @throws IOException
+	 */
+	public synchronized void flush() throws IOException {
+
+		// the dictionary must be written first so that all ids
+		// in the columns can be resolved after a restart
+		dictionary.flush();
+
+		for (final Partition partition : partitions.values()) {
+			partition.flush();
+		}
+	}
+
+	/**
+	 * Calls the given visitor for all events in the given time range that
+	 * match the given subject, object and action. A null value matches
+	 * every event. Events are visited in partition order, i.e. ordered by
+	 * day, but not necessarily by timestamp within a day.
+	 *
+	 * @param from the start of the time range (inclusive)
+	 * @param to the end of the time range (inclusive)
+	 * @param subject
+	 * @param object
+	 * @param action
+	 * @param visitor
+	 * @throws IOException
+	 */
+	public void scan(final long from, final long to, final String subject, final String object, final String action, final EventVisitor visitor) throws IOException {
+
+		final int subjectId = filterId(subject);
+		final int objectId  = filterId(object);
+		final int actionId  = filterId(action);
+
+		if (subjectId == NO_MATCH || objectId == NO_MATCH || actionId == NO_MATCH) {
+			return;
+		}
+
+		for (final Snapshot snapshot : snapshot(from, to, false)) {
+
+			if (actionId != ANY && !snapshot.totals.containsKey(actionId)) {
+				continue;
+			}
+
+			final ByteBuffer[] columns = snapshot.columns;
+			final boolean checkRange   = snapshot.minTimestamp < from || snapshot.maxTimestamp > to;
+
+			for (int i=0; i<snapshot.rows; i++) {
+
+				final int offset = i * 4;
+
+				if (actionId != ANY && columns[ACTION].getInt(offset) != actionId) {
+					continue;
+				}
+
+				if (subjectId != ANY && columns[SUBJECT].getInt(offset) != subjectId) {
+					continue;
+				}
+
+				if (objectId != ANY && columns[OBJECT].getInt(offset) != objectId) {
+					continue;
+				}
+
+				final long timestamp = columns[TIMESTAMP].getLong(i * 8);
+
+				if (checkRange && (timestamp < from || timestamp > to)) {
+					continue;
+				}
+
+				visitor.visit(new Event(
+					dictionary,
+					timestamp,
+					columns[SUBJECT].getInt(offset),
+					columns[OBJECT].getInt(offset),
+					columns[ACTION].getInt(offset),
+					columns[MESSAGE].getInt(offset)
+				));
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of events per minute for the given action, or for
+	 * all actions if action is null. The keys of the returned map are the
+	 * start timestamps of the minutes that contain at least one event.
+	 *
+	 * This method uses the pre-aggregated counts and does not scan the
+	 * event columns.
+	 *
+	 * @param action
+	 * @return the number of events per minute
+	 * @throws IOException
+	 */
+	public TreeMap<Long, Integer> countByMinute(final String action) throws IOException {
+
+		final TreeMap<Long, Integer> result = new TreeMap<>();
+		final int actionId                  = filterId(action);
+
+		if (actionId == NO_MATCH) {
+			return result;
+		}
+
+		for (final Snapshot snapshot : snapshot(Long.MIN_VALUE, Long.MAX_VALUE, true)) {
+
+			final long dayStart = snapshot.day * DAY;
+
+			for (final Entry<Integer, int[]> entry : snapshot.buckets.entrySet()) {
+
+				if (actionId == ANY || actionId == entry.getKey()) {
+
+					final int[] counts = entry.getValue();
+
+					for (int i=0; i<MINUTES_PER_DAY; i++) {
+
+						if (counts[i] > 0) {
+
+							final long minute   = dayStart + i * MINUTE;
+							final Integer value = result.get(minute);
+
+							result.put(minute, value != null ? value + counts[i] : counts[i]);
+						}
+					}
+				}
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Returns the number of events per action. Events without an action are
+	 * counted with the key "null".
+	 *
+	 * This method uses the pre-aggregated counts and does not scan the
+	 * event columns.
+	 *
+	 * @return the number of events per action
+	 * @throws IOException
+	 */
+	public Map<String, Integer> countByAction() throws IOException {
+
+		final Map<String, Integer> result = new LinkedHashMap<>();
+
+		for (final Snapshot snapshot : snapshot(Long.MIN_VALUE, Long.MAX_VALUE, false)) {
+
+			for (final Entry<Integer, Integer> entry : snapshot.totals.entrySet()) {
+
+				final String action = String.valueOf(dictionary.get(entry.getKey()));
+				final Integer value = result.get(action);
+
+				result.put(action, value != null ? value + entry.getValue() : entry.getValue());
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Returns the timestamp of the earliest event, or Long.MAX_VALUE if the
+	 * store is empty.
+	 *
+	 * @return the earliest timestamp
+	 * @throws IOException
+	 */
+	public long getFirstTimestamp() throws IOException {
+
+		long first = Long.MAX_VALUE;
+
+		for (final Snapshot snapshot : snapshot(Long.MIN_VALUE, Long.MAX_VALUE, false)) {
+			first = Math.min(first, snapshot.minTimestamp);
+		}
+
+		return first;
+	}
+
+	/**
+	 * Returns the timestamp of the latest event, or 0 if the store is empty.
+	 *
+	 * @return the latest timestamp
+	 * @throws IOException
+	 */
+	public long getLastTimestamp() throws IOException {
+
+		long last = 0L;
+
+		for (final Snapshot snapshot : snapshot(Long.MIN_VALUE, Long.MAX_VALUE, false)) {
+			last = Math.max(last, snapshot.maxTimestamp);
+		}
+
+		return last;
+	}
+
+	/**
+	 * Flushes and closes this store. The next call to getInstance() for
+	 * the same location opens it again.
+	 *
+	 * @throws IOException
+	 */
+	public void close() throws IOException {
+
+		synchronized (instances) {
+
+			synchronized (this) {
+
+				flush();
+
+				for (final Partition partition : partitions.values()) {
+					partition.close();
+				}
+
+				dictionary.close();
+
+				instances.values().remove(this);
+			}
+		}
+	}
+
+	// ----- private methods -----
+	private int filterId(final String value) {
+
+		if (value == null) {
+			return ANY;
+		}
+
+		final int id = dictionary.find(value);
+
+		return id == NULL_ID ? NO_MATCH : id;
+	}
+
+	/**
+	 * Flushes the store and returns a consistent view of all partitions
+	 * that overlap the given time range. The snapshots can be read without
+	 * holding the lock of the store. The per-minute counts are only copied
+	 * if requested.
+	 */
+	private synchronized List<Snapshot> snapshot(final long from, final long to, final boolean withBuckets) throws IOException {
+
+		final List<Snapshot> result = new ArrayList<>();
+
+		flush();
+
+		for (final Partition partition : partitions.subMap(Math.floorDiv(from, DAY), true, Math.floorDiv(to, DAY), true).values()) {
+
+			if (partition.rows > 0) {
+				result.add(partition.snapshot(withBuckets));
+			}
+		}
+
+		return result;
+	}
+
+	// ----- nested classes -----
+	/**
+	 * Callback interface for {@link LogEventStore#scan}.
+	 */
+	public interface EventVisitor {
+
+		void visit(final Event event);
+	}
+
+	/**
+	 * A single event. String values are resolved from the dictionary of
+	 * the store when they are requested.
+	 */
+	public static class Event {
+
+		private Dictionary dictionary = null;
+		private long timestamp        = 0L;
+		private int subject           = 0;
+		private int object            = 0;
+		private int action            = 0;
+		private int message           = 0;
+
+		private Event(final Dictionary dictionary, final long timestamp, final int subject, final int object, final int action, final int message) {
+
+			this.dictionary = dictionary;
+			this.timestamp  = timestamp;
+			this.subject    = subject;
+			this.object     = object;
+			this.action     = action;
+			this.message    = message;
+		}
+
+		public long getTimestamp() {
+			return timestamp;
+		}
+
+		public String getSubjectId() {
+			return dictionary.get(subject);
+		}
+
+		public String getObjectId() {
+			return dictionary.get(object);
+		}
+
+		public String getAction() {
+			return dictionary.get(action);
+		}
+
+		public String getMessage() {
+			return dictionary.get(message);
+		}
+
+		/**
+		 * Returns the dictionary id of the message. Equal messages have
+		 * the same id, so results derived from the message alone can be
+		 * cached by id.
+		 *
+		 * @return the dictionary id of the message
+		 */
+		public int getMessageId() {
+			return message;
+		}
+	}
+
+	private static class Snapshot {
+
+		private Map<Integer, int[]> buckets  = null;
+		private Map<Integer, Integer> totals = null;
+		private ByteBuffer[] columns         = null;
+		private long minTimestamp            = 0L;
+		private long maxTimestamp            = 0L;
+		private long day                     = 0L;
+		private int rows                     = 0;
+	}
+
+	/**
+	 * The events of a single day.
+	 */
+	private static class Partition {
+
+		private final Map<Integer, int[]> buckets   = new HashMap<>();
+		private final Map<Integer, Integer> totals  = new HashMap<>();
+		private final FileChannel[] channels        = new FileChannel[COLUMNS.length];
+		private final ByteBuffer[] buffers          = new ByteBuffer[COLUMNS.length];
+		private MappedByteBuffer[] mapped           = null;
+		private Path dir                            = null;
+		private long day                            = 0L;
+		private long minTimestamp                   = Long.MAX_VALUE;
+		private long maxTimestamp                   = Long.MIN_VALUE;
+		private int mappedRows                      = 0;
+		private int storedRows                      = 0;
+		private int rows                            = 0;
+
+		public Partition(final Path dir, final long day) throws IOException {
+
+			this.dir = dir;
+			this.day = day;
+
+			Files.createDirectories(dir);
+
+			long minSize = Long.MAX_VALUE;
+
+			for (int i=0; i<COLUMNS.length; i++) {
+
+				channels[i] = FileChannel.open(dir.resolve(COLUMNS[i] + ".col"), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+				buffers[i]  = ByteBuffer.allocate(BUFFER_ROWS * WIDTHS[i]);
+				minSize     = Math.min(minSize, channels[i].size() / WIDTHS[i]);
+			}
+
+			// discard incomplete rows that were written before an unclean shutdown
+			for (int i=0; i<COLUMNS.length; i++) {
+
+				channels[i].truncate(minSize * WIDTHS[i]);
+				channels[i].position(minSize * WIDTHS[i]);
+			}
+
+			this.storedRows = (int)minSize;
+			this.rows       = storedRows;
+
+			// rebuild the pre-aggregated counts
+			if (rows > 0) {
+
+				final ByteBuffer[] columns = map();
+
+				for (int i=0; i<rows; i++) {
+					count(columns[TIMESTAMP].getLong(i * 8), columns[ACTION].getInt(i * 4));
+				}
+			}
+		}
+
+		public void append(final long timestamp, final int subject, final int object, final int action, final int message) throws IOException {
+
+			if (!buffers[TIMESTAMP].hasRemaining()) {
+				flush();
+			}
+
+			buffers[TIMESTAMP].putLong(timestamp);
+			buffers[SUBJECT].putInt(subject);
+			buffers[OBJECT].putInt(object);
+			buffers[ACTION].putInt(action);
+			buffers[MESSAGE].putInt(message);
+
+			count(timestamp, action);
+
+			rows++;
+		}
+
+		public void flush() throws IOException {
+
+			if (rows > storedRows) {
+
+				for (int i=0; i<COLUMNS.length; i++) {
+
+					final ByteBuffer buffer = buffers[i];
+
+					buffer.flip();
+
+					while (buffer.hasRemaining()) {
+						channels[i].write(buffer);
+					}
+
+					buffer.clear();
+				}
+
+				storedRows = rows;
+			}
+		}
+
+		public Snapshot snapshot(final boolean withBuckets) throws IOException {
+
+			final Snapshot snapshot = new Snapshot();
+
+			if (withBuckets) {
+
+				snapshot.buckets = new HashMap<>();
+
+				for (final Entry<Integer, int[]> entry : buckets.entrySet()) {
+					snapshot.buckets.put(entry.getKey(), entry.getValue().clone());
+				}
+			}
+
+			snapshot.columns      = map();
+			snapshot.totals       = new HashMap<>(totals);
+			snapshot.minTimestamp = minTimestamp;
+			snapshot.maxTimestamp = maxTimestamp;
+			snapshot.day          = day;
+			snapshot.rows         = storedRows;
+
+			return snapshot;
+		}
+
+		public void close() throws IOException {
+
+			for (final FileChannel channel : channels) {
+				channel.close();
+			}
+		}
+
+		// ----- private methods -----
+		private void count(final long timestamp, final int action) {
+
+			int[] counts = buckets.get(action);
+			if (counts == null) {
+
+				counts = new int[MINUTES_PER_DAY];
+				buckets.put(action, counts);
+			}
+
+			counts[(int)((timestamp - day * DAY) / MINUTE)]++;
+
+			final Integer total = totals.get(action);
+			totals.put(action, total != null ? total + 1 : 1);
+
+			minTimestamp = Math.min(minTimestamp, timestamp);
+			maxTimestamp = Math.max(maxTimestamp, timestamp);
+		}
+
+		/**
+		 * Returns read-only views of the stored rows of all columns, the
+		 * columns are only mapped again when rows were added.
+		 */
+		private ByteBuffer[] map() throws IOException {
+
+			if (mapped == null || mappedRows < storedRows) {
+
+				final MappedByteBuffer[] buffers = new MappedByteBuffer[COLUMNS.length];
+
+				for (int i=0; i<COLUMNS.length; i++) {
+					buffers[i] = channels[i].map(FileChannel.MapMode.READ_ONLY, 0, (long)storedRows * WIDTHS[i]);
+				}
+
+				mapped     = buffers;
+				mappedRows = storedRows;
+			}
+
+			final ByteBuffer[] views = new ByteBuffer[COLUMNS.length];
+
+			for (int i=0; i<COLUMNS.length; i++) {
+				views[i] = mapped[i].duplicate();
+			}
+
+			return views;
+		}
+	}
+
+	/**
+	 * Append-only mapping between strings and ids. The id of a string is
+	 * its position in the dictionary file.
+	 */
+	private static class Dictionary {
+
+		private final Map<String, Integer> ids = new HashMap<>();
+		private volatile String[] values       = new String[1024];
+		private DataOutputStream out           = null;
+		private int size                       = 0;
+
+		public Dictionary(final Path path) throws IOException {
+
+			Files.createDirectories(path.getParent());
+
+			long validLength = 0L;
+
+			if (Files.exists(path)) {
+
+				try (final DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+
+					while (true) {
+
+						final int length   = in.readInt();
+						final byte[] bytes = new byte[length];
+
+						in.readFully(bytes);
+						put(new String(bytes, StandardCharsets.UTF_8));
+
+						validLength += 4 + length;
+					}
+
+				} catch (EOFException eof) {
+					// end of dictionary reached
+				}
+
+				// discard an incomplete last entry
+				try (final FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+					channel.truncate(validLength);
+				}
+			}
+
+			this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path.toFile(), true), 65536));
+		}
+
+		public synchronized int add(final String value) throws IOException {
+
+			if (value == null) {
+				return NULL_ID;
+			}
+
+			final Integer id = ids.get(value);
+			if (id != null) {
+				return id;
+			}
+
+			final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+
+			out.writeInt(bytes.length);
+			out.write(bytes);
+
+			return put(value);
+		}
+
+		public synchronized int find(final String value) {
+
+			final Integer id = ids.get(value);
+
+			return id != null ? id : NULL_ID;
+		}
+
+		public String get(final int id) {
+
+			if (id < 0) {
+				return null;
+			}
+
+			return values[id];
+		}
+
+		public synchronized void flush() throws IOException {
+			out.flush();
+		}
+
+		public synchronized void close() throws IOException {
+			out.close();
+		}
+
+		// ----- private methods -----
+		private int put(final String value) {
+
+			String[] current = values;
+
+			if (size == current.length) {
+
+				final String[] grown = new String[current.length * 2];
+				System.arraycopy(current, 0, grown, 0, size);
+
+				current = grown;
+			}
+
+			current[size] = value;
+			ids.put(value, size);
+
+			// publish the new entry
+			values = current;
+
+			return size++;
+		}
+	}
+}
@@ -19,21 +19,30 @@
 package org.structr.rest.resource;
 
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import javax.servlet.http.HttpServletRequest;
+import org.structr.common.AccessPathCache;
+import org.structr.common.PrincipalGroupCache;
 import org.structr.common.SecurityContext;
 import org.structr.common.error.FrameworkException;
 import org.structr.core.GraphObjectMap;
 import org.structr.core.Result;
 import org.structr.core.Services;
 import org.structr.core.app.StructrApp;
+import org.structr.core.graph.NodeFactory;
+import org.structr.core.graph.RelationshipFactory;
+import org.structr.core.graph.TransactionCommand;
 import org.structr.core.property.GenericProperty;
 import org.structr.core.property.PropertyKey;
 import org.structr.core.property.StringProperty;
+import org.structr.core.script.Scripting;
 import org.structr.rest.RestMethodResult;
 import org.structr.rest.exception.IllegalMethodException;
 import org.structr.rest.exception.IllegalPathException;
@@ -44,6 +53,8 @@ import org.structr.rest.exception.IllegalPathException;
  */
 public class EnvResource extends Resource {
 
+	private static final Map<String, Supplier<Map<String, Object>>> cacheStatistics = new ConcurrentHashMap<>();
+
 	public enum UriPart {
 		_env
 	}
@@ -103,11 +114,39 @@ public class EnvResource extends Resource {
 
 		info.setProperty(new StringProperty("instanceStage"), StructrApp.getConfigurationValue(Services.APPLICATION_INSTANCE_STAGE, ""));
 
+		final Map<String, Object> caches = new LinkedHashMap<>();
+
+		caches.put("nodeTypes", NodeFactory.getCacheStatistics());
+		caches.put("relationshipTypes", RelationshipFactory.getCacheStatistics());
+		caches.put("accessPaths", AccessPathCache.getStatistics());
+		caches.put("groupMemberships", PrincipalGroupCache.getStatistics());
+
+		for (final Map.Entry<String, Supplier<Map<String, Object>>> entry : cacheStatistics.entrySet()) {
+			caches.put(entry.getKey(), entry.getValue().get());
+		}
+
+		info.setProperty(new GenericProperty("caches"), caches);
+
+		info.setProperty(new GenericProperty("commitLocks"), TransactionCommand.getLockStatistics());
+
+		info.setProperty(new GenericProperty("scripts"), Scripting.getScriptStatistics());
+
 		resultList.add(info);
 
 		return new Result(resultList, resultList.size(), false, false);
 	}
 
+	/**
+	 * Registers the statistics of a cache that is not part of the core
+	 * module, so it is reported in the "caches" section of this resource.
+	 *
+	 * @param name
+	 * @param statistics
+	 */
+	public static void registerCacheStatistics(final String name, final Supplier<Map<String, Object>> statistics) {
+		cacheStatistics.put(name, statistics);
+	}
+
 	@Override
 	public RestMethodResult doPost(Map<String, Object> propertySet) throws FrameworkException {
 		throw new IllegalMethodException("POST not allowed on " + getResourceSignature());
@@ -18,9 +18,10 @@
  */
 package org.structr.rest.resource;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
-import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -65,10 +66,12 @@ import org.structr.core.property.ISO8601DateProperty;
 import org.structr.core.property.IntProperty;
 import org.structr.core.property.Property;
 import org.structr.core.property.PropertyKey;
-import org.structr.core.property.PropertyMap;
 import org.structr.core.property.StringProperty;
 import org.structr.rest.RestMethodResult;
 import org.structr.rest.exception.IllegalMethodException;
+import org.structr.rest.logging.LogEventStore;
+import org.structr.rest.logging.LogEventStore.Event;
+import org.structr.rest.logging.LogEventStore.EventVisitor;
 import org.structr.rest.logging.entity.LogEvent;
 
 /**
@@ -96,6 +99,7 @@ public class LogResource extends Resource {
 	private static final ISO8601DateProperty lastEntryProperty  = new ISO8601DateProperty("lastEntry");
 
 	private static final Set<String> ReservedRequestParameters  = new LinkedHashSet<>(Arrays.asList(new String[]{"subject", "object", "action", "message", "timestamp", "aggregate", "histogram", "correlate"}));
+	private static final Set<LogEventStore> importedStores      = ConcurrentHashMap.newKeySet();
 
 	public static final String LOG_RESOURCE_URI                 = "log";
 
@@ -149,70 +153,62 @@ public class LogResource extends Resource {
 			final String objectId            = request.getParameter(objectProperty.jsonName());
 			final GraphObjectMap overviewMap = new GraphObjectMap();
 			final LogState logState          = new LogState(request);
+			final LogEventStore store        = getStore();
 
-			if (StringUtils.isNotEmpty(subjectId) && StringUtils.isNotEmpty(objectId)) {
+			try {
 
-				processData(logState, StructrApp.getInstance(securityContext)
-					.nodeQuery(LogEvent.class)
-					.and(LogEvent.subjectProperty, subjectId)
-					.and(LogEvent.objectProperty, objectId)
-					.and(LogEvent.actionProperty, logState.logAction)
-					.andRange(LogEvent.timestampProperty, new Date(logState.beginTimestamp()), new Date(logState.endTimestamp()))
-					.getAsList()
-				);
+				if (StringUtils.isNotEmpty(subjectId) && StringUtils.isNotEmpty(objectId)) {
 
-			} else if (StringUtils.isNotEmpty(subjectId) && StringUtils.isEmpty(objectId)) {
+					processData(logState, store, subjectId, objectId);
 
-				processData(logState, StructrApp.getInstance(securityContext)
-					.nodeQuery(LogEvent.class)
-					.and(LogEvent.subjectProperty, subjectId)
-					.and(LogEvent.actionProperty, logState.logAction)
-					.andRange(LogEvent.timestampProperty, new Date(logState.beginTimestamp()), new Date(logState.endTimestamp()))
-					.getAsList()
-				);
+				} else if (StringUtils.isNotEmpty(subjectId) && StringUtils.isEmpty(objectId)) {
 
-			} else if (StringUtils.isEmpty(subjectId) && StringUtils.isNotEmpty(objectId)) {
+					processData(logState, store, subjectId, null);
 
-				logState.inverse(true);
+				} else if (StringUtils.isEmpty(subjectId) && StringUtils.isNotEmpty(objectId)) {
 
-				processData(logState, StructrApp.getInstance(securityContext)
-					.nodeQuery(LogEvent.class)
-					.and(LogEvent.objectProperty, objectId)
-					.and(LogEvent.actionProperty, logState.logAction)
-					.andRange(LogEvent.timestampProperty, new Date(logState.beginTimestamp()), new Date(logState.endTimestamp()))
-					.getAsList()
-				);
+					logState.inverse(true);
 
-			} else if (logState.doActionQuery()) {
+					processData(logState, store, null, objectId);
 
-				processData(logState);
+				} else if (logState.doActionQuery()) {
 
-			} else {
+					if (logState.usePreAggregatedCounts()) {
 
-				// create overview of existing logs
-				logState.overview(true);
+						// plain event counts per interval can be taken
+						// from the store without scanning the events
+						logState.addMinuteCounts(store.countByMinute(logState.logAction));
 
-				processData(logState, StructrApp.getInstance(securityContext)
-					.nodeQuery(LogEvent.class)
-					.getAsList()
-				);
-			}
+					} else {
+
+						processData(logState, store);
+					}
 
-			if (logState.overview()) {
+				} else {
 
-				overviewMap.put(actionsProperty, logState.actions());
-				overviewMap.put(entryCountProperty, logState.actionCount());
-				overviewMap.put(firstEntryProperty, new Date(logState.beginTimestamp()));
-				overviewMap.put(lastEntryProperty, new Date(logState.endTimestamp()));
+					// create overview of existing logs
+					final Map<String, Integer> actions = store.countByAction();
+					int entryCount                     = 0;
 
-				return new Result(overviewMap, false);
+					for (final Integer count : actions.values()) {
+						entryCount += count;
+					}
 
-			} else if (logState.doHistogram()) {
+					overviewMap.put(actionsProperty, actions);
+					overviewMap.put(entryCountProperty, entryCount);
+					overviewMap.put(firstEntryProperty, new Date(store.getFirstTimestamp()));
+					overviewMap.put(lastEntryProperty, new Date(store.getLastTimestamp()));
 
-				// aggregate results
-				return histogram(logState);
+					return new Result(overviewMap, false);
+				}
 
-			} else if (logState.doAggregate()) {
+			} catch (IOException ioex) {
+
+				logger.log(Level.WARNING, "", ioex);
+				throw new FrameworkException(500, "Unable to read log events: " + ioex.getMessage());
+			}
+
+			if (logState.doHistogram() || logState.doAggregate()) {
 
 				// aggregate results
 				return aggregate(logState);
@@ -239,14 +235,19 @@ public class LogResource extends Resource {
 			// initialize?!
 			if ("true".equals(request.getParameter("initialize"))) {
 
-				final String filesPath = Services.getInstance().getConfigurationValue(Services.FILES_PATH);
+				final String filesPath    = Services.getInstance().getConfigurationValue(Services.FILES_PATH);
+				final LogEventStore store = getStore();
+
+				try {
 
-				try (final Context context  = new Context(1000)) {
+					final int count = collectFilesAndStore(store, new File(filesPath + SUBJECTS).toPath(), 0);
 
-					collectFilesAndStore(context, new File(filesPath + SUBJECTS).toPath(), 0);
+					store.flush();
 
-				} catch (FrameworkException fex) {
-					logger.log(Level.WARNING, "", fex);
+					logger.log(Level.INFO, "Imported {0} log events", count);
+
+				} catch (IOException ioex) {
+					logger.log(Level.WARNING, "", ioex);
 				}
 
 				return new RestMethodResult(200);
@@ -259,25 +260,28 @@ public class LogResource extends Resource {
 
 			if (subjectId != null && objectId != null && action != null) {
 
-				final App app  = StructrApp.getInstance(securityContext);
-				LogEvent event = null;
+				final LogEventStore store = getStore();
+				final long timestamp      = System.currentTimeMillis();
 
-				try (final Tx tx = app.tx()) {
+				try {
 
-					final PropertyMap properties = new PropertyMap();
-					properties.put(LogEvent.timestampProperty,           new Date());
-					properties.put(LogEvent.actionProperty,              action);
-					properties.put(LogEvent.subjectProperty,             subjectId);
-					properties.put(LogEvent.objectProperty,              objectId);
-					properties.put(LogEvent.messageProperty,             message);
-					properties.put(LogEvent.visibleToPublicUsers,        true);
-					properties.put(LogEvent.visibleToAuthenticatedUsers, true);
+					store.append(timestamp, subjectId, objectId, action, message);
+					store.flush();
 
-					event = app.create(LogEvent.class, properties);
+				} catch (IOException ioex) {
 
-					tx.success();
+					logger.log(Level.WARNING, "", ioex);
+					throw new FrameworkException(500, "Unable to store log event: " + ioex.getMessage());
 				}
 
+				final GraphObjectMap event = new GraphObjectMap();
+
+				event.put(timestampProperty, new Date(timestamp));
+				event.put(actionProperty,    action);
+				event.put(subjectProperty,   subjectId);
+				event.put(objectProperty,    objectId);
+				event.put(messageProperty,   message);
+
 				final RestMethodResult result = new RestMethodResult(201);
 				result.addContent(event);
 
@@ -338,7 +342,66 @@ public class LogResource extends Resource {
 	}
 
 	// ----- private methods -----
-	private void collectFilesAndStore(final Context context, final Path dir, final int level) throws FrameworkException {
+	private LogEventStore getStore() throws FrameworkException {
+
+		try {
+
+			final LogEventStore store = LogEventStore.getInstance();
+
+			if (!importedStores.contains(store)) {
+				importLogEventNodes(store);
+			}
+
+			return store;
+
+		} catch (IOException ioex) {
+
+			logger.log(Level.WARNING, "", ioex);
+			throw new FrameworkException(500, "Unable to open log event store: " + ioex.getMessage());
+		}
+	}
+
+	/**
+	 * Moves the LogEvent nodes that were created before log events were
+	 * kept in the event store into the store. The nodes are deleted only
+	 * after they have been written to the store, so the import is done
+	 * once and no event is lost if it fails.
+	 */
+	private static synchronized void importLogEventNodes(final LogEventStore store) throws IOException, FrameworkException {
+
+		if (importedStores.contains(store)) {
+			return;
+		}
+
+		final App app = StructrApp.getInstance();
+
+		try (final Tx tx = app.tx()) {
+
+			final List<LogEvent> events = app.nodeQuery(LogEvent.class).getAsList();
+			if (!events.isEmpty()) {
+
+				for (final LogEvent event : events) {
+					store.append(event.getTimestamp(), event.getSubjectId(), event.getObjectId(), event.getAction(), event.getMessage());
+				}
+
+				store.flush();
+
+				for (final LogEvent event : events) {
+					app.delete(event);
+				}
+
+				logger.log(Level.INFO, "Imported {0} log events from the database", events.size());
+			}
+
+			tx.success();
+		}
+
+		importedStores.add(store);
+	}
+
+	private int collectFilesAndStore(final LogEventStore store, final Path dir, final int level) {
+
+		int count = 0;
 
 		if (level == 1) {
 			logger.log(Level.INFO, "Path {0}", dir);
@@ -350,14 +413,11 @@ public class LogResource extends Resource {
 
 				if (Files.isDirectory(p)) {
 
-					collectFilesAndStore(context, p, level+1);
+					count += collectFilesAndStore(store, p, level+1);
 
 				} else {
 
-					context.update(storeLogEntry(p));
-
-					// update object count and commit
-					context.commit(true);
+					count += storeLogEntry(store, p);
 				}
 
 				Files.delete(p);
@@ -367,109 +427,95 @@ public class LogResource extends Resource {
 		} catch (IOException ioex) {
 			logger.log(Level.WARNING, "", ioex);
 		}
+
+		return count;
 	}
 
-	private void processData(final LogState state) throws FrameworkException {
+	private void processData(final LogState state, final LogEventStore store) throws IOException, FrameworkException {
 
 		if (state.doCorrelate()) {
 
 			// get the basic correlation set (pds_click in the test case)
-			final List<LogEvent> correlationResult = StructrApp.getInstance(securityContext)
-				.nodeQuery(LogEvent.class)
-				.and(LogEvent.actionProperty, state.correlationAction)
-				.getAsList();
+			store.scan(Long.MIN_VALUE, Long.MAX_VALUE, null, null, state.correlationAction, new EventVisitor() {
 
-			for (final LogEvent entry : correlationResult) {
+				@Override
+				public void visit(final Event entry) {
 
-				final String pathSubjectId = state.inverse() ? entry.getObjectId() : entry.getSubjectId();
-				final String pathObjectId  = state.inverse() ? entry.getSubjectId() : entry.getObjectId();
-				final String entryMessage  = entry.getMessage();
+					final String pathSubjectId = state.inverse() ? entry.getObjectId() : entry.getSubjectId();
+					final String pathObjectId  = state.inverse() ? entry.getSubjectId() : entry.getObjectId();
 
-				if (state.correlationPattern != null) {
+					if (state.correlationPattern != null) {
 
-					final Matcher matcher = state.correlationPattern.matcher(entryMessage);
-					if (matcher.matches()) {
+						final Matcher matcher = state.correlationPattern.matcher(entry.getMessage());
+						if (matcher.matches()) {
 
-						state.addCorrelationEntry(matcher.group(1), entry);
+							state.addCorrelationEntry(matcher.group(1), entry);
 
-					}
+						}
 
-				} else {
-					// fallback: subjectId and objectId
-					state.addCorrelationEntry(key(pathSubjectId, pathObjectId), entry);
+					} else {
+						// fallback: subjectId and objectId
+						state.addCorrelationEntry(key(pathSubjectId, pathObjectId), entry);
+					}
 				}
-			}
+			});
 		}
 
 		logger.log(Level.FINE, "No. of correlations: {0}", state.getCorrelations().entrySet().size());
 
-		final List<LogEvent> result = StructrApp.getInstance(securityContext).nodeQuery(LogEvent.class)
-			.and(LogEvent.actionProperty, state.logAction)
-			.andRange(LogEvent.timestampProperty, new Date(state.beginTimestamp()), new Date(state.endTimestamp()))
-			.getAsList();
-
-		processData(state, result);
+		processData(state, store, null, null);
 	}
 
-	private void processData(final LogState state, final Iterable<LogEvent> result) throws FrameworkException {
-
-		int count = 0;
-
-		for (final LogEvent event : result) {
+	private void processData(final LogState state, final LogEventStore store, final String subjectId, final String objectId) throws IOException, FrameworkException {
 
-			if ((++count % 100000) == 0) {
-				System.out.println(count);
-			}
+		final boolean aggregate = state.doHistogram() || state.doAggregate();
 
-			final String pathSubjectId = state.inverse() ? event.getObjectId() : event.getSubjectId();
-			final String pathObjectId  = state.inverse() ? event.getSubjectId() : event.getObjectId();
-			final long timestamp       = event.getTimestamp();
-			final String entryAction   = event.getAction();
-			final String entryMessage  = event.getMessage();
+		store.scan(state.rangeStart(), state.rangeEnd(), subjectId, objectId, state.logAction, new EventVisitor() {
 
-			// determine first timestamp
-			if (timestamp <= state.beginTimestamp()) {
-				state.beginTimestamp(timestamp);
-			}
+			@Override
+			public void visit(final Event event) {
 
-			// determine last timestamp
-			if (timestamp >= state.endTimestamp()) {
-				state.endTimestamp(timestamp);
-			}
+				final long timestamp = event.getTimestamp();
 
-			if (state.overview()) {
+				// determine first timestamp
+				if (timestamp <= state.beginTimestamp()) {
+					state.beginTimestamp(timestamp);
+				}
 
-				if (entryAction != null) {
+				// determine last timestamp
+				if (timestamp >= state.endTimestamp()) {
+					state.endTimestamp(timestamp);
+				}
 
-					state.countAction(entryAction);
+				final String pathSubjectId = state.inverse() ? event.getObjectId() : event.getSubjectId();
+				final String pathObjectId  = state.inverse() ? event.getSubjectId() : event.getObjectId();
 
-				} else {
+				// passes filter? action present or matching?
+				if (state.passesFilter(event) && state.correlates(pathSubjectId, pathObjectId, event.getMessage())) {
 
-					state.countAction("null");
-				}
+					if (aggregate) {
 
-			} else {
+						state.count(event);
 
-				// passes filter? action present or matching?
-				if (state.passesFilter(entryMessage) && state.correlates(pathSubjectId, pathObjectId, entryMessage)) {
+					} else {
 
-					final Map<String, Object> map = new HashMap<>();
+						final Map<String, Object> map = new HashMap<>();
 
-					map.put(subjectProperty.jsonName(), pathSubjectId);
-					map.put(objectProperty.jsonName(), pathObjectId);
-					map.put(actionProperty.jsonName(), entryAction);
-					map.put(timestampProperty.jsonName(), timestamp);
-					map.put(messageProperty.jsonName(), entryMessage);
+						map.put(subjectProperty.jsonName(), pathSubjectId);
+						map.put(objectProperty.jsonName(), pathObjectId);
+						map.put(actionProperty.jsonName(), event.getAction());
+						map.put(timestampProperty.jsonName(), timestamp);
+						map.put(messageProperty.jsonName(), event.getMessage());
 
-					state.addEntry(map);
+						state.addEntry(map);
+					}
 				}
 			}
-		}
+		});
 	}
 
-	private int storeLogEntry(final Path path) throws IOException, FrameworkException {
+	private int storeLogEntry(final LogEventStore store, final Path path) throws IOException {
 
-		final App app          = StructrApp.getInstance(securityContext);
 		final String fileName  = path.getFileName().toString();
 		int count              = 0;
 
@@ -478,36 +524,31 @@ public class LogResource extends Resource {
 			final String subjectId = fileName.substring(0, 32);
 			final String objectId  = fileName.substring(32, 64);
 
-			for (final String line : Files.readAllLines(path, Charset.forName("utf-8"))) {
+			try (final BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
 
-				final int pos1               = line.indexOf(",", 14);
+				String line = null;
 
-				final String part0           = line.substring(0, 13);
-				final String part1           = line.substring(14, pos1);
-				final String part2           = line.substring(pos1 + 1);
+				while ((line = reader.readLine()) != null) {
 
-				final long timestamp         = Long.valueOf(part0);
-				final String action          = part1;
-				final String message         = part2;
+					final int pos1               = line.indexOf(",", 14);
 
-				final PropertyMap properties = new PropertyMap();
+					final String part0           = line.substring(0, 13);
+					final String part1           = line.substring(14, pos1);
+					final String part2           = line.substring(pos1 + 1);
 
-				properties.put(LogEvent.messageProperty,             message);
-				properties.put(LogEvent.actionProperty,              action);
-				properties.put(LogEvent.subjectProperty,             subjectId);
-				properties.put(LogEvent.objectProperty,              objectId);
-				properties.put(LogEvent.timestampProperty,           new Date(timestamp));
-				properties.put(LogEvent.visibleToPublicUsers,        true);
-				properties.put(LogEvent.visibleToAuthenticatedUsers, true);
+					final long timestamp         = Long.valueOf(part0);
+					final String action          = part1;
+					final String message         = part2;
 
-				app.create(LogEvent.class, properties);
+					store.append(timestamp, subjectId, objectId, action, message);
 
-				count++;
+					count++;
+				}
 			}
 
 		} else {
 
-			System.out.println("Skipping entry " + fileName);
+			logger.log(Level.INFO, "Skipping entry {0}", fileName);
 		}
 
 		return count;
@@ -531,15 +572,12 @@ public class LogResource extends Resource {
 
 	private Result aggregate(final LogState state) throws FrameworkException {
 
-		// sort entries before aggregation
-		state.sortEntries();
-
 		final long startTimestamp                         = state.beginTimestamp();
 		final long endTimestamp                           = state.endTimestamp();
 		final GraphObjectMap result                       = new GraphObjectMap();
 		final long interval                               = findInterval(state.aggregate());
 		final long start                                  = alignDateOnFormat(state.aggregate(), startTimestamp);
-		final TreeMap<Long, Map<String, Object>> countMap = toAggregatedCountMap(state);
+		final TreeMap<Long, Map<String, Object>> countMap = state.counts();
 		final Set<String> countProperties                 = getCountProperties(countMap);
 
 		for (long current = start; current <= endTimestamp; current += interval) {
@@ -580,59 +618,7 @@ public class LogResource extends Resource {
 		return new Result(result, false);
 	}
 
-	private Result histogram(final LogState state) throws FrameworkException {
-
-		// sort entries before creating the histogram
-		state.sortEntries();
-
-		final String dateFormat = state.aggregate();
-		final long startTimestamp = state.beginTimestamp();
-		final long endTimestamp = state.endTimestamp();
-		final GraphObjectMap result = new GraphObjectMap();
-		final long interval = findInterval(dateFormat);
-		final long start = alignDateOnFormat(dateFormat, startTimestamp);
-		final TreeMap<Long, Map<String, Object>> countMap = toHistogramCountMap(state);
-		final Set<String> countProperties = getCountProperties(countMap);
-
-		for (long current = start; current <= endTimestamp; current += interval) {
-
-			final Map<Long, Map<String, Object>> counts = countMap.subMap(current, true, current + interval, false);
-			final GraphObjectMap sum = new GraphObjectMap();
-
-			// initialize interval sums with 0 (so each
-			// interval contains all keys regardless of
-			// whether there are actual values or not)
-			for (final String key : countProperties) {
-				sum.put(new IntProperty(key), 0);
-			}
-
-			// evaluate counts
-			for (final Map<String, Object> count : counts.values()) {
-
-				for (final String key : countProperties) {
-
-					final IntProperty prop = new IntProperty(key);
-					Integer sumValue = sum.get(prop);
-					if (sumValue == null) {
-						sumValue = 0;
-					}
-
-					Integer entryValue = (Integer) count.get(key);
-					if (entryValue == null) {
-						entryValue = 0;
-					}
-
-					sum.put(prop, sumValue + entryValue);
-				}
-			}
-
-			result.put(new GenericProperty(Long.toString(current)), sum);
-		}
-
-		return new Result(result, false);
-	}
-
-	private long alignDateOnFormat(final String dateFormat, final long timestamp) {
+	private static long alignDateOnFormat(final String dateFormat, final long timestamp) {
 
 		try {
 
@@ -650,7 +636,7 @@ public class LogResource extends Resource {
 	 * This method takes a date format and finds the time interval that it
 	 * represents.
 	 */
-	private long findInterval(final String dateFormat) {
+	private static long findInterval(final String dateFormat) {
 
 		final long max = TimeUnit.DAYS.toMillis(365);
 		final long step = TimeUnit.SECONDS.toMillis(60);
@@ -678,121 +664,6 @@ public class LogResource extends Resource {
 		return max;
 	}
 
-	private TreeMap<Long, Map<String, Object>> toAggregatedCountMap(final LogState state) throws FrameworkException {
-
-		final TreeMap<Long, Map<String, Object>> countMap = new TreeMap<>();
-
-		for (final Map<String, Object> entry : state.entries()) {
-
-			final String message = (String) entry.get(messageProperty.jsonName());
-			final long timestamp = (Long) entry.get(timestampProperty.jsonName());
-			Map<String, Object> obj = countMap.get(timestamp);
-
-			if (obj == null) {
-				obj = new LinkedHashMap<>();
-			}
-
-			Integer count = (Integer) obj.get(totalProperty.jsonName());
-			if (count == null) {
-				count = 1;
-			} else {
-				count = count + 1;
-			}
-			obj.put(totalProperty.jsonName(), count);
-
-			// iterate over patterns
-			for (final Entry<String, Pattern> patternEntry : state.aggregationPatterns().entrySet()) {
-
-				if (patternEntry.getValue().matcher(message).matches()) {
-
-					final String key = patternEntry.getKey();
-
-					final int multiplier = getMultiplier(message, state);
-
-					Integer c = (Integer) obj.get(key);
-					if (c == null) {
-						c = multiplier;
-					} else {
-						c = c + multiplier;
-					}
-
-					obj.put(key, c);
-				}
-			}
-
-			countMap.put(timestamp, obj);
-		}
-
-		return countMap;
-	}
-
-	private TreeMap<Long, Map<String, Object>> toHistogramCountMap(final LogState state) throws FrameworkException {
-
-		final Pattern pattern = Pattern.compile(state.histogram());
-		final Matcher matcher = pattern.matcher("");
-		final TreeMap<Long, Map<String, Object>> countMap = new TreeMap<>();
-
-		for (final Map<String, Object> entry : state.entries()) {
-
-			final String message = (String) entry.get(messageProperty.jsonName());
-			final long timestamp = (Long) entry.get(timestampProperty.jsonName());
-			Map<String, Object> obj = countMap.get(timestamp);
-
-			if (obj == null) {
-				obj = new LinkedHashMap<>();
-			}
-
-			Integer count = (Integer) obj.get(totalProperty.jsonName());
-			if (count == null) {
-				count = 1;
-			} else {
-				count = count + 1;
-			}
-			obj.put(totalProperty.jsonName(), count);
-
-			// iterate over patterns
-			matcher.reset(message);
-			if (matcher.matches()) {
-
-				final String key = matcher.group(1);
-
-				final int multiplier = getMultiplier(message, state);
-
-				Integer c = (Integer) obj.get(key);
-				if (c == null) {
-					c = multiplier;
-				} else {
-					c = c + multiplier;
-				}
-
-				obj.put(key, c);
-			}
-
-			countMap.put(timestamp, obj);
-		}
-
-		return countMap;
-	}
-
-	private int getMultiplier(final String message, final LogState state) {
-
-		Integer multiplier = 1;
-
-		if (state.multiplier != null) {
-
-			final Matcher matcher = Pattern.compile(state.multiplier).matcher(message);
-
-			if (matcher.matches()) {
-				final String g = matcher.group(1);
-				multiplier = Integer.parseInt(g);
-			}
-
-		}
-
-		return multiplier;
-
-	}
-
 	private Set<String> getCountProperties(final Map<Long, Map<String, Object>> entries) {
 
 		final Set<String> result = new LinkedHashSet<>();
@@ -859,10 +730,12 @@ public class LogResource extends Resource {
 
 	private static class LogState {
 
-		private final Map<String, Pattern> aggregationPatterns = new HashMap<>();
-		private final List<Map<String, Object>> entries        = new LinkedList<>();
-		private final Map<String, LinkedList<LogEvent>> correlations         = new ConcurrentHashMap<>();
-		private final Map<String, Integer> actions             = new HashMap<>();
+		private final Map<String, Pattern> aggregationPatterns         = new HashMap<>();
+		private final List<Map<String, Object>> entries                = new LinkedList<>();
+		private final Map<String, LinkedList<Event>> correlations      = new ConcurrentHashMap<>();
+		private final TreeMap<Long, Map<String, Object>> counts        = new TreeMap<>();
+		private final Map<Integer, Map<String, Integer>> messageCounts = new HashMap<>();
+		private final Map<Integer, Boolean> filterResults              = new HashMap<>();
 
 		private long beginTimestamp                            = Long.MAX_VALUE;
 		private long endTimestamp                              = 0L;
@@ -875,10 +748,12 @@ public class LogResource extends Resource {
 		private String correlationOp                           = null;
 		private Pattern correlationPattern                     = null;
 		private String[] filters                               = null;
+		private Pattern[] filterPatterns                       = null;
+		private Pattern histogramPattern                       = null;
+		private Pattern multiplierPattern                      = null;
+		private long bucketSize                                = 1L;
 		private boolean inverse                                = false;
-		private boolean overview                               = false;
 		private Range range                                    = null;
-		private int actionCount                                = 0;
 		private boolean doCorrelate                            = false;
 
 		public LogState(final HttpServletRequest request) {
@@ -893,6 +768,33 @@ public class LogResource extends Resource {
 			this.filters    = getFilterPatterns(request);
 			this.range      = getRange(request);
 
+			if (filters != null) {
+
+				filterPatterns = new Pattern[filters.length];
+
+				for (int i=0; i<filters.length; i++) {
+					filterPatterns[i] = Pattern.compile(filters[i]);
+				}
+			}
+
+			if (StringUtils.isNotBlank(histogram)) {
+				histogramPattern = Pattern.compile(histogram);
+			}
+
+			if (multiplier != null) {
+				multiplierPattern = Pattern.compile(multiplier);
+			}
+
+			// Events are counted per minute if the aggregation format does not
+			// resolve seconds. This is exact because all intervals returned by
+			// findInterval() are multiples of a minute.
+			if (StringUtils.isNotBlank(aggregate)) {
+
+				final long minute = TimeUnit.MINUTES.toMillis(1);
+
+				bucketSize = alignDateOnFormat(aggregate, minute) == alignDateOnFormat(aggregate, 2 * minute - 1) ? minute : 1L;
+			}
+
 			if (StringUtils.isNotBlank(correlate)) {
 
 				final String[] parts = correlate.split(CORRELATION_SEPARATOR);
@@ -922,11 +824,11 @@ public class LogResource extends Resource {
 			entries.add(entry);
 		}
 
-		public void addCorrelationEntry(final String key, final LogEvent event) {
+		public void addCorrelationEntry(final String key, final Event event) {
 
 			logger.log(Level.FINE, "No. of correllation entry lists: {0}, adding action: {1} {2}", new Object[]{correlations.keySet().size(), key, event.getMessage()});
 
-			LinkedList<LogEvent> existingEventList = correlations.get(key);
+			LinkedList<Event> existingEventList = correlations.get(key);
 
 			if (existingEventList == null) {
 				existingEventList = new LinkedList<>();
@@ -937,35 +839,74 @@ public class LogResource extends Resource {
 			correlations.put(key, existingEventList);
 		}
 
-		public Map<String, LinkedList<LogEvent>> getCorrelations() {
+		public Map<String, LinkedList<Event>> getCorrelations() {
 			return correlations;
 		}
 
-		public Map<String, Integer> actions() {
-			return actions;
-		}
-
 		public Map<String, Pattern> aggregationPatterns() {
 			return aggregationPatterns;
 		}
 
-		public void countAction(final String action) {
+		/**
+		 * Adds the given event to the count of its time bucket. The counts
+		 * derived from the message are computed once per distinct message.
+		 */
+		public void count(final Event event) {
 
-			Integer actionCount = actions.get(action);
-			if (actionCount == null) {
+			final long bucket = Math.floorDiv(event.getTimestamp(), bucketSize) * bucketSize;
 
-				actions.put(action, 1);
+			Map<String, Object> obj = counts.get(bucket);
+			if (obj == null) {
 
-			} else {
+				obj = new LinkedHashMap<>();
+				counts.put(bucket, obj);
+			}
 
-				actions.put(action, actionCount + 1);
+			add(obj, totalProperty.jsonName(), 1);
+
+			Map<String, Integer> messageCount = messageCounts.get(event.getMessageId());
+			if (messageCount == null) {
+
+				messageCount = countMessage(event.getMessage());
+				messageCounts.put(event.getMessageId(), messageCount);
+			}
+
+			for (final Entry<String, Integer> entry : messageCount.entrySet()) {
+				add(obj, entry.getKey(), entry.getValue());
+			}
+		}
+
+		/**
+		 * Adds pre-aggregated event counts per minute.
+		 */
+		public void addMinuteCounts(final TreeMap<Long, Integer> minuteCounts) {
+
+			for (final Entry<Long, Integer> entry : minuteCounts.entrySet()) {
+
+				final Map<String, Object> obj = new LinkedHashMap<>();
+
+				obj.put(totalProperty.jsonName(), entry.getValue());
+				counts.put(entry.getKey(), obj);
 			}
 
-			this.actionCount++;
+			if (!minuteCounts.isEmpty()) {
+
+				beginTimestamp = minuteCounts.firstKey();
+				endTimestamp   = minuteCounts.lastKey();
+			}
+		}
+
+		public TreeMap<Long, Map<String, Object>> counts() {
+			return counts;
 		}
 
-		public int actionCount() {
-			return actionCount;
+		/**
+		 * Indicates whether this request only needs the number of events
+		 * per interval, which can be taken from the pre-aggregated counts
+		 * of the store.
+		 */
+		public boolean usePreAggregatedCounts() {
+			return doAggregate() && StringUtils.isBlank(histogram) && aggregationPatterns.isEmpty() && filters == null && !doCorrelate && range == null && bucketSize == TimeUnit.MINUTES.toMillis(1);
 		}
 
 		public boolean isRequestedActionOrNull(final String action) {
@@ -988,14 +929,6 @@ public class LogResource extends Resource {
 			return inverse;
 		}
 
-		public void overview(final boolean overview) {
-			this.overview = overview;
-		}
-
-		public boolean overview() {
-			return overview;
-		}
-
 		public long beginTimestamp() {
 			return range != null ? range.start : beginTimestamp;
 		}
@@ -1012,6 +945,14 @@ public class LogResource extends Resource {
 			this.endTimestamp = endTimestamp;
 		}
 
+		public long rangeStart() {
+			return range != null ? range.start : Long.MIN_VALUE;
+		}
+
+		public long rangeEnd() {
+			return range != null ? range.end : Long.MAX_VALUE;
+		}
+
 		public boolean isInRangeOrNull(final long timestamp) {
 			return range == null || range.contains(timestamp);
 		}
@@ -1024,18 +965,24 @@ public class LogResource extends Resource {
 			return aggregate;
 		}
 
-		public boolean passesFilter(final String message) {
+		public boolean passesFilter(final Event event) {
 
-			if (filters == null) {
+			if (filterPatterns == null) {
 				return true;
 			}
 
-			boolean passes = true;
+			Boolean passes = filterResults.get(event.getMessageId());
+			if (passes == null) {
+
+				passes = true;
 
-			for (final String filter : filters) {
+				for (final Pattern filter : filterPatterns) {
 
-				passes &= Pattern.compile(filter).matcher(message).matches();
+					passes &= filter.matcher(event.getMessage()).matches();
 
+				}
+
+				filterResults.put(event.getMessageId(), passes);
 			}
 
 			return passes;
@@ -1051,7 +998,7 @@ public class LogResource extends Resource {
 
 			}
 
-			LinkedList<LogEvent> correlationEntries;
+			LinkedList<Event> correlationEntries;
 
 			if (correlationOp != null && correlationPattern != null) {
 
@@ -1073,7 +1020,7 @@ public class LogResource extends Resource {
 
 							if (correlationEntries != null) {
 
-								for (LogEvent correlationEntry : correlationEntries) {
+								for (Event correlationEntry : correlationEntries) {
 
 									if (correlationEntry.getSubjectId().equals(pathSubjectId)) {
 
@@ -1093,7 +1040,7 @@ public class LogResource extends Resource {
 
 							if (correlationEntries != null) {
 
-								for (LogEvent correlationEntry : correlationEntries) {
+								for (Event correlationEntry : correlationEntries) {
 
 									if (correlationEntry.getObjectId().equals(pathObjectId)) {
 
@@ -1163,6 +1110,69 @@ public class LogResource extends Resource {
 		}
 
 		// ----- private methods -----
+		private Map<String, Integer> countMessage(final String message) {
+
+			final Map<String, Integer> result = new LinkedHashMap<>();
+
+			if (message == null) {
+				return result;
+			}
+
+			if (histogramPattern != null) {
+
+				final Matcher matcher = histogramPattern.matcher(message);
+				if (matcher.matches()) {
+
+					result.put(matcher.group(1), getMultiplier(message));
+				}
+
+			} else {
+
+				// iterate over patterns
+				for (final Entry<String, Pattern> patternEntry : aggregationPatterns.entrySet()) {
+
+					if (patternEntry.getValue().matcher(message).matches()) {
+
+						result.put(patternEntry.getKey(), getMultiplier(message));
+					}
+				}
+			}
+
+			return result;
+		}
+
+		private int getMultiplier(final String message) {
+
+			Integer multiplier = 1;
+
+			if (multiplierPattern != null) {
+
+				final Matcher matcher = multiplierPattern.matcher(message);
+
+				if (matcher.matches()) {
+					final String g = matcher.group(1);
+					multiplier = Integer.parseInt(g);
+				}
+
+			}
+
+			return multiplier;
+
+		}
+
+		private void add(final Map<String, Object> obj, final String key, final int value) {
+
+			final Integer count = (Integer) obj.get(key);
+			if (count == null) {
+
+				obj.put(key, value);
+
+			} else {
+
+				obj.put(key, count + value);
+			}
+		}
+
 		private Range getRange(final HttpServletRequest request) {
 
 			final String value = request.getParameter(timestampProperty.jsonName());
@@ -1263,53 +1273,4 @@ public class LogResource extends Resource {
 			return timestamp1.compareTo(timestamp2);
 		}
 	}
-
-	private static class Context implements AutoCloseable {
-
-		private final App app   = StructrApp.getInstance();
-		private Tx tx           = null;
-		private int total       = 0;
-		private int count       = 0;
-		private int commitCount = 0;
-
-		public Context(final int commitCount) {
-
-			this.commitCount = commitCount;
-			this.tx          = app.tx(false, false, false);
-		}
-
-		public void commit(final boolean intermediate) throws FrameworkException {
-
-			if (count > commitCount) {
-
-				logger.log(Level.INFO, "Committing transaction after {0} objects..", total);
-
-				tx.success();
-				tx.close();
-
-				if (intermediate) {
-
-					tx = app.tx(false, false, false);
-				}
-
-				count = 0;
-			}
-		}
-
-		public int getTotal() {
-			return total;
-		}
-
-		public void update(final int count) {
-			this.count += count;
-			this.total += count;
-		}
-
-		@Override
-		public void close() throws FrameworkException {
-
-			tx.success();
-			tx.close();
-		}
-	}
 }
@@ -187,6 +187,8 @@ public class TypeResource extends SortableResource {
 
 			} else {
 
+				final String pageCursor = request != null ? request.getParameter(JsonRestServlet.REQUEST_PARAMETER_PAGE_CURSOR) : null;
+
 				return query
 					.includeDeletedAndHidden(includeDeletedAndHidden)
 					.publicOnly(publicOnly)
@@ -195,6 +197,7 @@ public class TypeResource extends SortableResource {
 					.pageSize(pageSize)
 					.page(page)
 					.offsetId(offsetId)
+					.pageCursor(pageCursor)
 					.getResult();
 			}
 
@@ -0,0 +1,212 @@
+/**
+ * Copyright (C) 2010-2016 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.rest.serialization;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.structr.common.SecurityContext;
+import org.structr.common.View;
+import org.structr.core.GraphObject;
+import org.structr.core.app.StructrApp;
+import org.structr.core.entity.AbstractNode;
+import org.structr.core.entity.AbstractRelationship;
+import org.structr.core.property.PropertyKey;
+import org.structr.schema.SchemaService;
+
+/**
+ * The list of property keys that {@link StreamingWriter} renders for a
+ * given type and view, resolved once and shared by all writers.
+ *
+ * Plans are only cached for types that use the property set of their
+ * view unchanged, i.e. that do not override getPropertyKeys(String).
+ * All cached plans are dropped when the schema is reloaded.
+ *
+ *
+ */
+public class SerializationPlan {
+
+	private static final Map<Class, Map<String, SerializationPlan>> plans = new ConcurrentHashMap<>();
+	private static final Map<Class, Boolean> fixedKeyTypes                = new ConcurrentHashMap<>();
+	private static volatile long schemaVersion                            = -1L;
+
+	private PropertyKey[] accessKeys = null;
+	private PropertyKey[] keys       = null;
+	private String[] names           = null;
+
+	public SerializationPlan(final Class type, final String view, final Iterable<PropertyKey> source) {
+
+		final List<PropertyKey> list = new ArrayList<>();
+		if (source != null) {
+
+			for (final PropertyKey key : source) {
+				list.add(key);
+			}
+		}
+
+		final int size = list.size();
+
+		this.accessKeys = new PropertyKey[size];
+		this.keys       = new PropertyKey[size];
+		this.names      = new String[size];
+
+		for (int i=0; i<size; i++) {
+
+			final PropertyKey key = list.get(i);
+
+			keys[i]       = key;
+			accessKeys[i] = key;
+			names[i]      = key.jsonName();
+
+			// special handling for the internal _graph view: replace name with
+			// the name property from the ui view, in case it was overwritten
+			if (View.INTERNAL_GRAPH_VIEW.equals(view) && AbstractNode.name.equals(key)) {
+
+				accessKeys[i] = StructrApp.getConfiguration().getPropertyKeyForJSONName(type, AbstractNode.name.jsonName(), false);
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of keys in this plan.
+	 *
+	 * @return the number of keys
+	 */
+	public int size() {
+		return keys.length;
+	}
+
+	/**
+	 * Returns the key that is checked against the permission mask and
+	 * used as the output name at the given position.
+	 *
+	 * @param index
+	 * @return the key
+	 */
+	public PropertyKey getKey(final int index) {
+		return keys[index];
+	}
+
+	/**
+	 * Returns the key that is used to read the value at the given position.
+	 *
+	 * @param index
+	 * @return the key
+	 */
+	public PropertyKey getAccessKey(final int index) {
+		return accessKeys[index];
+	}
+
+	/**
+	 * Returns the JSON name of the key at the given position.
+	 *
+	 * @param index
+	 * @return the JSON name
+	 */
+	public String getName(final int index) {
+		return names[index];
+	}
+
+	/**
+	 * Returns the cached plan for the given object and view, or a new
+	 * plan built from the object's own property keys if the keys of the
+	 * object can not be derived from its type.
+	 *
+	 * @param source
+	 * @param view
+	 * @return the plan
+	 */
+	public static SerializationPlan forObject(final GraphObject source, final String view) {
+
+		final Class type = source.getClass();
+
+		if (view != null && hasFixedKeys(type) && !hasCustomView(source)) {
+
+			Map<String, SerializationPlan> plansForType = plans.get(type);
+			if (plansForType == null) {
+
+				plansForType = new ConcurrentHashMap<>();
+				plans.put(type, plansForType);
+			}
+
+			SerializationPlan plan = plansForType.get(view);
+			if (plan == null) {
+
+				plan = new SerializationPlan(type, view, StructrApp.getConfiguration().getPropertySet(type, view));
+				plansForType.put(view, plan);
+			}
+
+			return plan;
+		}
+
+		return new SerializationPlan(type, view, source.getPropertyKeys(view));
+	}
+
+	/**
+	 * Drops all cached plans if the schema was reloaded since the last call.
+	 *
+	 * @return whether the cached plans were dropped
+	 */
+	public static boolean validate() {
+
+		final long currentVersion = SchemaService.getSchemaVersion();
+		if (currentVersion != schemaVersion) {
+
+			plans.clear();
+			fixedKeyTypes.clear();
+
+			schemaVersion = currentVersion;
+
+			return true;
+		}
+
+		return false;
+	}
+
+	// ----- private methods -----
+	private static boolean hasCustomView(final GraphObject source) {
+
+		final SecurityContext securityContext = source.getSecurityContext();
+
+		return securityContext != null && securityContext.hasCustomView();
+	}
+
+	private static boolean hasFixedKeys(final Class type) {
+
+		Boolean fixedKeys = fixedKeyTypes.get(type);
+		if (fixedKeys == null) {
+
+			try {
+
+				final Class declaringClass = type.getMethod("getPropertyKeys", String.class).getDeclaringClass();
+
+				fixedKeys = AbstractNode.class.equals(declaringClass) || AbstractRelationship.class.equals(declaringClass);
+
+			} catch (NoSuchMethodException nsmex) {
+
+				fixedKeys = false;
+			}
+
+			fixedKeyTypes.put(type, fixedKeys);
+		}
+
+		return fixedKeys;
+	}
+}
@@ -29,6 +29,7 @@ import java.util.LinkedHashSet;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -58,6 +59,8 @@ public abstract class StreamingWriter {
 	private static final long MAX_SERIALIZATION_TIME     = TimeUnit.SECONDS.toMillis(300);
 	private static final Set<PropertyKey> idNameOnly     = new LinkedHashSet<>();
 	private static final Set<PropertyKey> structrGraph   = new LinkedHashSet<>();
+	private static final Map<Class, String> serializerCache = new ConcurrentHashMap<>();
+	private static final String NO_SERIALIZER               = "";
 
 	static {
 
@@ -69,9 +72,9 @@ public abstract class StreamingWriter {
 		structrGraph.add(AbstractNode.name);
 	}
 
-	private final Map<String, Serializer> serializerCache = new LinkedHashMap<>();
 	private final Map<String, Serializer> serializers     = new LinkedHashMap<>();
 	private final Serializer<GraphObject> root            = new RootSerializer();
+	private final SerializationPlan compactPlan           = new SerializationPlan(GraphObject.class, PropertyView.Ui, idNameOnly);
 	private final Set<String> nonSerializerClasses        = new LinkedHashSet<>();
 	private final Set<Integer> visitedObjects             = new ConcurrentHashSet<>();
 	private final DecimalFormat decimalFormat             = new DecimalFormat("0.000000000", DecimalFormatSymbols.getInstance(Locale.ENGLISH));
@@ -123,6 +126,8 @@ public abstract class StreamingWriter {
 		final RestWriter writer = getRestWriter(securityContext, output);
 		final String view       = propertyView.get(securityContext);
 
+		validateCaches();
+
 		if (indent) {
 			writer.setIndent("	");
 		}
@@ -139,6 +144,8 @@ public abstract class StreamingWriter {
 
 		RestWriter writer = getRestWriter(securityContext, output);
 
+		validateCaches();
+
 		if (indent) {
 			writer.setIndent("	");
 		}
@@ -154,12 +161,17 @@ public abstract class StreamingWriter {
 		String sortKey = result.getSortKey();
 		String sortOrder = result.getSortOrder();
 		GraphObject metaData = result.getMetaData();
+		String nextCursor = result.getNextCursor();
 
 		writer.beginDocument(baseUrl, propertyView.get(securityContext));
 
 		// open result set
 		writer.beginObject();
 
+		if (nextCursor != null) {
+			writer.name("next_cursor").value(nextCursor);
+		}
+
 		if (page != null) {
 			writer.name("page").value(page);
 		}
@@ -324,15 +336,30 @@ public abstract class StreamingWriter {
 		this.renderResultCount = doRender;
 	}
 
+	private static void validateCaches() {
+
+		if (SerializationPlan.validate()) {
+			serializerCache.clear();
+		}
+	}
+
 	private Serializer getSerializerForType(Class type) {
 
+		final String cachedName = serializerCache.get(type);
+		if (cachedName != null) {
+
+			return NO_SERIALIZER.equals(cachedName) ? null : serializers.get(cachedName);
+		}
+
 		Class localType       = type;
-		Serializer serializer = serializerCache.get(type.getName());
+		Serializer serializer = null;
+		String serializerName = null;
 
-		if (serializer == null && !nonSerializerClasses.contains(type.getName())) {
+		if (!nonSerializerClasses.contains(type.getName())) {
 
 			do {
-				serializer = serializers.get(localType.getName());
+				serializer     = serializers.get(localType.getName());
+				serializerName = localType.getName();
 
 				if (serializer == null) {
 
@@ -341,7 +368,8 @@ public abstract class StreamingWriter {
 
 					for (Class interfaceType : interfaces) {
 
-						serializer = serializers.get(interfaceType.getName());
+						serializer     = serializers.get(interfaceType.getName());
+						serializerName = interfaceType.getName();
 
 						if (serializer != null) {
 							break;
@@ -351,15 +379,13 @@ public abstract class StreamingWriter {
 
 				localType = localType.getSuperclass();
 
-			} while (serializer == null && !localType.equals(Object.class));
-
-
-			// cache found serializer
-			if (serializer != null) {
-				serializerCache.put(type.getName(), serializer);
-			}
+			} while (serializer == null && localType != null && !localType.equals(Object.class));
 		}
 
+		// cache the name of the found serializer, or the absence of a serializer,
+		// for all writers (the set of registered serializers is the same for all)
+		serializerCache.put(type, serializer != null ? serializerName : NO_SERIALIZER);
+
 		return serializer;
 	}
 
@@ -471,54 +497,46 @@ public abstract class StreamingWriter {
 			// prevent endless recursion by pruning at depth n
 			if (depth <= outputNestingDepth) {
 
-				// property keys
-				Iterable<PropertyKey> keys = source.getPropertyKeys(localPropertyView);
-				if (keys != null) {
-
-					final PermissionResolutionMask permissionResolutionMask = source.getPermissionResolutionMask();
+				final PermissionResolutionMask permissionResolutionMask = source.getPermissionResolutionMask();
+				final SerializationPlan plan;
 
-					// speciality for the Ui view: limit recursive rendering to (id, name)
-					if (compactNestedProperties && depth > 0 && PropertyView.Ui.equals(localPropertyView)) {
-						keys = idNameOnly;
-					}
+				// speciality for the Ui view: limit recursive rendering to (id, name)
+				if (compactNestedProperties && depth > 0 && PropertyView.Ui.equals(localPropertyView)) {
 
-					for (final PropertyKey key : keys) {
+					plan = compactPlan;
 
-						if (permissionResolutionMask == null || permissionResolutionMask.allowsProperty(key)) {
+				} else {
 
-							final QueryRange range = writer.getSecurityContext().getRange(key.jsonName());
-							if (range != null) {
-								// Reset count for each key
-								range.resetCount();
-							}
+					plan = SerializationPlan.forObject(source, localPropertyView);
+				}
 
-							// special handling for the internal _graph view: replace name with
-							// the name property from the ui view, in case it was overwritten
-							PropertyKey localKey = key;
+				final int size = plan.size();
+				for (int i=0; i<size; i++) {
 
-							if (View.INTERNAL_GRAPH_VIEW.equals(localPropertyView)) {
+					final PropertyKey key = plan.getKey(i);
 
-								if (AbstractNode.name.equals(localKey)) {
+					if (permissionResolutionMask == null || permissionResolutionMask.allowsProperty(key)) {
 
-									// replace key
-									localKey = StructrApp.getConfiguration().getPropertyKeyForJSONName(source.getClass(), AbstractNode.name.jsonName(), false);
-								}
-							}
+						final QueryRange range = writer.getSecurityContext().getRange(key.jsonName());
+						if (range != null) {
+							// Reset count for each key
+							range.resetCount();
+						}
 
+						final PropertyKey localKey = plan.getAccessKey(i);
+						final Object value         = source.getProperty(localKey, range);
 
-							final Object value = source.getProperty(localKey, range);
-							if (value != null) {
+						if (value != null) {
 
-								if (!(reduceRedundancy && visitedObjects.contains(value.hashCode()))) {
+							if (!(reduceRedundancy && visitedObjects.contains(value.hashCode()))) {
 
-									writer.name(key.jsonName());
-									serializeProperty(writer, localKey, value, localPropertyView, depth+1);
-								}
+								writer.name(plan.getName(i));
+								serializeProperty(writer, localKey, value, localPropertyView, depth+1);
+							}
 
-							} else {
+						} else {
 
-								writer.name(localKey.jsonName()).nullValue();
-							}
+							writer.name(plan.getName(i)).nullValue();
 						}
 					}
 				}
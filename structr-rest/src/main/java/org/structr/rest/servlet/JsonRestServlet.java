@@ -18,12 +18,18 @@
  */
 package org.structr.rest.servlet;
 
+import com.google.gson.Gson;
 import com.google.gson.JsonParseException;
 import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
 import java.io.IOException;
+import java.io.Reader;
 import java.io.Writer;
 import java.text.DecimalFormat;
 import java.text.DecimalFormatSymbols;
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
@@ -77,8 +83,10 @@ public class JsonRestServlet extends HttpServlet implements HttpServiceServlet {
 	public static final String REQUEST_PARAMETER_PAGE_NUMBER            = "page";
 	public static final String REQUEST_PARAMETER_PAGE_SIZE              = "pageSize";
 	public static final String REQUEST_PARAMETER_OFFSET_ID              = "pageStartId";
+	public static final String REQUEST_PARAMETER_PAGE_CURSOR            = "pageCursor";
 	public static final String REQUEST_PARAMETER_SORT_KEY               = "sort";
 	public static final String REQUEST_PARAMETER_SORT_ORDER             = "order";
+	public static final String REQUEST_PARAMETER_CHUNK_SIZE             = "chunkSize";
 	public static final Set<String> commonRequestParameters             = new LinkedHashSet<>();
 	private static final Logger logger                                  = Logger.getLogger(JsonRestServlet.class.getName());
 
@@ -88,8 +96,10 @@ public class JsonRestServlet extends HttpServlet implements HttpServiceServlet {
 		commonRequestParameters.add(REQUEST_PARAMETER_PAGE_NUMBER);
 		commonRequestParameters.add(REQUEST_PARAMETER_PAGE_SIZE);
 		commonRequestParameters.add(REQUEST_PARAMETER_OFFSET_ID);
+		commonRequestParameters.add(REQUEST_PARAMETER_PAGE_CURSOR);
 		commonRequestParameters.add(REQUEST_PARAMETER_SORT_KEY);
 		commonRequestParameters.add(REQUEST_PARAMETER_SORT_ORDER);
+		commonRequestParameters.add(REQUEST_PARAMETER_CHUNK_SIZE);
 		commonRequestParameters.add("debugLoggingEnabled");
 		commonRequestParameters.add("ignoreResultCount");
 
@@ -390,7 +400,11 @@ public class JsonRestServlet extends HttpServlet implements HttpServiceServlet {
 			response.setContentType("application/json; charset=utf-8;");
 
 			// get reader before initalizing security context
-			final String input = IOUtils.toString(request.getReader());
+			final Reader reader = request.getReader();
+
+			// chunked bulk mode reads the request body incrementally
+			final int chunkSize = parseInt(request.getParameter(REQUEST_PARAMETER_CHUNK_SIZE), 0);
+			final String input  = chunkSize > 0 ? null : IOUtils.toString(reader);
 
 			// isolate request authentication in a transaction
 			try (final Tx tx = StructrApp.getInstance().tx()) {
@@ -400,7 +414,7 @@ public class JsonRestServlet extends HttpServlet implements HttpServiceServlet {
 			}
 
 			final App app              = StructrApp.getInstance(securityContext);
-			final IJsonInput jsonInput = cleanAndParseJsonString(app, input);
+			final IJsonInput jsonInput = chunkSize > 0 ? null : cleanAndParseJsonString(app, input);
 
 			if (securityContext != null) {
 
@@ -412,6 +426,12 @@ public class JsonRestServlet extends HttpServlet implements HttpServiceServlet {
 					tx.success();
 				}
 
+				if (chunkSize > 0) {
+
+					doChunkedPost(response, app, resource, reader, chunkSize);
+					return;
+				}
+
 				// isolate doPost
 				boolean retry = true;
 				while (retry) {
@@ -732,6 +752,199 @@ public class JsonRestServlet extends HttpServlet implements HttpServiceServlet {
 
 	}
 
+	/**
+	 * Creates the objects of a (possibly very large) JSON array without
+	 * holding the whole document or all results in memory. The input is
+	 * read element by element and committed in transactions of at most
+	 * chunkSize objects, the ids of the created objects are streamed to
+	 * the client after each commit.
+	 *
+	 * Chunks that were committed before an error occurred are not rolled
+	 * back, the response then contains the error and the number of objects
+	 * that were created.
+	 */
+	private void doChunkedPost(final HttpServletResponse response, final App app, final Resource resource, final Reader input, final int chunkSize) throws FrameworkException, IOException {
+
+		final DecimalFormat decimalFormat       = new DecimalFormat("0.000000000", DecimalFormatSymbols.getInstance(Locale.ENGLISH));
+		final List<Map<String, Object>> chunk   = new ArrayList<>(chunkSize);
+		final List<String> ids                  = new ArrayList<>(chunkSize);
+		final JsonReader reader                 = new JsonReader(input);
+		final Gson gson                         = this.gson.get();
+		final long t0                           = System.nanoTime();
+		FrameworkException error                = null;
+		JsonWriter writer                       = null;
+		boolean isArray                         = false;
+		boolean hasNext                         = true;
+		int chunkCount                          = 0;
+		int objectCount                         = 0;
+
+		try {
+
+			if (reader.peek() == JsonToken.BEGIN_ARRAY) {
+
+				reader.beginArray();
+				hasNext = reader.hasNext();
+				isArray = true;
+			}
+
+		} catch (IOException ioex) {
+
+			throw new FrameworkException(400, ioex.getMessage());
+		}
+
+		while (hasNext) {
+
+			chunk.clear();
+			ids.clear();
+
+			try {
+
+				// isolate input parsing (will include read and write operations)
+				try (final Tx tx = app.tx()) {
+
+					while (chunk.size() < chunkSize && hasNext) {
+
+						final IJsonInput jsonInput = gson.fromJson(reader, IJsonInput.class);
+						if (jsonInput != null) {
+
+							for (final JsonInput propertySet : jsonInput.getJsonInputs()) {
+								chunk.add(convertPropertySetToMap(propertySet));
+							}
+						}
+
+						hasNext = isArray && reader.hasNext();
+					}
+
+					tx.success();
+
+				} catch (JsonParseException | IOException ex) {
+
+					logger.log(Level.WARNING, "Unable to parse JSON input", ex.getMessage());
+					throw new FrameworkException(400, ex.getMessage());
+				}
+
+				// isolate doPost
+				boolean retry = true;
+				while (retry) {
+
+					ids.clear();
+
+					if (resource.createPostTransaction()) {
+
+						try (final Tx tx = app.tx()) {
+
+							for (final Map<String, Object> propertySet : chunk) {
+								ids.add(getCreatedId(resource.doPost(propertySet)));
+							}
+
+							tx.success();
+							retry = false;
+
+						} catch (DeadlockException ddex) {
+							retry = true;
+						}
+
+					} else {
+
+						try {
+
+							for (final Map<String, Object> propertySet : chunk) {
+								ids.add(getCreatedId(resource.doPost(propertySet)));
+							}
+
+							retry = false;
+
+						} catch (DeadlockException ddex) {
+							retry = true;
+						}
+					}
+				}
+
+			} catch (FrameworkException fex) {
+
+				if (writer == null) {
+
+					// nothing was written yet, use the standard error response
+					throw fex;
+				}
+
+				error = fex;
+				break;
+			}
+
+			objectCount += chunk.size();
+			chunkCount++;
+
+			if (writer == null) {
+				writer = beginChunkedResponse(response);
+			}
+
+			for (final String id : ids) {
+
+				if (id != null) {
+					writer.value(id);
+				}
+			}
+
+			writer.flush();
+		}
+
+		if (writer == null) {
+			writer = beginChunkedResponse(response);
+		}
+
+		final double seconds = (System.nanoTime() - t0) / 1000000000.0;
+		final long rate      = seconds > 0 ? Math.round(objectCount / seconds) : objectCount;
+
+		writer.endArray();
+		writer.name("result_count").value(objectCount);
+		writer.name("chunk_count").value(chunkCount);
+		writer.name("processing_time").value(decimalFormat.format(seconds));
+		writer.name("objects_per_second").value(rate);
+
+		if (error != null) {
+
+			writer.name("error");
+			gson.toJson(error, FrameworkException.class, writer);
+		}
+
+		writer.endObject();
+		writer.flush();
+
+		logger.log(Level.INFO, "Chunked POST created {0} objects in {1} chunks ({2} objects/s)", new Object[] { objectCount, chunkCount, rate });
+	}
+
+	private JsonWriter beginChunkedResponse(final HttpServletResponse response) throws IOException {
+
+		final JsonWriter writer = new JsonWriter(response.getWriter());
+
+		response.setStatus(HttpServletResponse.SC_CREATED);
+
+		writer.beginObject();
+		writer.name("result");
+		writer.beginArray();
+
+		return writer;
+	}
+
+	private String getCreatedId(final RestMethodResult result) {
+
+		if (result != null) {
+
+			final List<GraphObject> content = result.getContent();
+			if (content != null && !content.isEmpty()) {
+
+				final GraphObject obj = content.get(0);
+				if (obj != null) {
+
+					return obj.getUuid();
+				}
+			}
+		}
+
+		return null;
+	}
+
 	private Map<String, Object> convertPropertySetToMap(JsonInput propertySet) {
 
 		if (propertySet != null) {
@@ -827,7 +1040,17 @@ public class JsonRestServlet extends HttpServlet implements HttpServiceServlet {
 
                                 }
 
-				PagingHelper.addPagingParameter(result, pageSize, page);
+				if (request.getParameter(REQUEST_PARAMETER_PAGE_CURSOR) != null) {
+
+					// there is no page number and no overall count in cursor mode
+					if (pageSize > 0 && pageSize < Integer.MAX_VALUE) {
+						result.setPageSize(pageSize);
+					}
+
+				} else {
+
+					PagingHelper.addPagingParameter(result, pageSize, page);
+				}
 
 				// timing..
 				double queryTimeEnd = System.nanoTime();
@@ -0,0 +1,156 @@
+/**
+ * Copyright (C) 2010-2016 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.rest.serialization;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.io.output.NullWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.structr.common.PropertyView;
+import org.structr.common.SecurityContext;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.Result;
+import org.structr.core.StaticValue;
+import org.structr.core.app.App;
+import org.structr.core.graph.Tx;
+import org.structr.rest.common.StructrRestTest;
+import org.structr.rest.entity.TestOne;
+
+/**
+ * Measures the JSON serialization of a collection of nodes with the
+ * public and the ui view, i.e. the work that {@link StreamingWriter} does
+ * for a large REST collection response, without the HTTP layer.
+ *
+ * Not run as part of the test suite, start with
+ *
+ * mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.structr.rest.serialization.SerializationBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SerializationBenchmark {
+
+	@Param({ "10000" })
+	private int nodeCount;
+
+	@Param({ PropertyView.Public, PropertyView.Ui })
+	private String view;
+
+	private Environment environment = null;
+	private StreamingWriter writer  = null;
+	private Result result           = null;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+
+		environment = new Environment();
+		environment.setUp();
+
+		final List<TestOne> nodes = environment.createNodes(nodeCount);
+
+		writer = new StreamingJsonWriter(new StaticValue<>(view), false, 3);
+		result = new Result(nodes, nodes.size(), true, false);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		environment.tearDown();
+	}
+
+	@Benchmark
+	public void serialize() throws IOException, FrameworkException {
+
+		try (final Tx tx = environment.getApp().tx()) {
+
+			writer.stream(environment.getSecurityContext(), new NullWriter(), result, null);
+			tx.success();
+		}
+	}
+
+	public static void main(final String[] args) throws RunnerException {
+
+		new Runner(new OptionsBuilder()
+			.include(SerializationBenchmark.class.getSimpleName())
+			.build()
+		).run();
+	}
+
+	// ----- nested classes -----
+	private static class Environment extends StructrRestTest {
+
+		@Override
+		public void setUp() throws Exception {
+			super.setUp();
+		}
+
+		@Override
+		public void tearDown() throws Exception {
+			super.tearDown();
+		}
+
+		public App getApp() {
+			return app;
+		}
+
+		public SecurityContext getSecurityContext() {
+			return securityContext;
+		}
+
+		public List<TestOne> createNodes(final int count) throws FrameworkException {
+
+			final List<TestOne> nodes = createTestNodes(TestOne.class, count);
+
+			try (final Tx tx = app.tx()) {
+
+				int i = 0;
+
+				for (final TestOne node : nodes) {
+
+					node.setProperty(TestOne.name, "node" + i);
+					node.setProperty(TestOne.anInt, i);
+					node.setProperty(TestOne.aLong, (long)i);
+					i++;
+				}
+
+				tx.success();
+			}
+
+			return nodes;
+		}
+	}
+}
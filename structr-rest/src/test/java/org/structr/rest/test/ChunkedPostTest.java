@@ -0,0 +1,132 @@
+/**
+ * Copyright (C) 2010-2016 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.rest.test;
+
+import com.jayway.restassured.RestAssured;
+import com.jayway.restassured.filter.log.ResponseLoggingFilter;
+import static org.hamcrest.Matchers.*;
+import org.structr.rest.common.StructrRestTest;
+
+/**
+ * Tests the chunked bulk mode of POST requests.
+ *
+ *
+ */
+public class ChunkedPostTest extends StructrRestTest {
+
+	public void test01ChunkedPost() {
+
+		final StringBuilder body = new StringBuilder("[");
+
+		for (int i=0; i<10; i++) {
+
+			if (i > 0) {
+				body.append(",");
+			}
+
+			body.append("{ \"name\": \"test").append(i).append("\", \"anInt\": ").append(i).append(" }");
+		}
+
+		body.append("]");
+
+		RestAssured
+
+			.given()
+				.contentType("application/json; charset=UTF-8")
+				.filter(ResponseLoggingFilter.logResponseIfStatusCodeIs(500))
+				.body(body.toString())
+			.expect()
+				.statusCode(201)
+				.body("result",       hasSize(10))
+				.body("result_count", equalTo(10))
+				.body("chunk_count",  equalTo(4))
+				.body("error",        nullValue())
+			.when()
+				.post("/test_ones?chunkSize=3");
+
+		RestAssured
+
+			.given()
+				.contentType("application/json; charset=UTF-8")
+			.expect()
+				.statusCode(200)
+				.body("result_count", equalTo(10))
+				.body("result[9].name", equalTo("test9"))
+			.when()
+				.get("/test_ones?sort=anInt");
+	}
+
+	public void test02ChunkedPostSingleObject() {
+
+		RestAssured
+
+			.given()
+				.contentType("application/json; charset=UTF-8")
+				.body("{ \"name\": \"single\" }")
+			.expect()
+				.statusCode(201)
+				.body("result",       hasSize(1))
+				.body("result_count", equalTo(1))
+				.body("chunk_count",  equalTo(1))
+			.when()
+				.post("/test_ones?chunkSize=100");
+	}
+
+	public void test03ChunkedPostWithError() {
+
+		// the third chunk contains an invalid value
+		final String body = "[{ \"anInt\": 1 }, { \"anInt\": 2 }, { \"anInt\": 3 }, { \"anInt\": 4 }, { \"anInt\": \"invalid\" }, { \"anInt\": 6 }]";
+
+		RestAssured
+
+			.given()
+				.contentType("application/json; charset=UTF-8")
+				.body(body)
+			.expect()
+				.statusCode(201)
+				.body("result",       hasSize(4))
+				.body("result_count", equalTo(4))
+				.body("chunk_count",  equalTo(2))
+				.body("error.code",   equalTo(422))
+			.when()
+				.post("/test_ones?chunkSize=2");
+
+		// committed chunks are kept, the failed chunk is rolled back
+		RestAssured
+
+			.given()
+				.contentType("application/json; charset=UTF-8")
+			.expect()
+				.statusCode(200)
+				.body("result_count", equalTo(4))
+			.when()
+				.get("/test_ones");
+
+		// an error in the first chunk results in a regular error response
+		RestAssured
+
+			.given()
+				.contentType("application/json; charset=UTF-8")
+				.body("[{ \"anInt\": \"invalid\" }]")
+			.expect()
+				.statusCode(422)
+			.when()
+				.post("/test_ones?chunkSize=2");
+	}
+}
@@ -0,0 +1,160 @@
+/**
+ * Copyright (C) 2010-2016 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.rest.test;
+
+import com.jayway.restassured.RestAssured;
+import com.jayway.restassured.filter.log.ResponseLoggingFilter;
+import java.util.Date;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import static org.hamcrest.Matchers.*;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.graph.NodeAttribute;
+import org.structr.core.graph.Tx;
+import org.structr.rest.common.StructrRestTest;
+import org.structr.rest.logging.entity.LogEvent;
+
+/**
+ * Tests storing and querying log events with the log resource.
+ *
+ *
+ */
+public class LogResourceTest extends StructrRestTest {
+
+	private static final Logger logger = Logger.getLogger(LogResourceTest.class.getName());
+
+	public void test01StoreAndQueryEvents() {
+
+		for (int i=0; i<6; i++) {
+
+			RestAssured
+
+				.given()
+					.contentType("application/json; charset=UTF-8")
+					.filter(ResponseLoggingFilter.logResponseIfStatusCodeIs(500))
+					.body("{ \"subject\": \"subject" + (i % 2) + "\", \"object\": \"object" + i + "\", \"action\": \"" + (i < 4 ? "click" : "view") + "\", \"message\": \"count=" + i + "\" }")
+				.expect()
+					.statusCode(201)
+				.when()
+					.post("/log");
+		}
+
+		// overview
+		RestAssured
+
+			.given()
+				.contentType("application/json; charset=UTF-8")
+			.expect()
+				.statusCode(200)
+				.body("result.entryCount",    equalTo(6))
+				.body("result.actions.click", equalTo(4))
+				.body("result.actions.view",  equalTo(2))
+			.when()
+				.get("/log");
+
+		// events of a single action
+		RestAssured
+
+			.given()
+				.contentType("application/json; charset=UTF-8")
+			.expect()
+				.statusCode(200)
+				.body("result",         hasSize(4))
+				.body("result.action",  everyItem(equalTo("click")))
+			.when()
+				.get("/log?action=click");
+
+		// events of a single subject
+		RestAssured
+
+			.given()
+				.contentType("application/json; charset=UTF-8")
+			.expect()
+				.statusCode(200)
+				.body("result",          hasSize(2))
+				.body("result.subject",  everyItem(equalTo("subject1")))
+			.when()
+				.get("/log?action=click&subject=subject1");
+	}
+
+	public void test02MissingProperties() {
+
+		RestAssured
+
+			.given()
+				.contentType("application/json; charset=UTF-8")
+				.body("{ \"subject\": \"subject\" }")
+			.expect()
+				.statusCode(422)
+			.when()
+				.post("/log");
+	}
+
+	public void test03ImportLogEventNodes() {
+
+		final Date timestamp = new Date();
+
+		// log events that were stored in the database before the event store existed
+		try (final Tx tx = app.tx()) {
+
+			for (int i=0; i<5; i++) {
+
+				app.create(LogEvent.class,
+					new NodeAttribute(LogEvent.subjectProperty,   "subject"),
+					new NodeAttribute(LogEvent.objectProperty,    "object" + i),
+					new NodeAttribute(LogEvent.actionProperty,    i < 3 ? "click" : "view"),
+					new NodeAttribute(LogEvent.messageProperty,   "count=" + i),
+					new NodeAttribute(LogEvent.timestampProperty, timestamp)
+				);
+			}
+
+			tx.success();
+
+		} catch (FrameworkException ex) {
+
+			logger.log(Level.WARNING, "", ex);
+			fail("Unexpected exception");
+		}
+
+		RestAssured
+
+			.given()
+				.contentType("application/json; charset=UTF-8")
+			.expect()
+				.statusCode(200)
+				.body("result.entryCount",    equalTo(5))
+				.body("result.actions.click", equalTo(3))
+				.body("result.actions.view",  equalTo(2))
+			.when()
+				.get("/log");
+
+		// the nodes are removed after the import, so they are imported only once
+		try (final Tx tx = app.tx()) {
+
+			assertEquals(0, app.nodeQuery(LogEvent.class).getAsList().size());
+
+			tx.success();
+
+		} catch (FrameworkException ex) {
+
+			logger.log(Level.WARNING, "", ex);
+			fail("Unexpected exception");
+		}
+	}
+}
@@ -21,14 +21,18 @@ package org.structr.files.text;
 import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.Iterator;
+import java.nio.charset.StandardCharsets;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 import org.apache.commons.lang3.StringUtils;
@@ -41,6 +45,7 @@ import org.structr.agent.ReturnValue;
 import org.structr.agent.Task;
 import org.structr.api.graph.Node;
 import org.structr.api.index.Index;
+import org.structr.common.error.FrameworkException;
 import org.structr.core.Services;
 import org.structr.core.app.StructrApp;
 import org.structr.core.entity.Principal;
@@ -60,6 +65,9 @@ public class FulltextIndexingAgent extends Agent<Indexable> {
 	private static final Map<String, Set<String>> languageStopwordMap = new LinkedHashMap<>();
 	public static final String TASK_NAME                              = "FulltextIndexing";
 
+	// parsers are thread-safe, so all agents share a single instance
+	private static final AutoDetectParser parser                      = new AutoDetectParser();
+
 	@Override
 	public ReturnValue processTask(final Task<Indexable> task) throws Throwable {
 
@@ -90,132 +98,163 @@ public class FulltextIndexingAgent extends Agent<Indexable> {
 	// ----- private methods -----
 	private void doIndexing(final Indexable file) {
 
-		boolean parsingSuccessful         = false;
-		InputStream inputStream           = null;
-		String fileName                   = "unknown file";
+		String fileName = "unknown file";
 
 		try {
 
+			final List<String> metadata = new LinkedList<>();
+			Long storedChecksum         = null;
+
 			try (final Tx tx = StructrApp.getInstance().tx()) {
 
-				inputStream = file.getInputStream();
-				fileName = file.getName();
+				fileName       = file.getName();
+				storedChecksum = file.getProperty(Indexable.indexedChecksum);
+
+				// name and owner are indexed as well
+				metadata.add(fileName);
+
+				final Principal _owner = file.getProperty(owner);
+				if (_owner != null) {
+
+					metadata.add(_owner.getName());
+					metadata.add(_owner.getProperty(User.eMail));
+					metadata.add(_owner.getProperty(User.twitterName));
+				}
 
 				tx.success();
 			}
 
+			// the checksum property of a file may not be committed yet when
+			// this task runs, so the checksum is computed from the content
+			final Long contentChecksum = getContentChecksum(file);
+			if (contentChecksum == null) {
+
+				// no content
+				return;
+			}
+
+			final long checksum = getChecksum(contentChecksum, metadata);
+
+			// skip indexing if neither content nor metadata changed
+			if (storedChecksum != null && storedChecksum == checksum) {
+
+				logger.log(Level.FINE, "{0} is unchanged, skipping.", fileName);
+				return;
+			}
+
+			final InputStream inputStream = getInputStream(file);
 			if (inputStream != null) {
 
 				final FulltextTokenizer tokenizer = new FulltextTokenizer(fileName);
 
 				try (final InputStream is = inputStream) {
 
-					final AutoDetectParser parser = new AutoDetectParser();
-
 					parser.parse(is, new BodyContentHandler(tokenizer), new Metadata());
-					parsingSuccessful = true;
 				}
 
-				// only do indexing when parsing was successful
-				if (parsingSuccessful) {
+				// raw text without name and owner
+				final String rawText = tokenizer.getRawText();
 
-					try (Tx tx = StructrApp.getInstance().tx()) {
+				for (final String value : metadata) {
 
-						// don't modify access time when indexing is finished
-						file.getSecurityContext().preventModificationOfAccessTime();
+					if (value != null) {
+						tokenizer.write(value);
+					}
+				}
 
-						// save raw extracted text
-						file.setProperty(Indexable.extractedContent, tokenizer.getRawText());
+				// collect words excluding stop words
+				final Set<String> stopWords    = languageStopwordMap.get(tokenizer.getLanguage());
+				final Set<String> indexedWords = new TreeSet<>();
 
-						// tokenize name
-						tokenizer.write(getName());
+				for (final String token : tokenizer.getWords()) {
 
-						// tokenize owner name
-						final Principal _owner = file.getProperty(owner);
-						if (_owner != null) {
+					// strip double quotes
+					final String word = StringUtils.strip(token, "\"");
 
-							final String ownerName = _owner.getName();
-							if (ownerName != null) {
+					if (stopWords == null || !stopWords.contains(word)) {
+						indexedWords.add(word);
+					}
+				}
 
-								tokenizer.write(ownerName);
-							}
+				logger.log(Level.INFO, "Indexing {0}..", fileName);
 
-							final String eMail = _owner.getProperty(User.eMail);
-							if (eMail != null) {
+				final NodeService nodeService   = Services.getInstance().getService(NodeService.class);
+				final Index<Node> fulltextIndex = nodeService.getNodeIndex(NodeService.NodeIndex.fulltext);
 
-								tokenizer.write(eMail);
-							}
+				try (final Tx tx = StructrApp.getInstance().tx()) {
 
-							final String twitterName = _owner.getProperty(User.twitterName);
-							if (twitterName != null) {
+					// don't modify access time when indexing is finished
+					file.getSecurityContext().preventModificationOfAccessTime();
 
-								tokenizer.write(twitterName);
-							}
-						}
+					// replace the words of previous indexing runs
+					fulltextIndex.replace(file.getNode(), Indexable.indexedWords.jsonName(), indexedWords, String.class);
 
-						tx.success();
-					}
+					// save raw extracted text, indexed words and checksum
+					file.setProperty(Indexable.extractedContent, rawText);
+					file.setProperty(Indexable.indexedWords, (String[]) indexedWords.toArray(new String[indexedWords.size()]));
+					file.setProperty(Indexable.indexedChecksum, checksum);
+
+					tx.success();
+				}
 
-					// index document excluding stop words
-					final NodeService nodeService       = Services.getInstance().getService(NodeService.class);
-					final Index<Node> fulltextIndex     = nodeService.getNodeIndex(NodeService.NodeIndex.fulltext);
-					final Set<String> stopWords         = languageStopwordMap.get(tokenizer.getLanguage());
-					final String indexKeyName           = Indexable.indexedWords.jsonName();
-					final Iterator<String> wordIterator = tokenizer.getWords().iterator();
-					final Node node                     = file.getNode();
-					final Set<String> indexedWords      = new TreeSet<>();
+				logger.log(Level.INFO, "Indexing of {0} finished, {1} words extracted", new Object[] { fileName, tokenizer.getWordCount() } );
+			}
 
-					logger.log(Level.INFO, "Indexing {0}..", fileName);
+		} catch (final Throwable t) {
 
-					while (wordIterator.hasNext()) {
+			logger.log(Level.WARNING, "Indexing of {0} failed: {1}", new Object[] { fileName, t.getMessage() } );
+		}
+	}
 
-						try (Tx tx = StructrApp.getInstance().tx()) {
+	private InputStream getInputStream(final Indexable file) throws FrameworkException {
 
-							// remove node from index (in case of previous indexing runs)
-							fulltextIndex.remove(node, indexKeyName);
+		try (final Tx tx = StructrApp.getInstance().tx()) {
 
-							while (wordIterator.hasNext()) {
+			final InputStream inputStream = file.getInputStream();
 
-								// strip double quotes
-								final String word = StringUtils.strip(wordIterator.next(), "\"");
+			tx.success();
 
-								if (!stopWords.contains(word)) {
+			return inputStream;
+		}
+	}
 
-									indexedWords.add(word);
-									fulltextIndex.add(node, indexKeyName, word, String.class);
+	private Long getContentChecksum(final Indexable file) throws FrameworkException, IOException {
 
-//									if (indexedWords > 1000) {
-//										indexedWords = 0;
-//										break;
-//									}
-								}
-							}
+		final InputStream inputStream = getInputStream(file);
+		if (inputStream != null) {
 
-							tx.success();
-						}
-					}
+			try (final CheckedInputStream is = new CheckedInputStream(inputStream, new CRC32())) {
+
+				final byte[] buffer = new byte[8192];
+
+				while (is.read(buffer) >= 0) {
+					// read to end of stream
+				}
 
-					// store indexed words separately
-					try (Tx tx = StructrApp.getInstance().tx()) {
+				return is.getChecksum().getValue();
+			}
+		}
 
-						// don't modify access time when indexing is finished
-						file.getSecurityContext().preventModificationOfAccessTime();
+		return null;
+	}
 
-						// store indexed words
-						file.setProperty(Indexable.indexedWords, (String[]) indexedWords.toArray(new String[indexedWords.size()]));
+	private long getChecksum(final long contentChecksum, final List<String> metadata) {
 
-						tx.success();
-					}
+		final CRC32 crc = new CRC32();
 
-					logger.log(Level.INFO, "Indexing of {0} finished, {1} words extracted", new Object[] { fileName, tokenizer.getWordCount() } );
+		crc.update(Long.toString(contentChecksum).getBytes(StandardCharsets.UTF_8));
 
-				}
-			}
+		for (final String value : metadata) {
 
-		} catch (final Throwable t) {
+			if (value != null) {
+				crc.update(value.getBytes(StandardCharsets.UTF_8));
+			}
 
-			logger.log(Level.WARNING, "Indexing of {0} failed: {1}", new Object[] { fileName, t.getMessage() } );
+			// separator
+			crc.update(0);
 		}
+
+		return crc.getValue();
 	}
 
 	static {
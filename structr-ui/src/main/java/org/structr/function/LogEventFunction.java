@@ -18,12 +18,14 @@
  */
 package org.structr.function;
 
+import java.io.IOException;
 import java.util.Date;
 import java.util.Map;
+import java.util.logging.Level;
 import org.structr.common.error.FrameworkException;
 import org.structr.core.GraphObject;
-import org.structr.core.app.StructrApp;
-import org.structr.core.graph.NodeAttribute;
+import org.structr.core.GraphObjectMap;
+import org.structr.rest.logging.LogEventStore;
 import org.structr.rest.logging.entity.LogEvent;
 import org.structr.schema.action.ActionContext;
 import org.structr.web.entity.dom.DOMNode;
@@ -46,29 +48,23 @@ public class LogEventFunction extends UiFunction {
 
 		if (arrayHasMinLengthAndMaxLengthAndAllElementsNotNull(sources, 2, 4)) {
 
-			final String action = sources[0].toString();
+			final String action  = sources[0].toString();
 			final String message = sources[1].toString();
-
-			final LogEvent logEvent = StructrApp.getInstance().create(LogEvent.class,
-				new NodeAttribute(LogEvent.actionProperty, action),
-				new NodeAttribute(LogEvent.messageProperty, message),
-				new NodeAttribute(LogEvent.timestampProperty, new Date())
-			);
+			String subject       = null;
+			String object        = null;
 
 			switch (sources.length) {
 
 				case 4:
-					final String object = sources[3].toString();
-					logEvent.setProperty(LogEvent.objectProperty, object);
+					object = sources[3].toString();
 					// no break, next case should be included
 
 				case 3:
-					final String subject = sources[2].toString();
-					logEvent.setProperty(LogEvent.subjectProperty, subject);
+					subject = sources[2].toString();
 					break;
 			}
 
-			return logEvent;
+			return logEvent(action, message, subject, object);
 
 		} else if (sources.length == 1 && sources[0] instanceof Map) {
 
@@ -79,13 +75,7 @@ public class LogEventFunction extends UiFunction {
 			final String subject = DOMNode.objectToString(map.get("subject"));
 			final String object = DOMNode.objectToString(map.get("object"));
 
-			return StructrApp.getInstance().create(LogEvent.class,
-				new NodeAttribute(LogEvent.actionProperty, action),
-				new NodeAttribute(LogEvent.messageProperty, message),
-				new NodeAttribute(LogEvent.timestampProperty, new Date()),
-				new NodeAttribute(LogEvent.subjectProperty, subject),
-				new NodeAttribute(LogEvent.objectProperty, object)
-			);
+			return logEvent(action, message, subject, object);
 
 		} else {
 
@@ -105,4 +95,33 @@ public class LogEventFunction extends UiFunction {
 	public String shortDescription() {
 		return "Logs an event to the Structr log";
 	}
+
+	// ----- private methods -----
+	private GraphObjectMap logEvent(final String action, final String message, final String subject, final String object) throws FrameworkException {
+
+		final long timestamp = System.currentTimeMillis();
+
+		try {
+
+			final LogEventStore store = LogEventStore.getInstance();
+
+			store.append(timestamp, subject, object, action, message);
+			store.flush();
+
+		} catch (IOException ioex) {
+
+			logger.log(Level.WARNING, "", ioex);
+			throw new FrameworkException(500, "Unable to store log event: " + ioex.getMessage());
+		}
+
+		final GraphObjectMap event = new GraphObjectMap();
+
+		event.put(LogEvent.timestampProperty, new Date(timestamp));
+		event.put(LogEvent.actionProperty,    action);
+		event.put(LogEvent.subjectProperty,   subject);
+		event.put(LogEvent.objectProperty,    object);
+		event.put(LogEvent.messageProperty,   message);
+
+		return event;
+	}
 }
@@ -0,0 +1,210 @@
+/**
+ * Copyright (C) 2010-2016 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.web.common;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import org.structr.common.DependencyCache;
+import org.structr.common.SecurityContext;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.GraphObject;
+import org.structr.core.StructrTransactionListener;
+import org.structr.core.TransactionSource;
+import org.structr.core.graph.ModificationEvent;
+import org.structr.core.graph.RelationshipInterface;
+
+/**
+ * Caches the rendered output of static DOM subtrees.
+ *
+ * A subtree is static if none of its nodes depends on the request, i.e.
+ * if no node contains script expressions, queries, a data key or display
+ * conditions, and if all nodes are visible to the visibility class of the
+ * request (public or authenticated users). For subtrees that are not
+ * static, the cache remembers this result, so the subtree is not examined
+ * again on every request.
+ *
+ * Each entry keeps the uuids of the nodes it was computed from, and a
+ * committed transaction invalidates all entries that contain a modified
+ * node. Creating or deleting a child relationship modifies its end nodes,
+ * so structural changes invalidate the affected entries as well.
+ */
+public class FragmentCache implements StructrTransactionListener {
+
+	private static final int MAX_FRAGMENT_SIZE = 256 * 1024;
+	private static final int UUIDS             = 0;
+
+	private DependencyCache<Fragment> cache = null;
+
+	public FragmentCache(final int maxSize) {
+		this.cache = new DependencyCache<>(maxSize, 1);
+	}
+
+	/**
+	 * Returns the cache key for the subtree of the given node. The output
+	 * of a static subtree depends on its indentation depth and on whether
+	 * it is rendered inside the body element.
+	 *
+	 * @param uuid the uuid of the root node of the subtree
+	 * @param depth
+	 * @param inBody
+	 * @param publicOnly whether the request is anonymous
+	 * @return the cache key
+	 */
+	public static String cacheKey(final String uuid, final int depth, final boolean inBody, final boolean publicOnly) {
+
+		final StringBuilder buf = new StringBuilder(uuid);
+
+		buf.append(":").append(depth);
+		buf.append(inBody ? ":body" : ":head");
+		buf.append(publicOnly ? ":public" : ":authenticated");
+
+		return buf.toString();
+	}
+
+	/**
+	 * Returns the current generation of this cache. The generation changes
+	 * with every transaction that modifies the database, so fragments that
+	 * were rendered across such a transaction can be detected and discarded.
+	 *
+	 * @return the current generation
+	 */
+	public long getGeneration() {
+		return cache.getGeneration();
+	}
+
+	public Fragment get(final String cacheKey) {
+		return cache.get(cacheKey);
+	}
+
+	/**
+	 * Stores the rendered output of a static subtree, or the information
+	 * that a subtree is not static, unless the database was modified since
+	 * the given generation.
+	 *
+	 * @param cacheKey
+	 * @param content the rendered output, or null if the subtree is not static
+	 * @param uuids the nodes the fragment was computed from
+	 * @param renderGeneration the generation at the start of the rendering
+	 */
+	public void put(final String cacheKey, final String content, final Set<String> uuids, final long renderGeneration) {
+
+		if (content != null && content.length() > MAX_FRAGMENT_SIZE) {
+
+			cache.discard();
+			return;
+		}
+
+		cache.put(cacheKey, new Fragment(content, uuids), renderGeneration, uuids);
+	}
+
+	public void clear() {
+		cache.clear();
+	}
+
+	/**
+	 * Returns size, hit rate, eviction and invalidation counts of this
+	 * cache.
+	 *
+	 * @return a map of statistics
+	 */
+	public Map<String, Object> getStatistics() {
+		return cache.getStatistics();
+	}
+
+	// ----- interface StructrTransactionListener -----
+	@Override
+	public void beforeCommit(final SecurityContext securityContext, final Collection<ModificationEvent> modificationEvents, final TransactionSource source) throws FrameworkException {
+
+		// transactions without notifications are not reported after the
+		// commit, so entries are invalidated before the commit as well
+		invalidate(modificationEvents);
+	}
+
+	@Override
+	public void afterCommit(final SecurityContext securityContext, final Collection<ModificationEvent> modificationEvents, final TransactionSource source) {
+
+		// invalidate again to remove fragments that were rendered while
+		// the transaction was being committed
+		invalidate(modificationEvents);
+	}
+
+	// ----- private methods -----
+	private void invalidate(final Collection<ModificationEvent> modificationEvents) {
+
+		if (modificationEvents.isEmpty()) {
+			return;
+		}
+
+		cache.nextGeneration();
+
+		for (final ModificationEvent event : modificationEvents) {
+
+			final GraphObject obj = event.getGraphObject();
+
+			cache.invalidate(UUIDS, event.getUuid());
+
+			if (!event.isNode() && obj instanceof RelationshipInterface && !event.isDeleted()) {
+
+				// relationship properties like the position of a child node
+				// affect the output of both end nodes
+				final RelationshipInterface rel = (RelationshipInterface)obj;
+
+				cache.invalidate(UUIDS, rel.getSourceNodeId());
+				cache.invalidate(UUIDS, rel.getTargetNodeId());
+			}
+		}
+	}
+
+	// ----- nested classes -----
+	/**
+	 * The output of a static subtree, together with the nodes it consists
+	 * of.
+	 */
+	public static class Fragment {
+
+		private Set<String> uuids = null;
+		private String content    = null;
+
+		Fragment(final String content, final Set<String> uuids) {
+
+			this.uuids   = Collections.unmodifiableSet(uuids);
+			this.content = content;
+		}
+
+		/**
+		 * Indicates whether the subtree is static, i.e. whether its output
+		 * can be used.
+		 *
+		 * @return whether the subtree is static
+		 */
+		public boolean isStatic() {
+			return content != null;
+		}
+
+		public String getContent() {
+			return content;
+		}
+
+		public Set<String> getUuids() {
+			return uuids;
+		}
+	}
+}
@@ -0,0 +1,342 @@
+/**
+ * Copyright (C) 2010-2016 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.web.common;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import javax.servlet.http.HttpServletRequest;
+import org.structr.common.DependencyCache;
+import org.structr.common.SecurityContext;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.GraphObject;
+import org.structr.core.StructrTransactionListener;
+import org.structr.core.TransactionSource;
+import org.structr.core.graph.ModificationEvent;
+import org.structr.core.graph.RelationshipInterface;
+import org.structr.web.entity.dom.Page;
+
+/**
+ * Caches the rendered output of pages for anonymous requests.
+ *
+ * While a page is rendered, the render context records the DOM nodes and
+ * data objects it touches. The entries are stored with these dependencies
+ * in a {@link DependencyCache}, so a committed transaction only
+ * invalidates the pages whose output it can change:
+ *
+ * - a modified node invalidates all pages that rendered it, or that
+ *   rendered a data object of the same type
+ * - a created or deleted node additionally invalidates all pages that
+ *   contain a repeater, because the result of its query may have changed
+ * - a created or deleted page clears the cache, because it can change
+ *   which page is resolved for a path
+ *
+ * Data that is accessed in scripts without being bound to a data key is
+ * not tracked, so every entry expires after a maximum age as well.
+ */
+public class PageOutputCache implements StructrTransactionListener {
+
+	private static final int MAX_ENTRY_SIZE = 1024 * 1024;
+	private static final int UUIDS          = 0;
+	private static final int TYPES          = 1;
+	private static final int QUERIES        = 2;
+	private static final String QUERY       = "query";
+
+	private final Map<String, PageStatistics> pageStatistics = new ConcurrentHashMap<>();
+	private DependencyCache<CacheEntry> cache                = null;
+	private int maxAgeSeconds                                = 0;
+
+	public PageOutputCache(final int maxSize, final int maxAgeSeconds) {
+
+		this.cache         = new DependencyCache<>(maxSize, 3);
+		this.maxAgeSeconds = maxAgeSeconds;
+	}
+
+	/**
+	 * Returns the cache key for the given request. The output of a page
+	 * depends on host, path, query string and locale of the request.
+	 *
+	 * @param request
+	 * @param locale
+	 * @return the cache key
+	 */
+	public static String cacheKey(final HttpServletRequest request, final Locale locale) {
+
+		final StringBuilder buf = new StringBuilder();
+
+		buf.append(request.getServerName());
+		buf.append(":");
+		buf.append(request.getServerPort());
+		buf.append(request.getPathInfo());
+
+		final String queryString = request.getQueryString();
+		if (queryString != null) {
+
+			buf.append("?");
+			buf.append(queryString);
+		}
+
+		buf.append("#");
+		buf.append(locale);
+
+		return buf.toString();
+	}
+
+	/**
+	 * Returns the current generation of this cache. The generation changes
+	 * with every transaction that modifies the database, so output that was
+	 * rendered across such a transaction can be detected and discarded.
+	 *
+	 * @return the current generation
+	 */
+	public long getGeneration() {
+		return cache.getGeneration();
+	}
+
+	public CacheEntry get(final String cacheKey, final Page page) {
+
+		final PageStatistics stats = getPageStatistics(page);
+		final long now             = System.currentTimeMillis();
+		final CacheEntry entry     = cache.get(cacheKey, e -> e.expires > now);
+
+		if (entry != null) {
+
+			stats.hits.increment();
+
+			return entry;
+		}
+
+		stats.misses.increment();
+
+		return null;
+	}
+
+	/**
+	 * Stores the rendered output of a page, unless the database was
+	 * modified since the given generation.
+	 *
+	 * @param cacheKey
+	 * @param page
+	 * @param content
+	 * @param dependencies
+	 * @param renderGeneration the generation at the start of the rendering
+	 */
+	public void put(final String cacheKey, final Page page, final byte[] content, final Dependencies dependencies, final long renderGeneration) {
+
+		if (content.length > MAX_ENTRY_SIZE) {
+
+			cache.discard();
+			return;
+		}
+
+		final Integer cacheForSeconds = page.getProperty(Page.cacheForSeconds);
+		final int maxAge              = cacheForSeconds != null && cacheForSeconds > 0 ? cacheForSeconds : maxAgeSeconds;
+		final CacheEntry entry        = new CacheEntry(content, System.currentTimeMillis() + maxAge * 1000L);
+		final Set<String> queries     = dependencies.usesQueries ? Collections.singleton(QUERY) : Collections.emptySet();
+
+		cache.put(cacheKey, entry, renderGeneration, dependencies.uuids, dependencies.types, queries);
+	}
+
+	public void clear() {
+		cache.clear();
+	}
+
+	/**
+	 * Returns size, hit rate, eviction and invalidation counts of this
+	 * cache, and the hit rate of each page.
+	 *
+	 * @return a map of statistics
+	 */
+	public Map<String, Object> getStatistics() {
+
+		final Map<String, Object> stats = cache.getStatistics();
+		final Map<String, Object> pages = new LinkedHashMap<>();
+
+		for (final PageStatistics page : pageStatistics.values()) {
+			pages.put(page.uuid, page.toMap());
+		}
+
+		stats.put("maxAgeSeconds", maxAgeSeconds);
+		stats.put("pages",         pages);
+
+		return stats;
+	}
+
+	// ----- interface StructrTransactionListener -----
+	@Override
+	public void beforeCommit(final SecurityContext securityContext, final Collection<ModificationEvent> modificationEvents, final TransactionSource source) throws FrameworkException {
+
+		// transactions without notifications are not reported after the
+		// commit, so entries are invalidated before the commit as well
+		invalidate(modificationEvents);
+	}
+
+	@Override
+	public void afterCommit(final SecurityContext securityContext, final Collection<ModificationEvent> modificationEvents, final TransactionSource source) {
+
+		// invalidate again to remove output that was rendered while the
+		// transaction was being committed
+		invalidate(modificationEvents);
+	}
+
+	// ----- private methods -----
+	private void invalidate(final Collection<ModificationEvent> modificationEvents) {
+
+		if (modificationEvents.isEmpty()) {
+			return;
+		}
+
+		boolean createdOrDeleted = false;
+
+		cache.nextGeneration();
+
+		for (final ModificationEvent event : modificationEvents) {
+
+			final GraphObject obj = event.getGraphObject();
+
+			cache.invalidate(UUIDS, event.getUuid());
+
+			if (event.isNode()) {
+
+				if (obj != null) {
+					cache.invalidate(TYPES, obj.getClass().getSimpleName());
+				}
+
+				if (event.isCreated() || event.isDeleted()) {
+
+					if (obj instanceof Page) {
+
+						clear();
+						return;
+					}
+
+					createdOrDeleted = true;
+				}
+
+			} else if (obj instanceof RelationshipInterface && !event.isDeleted()) {
+
+				// relationship properties like the position of a child node
+				// affect the output of both end nodes
+				final RelationshipInterface rel = (RelationshipInterface)obj;
+
+				cache.invalidate(UUIDS, rel.getSourceNodeId());
+				cache.invalidate(UUIDS, rel.getTargetNodeId());
+			}
+		}
+
+		if (createdOrDeleted) {
+			cache.invalidate(QUERIES, QUERY);
+		}
+	}
+
+	private PageStatistics getPageStatistics(final Page page) {
+
+		final PageStatistics stats = pageStatistics.computeIfAbsent(page.getUuid(), k -> new PageStatistics(k));
+
+		stats.name = page.getProperty(Page.name);
+
+		return stats;
+	}
+
+	// ----- nested classes -----
+	/**
+	 * The output of a page.
+	 */
+	public static class CacheEntry {
+
+		private byte[] content = null;
+		private long expires   = 0L;
+
+		CacheEntry(final byte[] content, final long expires) {
+
+			this.content = content;
+			this.expires = expires;
+		}
+
+		public byte[] getContent() {
+			return content;
+		}
+	}
+
+	/**
+	 * Collects the dependencies of a page while it is rendered.
+	 */
+	public static class Dependencies {
+
+		private final Set<String> uuids      = ConcurrentHashMap.newKeySet();
+		private final Set<String> types      = ConcurrentHashMap.newKeySet();
+		private volatile boolean usesQueries = false;
+
+		public void addNode(final GraphObject node) {
+
+			final String uuid = node.getUuid();
+			if (uuid != null) {
+
+				uuids.add(uuid);
+			}
+		}
+
+		public void addUuids(final Collection<String> nodeUuids) {
+			uuids.addAll(nodeUuids);
+		}
+
+		public void addDataObject(final GraphObject obj) {
+
+			addNode(obj);
+
+			types.add(obj.getClass().getSimpleName());
+		}
+
+		public void setUsesQueries() {
+			this.usesQueries = true;
+		}
+	}
+
+	private static class PageStatistics {
+
+		private final LongAdder misses = new LongAdder();
+		private final LongAdder hits   = new LongAdder();
+		private String uuid            = null;
+		private String name            = null;
+
+		PageStatistics(final String uuid) {
+			this.uuid = uuid;
+		}
+
+		Map<String, Object> toMap() {
+
+			final Map<String, Object> stats = new LinkedHashMap<>();
+			final long hitCount             = hits.sum();
+			final long missCount            = misses.sum();
+			final long total                = hitCount + missCount;
+
+			stats.put("name",    name);
+			stats.put("hits",    hitCount);
+			stats.put("misses",  missCount);
+			stats.put("hitRate", total > 0 ? (double)hitCount / (double)total : 0.0);
+
+			return stats;
+		}
+	}
+}
@@ -18,6 +18,7 @@
  */
 package org.structr.web.common;
 
+import java.util.Collection;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Stack;
@@ -68,6 +69,9 @@ public class RenderContext extends ActionContext {
 	private Result result                              = null;
 	private boolean anyChildNodeCreatesNewLine         = false;
 	private boolean indentHtml                         = true;
+	private PageOutputCache.Dependencies dependencies  = null;
+	private FragmentCache fragmentCache                = null;
+	private RenderProfile profile                      = null;
 
 	public enum EditMode {
 
@@ -87,8 +91,19 @@ public class RenderContext extends ActionContext {
 	 * @param other The render context to copy from
 	 */
 	public RenderContext(final RenderContext other) {
+		this(other, false);
+	}
 
-		super(other);
+	/**
+	 * Creates a copy of the given render context, see
+	 * {@link ActionContext#ActionContext(ActionContext, boolean)}.
+	 *
+	 * @param other
+	 * @param fork whether the copy is used concurrently
+	 */
+	public RenderContext(final RenderContext other, final boolean fork) {
+
+		super(other, fork);
 
 		this.dataObjects.putAll(other.dataObjects);
 		this.editMode = other.editMode;
@@ -107,6 +122,9 @@ public class RenderContext extends ActionContext {
 		this.anyChildNodeCreatesNewLine = other.anyChildNodeCreatesNewLine;
 		this.locale = other.locale;
 		this.indentHtml = other.indentHtml;
+		this.dependencies = other.dependencies;
+		this.fragmentCache = other.fragmentCache;
+		this.profile = other.profile;
 
 	}
 
@@ -133,6 +151,7 @@ public class RenderContext extends ActionContext {
 
 	public void setDetailsDataObject(GraphObject detailsDataObject) {
 		this.detailsDataObject = detailsDataObject;
+		addDataDependency(detailsDataObject);
 	}
 
 	public GraphObject getDetailsDataObject() {
@@ -141,6 +160,7 @@ public class RenderContext extends ActionContext {
 
 	public void setDataObject(GraphObject currentDataObject) {
 		this.currentDataObject = currentDataObject;
+		addDataDependency(currentDataObject);
 	}
 
 	public GraphObject getDataObject() {
@@ -157,6 +177,10 @@ public class RenderContext extends ActionContext {
 
 	public void setListSource(Iterable<GraphObject> listSource) {
 		this.listSource = listSource;
+
+		if (dependencies != null) {
+			dependencies.setUsesQueries();
+		}
 	}
 
 	public void setResult(Result result) {
@@ -500,6 +524,13 @@ public class RenderContext extends ActionContext {
 		return value;
 	}
 
+	private void addDataDependency(final GraphObject obj) {
+
+		if (dependencies != null && obj != null) {
+			dependencies.addDataObject(obj);
+		}
+	}
+
 	private void readConfigParameters () {
 
 		try {
@@ -509,6 +540,78 @@ public class RenderContext extends ActionContext {
 
 	}
 
+	/**
+	 * Enables the recording of the nodes and data objects that are used
+	 * while rendering with this context.
+	 *
+	 * @param dependencies
+	 */
+	public void setDependencies(final PageOutputCache.Dependencies dependencies) {
+		this.dependencies = dependencies;
+	}
+
+	public PageOutputCache.Dependencies getDependencies() {
+		return dependencies;
+	}
+
+	public void addDependency(final GraphObject node) {
+
+		if (dependencies != null) {
+			dependencies.addNode(node);
+		}
+	}
+
+	public void addDependencies(final Collection<String> uuids) {
+
+		if (dependencies != null) {
+			dependencies.addUuids(uuids);
+		}
+	}
+
+	/**
+	 * Enables the caching of the output of static subtrees while
+	 * rendering with this context.
+	 *
+	 * @param fragmentCache
+	 */
+	public void setFragmentCache(final FragmentCache fragmentCache) {
+		this.fragmentCache = fragmentCache;
+	}
+
+	public FragmentCache getFragmentCache() {
+		return fragmentCache;
+	}
+
+	/**
+	 * Enables the profiling of the nodes, data sources and expressions
+	 * that are rendered with this context.
+	 *
+	 * @param profile
+	 */
+	public void setProfile(final RenderProfile profile) {
+		this.profile = profile;
+	}
+
+	public RenderProfile getProfile() {
+		return profile;
+	}
+
+	@Override
+	public void beforeEvaluation(final String expression) {
+
+		if (profile != null) {
+			profile.start(expression, StringUtils.abbreviate(expression, 100));
+		}
+	}
+
+	@Override
+	public void afterEvaluation(final String expression) {
+
+		if (profile != null) {
+			profile.stop();
+		}
+	}
+
 	public boolean shouldIndentHtml() {
 		return indentHtml;
 	}
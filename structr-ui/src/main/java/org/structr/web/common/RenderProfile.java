@@ -0,0 +1,320 @@
+/**
+ * Copyright (C) 2010-2016 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.web.common;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import org.structr.core.graph.NodeServiceCommand;
+
+/**
+ * Records where the time of a single rendering is spent.
+ *
+ * Each profiled section (a DOM node, a data source or a script expression)
+ * is identified by a key and records the number of calls, its inclusive
+ * time, its exclusive time (without nested sections), and the number of
+ * database queries and allocated bytes of the section itself. Sections
+ * can be nested and can run in different threads, as every thread has its
+ * own stack of open sections.
+ *
+ * Allocated bytes are only recorded if the JVM supports the measurement of
+ * thread allocations.
+ */
+public class RenderProfile {
+
+	private static final com.sun.management.ThreadMXBean threadBean = getThreadBean();
+
+	private final Map<Thread, Deque<Frame>> stacks = new ConcurrentHashMap<>();
+	private final Map<String, Entry> entries       = new ConcurrentHashMap<>();
+	private final long startTime                   = System.nanoTime();
+	private final long startQueries                = NodeServiceCommand.getQueryCount();
+	private long totalTime                         = 0L;
+	private long totalQueries                      = 0L;
+
+	/**
+	 * Opens a section in the current thread. Every call to this method
+	 * must be followed by a call to {@link #stop()} in the same thread.
+	 *
+	 * @param key the key of the section
+	 * @param label a human-readable description of the section
+	 */
+	public void start(final String key, final String label) {
+
+		final Thread thread = Thread.currentThread();
+		Deque<Frame> stack  = stacks.get(thread);
+
+		if (stack == null) {
+
+			stack = new ArrayDeque<>();
+			stacks.put(thread, stack);
+		}
+
+		stack.push(new Frame(key, label, System.nanoTime(), NodeServiceCommand.getQueryCount(), getAllocatedBytes(thread)));
+	}
+
+	/**
+	 * Closes the innermost open section of the current thread.
+	 */
+	public void stop() {
+
+		final Thread thread      = Thread.currentThread();
+		final Deque<Frame> stack = stacks.get(thread);
+
+		if (stack == null || stack.isEmpty()) {
+			return;
+		}
+
+		final Frame frame     = stack.pop();
+		final long time       = System.nanoTime() - frame.startTime;
+		final long queries    = NodeServiceCommand.getQueryCount() - frame.startQueries;
+		final long allocated  = getAllocatedBytes(thread) - frame.startAllocated;
+		final Frame parent    = stack.peek();
+
+		if (parent != null) {
+
+			parent.childTime      += time;
+			parent.childQueries   += queries;
+			parent.childAllocated += allocated;
+
+		} else {
+
+			stacks.remove(thread);
+		}
+
+		final Entry entry = entries.computeIfAbsent(frame.key, k -> new Entry(k, frame.label));
+
+		entry.calls.increment();
+		entry.inclusiveTime.add(time);
+		entry.exclusiveTime.add(time - frame.childTime);
+		entry.queries.add(queries - frame.childQueries);
+		entry.allocatedBytes.add(allocated - frame.childAllocated);
+	}
+
+	/**
+	 * Ends the recording. Queries of other threads are not included in the
+	 * total query count.
+	 */
+	public void finish() {
+
+		totalTime    = System.nanoTime() - startTime;
+		totalQueries = NodeServiceCommand.getQueryCount() - startQueries;
+	}
+
+	public long getTotalTime() {
+		return totalTime;
+	}
+
+	public long getTotalQueries() {
+		return totalQueries;
+	}
+
+	public Collection<Entry> getEntries() {
+		return entries.values();
+	}
+
+	/**
+	 * Returns the value of a Server-Timing header that contains the total
+	 * render time and the sections with the highest exclusive time.
+	 *
+	 * @param maxEntries the maximum number of sections to include
+	 * @return the header value
+	 */
+	public String toServerTiming(final int maxEntries) {
+
+		final StringBuilder buf = new StringBuilder();
+		final List<Entry> list  = new ArrayList<>(entries.values());
+
+		list.sort((a, b) -> Long.compare(b.getExclusiveTime(), a.getExclusiveTime()));
+
+		buf.append("render;dur=").append(toMillis(totalTime));
+		buf.append(", queries;desc=\"").append(totalQueries).append("\"");
+
+		for (int i=0; i<list.size() && i<maxEntries; i++) {
+
+			final Entry entry = list.get(i);
+
+			buf.append(", hotspot").append(i + 1);
+			buf.append(";dur=").append(toMillis(entry.getExclusiveTime()));
+			buf.append(";desc=\"").append(quote(entry.getLabel())).append("\"");
+		}
+
+		return buf.toString();
+	}
+
+	// ----- private methods -----
+	private static String toMillis(final long nanos) {
+		return String.format(Locale.ROOT, "%.2f", nanos / 1000000.0);
+	}
+
+	private static long getAllocatedBytes(final Thread thread) {
+
+		if (threadBean != null) {
+
+			return threadBean.getThreadAllocatedBytes(thread.getId());
+		}
+
+		return 0L;
+	}
+
+	private static String quote(final String value) {
+
+		final StringBuilder buf = new StringBuilder();
+
+		for (final char c : value.toCharArray()) {
+
+			if (c == '"' || c == '\\') {
+
+				buf.append('\\');
+			}
+
+			// header values must not contain control characters
+			buf.append(c < 0x20 ? ' ' : c);
+		}
+
+		return buf.toString();
+	}
+
+	private static com.sun.management.ThreadMXBean getThreadBean() {
+
+		try {
+
+			final java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+			if (bean instanceof com.sun.management.ThreadMXBean) {
+
+				final com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean)bean;
+				if (sunBean.isThreadAllocatedMemorySupported() && sunBean.isThreadAllocatedMemoryEnabled()) {
+
+					return sunBean;
+				}
+			}
+
+		} catch (Throwable t) {
+			// measurement not available on this JVM
+		}
+
+		return null;
+	}
+
+	// ----- nested classes -----
+	/**
+	 * The recorded values of a profiled section.
+	 */
+	public static class Entry {
+
+		private final LongAdder calls          = new LongAdder();
+		private final LongAdder inclusiveTime  = new LongAdder();
+		private final LongAdder exclusiveTime  = new LongAdder();
+		private final LongAdder queries        = new LongAdder();
+		private final LongAdder allocatedBytes = new LongAdder();
+		private String label                   = null;
+		private String key                     = null;
+
+		public Entry(final String key, final String label) {
+
+			this.label = label;
+			this.key   = key;
+		}
+
+		public String getKey() {
+			return key;
+		}
+
+		public String getLabel() {
+			return label;
+		}
+
+		public long getCalls() {
+			return calls.sum();
+		}
+
+		public long getInclusiveTime() {
+			return inclusiveTime.sum();
+		}
+
+		public long getExclusiveTime() {
+			return exclusiveTime.sum();
+		}
+
+		public long getQueries() {
+			return queries.sum();
+		}
+
+		public long getAllocatedBytes() {
+			return allocatedBytes.sum();
+		}
+
+		/**
+		 * Adds the values of the given entry to this entry.
+		 *
+		 * @param other
+		 */
+		public void add(final Entry other) {
+
+			calls.add(other.getCalls());
+			inclusiveTime.add(other.getInclusiveTime());
+			exclusiveTime.add(other.getExclusiveTime());
+			queries.add(other.getQueries());
+			allocatedBytes.add(other.getAllocatedBytes());
+		}
+
+		public Map<String, Object> toMap() {
+
+			final Map<String, Object> map = new LinkedHashMap<>();
+
+			map.put("key",            key);
+			map.put("label",          label);
+			map.put("calls",          getCalls());
+			map.put("inclusiveTime",  getInclusiveTime() / 1000000.0);
+			map.put("exclusiveTime",  getExclusiveTime() / 1000000.0);
+			map.put("queries",        getQueries());
+			map.put("allocatedBytes", getAllocatedBytes());
+
+			return map;
+		}
+	}
+
+	private static class Frame {
+
+		private long childAllocated = 0L;
+		private long childQueries   = 0L;
+		private long childTime      = 0L;
+		private long startAllocated = 0L;
+		private long startQueries   = 0L;
+		private long startTime      = 0L;
+		private String label        = null;
+		private String key          = null;
+
+		Frame(final String key, final String label, final long startTime, final long startQueries, final long startAllocated) {
+
+			this.startAllocated = startAllocated;
+			this.startQueries   = startQueries;
+			this.startTime      = startTime;
+			this.label          = label;
+			this.key            = key;
+		}
+	}
+}
@@ -0,0 +1,136 @@
+/**
+ * Copyright (C) 2010-2016 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.web.common;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import org.structr.web.entity.dom.DOMNode;
+
+/**
+ * Aggregates the render profiles of all profiled requests per page, so
+ * that the hot spots of a page can be found without reproducing a slow
+ * request.
+ *
+ * The number of sections per page is limited, sections that are first
+ * seen after the limit is reached are not recorded.
+ */
+public class RenderProfiler {
+
+	private static final Map<String, PageProfile> pages = new ConcurrentHashMap<>();
+	private static final int MAX_SECTIONS_PER_PAGE      = 1000;
+
+	/**
+	 * Adds the given profile to the statistics of the given page.
+	 *
+	 * @param page the rendered page or partial
+	 * @param profile the profile of the rendering
+	 */
+	public static void record(final DOMNode page, final RenderProfile profile) {
+
+		final PageProfile pageProfile = pages.computeIfAbsent(page.getUuid(), k -> new PageProfile(k));
+
+		pageProfile.name = page.getProperty(DOMNode.name);
+		pageProfile.requests.increment();
+		pageProfile.totalTime.add(profile.getTotalTime());
+		pageProfile.queries.add(profile.getTotalQueries());
+
+		for (final RenderProfile.Entry entry : profile.getEntries()) {
+
+			RenderProfile.Entry section = pageProfile.sections.get(entry.getKey());
+			if (section == null && pageProfile.sections.size() < MAX_SECTIONS_PER_PAGE) {
+
+				section = pageProfile.sections.computeIfAbsent(entry.getKey(), k -> new RenderProfile.Entry(k, entry.getLabel()));
+			}
+
+			if (section != null) {
+				section.add(entry);
+			}
+		}
+	}
+
+	/**
+	 * Returns the statistics of all profiled pages, with the sections of
+	 * each page that have the highest exclusive time.
+	 *
+	 * @param maxHotSpots the maximum number of sections per page
+	 * @return a list of page statistics
+	 */
+	public static List<Map<String, Object>> getStatistics(final int maxHotSpots) {
+
+		final List<Map<String, Object>> result = new ArrayList<>();
+		final List<PageProfile> list           = new ArrayList<>(pages.values());
+
+		// slowest pages first
+		list.sort((a, b) -> Long.compare(b.totalTime.sum(), a.totalTime.sum()));
+
+		for (final PageProfile pageProfile : list) {
+			result.add(pageProfile.toMap(maxHotSpots));
+		}
+
+		return result;
+	}
+
+	public static void clear() {
+		pages.clear();
+	}
+
+	// ----- nested classes -----
+	private static class PageProfile {
+
+		private final Map<String, RenderProfile.Entry> sections = new ConcurrentHashMap<>();
+		private final LongAdder requests                        = new LongAdder();
+		private final LongAdder totalTime                       = new LongAdder();
+		private final LongAdder queries                         = new LongAdder();
+		private volatile String name                            = null;
+		private String uuid                                     = null;
+
+		PageProfile(final String uuid) {
+			this.uuid = uuid;
+		}
+
+		Map<String, Object> toMap(final int maxHotSpots) {
+
+			final Map<String, Object> map            = new LinkedHashMap<>();
+			final List<RenderProfile.Entry> list     = new ArrayList<>(sections.values());
+			final List<Map<String, Object>> hotSpots = new ArrayList<>();
+			final long requestCount                  = requests.sum();
+			final long time                          = totalTime.sum();
+
+			list.sort((a, b) -> Long.compare(b.getExclusiveTime(), a.getExclusiveTime()));
+
+			for (int i=0; i<list.size() && i<maxHotSpots; i++) {
+				hotSpots.add(list.get(i).toMap());
+			}
+
+			map.put("id",          uuid);
+			map.put("name",        name);
+			map.put("requests",    requestCount);
+			map.put("totalTime",   time / 1000000.0);
+			map.put("averageTime", requestCount > 0 ? time / requestCount / 1000000.0 : 0.0);
+			map.put("queries",     queries.sum());
+			map.put("hotSpots",    hotSpots);
+
+			return map;
+		}
+	}
+}
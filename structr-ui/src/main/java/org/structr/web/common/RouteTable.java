@@ -0,0 +1,399 @@
+/**
+ * Copyright (C) 2010-2016 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.web.common;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.servlet.http.HttpServletRequest;
+import org.apache.commons.lang3.StringUtils;
+import org.structr.common.GraphObjectComparator;
+import org.structr.common.PathHelper;
+import org.structr.common.SecurityContext;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.GraphObject;
+import org.structr.core.StructrTransactionListener;
+import org.structr.core.TransactionSource;
+import org.structr.core.app.App;
+import org.structr.core.app.StructrApp;
+import org.structr.core.graph.ModificationEvent;
+import org.structr.web.entity.Site;
+import org.structr.web.entity.dom.Page;
+
+/**
+ * An in-memory table of the paths, names and ids of all pages, in the order
+ * of their position, together with the hostname and port of their sites.
+ *
+ * The table is built on first use and updated from transaction events: the
+ * ids of modified pages and sites are marked as pending, and pending
+ * entries are re-read from the database before the next lookup. Pages are
+ * still instantiated in the security context of the request, so visibility
+ * is checked exactly as before, but only for the pages that match.
+ */
+public class RouteTable implements StructrTransactionListener {
+
+	private final Map<String, Route> routes       = new ConcurrentHashMap<>();
+	private final Map<String, SiteBinding> sites  = new ConcurrentHashMap<>();
+	private final Set<String> pendingPages        = ConcurrentHashMap.newKeySet();
+	private final Set<String> pendingSites        = ConcurrentHashMap.newKeySet();
+	private final AtomicLong sequence             = new AtomicLong();
+	private volatile Snapshot snapshot            = null;
+
+	/**
+	 * Returns the page with the given path, or whose name or id equals the
+	 * last part of the path.
+	 *
+	 * @param securityContext
+	 * @param request
+	 * @param path
+	 * @param ignoreSites true if pages of all sites should be considered
+	 * @return the first matching page that is visible in the given security context, or null
+	 * @throws FrameworkException
+	 */
+	public Page findPage(final SecurityContext securityContext, final HttpServletRequest request, final String path, final boolean ignoreSites) throws FrameworkException {
+
+		final Snapshot current    = getSnapshot();
+		final String name         = PathHelper.getName(path);
+		final List<Route> matches = new ArrayList<>();
+
+		add(matches, current.byPath.get(path));
+		add(matches, current.byName.get(name));
+		add(matches, current.byId.get(name));
+
+		Collections.sort(matches, Snapshot::compare);
+
+		final App app = StructrApp.getInstance(securityContext);
+		Route previous = null;
+
+		for (final Route route : matches) {
+
+			// skip routes that matched more than one key
+			if (route == previous) {
+				continue;
+			}
+
+			previous = route;
+
+			if (ignoreSites || isVisibleForSite(request, route)) {
+
+				final Page page = app.get(Page.class, route.uuid);
+				if (page != null) {
+
+					return page;
+				}
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Returns the page with the lowest position that is visible in the given
+	 * security context and for the requested site.
+	 *
+	 * @param securityContext
+	 * @param request
+	 * @param ignoreSites true if pages of all sites should be considered
+	 * @return the index page or null
+	 * @throws FrameworkException
+	 */
+	public Page findIndexPage(final SecurityContext securityContext, final HttpServletRequest request, final boolean ignoreSites) throws FrameworkException {
+
+		final App app = StructrApp.getInstance(securityContext);
+
+		for (final Route route : getSnapshot().ordered) {
+
+			if (route.position == null) {
+
+				// routes without position are sorted last
+				break;
+			}
+
+			if (ignoreSites || isVisibleForSite(request, route) || (route.enableBasicAuth && route.visibleToAuthenticatedUsers)) {
+
+				final Page page = app.get(Page.class, route.uuid);
+				if (page != null && securityContext.isVisible(page)) {
+
+					return page;
+				}
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Returns the number of pages and sites in this table.
+	 *
+	 * @return a map of statistics
+	 */
+	public Map<String, Object> getStatistics() {
+
+		final Map<String, Object> stats = new LinkedHashMap<>();
+
+		stats.put("pages",   routes.size());
+		stats.put("sites",   sites.size());
+		stats.put("pending", pendingPages.size() + pendingSites.size());
+
+		return stats;
+	}
+
+	// ----- interface StructrTransactionListener -----
+	@Override
+	public void beforeCommit(final SecurityContext securityContext, final Collection<ModificationEvent> modificationEvents, final TransactionSource source) throws FrameworkException {
+
+		// transactions without notifications are not reported after the commit
+		markPending(modificationEvents);
+	}
+
+	@Override
+	public void afterCommit(final SecurityContext securityContext, final Collection<ModificationEvent> modificationEvents, final TransactionSource source) {
+
+		// mark again in case an entry was refreshed during the commit
+		markPending(modificationEvents);
+	}
+
+	// ----- private methods -----
+	private void markPending(final Collection<ModificationEvent> modificationEvents) {
+
+		for (final ModificationEvent event : modificationEvents) {
+
+			if (event.isNode()) {
+
+				final GraphObject obj = event.getGraphObject();
+				final String uuid     = event.getUuid() != null ? event.getUuid() : obj.getUuid();
+
+				if (uuid == null) {
+					continue;
+				}
+
+				if (obj instanceof Page) {
+
+					pendingPages.add(uuid);
+
+				} else if (obj instanceof Site) {
+
+					pendingSites.add(uuid);
+				}
+			}
+		}
+	}
+
+	private Snapshot getSnapshot() throws FrameworkException {
+
+		final Snapshot current = snapshot;
+
+		if (current == null || !pendingPages.isEmpty() || !pendingSites.isEmpty()) {
+			return refresh();
+		}
+
+		return current;
+	}
+
+	private synchronized Snapshot refresh() throws FrameworkException {
+
+		final App app = StructrApp.getInstance();
+
+		if (snapshot == null) {
+
+			for (final Site site : app.nodeQuery(Site.class).getAsList()) {
+				updateSite(site);
+			}
+
+			for (final Page page : app.nodeQuery(Page.class).getAsList()) {
+				updatePage(page);
+			}
+
+			pendingPages.clear();
+			pendingSites.clear();
+
+		} else {
+
+			for (final String uuid : drain(pendingSites)) {
+
+				final Site site = app.get(Site.class, uuid);
+				if (site != null) {
+
+					updateSite(site);
+
+				} else {
+
+					sites.remove(uuid);
+				}
+			}
+
+			for (final String uuid : drain(pendingPages)) {
+
+				final Page page = app.get(Page.class, uuid);
+				if (page != null) {
+
+					updatePage(page);
+
+				} else {
+
+					routes.remove(uuid);
+				}
+			}
+		}
+
+		snapshot = new Snapshot(routes.values());
+
+		return snapshot;
+	}
+
+	private List<String> drain(final Set<String> pending) {
+
+		final List<String> uuids = new ArrayList<>(pending);
+
+		pending.removeAll(uuids);
+
+		return uuids;
+	}
+
+	private void updatePage(final Page page) {
+
+		final Route existing = routes.get(page.getUuid());
+		final Site site      = page.getProperty(Page.site);
+		final Route route    = new Route();
+
+		route.uuid                        = page.getUuid();
+		route.name                        = page.getName();
+		route.path                        = page.getPath();
+		route.position                    = page.getProperty(Page.position);
+		route.siteId                      = site != null ? site.getUuid() : null;
+		route.enableBasicAuth             = page.getProperty(Page.enableBasicAuth);
+		route.visibleToAuthenticatedUsers = page.getProperty(Page.visibleToAuthenticatedUsers);
+		route.sequence                    = existing != null ? existing.sequence : sequence.incrementAndGet();
+
+		if (site != null && !sites.containsKey(site.getUuid())) {
+			updateSite(site);
+		}
+
+		routes.put(route.uuid, route);
+	}
+
+	private void updateSite(final Site site) {
+		sites.put(site.getUuid(), new SiteBinding(site.getProperty(Site.hostname), site.getProperty(Site.port)));
+	}
+
+	private boolean isVisibleForSite(final HttpServletRequest request, final Route route) {
+
+		if (route.siteId == null) {
+			return true;
+		}
+
+		final SiteBinding site = sites.get(route.siteId);
+		if (site == null) {
+
+			// the site is not readable anymore, treat the page like before
+			return true;
+		}
+
+		final String serverName = request.getServerName();
+
+		if (StringUtils.isNotBlank(serverName) && !serverName.equals(site.hostname)) {
+			return false;
+		}
+
+		return site.port == null || request.getServerPort() == site.port;
+	}
+
+	private static void add(final List<Route> matches, final List<Route> routes) {
+
+		if (routes != null) {
+			matches.addAll(routes);
+		}
+	}
+
+	// ----- nested classes -----
+	private static class Route {
+
+		private boolean visibleToAuthenticatedUsers = false;
+		private boolean enableBasicAuth             = false;
+		private Integer position                    = null;
+		private String siteId                       = null;
+		private String uuid                         = null;
+		private String name                         = null;
+		private String path                         = null;
+		private long sequence                       = 0L;
+	}
+
+	private static class SiteBinding {
+
+		private String hostname = null;
+		private Integer port    = null;
+
+		SiteBinding(final String hostname, final Integer port) {
+
+			this.hostname = hostname;
+			this.port     = port;
+		}
+	}
+
+	/**
+	 * An immutable view of the routes, ordered by position and indexed by
+	 * path, name and id.
+	 */
+	private static class Snapshot {
+
+		private final Map<String, List<Route>> byPath = new HashMap<>();
+		private final Map<String, List<Route>> byName = new HashMap<>();
+		private final Map<String, List<Route>> byId   = new HashMap<>();
+		private final List<Route> ordered             = new ArrayList<>();
+
+		Snapshot(final Collection<Route> routes) {
+
+			ordered.addAll(routes);
+
+			Collections.sort(ordered, Snapshot::compare);
+
+			for (final Route route : ordered) {
+
+				index(byPath, route.path, route);
+				index(byName, route.name, route);
+				index(byId,   route.uuid, route);
+			}
+		}
+
+		/**
+		 * Orders routes by position, routes without position last, and by
+		 * the order in which they were added.
+		 */
+		static int compare(final Route a, final Route b) {
+
+			final int result = GraphObjectComparator.compare(a.position, b.position, false);
+
+			return result != 0 ? result : Long.compare(a.sequence, b.sequence);
+		}
+
+		private static void index(final Map<String, List<Route>> index, final String key, final Route route) {
+
+			if (key != null) {
+				index.computeIfAbsent(key, k -> new ArrayList<>()).add(route);
+			}
+		}
+	}
+}
@@ -0,0 +1,278 @@
+/**
+ * Copyright (C) 2010-2016 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.web.common;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import javax.servlet.ServletOutputStream;
+
+/**
+ * A bounded byte buffer between a render thread and a non-blocking servlet
+ * output stream.
+ *
+ * The renderer appends output and blocks while the buffer is full, so the
+ * memory used per request is constant and slow clients slow down rendering
+ * instead of accumulating output. The output is written whenever the stream
+ * accepts data without blocking. When the writer runs out of data, it stops
+ * and is resumed through the given callback as soon as new output arrives.
+ */
+public class StreamingRenderBuffer extends AsyncBuffer {
+
+	private static final long MAX_WAIT_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+	private final ReentrantLock lock   = new ReentrantLock();
+	private final Condition notFull    = lock.newCondition();
+	private Runnable resumeWriter      = null;
+	private byte[] chunk               = null;
+	private byte[] ring                = null;
+	private boolean waitingForData     = false;
+	private boolean finished           = false;
+	private boolean closed             = false;
+	private int head                   = 0;
+	private int size                   = 0;
+
+	/**
+	 * @param capacity the size of the buffer in bytes
+	 * @param resumeWriter called when new output is available for a writer
+	 *                     that stopped because the buffer was empty
+	 */
+	public StreamingRenderBuffer(final int capacity, final Runnable resumeWriter) {
+
+		this.ring         = new byte[capacity];
+		this.chunk        = new byte[Math.min(capacity, 8192)];
+		this.resumeWriter = resumeWriter;
+	}
+
+	@Override
+	public AsyncBuffer append(final String s) {
+
+		if (s != null && !s.isEmpty()) {
+
+			write(s.getBytes(StandardCharsets.UTF_8));
+		}
+
+		return this;
+	}
+
+	/**
+	 * Marks the end of the output.
+	 */
+	public void finish() {
+
+		lock.lock();
+		try {
+
+			finished = true;
+
+		} finally {
+
+			lock.unlock();
+		}
+
+		resume();
+	}
+
+	/**
+	 * Discards all buffered and future output, e.g. when the client has
+	 * gone away, so that a blocked renderer can complete.
+	 */
+	public void close() {
+
+		lock.lock();
+		try {
+
+			closed = true;
+			size   = 0;
+
+			notFull.signalAll();
+
+		} finally {
+
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Writes buffered output to the given stream for as long as it accepts
+	 * data without blocking. This method must only be called by one thread
+	 * at a time, i.e. from the write listener of the stream.
+	 *
+	 * @param out
+	 * @return true if all output was written and rendering has finished
+	 * @throws IOException
+	 */
+	public boolean writeTo(final ServletOutputStream out) throws IOException {
+
+		while (out.isReady()) {
+
+			final int count = read();
+			if (count > 0) {
+
+				out.write(chunk, 0, count);
+
+			} else {
+
+				lock.lock();
+				try {
+
+					if (size == 0) {
+
+						if (finished || closed) {
+							return true;
+						}
+
+						// the next append resumes writing
+						waitingForData = true;
+
+						return false;
+					}
+
+				} finally {
+
+					lock.unlock();
+				}
+			}
+		}
+
+		// the container calls the write listener again when the stream is ready
+		return false;
+	}
+
+	// ----- private methods -----
+	private void write(final byte[] data) {
+
+		int offset = 0;
+
+		while (offset < data.length) {
+
+			boolean resume = false;
+
+			lock.lock();
+			try {
+
+				long remaining = TimeUnit.MILLISECONDS.toNanos(MAX_WAIT_MILLIS);
+
+				while (size == ring.length && !closed) {
+
+					if (remaining <= 0L) {
+
+						// the client does not read anymore
+						closed = true;
+						size   = 0;
+						break;
+					}
+
+					remaining = notFull.awaitNanos(remaining);
+				}
+
+				if (closed) {
+					return;
+				}
+
+				final int count = Math.min(data.length - offset, ring.length - size);
+				int tail        = (head + size) % ring.length;
+				int copied      = 0;
+
+				while (copied < count) {
+
+					final int length = Math.min(count - copied, ring.length - tail);
+
+					System.arraycopy(data, offset + copied, ring, tail, length);
+
+					copied += length;
+					tail    = (tail + length) % ring.length;
+				}
+
+				size   += count;
+				offset += count;
+
+				resume         = waitingForData;
+				waitingForData = false;
+
+			} catch (InterruptedException iex) {
+
+				Thread.currentThread().interrupt();
+				return;
+
+			} finally {
+
+				lock.unlock();
+			}
+
+			if (resume) {
+				resumeWriter.run();
+			}
+		}
+	}
+
+	private int read() {
+
+		lock.lock();
+		try {
+
+			final int count = Math.min(size, chunk.length);
+			int copied      = 0;
+
+			while (copied < count) {
+
+				final int length = Math.min(count - copied, ring.length - head);
+
+				System.arraycopy(ring, head, chunk, copied, length);
+
+				copied += length;
+				head    = (head + length) % ring.length;
+			}
+
+			size -= count;
+
+			if (count > 0) {
+				notFull.signal();
+			}
+
+			return count;
+
+		} finally {
+
+			lock.unlock();
+		}
+	}
+
+	private void resume() {
+
+		boolean resume = false;
+
+		lock.lock();
+		try {
+
+			resume         = waitingForData;
+			waitingForData = false;
+
+		} finally {
+
+			lock.unlock();
+		}
+
+		if (resume) {
+			resumeWriter.run();
+		}
+	}
+}
@@ -30,6 +30,7 @@ import java.util.regex.Pattern;
 import org.structr.web.resource.LoginResource;
 import org.structr.web.resource.LogoutResource;
 import org.structr.web.resource.RegistrationResource;
+import org.structr.web.resource.RenderProfileResource;
 import org.structr.web.resource.ResetPasswordResource;
 
 //~--- classes ----------------------------------------------------------------
@@ -77,6 +78,7 @@ public class UiResourceProvider implements ResourceProvider {
 
 		resourceMap.put(Pattern.compile("_schema"), SchemaResource.class);	               // special resource for schema information
 		resourceMap.put(Pattern.compile("_env"), EnvResource.class);	                       // special resource for environment information
+		resourceMap.put(Pattern.compile("_renderProfiles"), RenderProfileResource.class);     // special resource for render profiles
 
 		resourceMap.put(Pattern.compile("[a-z_A-Z][a-z_A-Z0-9]*"), TypeResource.class);	              // any type match
 
@@ -30,6 +30,7 @@ public class Comment extends Content implements org.w3c.dom.Comment {
 	@Override
 	public void render(RenderContext renderContext, int depth) throws FrameworkException {
 
+		renderContext.addDependency(this);
 		renderContext.getBuffer().append("<!--".concat(getProperty(content)).concat("-->"));
 
 	}
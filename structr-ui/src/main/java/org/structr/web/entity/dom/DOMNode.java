@@ -29,6 +29,12 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.apache.commons.httpclient.Header;
@@ -46,11 +52,14 @@ import org.structr.common.error.ErrorBuffer;
 import org.structr.common.error.FrameworkException;
 import org.structr.core.GraphObject;
 import org.structr.core.GraphObjectMap;
+import org.structr.core.Services;
 import org.structr.core.app.App;
 import org.structr.core.app.StructrApp;
 import org.structr.core.entity.AbstractNode;
 import org.structr.core.entity.LinkedTreeNode;
 import org.structr.core.graph.NodeInterface;
+import org.structr.core.graph.TransactionCommand;
+import org.structr.core.graph.Tx;
 import org.structr.core.notion.PropertyNotion;
 import org.structr.core.parser.Functions;
 import org.structr.core.property.AbstractReadOnlyProperty;
@@ -61,6 +70,7 @@ import org.structr.core.property.EndNode;
 import org.structr.core.property.EndNodes;
 import org.structr.core.property.EntityIdProperty;
 import org.structr.core.property.GenericProperty;
+import org.structr.core.property.IntProperty;
 import org.structr.core.property.Property;
 import org.structr.core.property.PropertyKey;
 import org.structr.core.property.PropertyMap;
@@ -68,15 +78,21 @@ import org.structr.core.property.StartNode;
 import org.structr.core.property.StringProperty;
 import org.structr.core.script.Scripting;
 import org.structr.function.*;
+import org.structr.web.common.AsyncBuffer;
+import org.structr.web.common.FragmentCache;
+import org.structr.web.common.FragmentCache.Fragment;
 import org.structr.web.common.GraphDataSource;
 import org.structr.web.common.RenderContext;
 import org.structr.web.common.RenderContext.EditMode;
+import org.structr.web.common.RenderProfile;
+import org.structr.web.common.StringRenderBuffer;
 import org.structr.web.datasource.CypherGraphDataSource;
 import org.structr.web.datasource.FunctionDataSource;
 import org.structr.web.datasource.IdRequestParameterGraphDataSource;
 import org.structr.web.datasource.NodeGraphDataSource;
 import org.structr.web.datasource.RestDataSource;
 import org.structr.web.datasource.XPathGraphDataSource;
+import org.structr.web.entity.Component;
 import org.structr.web.entity.LinkSource;
 import org.structr.web.entity.Renderable;
 import org.structr.web.entity.dom.relationship.DOMChildren;
@@ -116,7 +132,11 @@ public abstract class DOMNode extends LinkedTreeNode<DOMChildren, DOMSiblings, D
 	protected static final String NOT_SUPPORTED_ERR_MESSAGE_ADOPT_DOC     = "Document nodes cannot be adopted by another document.";
 	protected static final String NOT_SUPPORTED_ERR_MESSAGE_RENAME        = "Renaming of nodes is not supported by this implementation.";
 
+	public static final String PARALLEL_RENDER_THREADS = "DOMNode.parallelRender.threads";
+
 	private static final List<GraphDataSource<List<GraphObject>>> listSources = new LinkedList<>();
+	private static ExecutorService renderPool = null;
+	private static int renderThreads = 0;
 	private Page cachedOwnerDocument;
 
 	static {
@@ -135,6 +155,7 @@ public abstract class DOMNode extends LinkedTreeNode<DOMChildren, DOMSiblings, D
 	public static final Property<String> restQuery = new StringProperty("restQuery");
 	public static final Property<String> functionQuery = new StringProperty("functionQuery");
 	public static final Property<Boolean> renderDetails = new BooleanProperty("renderDetails");
+	public static final Property<Integer> parallelRenderThreshold = new IntProperty("parallelRenderThreshold");
 
 	public static final Property<List<DOMNode>> syncedNodes = new EndNodes("syncedNodes", Sync.class, new PropertyNotion(id));
 	public static final Property<DOMNode> sharedComponent = new StartNode("sharedComponent", Sync.class, new PropertyNotion(id));
@@ -296,6 +317,30 @@ public abstract class DOMNode extends LinkedTreeNode<DOMChildren, DOMSiblings, D
 	@Override
 	public void render(final RenderContext renderContext, final int depth) throws FrameworkException {
 
+		final RenderProfile profile = renderContext.getProfile();
+		if (profile != null) {
+
+			profile.start(getUuid(), getProfileLabel(getClass().getSimpleName()));
+
+			try {
+
+				renderNode(renderContext, depth);
+
+			} finally {
+
+				profile.stop();
+			}
+
+		} else {
+
+			renderNode(renderContext, depth);
+		}
+	}
+
+	private void renderNode(final RenderContext renderContext, final int depth) throws FrameworkException {
+
+		renderContext.addDependency(this);
+
 		if (!securityContext.isVisible(this)) {
 			return;
 		}
@@ -353,17 +398,7 @@ public abstract class DOMNode extends LinkedTreeNode<DOMChildren, DOMSiblings, D
 
 							if (elements instanceof Iterable) {
 
-								for (Object o : (Iterable)elements) {
-
-									if (o instanceof GraphObject) {
-
-										GraphObject graphObject = (GraphObject)o;
-										renderContext.putDataObject(subKey, graphObject);
-										renderContent(renderContext, depth);
-
-									}
-								}
-
+								renderRows(renderContext, depth, subKey, (Iterable)elements);
 							}
 
 						} else {
@@ -378,15 +413,7 @@ public abstract class DOMNode extends LinkedTreeNode<DOMChildren, DOMSiblings, D
 
 									if (value instanceof Iterable) {
 
-										for (final Object o : ((Iterable)value)) {
-
-											if (o instanceof GraphObject) {
-
-												renderContext.putDataObject(subKey, (GraphObject)o);
-												renderContent(renderContext, depth);
-
-											}
-										}
+										renderRows(renderContext, depth, subKey, (Iterable)value);
 									}
 								}
 							}
@@ -408,7 +435,15 @@ public abstract class DOMNode extends LinkedTreeNode<DOMChildren, DOMSiblings, D
 
 			} else {
 
-				renderContent(renderContext, depth);
+				final FragmentCache fragmentCache = renderContext.getFragmentCache();
+				if (fragmentCache != null && EditMode.NONE.equals(editMode)) {
+
+					renderFragment(fragmentCache, renderContext, depth);
+
+				} else {
+
+					renderContent(renderContext, depth);
+				}
 			}
 		}
 
@@ -500,6 +535,192 @@ public abstract class DOMNode extends LinkedTreeNode<DOMChildren, DOMSiblings, D
 
 	}
 
+	private String getProfileLabel(final String type) {
+
+		final String _name = getProperty(DOMNode.name);
+
+		return type + (StringUtils.isNotBlank(_name) ? " " + _name : "") + " " + getUuid();
+	}
+
+	/**
+	 * Renders the subtree of this node, using the cached output if the
+	 * subtree is static.
+	 *
+	 * @param fragmentCache
+	 * @param renderContext
+	 * @param depth
+	 * @throws FrameworkException
+	 */
+	private void renderFragment(final FragmentCache fragmentCache, final RenderContext renderContext, final int depth) throws FrameworkException {
+
+		final boolean publicOnly = securityContext.getUser(false) == null;
+		final String cacheKey    = FragmentCache.cacheKey(getUuid(), depth, renderContext.inBody(), publicOnly);
+		final Fragment fragment  = fragmentCache.get(cacheKey);
+
+		if (fragment != null) {
+
+			if (fragment.isStatic()) {
+
+				renderContext.getBuffer().append(fragment.getContent());
+				renderContext.addDependencies(fragment.getUuids());
+
+			} else {
+
+				renderContent(renderContext, depth);
+			}
+
+			return;
+		}
+
+		final long generation   = fragmentCache.getGeneration();
+		final Set<String> uuids = new HashSet<>();
+
+		if (isStaticSubtree(this, uuids, publicOnly)) {
+
+			final AsyncBuffer out           = renderContext.getBuffer();
+			final StringRenderBuffer buffer = new StringRenderBuffer();
+
+			// the subtree is cached as a whole, not its nodes
+			renderContext.setBuffer(buffer);
+			renderContext.setFragmentCache(null);
+
+			try {
+
+				renderContent(renderContext, depth);
+
+			} finally {
+
+				renderContext.setBuffer(out);
+				renderContext.setFragmentCache(fragmentCache);
+			}
+
+			final String content = buffer.getBuffer().toString();
+
+			out.append(content);
+
+			fragmentCache.put(cacheKey, content, uuids, generation);
+
+		} else {
+
+			// remember that the subtree is not static
+			fragmentCache.put(cacheKey, null, uuids, generation);
+
+			renderContent(renderContext, depth);
+		}
+	}
+
+	/**
+	 * Indicates whether the output of the subtree of the given node is the
+	 * same for all users of the given visibility class, and collects the
+	 * uuids of the nodes that were examined.
+	 *
+	 * @param node
+	 * @param uuids
+	 * @param publicOnly
+	 * @return whether the subtree is static
+	 */
+	private boolean isStaticSubtree(final DOMNode node, final Set<String> uuids, final boolean publicOnly) {
+
+		uuids.add(node.getUuid());
+
+		if (!(node instanceof DOMElement || node instanceof Content) || node instanceof Template || node instanceof Component) {
+			return false;
+		}
+
+		if (node.isDeleted() || node.isHidden() || !(publicOnly ? node.isVisibleToPublicUsers() : node.isVisibleToAuthenticatedUsers())) {
+			return false;
+		}
+
+		if (node.getProperty(hideOnIndex) || node.getProperty(hideOnDetail)) {
+			return false;
+		}
+
+		for (final Property<String> key : new Property[] { dataKey, restQuery, cypherQuery, xpathQuery, functionQuery, showConditions, hideConditions, showForLocales, hideForLocales }) {
+
+			if (StringUtils.isNotBlank(node.getProperty(key))) {
+				return false;
+			}
+		}
+
+		// script expressions can occur in any attribute
+		final org.structr.api.graph.Node dbNode = node.getNode();
+		for (final String key : dbNode.getPropertyKeys()) {
+
+			final Object value = dbNode.getProperty(key);
+			if (value instanceof String && ((String)value).contains("${")) {
+
+				return false;
+			}
+		}
+
+		if (node instanceof DOMElement) {
+
+			// the body element and action elements change the render context
+			if ("body".equals(node.getProperty(DOMElement.tag)) || dbNode.hasProperty("data-structr-action")) {
+				return false;
+			}
+		}
+
+		final List<DOMChildren> rels = node.getChildRelationships();
+		if (rels.isEmpty() && node instanceof DOMElement) {
+
+			final DOMNode _syncedNode = node.getProperty(sharedComponent);
+			if (_syncedNode != null) {
+
+				uuids.add(_syncedNode.getUuid());
+				rels.addAll(_syncedNode.getChildRelationships());
+			}
+		}
+
+		for (final DOMChildren rel : rels) {
+
+			if (!isStaticSubtree(rel.getTargetNode(), uuids, publicOnly)) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private String renderChunk(final RenderContext fork, final int depth, final String dataKey, final List<GraphObject> rows) throws FrameworkException {
+
+		final StringRenderBuffer buffer = new StringRenderBuffer();
+
+		fork.setBuffer(buffer);
+
+		for (final GraphObject row : rows) {
+
+			fork.putDataObject(dataKey, row);
+			renderContent(fork, depth);
+		}
+
+		return buffer.getBuffer().toString();
+	}
+
+	private static synchronized ExecutorService getRenderPool() {
+
+		if (renderPool == null) {
+
+			renderThreads = Services.parseInt(StructrApp.getConfigurationValue(PARALLEL_RENDER_THREADS), Runtime.getRuntime().availableProcessors());
+			renderPool    = Executors.newFixedThreadPool(renderThreads, new ThreadFactory() {
+
+				private final AtomicInteger count = new AtomicInteger();
+
+				@Override
+				public Thread newThread(final Runnable runnable) {
+
+					final Thread thread = new RenderWorker(runnable, "DOMNode-ParallelRenderer-" + count.incrementAndGet());
+
+					thread.setDaemon(true);
+
+					return thread;
+				}
+			});
+		}
+
+		return renderPool;
+	}
+
 	// ----- protected methods -----
 	protected void setDataRoot(final RenderContext renderContext, final AbstractNode node, final String dataKey) {
 		// an outgoing RENDER_NODE relationship points to the data node where rendering starts
@@ -519,15 +740,157 @@ public abstract class DOMNode extends LinkedTreeNode<DOMChildren, DOMSiblings, D
 
 		final Iterable<GraphObject> listSource = renderContext.getListSource();
 		if (listSource != null) {
-			for (GraphObject dataObject : listSource) {
+
+			renderRows(renderContext, depth + 1, dataKey, listSource);
+			renderContext.clearDataObject(dataKey);
+		}
+	}
+
+	/**
+	 * Renders the content of this node once for each of the given data
+	 * objects, which are made available under the given data key.
+	 *
+	 * If the number of data objects reaches the parallelRenderThreshold
+	 * of this node, the rows are split into consecutive chunks that are
+	 * rendered concurrently, each with its own fork of the render context
+	 * and in its own transaction, and the output is appended in order.
+	 * Rows must not depend on each other in this case: values that a row
+	 * stores in the context are only visible within its chunk, and not
+	 * after the repeater. Errors of all chunks are added to the error
+	 * buffer of the render context. Repeaters inside a row that is
+	 * rendered in parallel are rendered sequentially.
+	 *
+	 * Other transactions cannot see uncommitted changes of the current
+	 * transaction, so the rows are rendered sequentially if the current
+	 * transaction has modified the database. Rows that are rendered in
+	 * parallel must not modify the database: the transactions of the
+	 * chunks are never committed, and rendering fails if a row creates,
+	 * modifies or deletes an object.
+	 *
+	 * @param renderContext
+	 * @param depth
+	 * @param dataKey
+	 * @param source
+	 * @throws FrameworkException
+	 */
+	protected void renderRows(final RenderContext renderContext, final int depth, final String dataKey, final Iterable source) throws FrameworkException {
+
+		final Integer threshold      = getProperty(parallelRenderThreshold);
+		final List<GraphObject> rows = new ArrayList<>();
+
+		for (final Object o : source) {
+
+			if (o instanceof GraphObject) {
+				rows.add((GraphObject)o);
+			}
+		}
+
+		if (threshold == null || threshold <= 0 || rows.size() < threshold || rows.size() < 2 || Thread.currentThread() instanceof RenderWorker || TransactionCommand.hasPendingModifications()) {
+
+			for (final GraphObject row : rows) {
 
 				// make current data object available in renderContext
-				renderContext.putDataObject(dataKey, dataObject);
+				renderContext.putDataObject(dataKey, row);
+				renderContent(renderContext, depth);
+			}
+
+			return;
+		}
+
+		final ExecutorService pool           = getRenderPool();
+		final int chunkCount                 = Math.min(rows.size(), renderThreads * 2);
+		final int chunkSize                  = (rows.size() + chunkCount - 1) / chunkCount;
+		final List<Future<String>> fragments = new ArrayList<>();
+		final List<RenderContext> forks      = new ArrayList<>();
+
+		// forks are created before any chunk is rendered, so the
+		// render context is not modified while it is copied
+		for (int start=0; start<rows.size(); start+=chunkSize) {
+
+			final RenderContext fork = new RenderContext(renderContext, true);
+
+			fork.setDepth(renderContext.getDepth());
+			forks.add(fork);
+		}
+
+		// the first chunk is rendered by the current thread
+		for (int i=1; i<forks.size(); i++) {
 
-				renderContent(renderContext, depth + 1);
+			final List<GraphObject> chunk = rows.subList(i * chunkSize, Math.min((i + 1) * chunkSize, rows.size()));
+			final RenderContext fork      = forks.get(i);
+
+			fragments.add(pool.submit(() -> {
+
+				// read-only, the transaction is not committed
+				try (final Tx tx = StructrApp.getInstance(securityContext).tx()) {
+
+					final String fragment = renderChunk(fork, depth, dataKey, chunk);
+
+					checkReadOnlyChunk();
+
+					return fragment;
+				}
+			}));
+		}
 
+		try {
+
+			final String firstFragment = renderChunk(forks.get(0), depth, dataKey, rows.subList(0, chunkSize));
+
+			// the first chunk runs in the current transaction, which had no
+			// modifications before, so it must fail like the other chunks
+			checkReadOnlyChunk();
+
+			renderContext.getBuffer().append(firstFragment);
+
+			for (final Future<String> fragment : fragments) {
+				renderContext.getBuffer().append(fragment.get());
 			}
-			renderContext.clearDataObject(dataKey);
+
+			// errors are added in the order of the rows
+			final ErrorBuffer errorBuffer = renderContext.getErrorBuffer();
+			for (final RenderContext fork : forks) {
+
+				final ErrorBuffer forkErrors = fork.getErrorBuffer();
+				if (forkErrors.hasError()) {
+
+					forkErrors.getErrorTokens().forEach(errorBuffer::add);
+					errorBuffer.setStatus(forkErrors.getStatus());
+				}
+			}
+
+		} catch (InterruptedException iex) {
+
+			Thread.currentThread().interrupt();
+			throw new FrameworkException(500, "Interrupted while rendering " + getUuid());
+
+		} catch (ExecutionException eex) {
+
+			final Throwable cause = eex.getCause();
+			if (cause instanceof FrameworkException) {
+
+				throw (FrameworkException)cause;
+			}
+
+			logger.log(Level.WARNING, "", cause);
+
+			throw new FrameworkException(500, "Unable to render " + getUuid() + ": " + cause.getMessage());
+
+		} finally {
+
+			for (final Future<String> fragment : fragments) {
+				fragment.cancel(true);
+			}
+		}
+
+		// leave the context in the same state as sequential rendering
+		renderContext.putDataObject(dataKey, rows.get(rows.size() - 1));
+	}
+
+	private void checkReadOnlyChunk() throws FrameworkException {
+
+		if (TransactionCommand.hasPendingModifications()) {
+			throw new FrameworkException(422, "Rows of " + getUuid() + " are rendered in parallel and must not modify the database");
 		}
 	}
 
@@ -578,6 +941,14 @@ public abstract class DOMNode extends LinkedTreeNode<DOMChildren, DOMSiblings, D
 		// try registered data sources first
 		for (GraphDataSource<List<GraphObject>> source : listSources) {
 
+			final RenderProfile profile = renderContext.getProfile();
+			if (profile != null) {
+
+				final String sourceName = source.getClass().getSimpleName();
+
+				profile.start(getUuid() + ":" + sourceName, getProfileLabel(sourceName + " of " + getClass().getSimpleName()));
+			}
+
 			try {
 
 				List<GraphObject> graphData = source.getData(renderContext, this);
@@ -590,6 +961,12 @@ public abstract class DOMNode extends LinkedTreeNode<DOMChildren, DOMSiblings, D
 				logger.log(Level.WARNING, "", fex);
 
 				logger.log(Level.WARNING, "Could not retrieve data from graph data source {0}: {1}", new Object[]{source, fex});
+
+			} finally {
+
+				if (profile != null) {
+					profile.stop();
+				}
 			}
 		}
 
@@ -1504,6 +1881,16 @@ public abstract class DOMNode extends LinkedTreeNode<DOMChildren, DOMSiblings, D
 	}
 
 	// ----- nested classes -----
+	/**
+	 * A thread of the pool that renders the rows of repeaters in parallel.
+	 */
+	private static class RenderWorker extends Thread {
+
+		public RenderWorker(final Runnable runnable, final String name) {
+			super(runnable, name);
+		}
+	}
+
 	protected static class TextCollector implements Predicate<Node> {
 
 		private final StringBuilder textBuffer = new StringBuilder(200);
@@ -34,7 +34,7 @@ public class Template extends Content {
 	public static final Property<String> configuration                                   = new StringProperty("configuration").indexed();
 
 	public static final org.structr.common.View uiView                                   = new org.structr.common.View(Content.class, PropertyView.Ui,
-		children, childrenIds, content, contentType, parent, pageId, hideOnDetail, hideOnIndex, sharedComponent, syncedNodes, dataKey, restQuery, cypherQuery, xpathQuery, functionQuery,
+		children, childrenIds, content, contentType, parent, pageId, hideOnDetail, hideOnIndex, sharedComponent, syncedNodes, dataKey, restQuery, cypherQuery, xpathQuery, functionQuery, parallelRenderThreshold,
 		showForLocales, hideForLocales, showConditions, hideConditions, isContent, configuration
 	);
 
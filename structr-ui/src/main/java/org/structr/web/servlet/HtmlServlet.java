@@ -34,12 +34,10 @@ import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import java.util.Queue;
 import java.util.Set;
 import java.util.TimeZone;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
@@ -56,7 +54,6 @@ import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.time.DateUtils;
 import org.structr.common.AccessMode;
-import org.structr.common.GraphObjectComparator;
 import org.structr.common.PathHelper;
 import org.structr.common.SecurityContext;
 import org.structr.common.ThreadLocalMatcher;
@@ -71,10 +68,12 @@ import org.structr.core.auth.Authenticator;
 import org.structr.core.converter.PropertyConverter;
 import org.structr.core.entity.AbstractNode;
 import org.structr.core.entity.Principal;
+import org.structr.core.graph.TransactionCommand;
 import org.structr.core.graph.Tx;
 import org.structr.core.property.PropertyKey;
 import org.structr.dynamic.File;
 import org.structr.rest.auth.AuthHelper;
+import org.structr.rest.resource.EnvResource;
 import org.structr.rest.service.HttpService;
 import org.structr.rest.service.HttpServiceServlet;
 import org.structr.rest.service.StructrHttpServiceConfig;
@@ -82,8 +81,14 @@ import org.structr.schema.ConfigurationProvider;
 import org.structr.util.Base64;
 import org.structr.web.auth.UiAuthenticator;
 import org.structr.web.common.FileHelper;
+import org.structr.web.common.FragmentCache;
+import org.structr.web.common.PageOutputCache;
 import org.structr.web.common.RenderContext;
 import org.structr.web.common.RenderContext.EditMode;
+import org.structr.web.common.RenderProfile;
+import org.structr.web.common.RenderProfiler;
+import org.structr.web.common.RouteTable;
+import org.structr.web.common.StreamingRenderBuffer;
 import org.structr.web.common.StringRenderBuffer;
 import org.structr.web.entity.FileBase;
 import org.structr.web.entity.Linkable;
@@ -115,6 +120,14 @@ public class HtmlServlet extends HttpServlet implements HttpServiceServlet {
 
 	public static final String CUSTOM_RESPONSE_HEADERS      = "HtmlServlet.customResponseHeaders";
 	public static final String OBJECT_RESOLUTION_PROPERTIES = "HtmlServlet.resolveProperties";
+	public static final String OUTPUT_CACHE_ENABLED         = "HtmlServlet.outputCache.enabled";
+	public static final String OUTPUT_CACHE_SIZE            = "HtmlServlet.outputCache.size";
+	public static final String OUTPUT_CACHE_MAX_AGE         = "HtmlServlet.outputCache.maxAge";
+	public static final String FRAGMENT_CACHE_ENABLED       = "HtmlServlet.fragmentCache.enabled";
+	public static final String FRAGMENT_CACHE_SIZE          = "HtmlServlet.fragmentCache.size";
+	public static final String PROFILING_ENABLED            = "HtmlServlet.profiling.enabled";
+	public static final String ASYNC_RENDER_THREADS         = "HtmlServlet.async.threads";
+	public static final String ASYNC_BUFFER_SIZE            = "HtmlServlet.async.bufferSize";
 
 	private static final String defaultCustomResponseHeaders = "Strict-Transport-Security:max-age=60,"
 				+ "X-Content-Type-Options:nosniff,"
@@ -123,12 +136,17 @@ public class HtmlServlet extends HttpServlet implements HttpServiceServlet {
 	private static List<String> customResponseHeaders = Collections.EMPTY_LIST;
 
 	private static final ThreadLocalMatcher threadLocalUUIDMatcher = new ThreadLocalMatcher("[a-fA-F0-9]{32}");
-	private static final ExecutorService threadPool = Executors.newCachedThreadPool();
+	private static ExecutorService threadPool       = null;
+	private static PageOutputCache outputCache      = null;
+	private static FragmentCache fragmentCache      = null;
+	private static RouteTable routeTable            = null;
+	private static int asyncBufferSize              = 0;
 
 	private final StructrHttpServiceConfig config = new StructrHttpServiceConfig();
 	private final Set<String> possiblePropertyNamesForEntityResolving   = new LinkedHashSet<>();
 
 	private boolean isAsync = false;
+	private boolean isProfiling = false;
 
 
 	@Override
@@ -161,6 +179,44 @@ public class HtmlServlet extends HttpServlet implements HttpServiceServlet {
 		}
 
 		this.isAsync = Services.parseBoolean(Services.getBaseConfiguration().getProperty(HttpService.ASYNC), true);
+		this.isProfiling = Services.parseBoolean(StructrApp.getConfigurationValue(PROFILING_ENABLED), false);
+
+		synchronized (HtmlServlet.class) {
+
+			if (threadPool == null) {
+
+				// rendering threads block while the client reads the output, so their number is bounded
+				threadPool      = Executors.newFixedThreadPool(Services.parseInt(StructrApp.getConfigurationValue(ASYNC_RENDER_THREADS), Runtime.getRuntime().availableProcessors() * 8));
+				asyncBufferSize = Services.parseInt(StructrApp.getConfigurationValue(ASYNC_BUFFER_SIZE), 65536);
+			}
+
+			if (routeTable == null) {
+
+				routeTable = new RouteTable();
+
+				TransactionCommand.registerTransactionListener(routeTable);
+				EnvResource.registerCacheStatistics("pageRoutes", routeTable::getStatistics);
+			}
+
+			if (outputCache == null && Services.parseBoolean(StructrApp.getConfigurationValue(OUTPUT_CACHE_ENABLED), false)) {
+
+				final int size   = Services.parseInt(StructrApp.getConfigurationValue(OUTPUT_CACHE_SIZE), 1000);
+				final int maxAge = Services.parseInt(StructrApp.getConfigurationValue(OUTPUT_CACHE_MAX_AGE), 60);
+
+				outputCache = new PageOutputCache(size, maxAge);
+
+				TransactionCommand.registerTransactionListener(outputCache);
+				EnvResource.registerCacheStatistics("pageOutput", outputCache::getStatistics);
+			}
+
+			if (fragmentCache == null && Services.parseBoolean(StructrApp.getConfigurationValue(FRAGMENT_CACHE_ENABLED), false)) {
+
+				fragmentCache = new FragmentCache(Services.parseInt(StructrApp.getConfigurationValue(FRAGMENT_CACHE_SIZE), 10000));
+
+				TransactionCommand.registerTransactionListener(fragmentCache);
+				EnvResource.registerCacheStatistics("renderFragments", fragmentCache::getStatistics);
+			}
+		}
 	}
 
 	@Override
@@ -171,7 +227,6 @@ public class HtmlServlet extends HttpServlet implements HttpServiceServlet {
 	protected void doGet(final HttpServletRequest request, final HttpServletResponse response) {
 
 		final Authenticator auth        = getConfig().getAuthenticator();
-		List<Page> pages                = null;
 		boolean requestUriContainsUuids = false;
 
 		SecurityContext securityContext;
@@ -235,6 +290,25 @@ public class HtmlServlet extends HttpServlet implements HttpServiceServlet {
 
 				final EditMode edit = renderContext.getEditMode(user);
 
+				// record what the output of anonymous requests depends on
+				final long cacheGeneration = outputCache != null ? outputCache.getGeneration() : 0L;
+				if (outputCache != null && user == null) {
+
+					renderContext.setDependencies(new PageOutputCache.Dependencies());
+				}
+
+				// reuse the output of static subtrees
+				if (fragmentCache != null && EditMode.NONE.equals(edit)) {
+
+					renderContext.setFragmentCache(fragmentCache);
+				}
+
+				// record where the render time is spent
+				if (isProfiling) {
+
+					renderContext.setProfile(new RenderProfile());
+				}
+
 				DOMNode rootElement = null;
 				AbstractNode dataNode = null;
 
@@ -242,7 +316,7 @@ public class HtmlServlet extends HttpServlet implements HttpServiceServlet {
 				if ((uriParts == null) || (uriParts.length == 0)) {
 
 					// find a visible page
-					rootElement = findIndexPage(securityContext, pages, edit);
+					rootElement = findIndexPage(securityContext, edit);
 
 					logger.log(Level.FINE, "No path supplied, trying to find index page");
 
@@ -250,7 +324,7 @@ public class HtmlServlet extends HttpServlet implements HttpServiceServlet {
 
 					if (rootElement == null) {
 
-						rootElement = findPage(securityContext, pages, path, edit);
+						rootElement = findPage(securityContext, path, edit);
 
 					} else {
 						dontCache = true;
@@ -301,7 +375,7 @@ public class HtmlServlet extends HttpServlet implements HttpServiceServlet {
 						// clear possible entry points
 						request.removeAttribute(POSSIBLE_ENTRY_POINTS_KEY);
 
-						rootElement = findPage(securityContext, pages, StringUtils.substringBeforeLast(path, PathHelper.PATH_SEP), edit);
+						rootElement = findPage(securityContext, StringUtils.substringBeforeLast(path, PathHelper.PATH_SEP), edit);
 
 						renderContext.setDetailsDataObject(dataNode);
 
@@ -410,15 +484,30 @@ public class HtmlServlet extends HttpServlet implements HttpServiceServlet {
 						setCustomResponseHeaders(response);
 
 						final boolean createsRawData = rootElement.getProperty(Page.pageCreatesRawData);
+						final String cacheKey        = isOutputCacheable(request, response, securityContext, rootElement, edit, dontCache) ? PageOutputCache.cacheKey(request, renderContext.getLocale()) : null;
+						final PageOutputCache.CacheEntry cachedOutput = cacheKey != null ? outputCache.get(cacheKey, (Page)rootElement) : null;
 
-						// async or not?
-						if (isAsync && !createsRawData) {
+						if (cachedOutput != null) {
+
+							try {
+
+								response.getOutputStream().write(cachedOutput.getContent());
+								response.getOutputStream().flush();
+								response.getOutputStream().close();
+
+							} catch (IOException ioex) {
+								logger.log(Level.WARNING, "", ioex);
+							}
+
+						} else if (isAsync && !createsRawData && cacheKey == null && renderContext.getProfile() == null) {
 
 							final AsyncContext async = request.startAsync();
 							final ServletOutputStream out = async.getResponse().getOutputStream();
-							final AtomicBoolean finished = new AtomicBoolean(false);
+							final AsyncRenderWriter writer = new AsyncRenderWriter(async, out, response, asyncBufferSize);
 							final DOMNode rootNode = rootElement;
 
+							renderContext.setBuffer(writer.getBuffer());
+
 							threadPool.submit(new Runnable() {
 
 								@Override
@@ -426,13 +515,9 @@ public class HtmlServlet extends HttpServlet implements HttpServiceServlet {
 
 									try (final Tx tx = app.tx()) {
 
-										//final long start = System.currentTimeMillis();
 										// render
 										rootNode.render(renderContext, 0);
-										finished.set(true);
 
-										//final long end = System.currentTimeMillis();
-										//System.out.println("Done in " + (end-start) + " ms");
 										tx.success();
 
 									} catch (Throwable t) {
@@ -441,77 +526,51 @@ public class HtmlServlet extends HttpServlet implements HttpServiceServlet {
 										try {
 											//response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
 											response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, errorMsg);
-											finished.set(true);
 										} catch (IOException ex) {
 											logger.log(Level.WARNING, "", ex);
 										}
+
+									} finally {
+
+										writer.getBuffer().finish();
 									}
 								}
 
 							});
 
 							// start output write listener
-							out.setWriteListener(new WriteListener() {
-
-								@Override
-								public void onWritePossible() throws IOException {
-
-									try {
-
-										final Queue<String> queue = renderContext.getBuffer().getQueue();
-										while (out.isReady()) {
-
-											String buffer = null;
-
-											synchronized (queue) {
-												buffer = queue.poll();
-											}
+							out.setWriteListener(writer);
 
-											if (buffer != null) {
+						} else {
 
-												out.print(buffer);
+							final StringRenderBuffer buffer = new StringRenderBuffer();
+							renderContext.setBuffer(buffer);
 
-											} else {
+							// render
+							rootElement.render(renderContext, 0);
 
-												if (finished.get()) {
+							final RenderProfile profile = renderContext.getProfile();
+							if (profile != null) {
 
-													async.complete();
+								profile.finish();
 
-													// don't overwrite 404 code from error page
-													if (response.getStatus() != HttpServletResponse.SC_NOT_FOUND) {
-														response.setStatus(HttpServletResponse.SC_OK);
-													}
+								RenderProfiler.record(rootElement, profile);
 
-													// prevent this block from being called again
-													break;
-												}
+								// the profile is only complete after rendering, so the
+								// output of profiled requests is not streamed
+								response.setHeader("Server-Timing", profile.toServerTiming(5));
+							}
 
-												Thread.sleep(1);
-											}
-										}
+							try {
 
-									} catch (Throwable t) {
-										logger.log(Level.WARNING, "", t);
-									}
-								}
+								final byte[] content = buffer.getBuffer().toString().getBytes("utf-8");
 
-								@Override
-								public void onError(Throwable t) {
-									logger.log(Level.WARNING, "", t);
+								// don't cache error pages or redirects
+								if (cacheKey != null && renderContext.getDependencies() != null && response.getStatus() == HttpServletResponse.SC_OK) {
+									outputCache.put(cacheKey, (Page)rootElement, content, renderContext.getDependencies(), cacheGeneration);
 								}
-							});
-
-						} else {
-
-							final StringRenderBuffer buffer = new StringRenderBuffer();
-							renderContext.setBuffer(buffer);
-
-							// render
-							rootElement.render(renderContext, 0);
-
-							try {
 
-								response.getOutputStream().write(buffer.getBuffer().toString().getBytes("utf-8"));
+								response.getOutputStream().write(content);
 								response.getOutputStream().flush();
 								response.getOutputStream().close();
 
@@ -547,7 +606,6 @@ public class HtmlServlet extends HttpServlet implements HttpServiceServlet {
 
 		final Authenticator auth = getConfig().getAuthenticator();
 		SecurityContext securityContext;
-		List<Page> pages                = null;
 		boolean requestUriContainsUuids = false;
 		final App app;
 
@@ -605,7 +663,7 @@ public class HtmlServlet extends HttpServlet implements HttpServiceServlet {
 				if ((uriParts == null) || (uriParts.length == 0)) {
 
 					// find a visible page
-					rootElement = findIndexPage(securityContext, pages, edit);
+					rootElement = findIndexPage(securityContext, edit);
 
 					logger.log(Level.FINE, "No path supplied, trying to find index page");
 
@@ -613,7 +671,7 @@ public class HtmlServlet extends HttpServlet implements HttpServiceServlet {
 
 					if (rootElement == null) {
 
-						rootElement = findPage(securityContext, pages, path, edit);
+						rootElement = findPage(securityContext, path, edit);
 
 					} else {
 						dontCache = true;
@@ -663,7 +721,7 @@ public class HtmlServlet extends HttpServlet implements HttpServiceServlet {
 						// clear possible entry points
 						request.removeAttribute(POSSIBLE_ENTRY_POINTS_KEY);
 
-						rootElement = findPage(securityContext, pages, StringUtils.substringBeforeLast(path, PathHelper.PATH_SEP), edit);
+						rootElement = findPage(securityContext, StringUtils.substringBeforeLast(path, PathHelper.PATH_SEP), edit);
 
 						renderContext.setDetailsDataObject(dataNode);
 
@@ -967,30 +1025,13 @@ public class HtmlServlet extends HttpServlet implements HttpServiceServlet {
 	 * To be compatible with older versions, fallback to name-only lookup.
 	 *
 	 * @param securityContext
-	 * @param pages
 	 * @param path
 	 * @param edit
 	 * @return page
 	 * @throws FrameworkException
 	 */
-	private Page findPage(final SecurityContext securityContext, List<Page> pages, final String path, final EditMode edit) throws FrameworkException {
-
-		if (pages == null) {
-			pages = StructrApp.getInstance(securityContext).nodeQuery(Page.class).getAsList();
-			Collections.sort(pages, new GraphObjectComparator(Page.position, GraphObjectComparator.ASCENDING));
-		}
-
-		for (final Page page : pages) {
-
-			final String pagePath = page.getPath();
-			final String name     = PathHelper.getName(path);
-
-			if (((pagePath != null && pagePath.equals(path)) || name.equals(page.getName()) || name.equals(page.getUuid()) ) && (EditMode.CONTENT.equals(edit) || isVisibleForSite(securityContext.getRequest(), page))) {
-				return page;
-			}
-		}
-
-		return null;
+	private Page findPage(final SecurityContext securityContext, final String path, final EditMode edit) throws FrameworkException {
+		return routeTable.findPage(securityContext, securityContext.getRequest(), path, EditMode.CONTENT.equals(edit));
 	}
 
 	/**
@@ -998,27 +1039,12 @@ public class HtmlServlet extends HttpServlet implements HttpServiceServlet {
 	 * current security context and for the given site.
 	 *
 	 * @param securityContext
-	 * @param pages
 	 * @param edit
 	 * @return page
 	 * @throws FrameworkException
 	 */
-	private Page findIndexPage(final SecurityContext securityContext, List<Page> pages, final EditMode edit) throws FrameworkException {
-
-		if (pages == null) {
-			pages = StructrApp.getInstance(securityContext).nodeQuery(Page.class).getAsList();
-			Collections.sort(pages, new GraphObjectComparator(Page.position, GraphObjectComparator.ASCENDING));
-		}
-
-		for (Page page : pages) {
-
-			if (securityContext.isVisible(page) && page.getProperty(Page.position) != null && ((EditMode.CONTENT.equals(edit) || isVisibleForSite(securityContext.getRequest(), page)) || (page.getProperty(Page.enableBasicAuth) && page.getProperty(Page.visibleToAuthenticatedUsers)))) {
-
-				return page;
-			}
-		}
-
-		return null;
+	private Page findIndexPage(final SecurityContext securityContext, final EditMode edit) throws FrameworkException {
+		return routeTable.findIndexPage(securityContext, securityContext.getRequest(), EditMode.CONTENT.equals(edit));
 	}
 
 	/**
@@ -1264,6 +1290,21 @@ public class HtmlServlet extends HttpServlet implements HttpServiceServlet {
 
 	}
 
+	/**
+	 * Only successful anonymous GET requests for pages are cached, the
+	 * output of other requests can depend on the user or the request body.
+	 */
+	private static boolean isOutputCacheable(final HttpServletRequest request, final HttpServletResponse response, final SecurityContext securityContext, final DOMNode rootElement, final EditMode edit, final boolean dontCache) {
+
+		return outputCache != null
+			&& !dontCache
+			&& EditMode.NONE.equals(edit)
+			&& rootElement instanceof Page
+			&& "GET".equals(request.getMethod())
+			&& response.getStatus() == HttpServletResponse.SC_OK
+			&& securityContext.getUser(false) == null;
+	}
+
 	private static boolean notModifiedSince(final HttpServletRequest request, HttpServletResponse response, final AbstractNode node, final boolean dontCache) {
 
 		boolean notModified = false;
@@ -1683,6 +1724,67 @@ public class HtmlServlet extends HttpServlet implements HttpServiceServlet {
 	}
 
 	// ----- nested classes -----
+	/**
+	 * Writes the output of an asynchronous render thread to the response
+	 * whenever the output stream is ready.
+	 */
+	private static class AsyncRenderWriter implements WriteListener {
+
+		private StreamingRenderBuffer buffer  = null;
+		private HttpServletResponse response  = null;
+		private ServletOutputStream out       = null;
+		private AsyncContext async            = null;
+
+		public AsyncRenderWriter(final AsyncContext async, final ServletOutputStream out, final HttpServletResponse response, final int bufferSize) {
+
+			this.buffer   = new StreamingRenderBuffer(bufferSize, () -> async.start(this::write));
+			this.response = response;
+			this.async    = async;
+			this.out      = out;
+		}
+
+		public StreamingRenderBuffer getBuffer() {
+			return buffer;
+		}
+
+		@Override
+		public void onWritePossible() throws IOException {
+			write();
+		}
+
+		@Override
+		public void onError(final Throwable t) {
+
+			logger.log(Level.WARNING, "", t);
+
+			// unblock the render thread
+			buffer.close();
+		}
+
+		private void write() {
+
+			try {
+
+				if (buffer.writeTo(out)) {
+
+					// don't overwrite 404 code from error page
+					if (response.getStatus() != HttpServletResponse.SC_NOT_FOUND) {
+						response.setStatus(HttpServletResponse.SC_OK);
+					}
+
+					async.complete();
+				}
+
+			} catch (Throwable t) {
+
+				logger.log(Level.WARNING, "", t);
+
+				buffer.close();
+				async.complete();
+			}
+		}
+	}
+
 	private enum AuthState {
 		NoBasicAuth, MustAuthenticate, Authenticated
 	}
@@ -0,0 +1,129 @@
+/**
+ * Copyright (C) 2010-2016 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.web.common;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import junit.framework.TestCase;
+
+/**
+ * Test the hand-over of output between a render thread and a non-blocking
+ * output stream.
+ *
+ *
+ */
+public class StreamingRenderBufferTest extends TestCase {
+
+	public void testStreamingWithBackpressure() throws Exception {
+
+		final Semaphore resumed              = new Semaphore(0);
+		final StreamingRenderBuffer buffer   = new StreamingRenderBuffer(1024, resumed::release);
+		final TestOutputStream out           = new TestOutputStream();
+		final StringBuilder expected         = new StringBuilder();
+
+		for (int i=0; i<20000; i++) {
+			expected.append("<div>Line ").append(i).append(" äöü</div>\n");
+		}
+
+		final Thread renderer = new Thread(() -> {
+
+			for (int i=0; i<20000; i++) {
+				buffer.append("<div>Line " + i + " äöü</div>\n");
+			}
+
+			buffer.finish();
+		});
+
+		renderer.start();
+
+		// simulate the container calling the write listener
+		while (!buffer.writeTo(out)) {
+
+			if (out.ready) {
+
+				// the buffer was empty, wait until the renderer resumes writing
+				assertTrue("Writer was not resumed", resumed.tryAcquire(10, TimeUnit.SECONDS));
+			}
+		}
+
+		renderer.join();
+
+		assertEquals("Invalid streamed output", expected.toString(), new String(out.data.toByteArray(), StandardCharsets.UTF_8));
+	}
+
+	public void testCloseUnblocksRenderer() throws Exception {
+
+		final StreamingRenderBuffer buffer = new StreamingRenderBuffer(16, () -> {});
+
+		final Thread renderer = new Thread(() -> {
+
+			for (int i=0; i<1000; i++) {
+				buffer.append("0123456789");
+			}
+		});
+
+		renderer.start();
+
+		// the renderer blocks on the full buffer until the client goes away
+		Thread.sleep(100);
+		assertTrue("Renderer should block while the buffer is full", renderer.isAlive());
+
+		buffer.close();
+		renderer.join(10000);
+
+		assertFalse("Renderer should complete after the buffer was closed", renderer.isAlive());
+		assertTrue("Closed buffer should report completion", buffer.writeTo(new TestOutputStream()));
+	}
+
+	// ----- nested classes -----
+	private static class TestOutputStream extends ServletOutputStream {
+
+		private final ByteArrayOutputStream data = new ByteArrayOutputStream();
+		private boolean ready                    = true;
+		private int calls                        = 0;
+
+		@Override
+		public boolean isReady() {
+
+			// not ready on every 5th call
+			ready = (++calls % 5) != 0;
+
+			return ready;
+		}
+
+		@Override
+		public void setWriteListener(final WriteListener writeListener) {
+		}
+
+		@Override
+		public void write(final int b) throws IOException {
+			data.write(b);
+		}
+
+		@Override
+		public void write(final byte[] b, final int off, final int len) throws IOException {
+			data.write(b, off, len);
+		}
+	}
+}
@@ -311,4 +311,198 @@ public class RenderDataTest extends DOMTest {
 		}
 
 	}
+
+	public void testRenderListInParallel() {
+
+		String name = null;
+
+		try (final Tx tx = app.tx()) {
+
+			final Page doc = (Page) getDocument();
+			name = doc.getName();
+
+			final List<User> users = createTestNodes(User.class, 20);
+
+			for (int i=0; i<users.size(); i++) {
+
+				users.get(i).setProperty(AbstractNode.name, String.format("user%02d", i));
+				makePublic(users.get(i));
+			}
+
+			// create dom tree
+			Element html = doc.createElement("html");
+			Element body = doc.createElement("body");
+			final Element p1 = doc.createElement("p");
+
+			((DOMElement) p1).setProperty(DOMElement.restQuery, "users?sort=name");
+			((DOMElement) p1).setProperty(DOMElement.dataKey, "user");
+			((DOMElement) p1).setProperty(DOMElement.parallelRenderThreshold, 2);
+
+			Content userNameContentNode = (Content) doc.createTextNode("${user.name}");
+
+			p1.appendChild(userNameContentNode);
+
+			doc.appendChild(html);
+			html.appendChild(body);
+			body.appendChild(p1);
+
+			makePublic(doc, html, body, p1, userNameContentNode);
+
+			tx.success();
+
+		} catch (Exception ex) {
+			logger.log(Level.WARNING, "", ex);
+			fail("Unexpected exception");
+		}
+
+		try (final Tx tx = app.tx()) {
+
+			Document parsedDocument = Jsoup.connect(baseUri + name).get();
+
+			// rows must be rendered in the order of the list
+			assertEquals(20, parsedDocument.select("html > body > p").size());
+
+			for (int i=0; i<20; i++) {
+				assertEquals(String.format("user%02d", i), parsedDocument.select("html > body > p").get(i).ownText());
+			}
+
+			tx.success();
+
+		} catch (Exception ex) {
+			logger.log(Level.WARNING, "", ex);
+			fail("unexpected exception");
+		}
+	}
+
+	public void testRenderListInParallelWithContextFunctions() {
+
+		String name = null;
+
+		try (final Tx tx = app.tx()) {
+
+			final Page doc = (Page) getDocument();
+			name = doc.getName();
+
+			final List<User> users = createTestNodes(User.class, 40);
+
+			for (int i=0; i<users.size(); i++) {
+
+				users.get(i).setProperty(AbstractNode.name, String.format("user%02d", i));
+				makePublic(users.get(i));
+			}
+
+			// create dom tree
+			Element html = doc.createElement("html");
+			Element body = doc.createElement("body");
+			final Element p1 = doc.createElement("p");
+
+			((DOMElement) p1).setProperty(DOMElement.restQuery, "users?sort=name");
+			((DOMElement) p1).setProperty(DOMElement.dataKey, "user");
+			((DOMElement) p1).setProperty(DOMElement.parallelRenderThreshold, 2);
+
+			// each() sets the data constant and store() writes to the context
+			Content contentNode = (Content) doc.createTextNode("${each(split('a,b,c'), store('row', concat(user.name, '-', data)))}${retrieve('row')}");
+
+			p1.appendChild(contentNode);
+
+			doc.appendChild(html);
+			html.appendChild(body);
+			body.appendChild(p1);
+
+			makePublic(doc, html, body, p1, contentNode);
+
+			tx.success();
+
+		} catch (Exception ex) {
+			logger.log(Level.WARNING, "", ex);
+			fail("Unexpected exception");
+		}
+
+		try (final Tx tx = app.tx()) {
+
+			for (int run=0; run<5; run++) {
+
+				Document parsedDocument = Jsoup.connect(baseUri + name).get();
+
+				// every row must only see its own data and stored values
+				assertEquals(40, parsedDocument.select("html > body > p").size());
+
+				for (int i=0; i<40; i++) {
+					assertEquals(String.format("user%02d-c", i), parsedDocument.select("html > body > p").get(i).ownText());
+				}
+			}
+
+			tx.success();
+
+		} catch (Exception ex) {
+			logger.log(Level.WARNING, "", ex);
+			fail("unexpected exception");
+		}
+	}
+
+	public void testRenderListInParallelIsReadOnly() {
+
+		String name = null;
+
+		try (final Tx tx = app.tx()) {
+
+			final Page doc = (Page) getDocument();
+			name = doc.getName();
+
+			final List<User> users = createTestNodes(User.class, 20);
+
+			for (int i=0; i<users.size(); i++) {
+
+				users.get(i).setProperty(AbstractNode.name, String.format("user%02d", i));
+				makePublic(users.get(i));
+			}
+
+			// create dom tree
+			Element html = doc.createElement("html");
+			Element body = doc.createElement("body");
+			final Element p1 = doc.createElement("p");
+
+			((DOMElement) p1).setProperty(DOMElement.restQuery, "users?sort=name");
+			((DOMElement) p1).setProperty(DOMElement.dataKey, "user");
+			((DOMElement) p1).setProperty(DOMElement.parallelRenderThreshold, 2);
+
+			// every row tries to create an object
+			Content contentNode = (Content) doc.createTextNode("${create('Folder', 'name', user.name)}");
+
+			p1.appendChild(contentNode);
+
+			doc.appendChild(html);
+			html.appendChild(body);
+			body.appendChild(p1);
+
+			makePublic(doc, html, body, p1, contentNode);
+
+			tx.success();
+
+		} catch (Exception ex) {
+			logger.log(Level.WARNING, "", ex);
+			fail("Unexpected exception");
+		}
+
+		try {
+
+			Jsoup.connect(baseUri + name).ignoreHttpErrors(true).execute();
+
+		} catch (Exception ex) {
+			logger.log(Level.WARNING, "", ex);
+			fail("unexpected exception");
+		}
+
+		try (final Tx tx = app.tx()) {
+
+			// no row must have committed its modifications
+			assertEquals(0, app.nodeQuery(Folder.class).getAsList().size());
+
+			tx.success();
+
+		} catch (Exception ex) {
+			logger.log(Level.WARNING, "", ex);
+			fail("unexpected exception");
+		}
+	}
 }
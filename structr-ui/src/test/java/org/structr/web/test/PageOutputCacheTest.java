@@ -0,0 +1,197 @@
+/**
+ * Copyright (C) 2010-2016 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.web.test;
+
+import com.jayway.restassured.RestAssured;
+import com.jayway.restassured.filter.log.ResponseLoggingFilter;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.hamcrest.Matchers;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.graph.Tx;
+import org.structr.web.common.StructrUiTest;
+import org.structr.web.entity.TestOne;
+import org.structr.web.entity.dom.Content;
+import org.structr.web.entity.dom.DOMNode;
+import org.structr.web.entity.dom.Page;
+import org.structr.web.servlet.HtmlServlet;
+import org.w3c.dom.DOMException;
+import org.w3c.dom.Element;
+import org.w3c.dom.Text;
+
+/**
+ * Test the output cache of HtmlServlet.
+ *
+ *
+ */
+public class PageOutputCacheTest extends StructrUiTest {
+
+	private static final Logger logger = Logger.getLogger(PageOutputCacheTest.class.getName());
+
+	public void testOutputCacheInvalidation() {
+
+		String textId = null;
+		String itemId = null;
+
+		try (final Tx tx = app.tx()) {
+
+			final Page page = Page.createNewPage(securityContext, "cached");
+
+			try {
+				final Element html = page.createElement("html");
+				final Element body = page.createElement("body");
+				final Element div  = page.createElement("div");
+				final Text text    = page.createTextNode("static-1");
+				final Text item    = page.createTextNode("${item.name}");
+
+				page.appendChild(html);
+				html.appendChild(body);
+				body.appendChild(text);
+				body.appendChild(div);
+				div.appendChild(item);
+
+				((DOMNode)div).setProperty(DOMNode.functionQuery, "find('TestOne')");
+				((DOMNode)div).setProperty(DOMNode.dataKey, "item");
+
+				for (final DOMNode node : new DOMNode[] { page, (DOMNode)html, (DOMNode)body, (DOMNode)div, (DOMNode)text, (DOMNode)item }) {
+					node.setProperty(DOMNode.visibleToPublicUsers, true);
+				}
+
+				textId = ((DOMNode)text).getUuid();
+
+			} catch (DOMException dex) {
+				logger.log(Level.WARNING, "", dex);
+				throw new FrameworkException(422, dex.getMessage());
+			}
+
+			final TestOne one = app.create(TestOne.class, "item-1");
+			one.setProperty(TestOne.visibleToPublicUsers, true);
+
+			itemId = one.getUuid();
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+			logger.log(Level.WARNING, "", fex);
+			fail("Unexpected exception");
+		}
+
+		assertPageContains("static-1", "item-1");
+		assertPageContains("static-1", "item-1");
+		assertCacheStatistics(1, 1);
+
+		// modification of a rendered DOM node
+		try (final Tx tx = app.tx()) {
+
+			app.get(Content.class, textId).setProperty(Content.content, "static-2");
+			tx.success();
+
+		} catch (FrameworkException fex) {
+			logger.log(Level.WARNING, "", fex);
+			fail("Unexpected exception");
+		}
+
+		assertPageContains("static-2", "item-1");
+
+		// modification of a rendered data object
+		try (final Tx tx = app.tx()) {
+
+			app.get(TestOne.class, itemId).setProperty(TestOne.name, "item-2");
+			tx.success();
+
+		} catch (FrameworkException fex) {
+			logger.log(Level.WARNING, "", fex);
+			fail("Unexpected exception");
+		}
+
+		assertPageContains("static-2", "item-2");
+
+		// creation of a node that is found by the repeater query
+		try (final Tx tx = app.tx()) {
+
+			app.create(TestOne.class, "item-3").setProperty(TestOne.visibleToPublicUsers, true);
+			tx.success();
+
+		} catch (FrameworkException fex) {
+			logger.log(Level.WARNING, "", fex);
+			fail("Unexpected exception");
+		}
+
+		assertPageContains("static-2", "item-3");
+		assertPageContains("static-2", "item-3");
+		assertCacheStatistics(2, 4);
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+
+		final Map<String, Object> additionalConfig = new HashMap<>();
+
+		additionalConfig.put(HtmlServlet.OUTPUT_CACHE_ENABLED, "true");
+
+		setUp(additionalConfig);
+	}
+
+	// ----- private methods -----
+	private void assertPageContains(final String... values) {
+
+		RestAssured.basePath = "/structr/html";
+
+		RestAssured
+			.given()
+			.filter(ResponseLoggingFilter.logResponseIfStatusCodeIs(400))
+			.filter(ResponseLoggingFilter.logResponseIfStatusCodeIs(401))
+			.filter(ResponseLoggingFilter.logResponseIfStatusCodeIs(403))
+			.filter(ResponseLoggingFilter.logResponseIfStatusCodeIs(404))
+			.filter(ResponseLoggingFilter.logResponseIfStatusCodeIs(422))
+			.filter(ResponseLoggingFilter.logResponseIfStatusCodeIs(500))
+			.expect()
+			.response()
+			.contentType("text/html")
+			.statusCode(200)
+			.body(Matchers.stringContainsInOrder(Arrays.asList(values)))
+			.when()
+			.get("/cached");
+	}
+
+	private void assertCacheStatistics(final int hits, final int misses) {
+
+		RestAssured.basePath = restUrl;
+
+		RestAssured
+			.given()
+			.header("X-User", "superadmin")
+			.header("X-Password", "sehrgeheim")
+			.filter(ResponseLoggingFilter.logResponseIfStatusCodeIs(400))
+			.filter(ResponseLoggingFilter.logResponseIfStatusCodeIs(401))
+			.filter(ResponseLoggingFilter.logResponseIfStatusCodeIs(403))
+			.filter(ResponseLoggingFilter.logResponseIfStatusCodeIs(404))
+			.filter(ResponseLoggingFilter.logResponseIfStatusCodeIs(422))
+			.filter(ResponseLoggingFilter.logResponseIfStatusCodeIs(500))
+			.expect()
+			.statusCode(200)
+			.body("result.caches.pageOutput.hits",   Matchers.equalTo(hits))
+			.body("result.caches.pageOutput.misses", Matchers.equalTo(misses))
+			.when()
+			.get("/_env");
+	}
+}
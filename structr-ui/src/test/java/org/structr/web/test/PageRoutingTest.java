@@ -0,0 +1,143 @@
+/**
+ * Copyright (C) 2010-2016 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.web.test;
+
+import com.jayway.restassured.RestAssured;
+import com.jayway.restassured.filter.log.ResponseLoggingFilter;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.hamcrest.Matchers;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.graph.Tx;
+import org.structr.web.common.StructrUiTest;
+import org.structr.web.entity.dom.DOMNode;
+import org.structr.web.entity.dom.Page;
+import org.w3c.dom.DOMException;
+import org.w3c.dom.Element;
+import org.w3c.dom.Text;
+
+/**
+ * Test that page resolution in HtmlServlet follows modifications of pages.
+ *
+ *
+ */
+public class PageRoutingTest extends StructrUiTest {
+
+	private static final Logger logger = Logger.getLogger(PageRoutingTest.class.getName());
+
+	public void testPageRouting() {
+
+		String pageOneId = null;
+		String pageTwoId = null;
+
+		try (final Tx tx = app.tx()) {
+
+			pageOneId = createPage("one", 10).getUuid();
+			pageTwoId = createPage("two", 20).getUuid();
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+			logger.log(Level.WARNING, "", fex);
+			fail("Unexpected exception");
+		}
+
+		assertResponse("/", 200, "content-one");
+		assertResponse("/one", 200, "content-one");
+		assertResponse("/two", 200, "content-two");
+		assertResponse("/" + pageTwoId, 200, "content-two");
+
+		// rename page and change index page
+		try (final Tx tx = app.tx()) {
+
+			final Page two = app.get(Page.class, pageTwoId);
+
+			two.setProperty(Page.name, "renamed");
+			two.setProperty(Page.position, 5);
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+			logger.log(Level.WARNING, "", fex);
+			fail("Unexpected exception");
+		}
+
+		assertResponse("/", 200, "content-two");
+		assertResponse("/renamed", 200, "content-two");
+		assertResponse("/two", 404, null);
+
+		// delete page
+		try (final Tx tx = app.tx()) {
+
+			app.delete(app.get(Page.class, pageOneId));
+			tx.success();
+
+		} catch (FrameworkException fex) {
+			logger.log(Level.WARNING, "", fex);
+			fail("Unexpected exception");
+		}
+
+		assertResponse("/one", 404, null);
+		assertResponse("/renamed", 200, "content-two");
+	}
+
+	// ----- private methods -----
+	private Page createPage(final String name, final int position) throws FrameworkException {
+
+		final Page page = Page.createNewPage(securityContext, name);
+
+		try {
+			final Element html = page.createElement("html");
+			final Text text    = page.createTextNode("content-" + name);
+
+			page.appendChild(html);
+			html.appendChild(text);
+
+			((DOMNode)html).setProperty(DOMNode.visibleToPublicUsers, true);
+			((DOMNode)text).setProperty(DOMNode.visibleToPublicUsers, true);
+
+		} catch (DOMException dex) {
+			logger.log(Level.WARNING, "", dex);
+			throw new FrameworkException(422, dex.getMessage());
+		}
+
+		page.setProperty(Page.visibleToPublicUsers, true);
+		page.setProperty(Page.position, position);
+
+		return page;
+	}
+
+	private void assertResponse(final String path, final int statusCode, final String content) {
+
+		RestAssured.basePath = "/structr/html";
+
+		RestAssured
+			.given()
+			.filter(ResponseLoggingFilter.logResponseIfStatusCodeIs(400))
+			.filter(ResponseLoggingFilter.logResponseIfStatusCodeIs(401))
+			.filter(ResponseLoggingFilter.logResponseIfStatusCodeIs(403))
+			.filter(ResponseLoggingFilter.logResponseIfStatusCodeIs(422))
+			.filter(ResponseLoggingFilter.logResponseIfStatusCodeIs(500))
+			.expect()
+			.statusCode(statusCode)
+			.body(content != null ? Matchers.containsString(content) : Matchers.anything())
+			.when()
+			.get(path);
+	}
+}
@@ -0,0 +1,164 @@
+/**
+ * Copyright (C) 2010-2016 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.web.test;
+
+import com.jayway.restassured.RestAssured;
+import com.jayway.restassured.filter.log.ResponseLoggingFilter;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.hamcrest.Matchers;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.graph.Tx;
+import org.structr.web.common.StructrUiTest;
+import org.structr.web.entity.TestOne;
+import org.structr.web.entity.dom.DOMNode;
+import org.structr.web.entity.dom.Page;
+import org.structr.web.servlet.HtmlServlet;
+import org.w3c.dom.DOMException;
+import org.w3c.dom.Element;
+import org.w3c.dom.Text;
+
+/**
+ * Test the render profiling of HtmlServlet.
+ *
+ *
+ */
+public class RenderProfileTest extends StructrUiTest {
+
+	private static final Logger logger = Logger.getLogger(RenderProfileTest.class.getName());
+
+	public void testRenderProfile() {
+
+		String divId = null;
+
+		try (final Tx tx = app.tx()) {
+
+			final Page page = Page.createNewPage(securityContext, "profiled");
+
+			try {
+				final Element html = page.createElement("html");
+				final Element body = page.createElement("body");
+				final Element div  = page.createElement("div");
+				final Text item    = page.createTextNode("${item.name}");
+
+				page.appendChild(html);
+				html.appendChild(body);
+				body.appendChild(div);
+				div.appendChild(item);
+
+				((DOMNode)div).setProperty(DOMNode.functionQuery, "find('TestOne')");
+				((DOMNode)div).setProperty(DOMNode.dataKey, "item");
+
+				for (final DOMNode node : new DOMNode[] { page, (DOMNode)html, (DOMNode)body, (DOMNode)div, (DOMNode)item }) {
+					node.setProperty(DOMNode.visibleToPublicUsers, true);
+				}
+
+				divId = ((DOMNode)div).getUuid();
+
+			} catch (DOMException dex) {
+				logger.log(Level.WARNING, "", dex);
+				throw new FrameworkException(422, dex.getMessage());
+			}
+
+			for (int i=0; i<5; i++) {
+				app.create(TestOne.class, "item-" + i).setProperty(TestOne.visibleToPublicUsers, true);
+			}
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+			logger.log(Level.WARNING, "", fex);
+			fail("Unexpected exception");
+		}
+
+		RestAssured.basePath = "/structr/html";
+
+		RestAssured
+			.given()
+			.filter(ResponseLoggingFilter.logResponseIfStatusCodeIs(500))
+			.expect()
+			.statusCode(200)
+			.header("Server-Timing", Matchers.startsWith("render;dur="))
+			.header("Server-Timing", Matchers.containsString("hotspot1;dur="))
+			.body(Matchers.containsString("item-4"))
+			.when()
+			.get("/profiled");
+
+		RestAssured.basePath = restUrl;
+
+		// render profiles are restricted to admin users
+		RestAssured
+			.given()
+			.filter(ResponseLoggingFilter.logResponseIfStatusCodeIs(500))
+			.expect()
+			.statusCode(Matchers.isOneOf(401, 403))
+			.when()
+			.get("/_renderProfiles");
+
+		RestAssured
+			.given()
+			.header("X-User", "superadmin")
+			.header("X-Password", "sehrgeheim")
+			.filter(ResponseLoggingFilter.logResponseIfStatusCodeIs(400))
+			.filter(ResponseLoggingFilter.logResponseIfStatusCodeIs(401))
+			.filter(ResponseLoggingFilter.logResponseIfStatusCodeIs(500))
+			.expect()
+			.statusCode(200)
+			.body("result",                  Matchers.hasSize(1))
+			.body("result[0].name",          Matchers.equalTo("profiled"))
+			.body("result[0].requests",      Matchers.equalTo(1))
+			.body("result[0].queries",       Matchers.greaterThan(0))
+			.body("result[0].hotSpots.key",  Matchers.hasItems(divId, divId + ":FunctionDataSource", "${item.name}"))
+			.when()
+			.get("/_renderProfiles");
+
+		RestAssured
+			.given()
+			.header("X-User", "superadmin")
+			.header("X-Password", "sehrgeheim")
+			.filter(ResponseLoggingFilter.logResponseIfStatusCodeIs(500))
+			.expect()
+			.statusCode(200)
+			.when()
+			.delete("/_renderProfiles");
+
+		RestAssured
+			.given()
+			.header("X-User", "superadmin")
+			.header("X-Password", "sehrgeheim")
+			.filter(ResponseLoggingFilter.logResponseIfStatusCodeIs(500))
+			.expect()
+			.statusCode(200)
+			.body("result", Matchers.hasSize(0))
+			.when()
+			.get("/_renderProfiles");
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+
+		final Map<String, Object> additionalConfig = new HashMap<>();
+
+		additionalConfig.put(HtmlServlet.PROFILING_ENABLED, "true");
+
+		setUp(additionalConfig);
+	}
+}